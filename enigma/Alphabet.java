@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 
@@ -12,6 +14,15 @@ class Alphabet {
      *  K (numbering from 0). No character may be duplicated. */
     Alphabet(String chars) {
         _alphabet = chars;
+        int last = -1;
+        for (int k = 0; k < chars.length(); k += 1) {
+            last = Math.max(last, chars.charAt(k));
+        }
+        _indices = new int[last + 1];
+        Arrays.fill(_indices, -1);
+        for (int k = chars.length() - 1; k >= 0; k -= 1) {
+            _indices[chars.charAt(k)] = k;
+        }
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -26,7 +37,13 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return _alphabet.contains(Character.toString(ch));
+        return indexOf(ch) >= 0;
+    }
+
+    /** Returns the index of CH in this alphabet, or -1 if it is not in
+     *  this alphabet. */
+    int indexOf(char ch) {
+        return ch < _indices.length ? _indices[ch] : -1;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -41,12 +58,28 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        if (!_alphabet.contains(Character.toString(ch))) {
-            System.out.println(Character.toString(ch));
-            throw new EnigmaException("No character in Alphabet");
+        int k = indexOf(ch);
+        if (k < 0) {
+            throw error("character %s not in alphabet", describe(ch));
         }
-        return _alphabet.indexOf(ch);
+        return k;
     }
+
+    /** Return CH as it should appear in an error message: quoted if it
+     *  is printable, and as a code point otherwise. */
+    static String describe(char ch) {
+        if (ch > ' ' && ch < DEL) {
+            return "'" + ch + "'";
+        }
+        return String.format("U+%04X", (int) ch);
+    }
+
+    /** The ASCII delete character. */
+    private static final char DEL = 0x7f;
+
     /** */
     private String _alphabet;
+    /** _indices[C] is the index of character C, or -1 if C is not in
+     *  the alphabet; characters past its end are not in the alphabet. */
+    private final int[] _indices;
 }
@@ -0,0 +1,209 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Conversion of many input files with one configuration.  Each file is
+ *  converted as by Main, with its own machine, into a file of the same
+ *  name in an output directory.  Files are converted concurrently, as
+ *  the tasks of a work-stealing pool of limited parallelism.  A file
+ *  that cannot be converted is reported and does not stop the others.
+ *  @author Jeonghyun Lee
+ */
+class Batch {
+
+    /** The outcome of converting one file. */
+    static final class Result {
+        /** The outcome of converting INPUT, of BYTES bytes, in NANOS
+         *  nanoseconds, with message ERROR, or null if it succeeded. */
+        Result(Path input, long bytes, long nanos, String error) {
+            _input = input;
+            _bytes = bytes;
+            _nanos = nanos;
+            _error = error;
+        }
+
+        /** Return the input file. */
+        Path input() {
+            return _input;
+        }
+
+        /** Return the size of the input file, in bytes. */
+        long bytes() {
+            return _bytes;
+        }
+
+        /** Return the time taken to convert the file, in nanoseconds. */
+        long nanos() {
+            return _nanos;
+        }
+
+        /** Return the reason the file could not be converted, or null if
+         *  it was. */
+        String error() {
+            return _error;
+        }
+
+        /** The input file. */
+        private final Path _input;
+        /** The size of the input file. */
+        private final long _bytes;
+        /** Time taken to convert the file. */
+        private final long _nanos;
+        /** Error message, or null. */
+        private final String _error;
+    }
+
+    /** A batch converting INPUTS with CONFIG into files in OUTPUT, at
+     *  most PARALLELISM at a time. */
+    Batch(MachineConfig config, List<Path> inputs, Path output,
+          int parallelism) {
+        if (parallelism <= 0) {
+            throw error("batch parallelism must be positive");
+        }
+        _config = config;
+        _inputs = new ArrayList<>(inputs);
+        _output = output;
+        _parallelism = parallelism;
+    }
+
+    /** Return the regular files named by SPEC: those in SPEC, if it is a
+     *  directory, and otherwise those in SPEC's directory whose names
+     *  match the glob pattern that is SPEC's last component.  The files
+     *  are ordered by name. */
+    static List<Path> inputs(String spec) {
+        Path path = Path.of(spec);
+        Path dir;
+        String pattern;
+        if (Files.isDirectory(path)) {
+            dir = path;
+            pattern = "*";
+        } else {
+            dir = path.getParent() == null ? Path.of(".") : path.getParent();
+            pattern = path.getFileName().toString();
+        }
+        PathMatcher matcher =
+            FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        ArrayList<Path> result = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                if (Files.isRegularFile(file)
+                    && matcher.matches(file.getFileName())) {
+                    result.add(file);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not list %s", dir);
+        }
+        if (result.isEmpty()) {
+            throw error("no input files match %s", spec);
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /** Convert all my inputs, returning the outcome for each, in the
+     *  order of my inputs. */
+    List<Result> run() {
+        try {
+            Files.createDirectories(_output);
+        } catch (IOException excp) {
+            throw error("could not create %s", _output);
+        }
+        long start = System.nanoTime();
+        ArrayList<Callable<Result>> tasks = new ArrayList<>();
+        for (Path input : _inputs) {
+            tasks.add(() -> convert(input));
+        }
+        ForkJoinPool pool = new ForkJoinPool(_parallelism);
+        ArrayList<Result> results = new ArrayList<>();
+        try {
+            for (Future<Result> result : pool.invokeAll(tasks)) {
+                results.add(result.get());
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("batch interrupted");
+        } finally {
+            pool.shutdown();
+        }
+        _elapsed = System.nanoTime() - start;
+        return results;
+    }
+
+    /** Convert INPUT into the file of the same name in my output
+     *  directory, returning the outcome. */
+    private Result convert(Path input) {
+        long start = System.nanoTime();
+        long bytes = 0;
+        String error = null;
+        try {
+            bytes = Files.size(input);
+            Path output = _output.resolve(input.getFileName());
+            if (Files.exists(output) && Files.isSameFile(input, output)) {
+                throw error("output would overwrite input");
+            }
+            Main.convertFile(_config, input, output);
+        } catch (IOException excp) {
+            error = "could not read " + input;
+        } catch (RuntimeException excp) {
+            error = excp.getMessage() == null ? excp.toString()
+                : excp.getMessage();
+        }
+        return new Result(input, bytes, System.nanoTime() - start, error);
+    }
+
+    /** Print a line on OUT for each of RESULTS, as returned by run,
+     *  giving its throughput or error, followed by totals. */
+    void report(List<Result> results, PrintStream out) {
+        long bytes = 0;
+        int failed = 0;
+        for (Result r : results) {
+            if (r.error() == null) {
+                bytes += r.bytes();
+                out.printf("%s: %d bytes in %.3f s (%.0f bytes/s)%n",
+                           r.input(), r.bytes(), r.nanos() / NANOS,
+                           rate(r.bytes(), r.nanos()));
+            } else {
+                failed += 1;
+                out.printf("%s: error: %s%n", r.input(), r.error());
+            }
+        }
+        out.printf("%d files, %d failed, %d bytes in %.3f s "
+                   + "(%.0f bytes/s, %d at a time)%n",
+                   results.size(), failed, bytes, _elapsed / NANOS,
+                   rate(bytes, _elapsed), _parallelism);
+    }
+
+    /** Return the rate of BYTES bytes in NANOS nanoseconds, per
+     *  second. */
+    private static double rate(long bytes, long nanos) {
+        return nanos == 0 ? 0 : bytes * NANOS / nanos;
+    }
+
+    /** Nanoseconds per second. */
+    private static final double NANOS = 1e9;
+
+    /** The configuration used for every file. */
+    private final MachineConfig _config;
+    /** The input files. */
+    private final ArrayList<Path> _inputs;
+    /** The output directory. */
+    private final Path _output;
+    /** Largest number of files converted at once. */
+    private final int _parallelism;
+    /** Wall-clock time taken by the last run, in nanoseconds. */
+    private long _elapsed;
+}
@@ -0,0 +1,85 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author Jeonghyun Lee
+ */
+public class BatchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the output Main gives for TEXT, a message converted after
+     *  settings "* X K P Q ABC". */
+    private static String expected(String text) {
+        Machine machine = smallConfig().newMachine();
+        machine.insertRotors(new String[] { "X", "K", "P", "Q" });
+        machine.setRotors("ABC");
+        machine.setPlugboard(new Permutation("", machine.alphabet()));
+        return grouped(machine.convert(text)) + "\r\n";
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkInputs() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        Files.writeString(dir.resolve("b.in"), "");
+        Files.writeString(dir.resolve("a.in"), "");
+        Files.writeString(dir.resolve("notes.txt"), "");
+        Files.createDirectory(dir.resolve("sub.in"));
+        assertEquals(List.of(dir.resolve("a.in"), dir.resolve("b.in"),
+                             dir.resolve("notes.txt")),
+                     Batch.inputs(dir.toString()));
+        assertEquals(List.of(dir.resolve("a.in"), dir.resolve("b.in")),
+                     Batch.inputs(dir.resolve("*.in").toString()));
+        try {
+            Batch.inputs(dir.resolve("*.out").toString());
+            fail("no matching inputs");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkRun() throws IOException {
+        Path dir = Files.createTempDirectory("batch");
+        Path in = Files.createDirectory(dir.resolve("in"));
+        Path out = dir.resolve("out");
+        Files.writeString(in.resolve("a.in"),
+                          "* X K P Q ABC\nHEADBADGE\n");
+        Files.writeString(in.resolve("b.in"),
+                          "* X K P Q ABC\nBEEFACADEFACE\n");
+        Files.writeString(in.resolve("c.in"), "* X K P Q\nABC\n");
+        MachineConfig config = smallConfig();
+        Batch batch = new Batch(config, Batch.inputs(in.toString()), out, 2);
+        List<Batch.Result> results = batch.run();
+        assertEquals(3, results.size());
+        assertNull(results.get(0).error());
+        assertNull(results.get(1).error());
+        assertNotNull(results.get(2).error());
+        assertEquals(expected("HEADBADGE"),
+                     Files.readString(out.resolve("a.in")));
+        assertEquals(expected("BEEFACADEFACE"),
+                     Files.readString(out.resolve("b.in")));
+        ByteArrayOutputStream report = new ByteArrayOutputStream();
+        batch.report(results, new PrintStream(report));
+        assertTrue(report.toString().contains("3 files, 1 failed"));
+    }
+}
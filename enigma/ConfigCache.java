@@ -0,0 +1,210 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static enigma.EnigmaException.*;
+
+/** A directory of precompiled configurations.  Each entry is a binary
+ *  file, named by a hash of the configuration text it was compiled
+ *  from, holding the alphabet, the slot and pawl counts, the stepping
+ *  model, and the name, kind, notches and wiring table of every rotor.
+ *  Entries are memory-mapped when loaded, and are written atomically,
+ *  so several processes may share a directory.
+ *  @author Jeonghyun Lee
+ */
+class ConfigCache {
+
+    /** A cache kept in the directory named DIR. */
+    ConfigCache(String dir) {
+        _dir = Path.of(dir);
+    }
+
+    /** Return the configuration in the file named NAME, loading it from
+     *  this cache if it has been compiled before, and otherwise parsing
+     *  it and adding it to the cache. */
+    MachineConfig load(String name) {
+        byte[] text = ConfigParser.read(name);
+        long hash = hash(text);
+        Path entry = _dir.resolve(String.format("%016x.ecfg", hash));
+        if (Files.isReadable(entry)) {
+            MachineConfig config = read(entry, hash, text.length);
+            if (config != null) {
+                return config;
+            }
+        }
+        MachineConfig config = new ConfigParser(text).parse();
+        write(entry, hash, text.length, config);
+        return config;
+    }
+
+    /** Return the 64-bit FNV-1a hash of TEXT. */
+    static long hash(byte[] text) {
+        long h = FNV_OFFSET;
+        for (byte b : text) {
+            h = (h ^ (b & BYTE)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /** Return the configuration stored in ENTRY, or null if ENTRY is not
+     *  a valid cache entry for a configuration of LENGTH bytes with the
+     *  given HASH.  A truncated or corrupt entry is not valid: every
+     *  length is checked against what remains of the entry, every rotor
+     *  must have a known kind and notches in the alphabet, and every
+     *  wiring table must be a permutation of the alphabet. */
+    private static MachineConfig read(Path entry, long hash, int length) {
+        try (FileChannel channel = FileChannel.open(entry)) {
+            MappedByteBuffer buf =
+                channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                            channel.size());
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION
+                || buf.getLong() != hash || buf.getInt() != length) {
+                return null;
+            }
+            Alphabet alpha = new Alphabet(getString(buf));
+            int numRotors = buf.getInt();
+            int pawls = buf.getInt();
+            String stepping = getString(buf);
+            int count = buf.getInt();
+            if (count < 0) {
+                return null;
+            }
+            RotorCatalog rotors = new RotorCatalog(alpha);
+            for (int r = 0; r < count; r += 1) {
+                char kind = buf.getChar();
+                String name = getString(buf);
+                String notches = getString(buf);
+                if (!validKind(kind, notches, alpha)) {
+                    return null;
+                }
+                int[] wiring = new int[alpha.size()];
+                boolean[] used = new boolean[wiring.length];
+                for (int k = 0; k < wiring.length; k += 1) {
+                    wiring[k] = buf.getChar();
+                    if (wiring[k] >= wiring.length || used[wiring[k]]) {
+                        return null;
+                    }
+                    used[wiring[k]] = true;
+                }
+                rotors.add(name, kind, notches, wiring);
+            }
+            return new MachineConfig(numRotors, pawls, stepping, rotors);
+        } catch (IOException | BufferUnderflowException
+                 | EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /** Return true iff KIND is a rotor kind code and NOTCHES are
+     *  characters of ALPHA that a rotor of that kind may have as
+     *  notches. */
+    private static boolean validKind(char kind, String notches,
+                                     Alphabet alpha) {
+        switch (kind) {
+        case MachineConfig.RotorSpec.MOVING:
+            for (int i = 0; i < notches.length(); i += 1) {
+                if (!alpha.contains(notches.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        case MachineConfig.RotorSpec.FIXED:
+        case MachineConfig.RotorSpec.REFLECTOR:
+            return notches.isEmpty();
+        default:
+            return false;
+        }
+    }
+
+    /** Store CONFIG, compiled from LENGTH bytes of text with the given
+     *  HASH, as ENTRY.  Failure to write the cache is not an error. */
+    private static void write(Path entry, long hash, int length,
+                              MachineConfig config) {
+        Path temp = null;
+        try {
+            Files.createDirectories(entry.getParent());
+            temp = Files.createTempFile(entry.getParent(), "config", ".tmp");
+            try (OutputStream file = Files.newOutputStream(temp);
+                 DataOutputStream out =
+                     new DataOutputStream(new BufferedOutputStream(file))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(hash);
+                out.writeInt(length);
+                putString(out, alphabetString(config.alphabet()));
+                out.writeInt(config.numRotors());
+                out.writeInt(config.numPawls());
+                putString(out, config.stepping());
+                out.writeInt(config.rotors().size());
+                for (MachineConfig.RotorSpec spec : config.rotors()) {
+                    out.writeChar(spec.kind());
+                    putString(out, spec.name());
+                    putString(out, spec.notches());
+                    for (int k : spec.wiring()) {
+                        out.writeChar(k);
+                    }
+                }
+            }
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+        }
+    }
+
+    /** Return the characters of ALPHA, in order. */
+    private static String alphabetString(Alphabet alpha) {
+        char[] chars = new char[alpha.size()];
+        for (int k = 0; k < chars.length; k += 1) {
+            chars[k] = alpha.toChar(k);
+        }
+        return new String(chars);
+    }
+
+    /** Write S to OUT as a length followed by its characters. */
+    private static void putString(DataOutputStream out, String s)
+        throws IOException {
+        out.writeInt(s.length());
+        out.writeChars(s);
+    }
+
+    /** Return a string written by putString, read from BUF.  Throws
+     *  BufferUnderflowException if its length is negative or runs past
+     *  the end of BUF. */
+    private static String getString(MappedByteBuffer buf) {
+        int length = buf.getInt();
+        if (length < 0 || length > buf.remaining() / 2) {
+            throw new BufferUnderflowException();
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < chars.length; i += 1) {
+            chars[i] = buf.getChar();
+        }
+        return new String(chars);
+    }
+
+    /** First word of every cache entry. */
+    private static final int MAGIC = 0x454e4743;
+    /** Version of the entry format. */
+    private static final int VERSION = 2;
+    /** FNV-1a 64-bit offset basis. */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    /** FNV-1a 64-bit prime. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /** Mask selecting the low byte. */
+    private static final int BYTE = 0xff;
+
+    /** Directory holding the entries. */
+    private final Path _dir;
+}
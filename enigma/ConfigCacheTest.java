@@ -0,0 +1,126 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigCache class.
+ *  @author Jeonghyun Lee
+ */
+public class ConfigCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a description of CONFIG listing everything a cache entry
+     *  records. */
+    private static String describe(MachineConfig config) {
+        StringBuilder result = new StringBuilder();
+        result.append(config.alphabet().size()).append(' ')
+            .append(config.numRotors()).append(' ')
+            .append(config.numPawls()).append(' ')
+            .append(config.stepping());
+        for (MachineConfig.RotorSpec spec : config.rotors()) {
+            result.append('\n').append(spec.name()).append(' ')
+                .append(spec.kind()).append(spec.notches()).append(' ')
+                .append(Arrays.toString(spec.wiring()));
+        }
+        return result.toString();
+    }
+
+    /** Return the entries in the cache directory DIR. */
+    private static List<Path> entries(Path dir) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.sorted().collect(Collectors.toList());
+        }
+    }
+
+    /** Return an identifier of the file ENTRY that changes when it is
+     *  replaced. */
+    private static Object fileKey(Path entry) throws IOException {
+        return Files.readAttributes(entry, BasicFileAttributes.class)
+            .fileKey();
+    }
+
+    /** Overwrite the bytes of ENTRY at POSN, or at POSN bytes from its
+     *  end if POSN is negative, with BYTES. */
+    private static void patch(Path entry, long posn, byte... bytes)
+        throws IOException {
+        try (FileChannel channel =
+             FileChannel.open(entry, StandardOpenOption.WRITE)) {
+            long at = posn < 0 ? channel.size() + posn : posn;
+            channel.write(ByteBuffer.wrap(bytes), at);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkHitAndMiss() throws IOException {
+        Path dir = Files.createTempDirectory("cache");
+        Path config = dir.resolve("small.conf");
+        Files.writeString(config, SMALL_CONFIG);
+        ConfigCache cache = new ConfigCache(dir.resolve("entries").toString());
+        String expected = describe(smallConfig());
+        assertEquals(expected, describe(cache.load(config.toString())));
+        List<Path> entries = entries(dir.resolve("entries"));
+        assertEquals(1, entries.size());
+        Object key = fileKey(entries.get(0));
+        assertEquals(expected, describe(cache.load(config.toString())));
+        assertEquals(key, fileKey(entries.get(0)));
+
+        String changed = SMALL_CONFIG.replace("P MB", "P MC");
+        Files.writeString(config, changed);
+        assertEquals(describe(new ConfigParser(changed.getBytes()).parse()),
+                     describe(cache.load(config.toString())));
+        assertEquals(2, entries(dir.resolve("entries")).size());
+    }
+
+    @Test
+    public void checkCorruptEntries() throws IOException {
+        Path dir = Files.createTempDirectory("cache");
+        Path config = dir.resolve("small.conf");
+        Files.writeString(config, SMALL_CONFIG);
+        ConfigCache cache = new ConfigCache(dir.resolve("entries").toString());
+        String expected = describe(smallConfig());
+        cache.load(config.toString());
+        Path entry = entries(dir.resolve("entries")).get(0);
+        byte[] good = Files.readAllBytes(entry);
+        byte[][] patches = {
+            { -1, -1, -1, -1 },
+            { 0x7f, -1, -1, -1 },
+            { -1, -1 },
+            { 0, 0, 0, 0 },
+        };
+        long[] posns = { 20, 20, -2, -4 };
+        for (int i = 0; i < patches.length; i += 1) {
+            Files.write(entry, good);
+            patch(entry, posns[i], patches[i]);
+            assertEquals("patch " + i, expected,
+                         describe(cache.load(config.toString())));
+            assertArrayEquals("patch " + i + " replaced", good,
+                              Files.readAllBytes(entry));
+        }
+        Files.write(entry, Arrays.copyOf(good, good.length / 2));
+        assertEquals(expected, describe(cache.load(config.toString())));
+        assertArrayEquals(good, Files.readAllBytes(entry));
+    }
+}
@@ -0,0 +1,323 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A single-pass parser for configuration files.  The text is tokenized
+ *  directly from its bytes, and rotor cycles are compiled straight into
+ *  wiring tables, so no intermediate strings are made for them.  Errors
+ *  are reported with the line and column at which they occur.
+ *  @author Jeonghyun Lee
+ */
+class ConfigParser {
+
+    /** A parser for the configuration whose UTF-8 encoding is TEXT. */
+    ConfigParser(byte[] text) {
+        _text = text;
+    }
+
+    /** Return the configuration in the file named NAME. */
+    static MachineConfig parse(String name) {
+        return new ConfigParser(read(name)).parse();
+    }
+
+    /** Return the contents of the file named NAME. */
+    static byte[] read(String name) {
+        try {
+            return Files.readAllBytes(Path.of(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return the configuration described by my text. */
+    MachineConfig parse() {
+        if (!nextToken()) {
+            throw error("configuration file is empty");
+        }
+        Alphabet alpha = readAlphabet();
+        int numRotors = readInt();
+        int pawls = readInt();
+        if (numRotors <= 1) {
+            throw errorAtToken("need at least two rotor slots");
+        }
+        if (pawls < 0 || pawls >= numRotors) {
+            throw errorAtToken("number of pawls must be less than number "
+                               + "of rotor slots");
+        }
+        String stepping = Stepping.RATCHET;
+        nextToken();
+        if (_tokenEnd >= 0 && tokenString().startsWith(STEPPING)) {
+            stepping = tokenString().substring(STEPPING.length());
+            if (!Stepping.isModel(stepping)) {
+                throw errorAtToken("unknown stepping model " + stepping);
+            }
+            nextToken();
+        }
+        RotorCatalog rotors = new RotorCatalog(alpha);
+        while (_tokenEnd >= 0) {
+            if (rotors.find(tokenString()) >= 0) {
+                throw errorAtToken("duplicate rotor " + tokenString());
+            }
+            readRotor(rotors);
+        }
+        if (rotors.size() == 0) {
+            throw error("no rotors described");
+        }
+        return new MachineConfig(numRotors, pawls, stepping, rotors);
+    }
+
+    /** Read the alphabet from the current token. */
+    private Alphabet readAlphabet() {
+        String chars = tokenString();
+        int max = 0;
+        for (int i = 0; i < chars.length(); i += 1) {
+            char ch = chars.charAt(i);
+            if (ch == '(' || ch == ')' || ch == '*') {
+                throw errorAtToken("alphabet may not contain " + ch);
+            }
+            max = Math.max(max, ch);
+        }
+        _index = new int[max + 1];
+        Arrays.fill(_index, -1);
+        for (int i = 0; i < chars.length(); i += 1) {
+            char ch = chars.charAt(i);
+            if (_index[ch] >= 0) {
+                throw errorAtToken("duplicate character in alphabet: "
+                                   + ch);
+            }
+            _index[ch] = i;
+        }
+        _asciiAlphabet = max < ASCII;
+        return new Alphabet(chars);
+    }
+
+    /** Read a nonnegative integer from the next token. */
+    private int readInt() {
+        if (!nextToken()) {
+            throw errorAtToken("unexpected end of configuration");
+        }
+        int value = 0;
+        for (int p = _tokenStart; p < _tokenEnd; p += 1) {
+            int digit = _text[p] - '0';
+            if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE / 10) {
+                throw errorAtToken("expected a number");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /** Read a rotor whose name is the current token, with the type and
+     *  cycles that follow it, into ROTORS.  Leaves the token after the
+     *  rotor current. */
+    private void readRotor(RotorCatalog rotors) {
+        Alphabet alpha = rotors.alphabet();
+        String name = tokenString();
+        if (!nextToken() || _text[_tokenStart] == '(') {
+            throw errorAtToken("missing type for rotor " + name);
+        }
+        char kind = (char) _text[_tokenStart];
+        String notches = new String(_text, _tokenStart + 1,
+                                    _tokenEnd - _tokenStart - 1,
+                                    StandardCharsets.UTF_8);
+        switch (kind) {
+        case MachineConfig.RotorSpec.MOVING:
+            for (int i = 0; i < notches.length(); i += 1) {
+                if (indexOf(notches.charAt(i)) < 0) {
+                    throw errorAtToken("notch not in alphabet");
+                }
+            }
+            break;
+        case MachineConfig.RotorSpec.FIXED:
+        case MachineConfig.RotorSpec.REFLECTOR:
+            if (!notches.isEmpty()) {
+                throw errorAtToken("only moving rotors have notches");
+            }
+            break;
+        default:
+            throw errorAtToken("unknown rotor type");
+        }
+        int[] wiring = new int[alpha.size()];
+        for (int k = 0; k < wiring.length; k += 1) {
+            wiring[k] = k;
+        }
+        boolean[] seen = new boolean[alpha.size()];
+        while (nextToken() && _text[_tokenStart] == '(') {
+            readCycles(wiring, seen);
+        }
+        rotors.add(name, kind, notches, wiring);
+    }
+
+    /** Add the cycles in the current token to WIRING.  SEEN records the
+     *  characters already used in cycles of this rotor. */
+    private void readCycles(int[] wiring, boolean[] seen) {
+        if (!_asciiAlphabet) {
+            readCycles(tokenString(), wiring, seen);
+            return;
+        }
+        int first = -1, prev = -1;
+        for (int p = _tokenStart; p < _tokenEnd; p += 1) {
+            int b = _text[p];
+            if (b == '(') {
+                if (first != -1) {
+                    throw errorAt(p, "nested cycle");
+                }
+                first = prev = -2;
+            } else if (b == ')') {
+                if (first == -1) {
+                    throw errorAt(p, "unbalanced cycle");
+                }
+                if (first >= 0) {
+                    wiring[prev] = first;
+                }
+                first = prev = -1;
+            } else {
+                int k = b >= 0 && b < _index.length ? _index[b] : -1;
+                if (k < 0) {
+                    throw errorAt(p, "character not in alphabet");
+                } else if (first == -1) {
+                    throw errorAt(p, "character outside cycle");
+                } else if (seen[k]) {
+                    throw errorAt(p, "character repeated in cycles");
+                }
+                seen[k] = true;
+                if (first == -2) {
+                    first = k;
+                } else {
+                    wiring[prev] = k;
+                }
+                prev = k;
+            }
+        }
+        if (first != -1) {
+            throw errorAt(_tokenEnd, "unbalanced cycle");
+        }
+    }
+
+    /** Add the cycles in TOKEN, the current token, to WIRING, recording
+     *  the characters used in SEEN.  Used when the alphabet is not pure
+     *  ASCII, so that positions within the token are characters rather
+     *  than bytes. */
+    private void readCycles(String token, int[] wiring, boolean[] seen) {
+        int first = -1, prev = -1;
+        for (int i = 0; i < token.length(); i += 1) {
+            char ch = token.charAt(i);
+            if (ch == '(') {
+                if (first != -1) {
+                    throw errorAtToken("nested cycle");
+                }
+                first = prev = -2;
+            } else if (ch == ')') {
+                if (first == -1) {
+                    throw errorAtToken("unbalanced cycle");
+                }
+                if (first >= 0) {
+                    wiring[prev] = first;
+                }
+                first = prev = -1;
+            } else {
+                int k = indexOf(ch);
+                if (k < 0 || first == -1 || seen[k]) {
+                    throw errorAtToken("bad cycle character " + ch);
+                }
+                seen[k] = true;
+                if (first == -2) {
+                    first = k;
+                } else {
+                    wiring[prev] = k;
+                }
+                prev = k;
+            }
+        }
+        if (first != -1) {
+            throw errorAtToken("unbalanced cycle");
+        }
+    }
+
+    /** Return the index of CH in the alphabet, or -1 if it is not in
+     *  the alphabet. */
+    private int indexOf(char ch) {
+        return ch < _index.length ? _index[ch] : -1;
+    }
+
+    /** Advance to the next token, returning false (and setting _tokenEnd
+     *  to -1) at the end of the text. */
+    private boolean nextToken() {
+        byte[] text = _text;
+        int p = _pos;
+        while (p < text.length && text[p] <= ' ' && text[p] >= 0) {
+            if (text[p] == '\n') {
+                _line += 1;
+                _lineStart = p + 1;
+            }
+            p += 1;
+        }
+        if (p == text.length) {
+            _pos = p;
+            _tokenStart = p;
+            _tokenEnd = -1;
+            return false;
+        }
+        _tokenStart = p;
+        while (p < text.length && (text[p] > ' ' || text[p] < 0)) {
+            p += 1;
+        }
+        _tokenEnd = p;
+        _tokenLine = _line;
+        _tokenLineStart = _lineStart;
+        _pos = p;
+        return true;
+    }
+
+    /** Return the current token as a String. */
+    private String tokenString() {
+        return new String(_text, _tokenStart, _tokenEnd - _tokenStart,
+                          StandardCharsets.UTF_8);
+    }
+
+    /** Return an exception reporting MSG at the current token. */
+    private EnigmaException errorAtToken(String msg) {
+        return errorAt(_tokenStart, msg);
+    }
+
+    /** Return an exception reporting MSG at byte position POS of the
+     *  current token. */
+    private EnigmaException errorAt(int pos, String msg) {
+        if (_tokenEnd < 0) {
+            return error("configuration line %d: %s", _line, msg);
+        }
+        return error("configuration line %d, column %d: %s", _tokenLine,
+                     pos - _tokenLineStart + 1, msg);
+    }
+
+    /** Prefix of the optional token, following the number of pawls,
+     *  that names the stepping model. */
+    private static final String STEPPING = "stepping=";
+
+    /** Characters below this are ASCII. */
+    private static final int ASCII = 128;
+
+    /** The text being parsed. */
+    private final byte[] _text;
+    /** Position of the next unscanned byte. */
+    private int _pos;
+    /** Number of the line containing _pos. */
+    private int _line = 1;
+    /** Position of the start of line _line. */
+    private int _lineStart;
+    /** Bounds of the current token; _tokenEnd is -1 at end of text. */
+    private int _tokenStart, _tokenEnd;
+    /** Line number and start of line of the current token. */
+    private int _tokenLine, _tokenLineStart;
+    /** Index of each character in the alphabet, or -1. */
+    private int[] _index;
+    /** True iff every character of the alphabet is ASCII, so that cycles
+     *  can be compiled from their bytes. */
+    private boolean _asciiAlphabet;
+}
@@ -0,0 +1,96 @@
+package enigma;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigParser class.
+ *  @author Jeonghyun Lee
+ */
+public class ConfigParserTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the configuration described by TEXT. */
+    private MachineConfig parse(String text) {
+        return new ConfigParser(text.getBytes(StandardCharsets.UTF_8))
+            .parse();
+    }
+
+    /** Return the message of the error reported for TEXT. */
+    private String errorFor(String text) {
+        try {
+            parse(text);
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        }
+        fail("no error for " + text);
+        return null;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkWiring() {
+        MachineConfig config =
+            parse(UPPER_STRING + "\n 5 3\n"
+                  + "I MQ " + NAVALA.get("I") + "\n"
+                  + "V MZ (AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)\n"
+                  + "B R " + NAVALA.get("B") + "\n");
+        assertEquals(5, config.numRotors());
+        assertEquals(3, config.numPawls());
+        assertEquals(3, config.rotors().size());
+        String[] names = { "I", "V" };
+        for (int r = 0; r < names.length; r += 1) {
+            MachineConfig.RotorSpec spec = config.rotors().get(r);
+            assertEquals(names[r], spec.name());
+            assertEquals('M', spec.kind());
+            String map = NAVALA_MAP.get(names[r]);
+            for (int k = 0; k < map.length(); k += 1) {
+                assertEquals(msg(names[r], "wrong wiring of %d", k),
+                             UPPER_STRING.indexOf(map.charAt(k)),
+                             spec.wiring()[k]);
+            }
+        }
+        assertEquals("Q", config.rotors().get(0).notches());
+        assertTrue(config.newMachine() != config.newMachine());
+    }
+
+    @Test
+    public void checkErrors() {
+        assertEquals("configuration line 3, column 12: "
+                     + "character repeated in cycles",
+                     errorFor("ABCD 3 1\nB R (AB) (CD)\n"
+                              + "I MA (AB) (BC)"));
+        assertEquals("configuration line 2, column 3: unknown rotor type",
+                     errorFor("ABCD 3 1\nB X (AB) (CD)"));
+        assertEquals("configuration line 1, column 8: number of pawls "
+                     + "must be less than number of rotor slots",
+                     errorFor("ABCD 3 3\nB R (AB) (CD)"));
+        assertEquals("configuration line 1, column 10: unknown stepping "
+                     + "model gears",
+                     errorFor("ABCD 3 1 stepping=gears\nB R (AB) (CD)"));
+    }
+
+    @Test
+    public void checkStepping() {
+        String rotors = "\nB R (AB) (CD)\nI MAC (ABCD)\n";
+        assertEquals(Stepping.RATCHET, parse("ABCD 3 1" + rotors).stepping());
+        MachineConfig config = parse("ABCD 3 1 stepping=odometer" + rotors);
+        assertEquals(Stepping.ODOMETER, config.stepping());
+        assertEquals(2, config.rotors().size());
+        assertEquals("AC", config.rotors().get(1).notches());
+        Machine machine = config.newMachine();
+        machine.insertRotors(new String[] { "B", "I" });
+        assertEquals(Stepping.ODOMETER, machine.stepping().model());
+    }
+}
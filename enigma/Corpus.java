@@ -0,0 +1,612 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** A corpus of known-answer test vectors for one configuration.  Each
+ *  vector is a random key (a choice of rotors, their positions and ring
+ *  settings, and a plugboard), a random message and the message's
+ *  conversion by a Machine with that key.  A corpus is generated from a
+ *  seed, and the same seed always gives the same corpus, however many
+ *  threads generate it: the keys are cut into chunks, and each chunk
+ *  draws from its own SplittableRandom, split in order from one seeded
+ *  at the start.  Verification replays each vector through a fresh
+ *  setup of this build's machine and reports the first character of
+ *  each vector that differs.  Chunks are generated and verified in
+ *  parallel, a window of them at a time, so memory use is bounded.
+ *  Usage:
+ *  <pre>
+ *    java enigma.Corpus generate CONFIG CORPUS [--keys=N] [--length=N]
+ *        [--seed=N] [--threads=N]
+ *    java enigma.Corpus verify CONFIG CORPUS [--threads=N] [--limit=N]
+ *  </pre>
+ *  A corpus file holds a header naming the alphabet, the number of
+ *  rotor slots and the rotors its keys use, followed by one record per
+ *  vector: its length, the indices (in the header) of its rotors, as
+ *  ints, and its positions and rings, its plugboard pairs, and its
+ *  message and conversion, all as alphabet indices of one byte each.
+ *  The alphabet may therefore have at most 256 characters.
+ *  @author Jeonghyun Lee
+ */
+class Corpus {
+
+    /** A vector whose conversion by this build differs from the one
+     *  recorded. */
+    static final class Mismatch {
+        /** The first difference in vector KEY, at character OFFSET of
+         *  its message, where EXPECTED was recorded and ACTUAL
+         *  produced. */
+        Mismatch(long key, int offset, char expected, char actual) {
+            _key = key;
+            _offset = offset;
+            _expected = expected;
+            _actual = actual;
+        }
+
+        /** Return the number of the vector, from 0. */
+        long key() {
+            return _key;
+        }
+
+        /** Return the offset of the first difference in the message. */
+        int offset() {
+            return _offset;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("key %d, offset %d: expected %s, got %s",
+                                 _key, _offset,
+                                 Alphabet.describe(_expected),
+                                 Alphabet.describe(_actual));
+        }
+
+        /** Number of the vector. */
+        private final long _key;
+        /** Offset of the difference. */
+        private final int _offset;
+        /** Characters recorded and produced. */
+        private final char _expected, _actual;
+    }
+
+    /** A generator and verifier of corpora for the machines described by
+     *  CONFIG, running on THREADS threads. */
+    Corpus(MachineConfig config, int threads) {
+        if (threads <= 0) {
+            throw error("number of threads must be positive");
+        }
+        Alphabet alpha = config.alphabet();
+        if (alpha.size() > MAX_ALPHABET) {
+            throw error("alphabet too large for a test corpus");
+        }
+        _config = config;
+        _threads = threads;
+        RotorCatalog catalog = config.catalog();
+        ArrayList<Integer> reflectors = new ArrayList<>(),
+            fixed = new ArrayList<>(), moving = new ArrayList<>();
+        for (int r = 0; r < catalog.size(); r += 1) {
+            switch (catalog.kind(r)) {
+            case MachineConfig.RotorSpec.REFLECTOR:
+                reflectors.add(r);
+                break;
+            case MachineConfig.RotorSpec.MOVING:
+                moving.add(r);
+                break;
+            default:
+                fixed.add(r);
+                break;
+            }
+        }
+        int slots = config.numRotors() - 1;
+        _pawls = config.numPawls();
+        if (reflectors.isEmpty() || moving.size() < _pawls
+            || fixed.size() < slots - _pawls) {
+            throw error("configuration has too few rotors to make keys");
+        }
+        _reflectors = toArray(reflectors);
+        _fixed = toArray(fixed);
+        _moving = toArray(moving);
+    }
+
+    /** Return the elements of LIST. */
+    private static int[] toArray(List<Integer> list) {
+        return list.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** Write a corpus of KEYS vectors, with messages of 1 to MAXLENGTH
+     *  characters, drawn from SEED, to the file OUTPUT.  Returns the
+     *  total number of message characters. */
+    long generate(Path output, long seed, long keys, int maxLength) {
+        if (keys < 0 || maxLength <= 0) {
+            throw error("bad corpus size");
+        }
+        long chars = 0;
+        SplittableRandom root = new SplittableRandom(seed);
+        ForkJoinPool pool = new ForkJoinPool(_threads);
+        try (OutputStream file = Files.newOutputStream(output);
+             DataOutputStream out =
+                 new DataOutputStream(new BufferedOutputStream(file))) {
+            writeHeader(out);
+            for (long first = 0; first < keys; ) {
+                ArrayList<Callable<byte[]>> tasks = new ArrayList<>();
+                for (int k = 0; k < WINDOW * _threads && first < keys;
+                     k += 1) {
+                    int n = (int) Math.min(CHUNK, keys - first);
+                    SplittableRandom random = root.split();
+                    tasks.add(() -> generate(random, n, maxLength));
+                    first += n;
+                }
+                for (Future<byte[]> chunk : pool.invokeAll(tasks)) {
+                    byte[] bytes = chunk.get();
+                    out.write(bytes);
+                    chars += chars(bytes);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", output);
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("corpus generation interrupted");
+        } finally {
+            pool.shutdown();
+        }
+        return chars;
+    }
+
+    /** Write the corpus header to OUT. */
+    private void writeHeader(DataOutputStream out) throws IOException {
+        Alphabet alpha = _config.alphabet();
+        RotorCatalog catalog = _config.catalog();
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(alpha.size());
+        for (int k = 0; k < alpha.size(); k += 1) {
+            out.writeChar(alpha.toChar(k));
+        }
+        out.writeInt(_config.numRotors());
+        out.writeInt(catalog.size());
+        for (int r = 0; r < catalog.size(); r += 1) {
+            out.writeUTF(catalog.name(r));
+        }
+    }
+
+    /** Return the records of N vectors with messages of 1 to MAXLENGTH
+     *  characters, drawn from RANDOM. */
+    private byte[] generate(SplittableRandom random, int n, int maxLength) {
+        int size = _config.alphabet().size();
+        int slots = _config.numRotors() - 1;
+        Machine machine = _config.newMachine();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Key key = new Key(_config.numRotors(), size);
+        byte[] record = new byte[0];
+        for (int v = 0; v < n; v += 1) {
+            key._rotors[0] = _reflectors[random.nextInt(_reflectors.length)];
+            pick(random, _fixed, key._rotors, 1, slots - _pawls);
+            pick(random, _moving, key._rotors, 1 + slots - _pawls, _pawls);
+            for (int i = 0; i < slots; i += 1) {
+                key._positions[i] = random.nextInt(size);
+                key._rings[i] = random.nextInt(size);
+            }
+            key._pairs = random.nextInt(size / 2 + 1);
+            pairs(random, key._plugs, key._pairs);
+            int length = 1 + random.nextInt(maxLength);
+            int bodySize = key.bytes() + Integer.BYTES + 2 * length;
+            if (record.length < bodySize + Integer.BYTES) {
+                record = new byte[Math.max(bodySize + Integer.BYTES,
+                                           2 * record.length)];
+            }
+            ByteBuffer buf = ByteBuffer.wrap(record);
+            buf.putInt(bodySize);
+            key.put(buf);
+            buf.putInt(length);
+            key.apply(machine, this);
+            int text = buf.position(), result = text + length;
+            for (int i = 0; i < length; i += 1) {
+                int c = random.nextInt(size);
+                record[text + i] = (byte) c;
+                record[result + i] = (byte) machine.convert(c);
+            }
+            bytes.write(record, 0, buf.position() + 2 * length);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Store COUNT distinct elements of FROM, chosen by RANDOM, in
+     *  TO[START .. START+COUNT-1]. */
+    private static void pick(SplittableRandom random, int[] from, int[] to,
+                             int start, int count) {
+        int[] pool = from.clone();
+        for (int i = 0; i < count; i += 1) {
+            int j = i + random.nextInt(pool.length - i);
+            int t = pool[j];
+            pool[j] = pool[i];
+            pool[i] = t;
+            to[start + i] = t;
+        }
+    }
+
+    /** Store N random disjoint pairs of alphabet indices, chosen by
+     *  RANDOM, in PLUGS[0 .. 2N-1]. */
+    private static void pairs(SplittableRandom random, int[] plugs, int n) {
+        int[] pool = new int[plugs.length];
+        for (int k = 0; k < pool.length; k += 1) {
+            pool[k] = k;
+        }
+        for (int i = 0; i < 2 * n; i += 1) {
+            int j = i + random.nextInt(pool.length - i);
+            plugs[i] = pool[j];
+            pool[j] = pool[i];
+            pool[i] = plugs[i];
+        }
+    }
+
+    /** Return the number of message characters in RECORDS, a sequence
+     *  of whole records. */
+    private long chars(byte[] records) {
+        ByteBuffer buf = ByteBuffer.wrap(records);
+        long result = 0;
+        int keyBytes = Key.bytes(_config.numRotors());
+        while (buf.hasRemaining()) {
+            int size = buf.getInt();
+            int start = buf.position();
+            int pairs = records[start + keyBytes - 1] & BYTE;
+            result += buf.getInt(start + keyBytes + 2 * pairs);
+            buf.position(start + size);
+        }
+        return result;
+    }
+
+    /** Check every vector of the corpus in the file INPUT against this
+     *  build, returning the first difference in each vector that has
+     *  one, in order.  At most LIMIT differences are returned.  The
+     *  number of vectors and characters checked are left in keys() and
+     *  chars(). */
+    List<Mismatch> verify(Path input, int limit) {
+        ArrayList<Mismatch> result = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(_threads);
+        _keys = _chars = 0;
+        try (InputStream file = Files.newInputStream(input);
+             DataInputStream in =
+                 new DataInputStream(new BufferedInputStream(file))) {
+            int[] rotors = readHeader(in, input);
+            boolean more = true;
+            while (more && result.size() < limit) {
+                ArrayList<Callable<List<Mismatch>>> tasks =
+                    new ArrayList<>();
+                for (int k = 0; k < WINDOW * _threads && more; k += 1) {
+                    ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+                    DataOutputStream data = new DataOutputStream(chunk);
+                    int n = 0;
+                    for (; n < CHUNK; n += 1) {
+                        int size;
+                        try {
+                            size = in.readInt();
+                        } catch (EOFException excp) {
+                            more = false;
+                            break;
+                        }
+                        if (size < 0 || size > MAX_RECORD) {
+                            throw error("%s is corrupt", input);
+                        }
+                        byte[] body = new byte[size];
+                        in.readFully(body);
+                        data.writeInt(size);
+                        data.write(body);
+                    }
+                    if (n > 0) {
+                        long first = _keys;
+                        byte[] records = chunk.toByteArray();
+                        tasks.add(() -> verify(records, first, rotors));
+                        _keys += n;
+                        _chars += chars(records);
+                    }
+                }
+                for (Future<List<Mismatch>> found : pool.invokeAll(tasks)) {
+                    result.addAll(found.get());
+                }
+            }
+        } catch (EOFException excp) {
+            throw error("%s is truncated", input);
+        } catch (IOException excp) {
+            throw error("could not read %s", input);
+        } catch (InterruptedException excp) {
+            throw error("corpus verification interrupted");
+        } catch (ExecutionException excp) {
+            throw error("%s is corrupt", input);
+        } finally {
+            pool.shutdown();
+        }
+        return result.size() > limit ? result.subList(0, limit) : result;
+    }
+
+    /** Return the number of vectors checked by the last verify. */
+    long keys() {
+        return _keys;
+    }
+
+    /** Return the number of characters checked by the last verify. */
+    long chars() {
+        return _chars;
+    }
+
+    /** Read the header of corpus file NAME from IN, checking that it was
+     *  made for my alphabet and slots, and return my catalog's index of
+     *  each rotor it names. */
+    private int[] readHeader(DataInputStream in, Path name)
+        throws IOException {
+        Alphabet alpha = _config.alphabet();
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw error("%s is not a test corpus", name);
+        }
+        boolean same = in.readInt() == alpha.size();
+        for (int k = 0; same && k < alpha.size(); k += 1) {
+            same = in.readChar() == alpha.toChar(k);
+        }
+        if (!same || in.readInt() != _config.numRotors()) {
+            throw error("%s was made for a different machine", name);
+        }
+        int[] result = new int[in.readInt()];
+        for (int r = 0; r < result.length; r += 1) {
+            String rotor = in.readUTF();
+            result[r] = _config.catalog().find(rotor);
+            if (result[r] < 0) {
+                throw error("%s uses rotor %s, which is not configured",
+                            name, rotor);
+            }
+        }
+        return result;
+    }
+
+    /** Return the first difference in each vector of RECORDS, whose
+     *  first vector is number FIRST and whose rotors are numbered as in
+     *  ROTORS, my catalog's index of each. */
+    private List<Mismatch> verify(byte[] records, long first, int[] rotors) {
+        ArrayList<Mismatch> result = new ArrayList<>();
+        Alphabet alpha = _config.alphabet();
+        Machine machine = _config.newMachine();
+        Key key = new Key(_config.numRotors(), alpha.size());
+        ByteBuffer buf = ByteBuffer.wrap(records);
+        for (long v = first; buf.hasRemaining(); v += 1) {
+            int end = buf.getInt();
+            end += buf.position();
+            key.get(buf, rotors);
+            key.apply(machine, this);
+            int length = buf.getInt();
+            int text = buf.position(), expected = text + length;
+            for (int i = 0; i < length; i += 1) {
+                int c = machine.convert(records[text + i] & BYTE);
+                if (c != (records[expected + i] & BYTE)) {
+                    result.add(new Mismatch(v, i,
+                                            alpha.toChar(records[expected
+                                                                 + i]
+                                                         & BYTE),
+                                            alpha.toChar(c)));
+                    break;
+                }
+            }
+            buf.position(end);
+        }
+        return result;
+    }
+
+    /** The key of one vector, as indices. */
+    private static final class Key {
+        /** A key for a machine of NUMROTORS slots over an alphabet of
+         *  SIZE characters. */
+        Key(int numRotors, int size) {
+            _rotors = new int[numRotors];
+            _positions = new int[numRotors - 1];
+            _rings = new int[numRotors - 1];
+            _plugs = new int[size];
+            _names = new String[numRotors];
+        }
+
+        /** Return the number of bytes of a key for NUMROTORS slots,
+         *  excluding its plugboard pairs but including their count. */
+        static int bytes(int numRotors) {
+            return Integer.BYTES * numRotors + 2 * (numRotors - 1) + 1;
+        }
+
+        /** Return the number of bytes I occupy in a record. */
+        int bytes() {
+            return bytes(_rotors.length) + 2 * _pairs;
+        }
+
+        /** Write me to BUF. */
+        void put(ByteBuffer buf) {
+            for (int r : _rotors) {
+                buf.putInt(r);
+            }
+            for (int i = 0; i < _positions.length; i += 1) {
+                buf.put((byte) _positions[i]);
+            }
+            for (int i = 0; i < _rings.length; i += 1) {
+                buf.put((byte) _rings[i]);
+            }
+            buf.put((byte) _pairs);
+            for (int i = 0; i < 2 * _pairs; i += 1) {
+                buf.put((byte) _plugs[i]);
+            }
+        }
+
+        /** Read me from BUF, where rotors are numbered as in ROTORS, the
+         *  index in my catalog of each. */
+        void get(ByteBuffer buf, int[] rotors) {
+            for (int i = 0; i < _rotors.length; i += 1) {
+                _rotors[i] = rotors[buf.getInt()];
+            }
+            for (int i = 0; i < _positions.length; i += 1) {
+                _positions[i] = buf.get() & BYTE;
+            }
+            for (int i = 0; i < _rings.length; i += 1) {
+                _rings[i] = buf.get() & BYTE;
+            }
+            _pairs = buf.get() & BYTE;
+            for (int i = 0; i < 2 * _pairs; i += 1) {
+                _plugs[i] = buf.get() & BYTE;
+            }
+        }
+
+        /** Set MACHINE, made by CORPUS's configuration, to me. */
+        void apply(Machine machine, Corpus corpus) {
+            RotorCatalog catalog = corpus._config.catalog();
+            for (int i = 0; i < _rotors.length; i += 1) {
+                _names[i] = catalog.name(_rotors[i]);
+            }
+            machine.insertRotors(machine.findRotors(_names));
+            machine.setRotors(_positions);
+            machine.setRings(_rings);
+            int[] map = new int[_plugs.length];
+            for (int k = 0; k < map.length; k += 1) {
+                map[k] = k;
+            }
+            for (int i = 0; i < _pairs; i += 1) {
+                map[_plugs[2 * i]] = _plugs[2 * i + 1];
+                map[_plugs[2 * i + 1]] = _plugs[2 * i];
+            }
+            machine.setPlugboard(new Permutation(map,
+                                                 machine.alphabet()));
+        }
+
+        /** Catalog indices of the rotors, by slot. */
+        private final int[] _rotors;
+        /** Rotor positions and ring settings, by slot from slot 1. */
+        private final int[] _positions, _rings;
+        /** Plugboard pairs: _plugs[2K] and _plugs[2K+1] are swapped. */
+        private final int[] _plugs;
+        /** Number of plugboard pairs. */
+        private int _pairs;
+        /** Names of the rotors, by slot. */
+        private final String[] _names;
+    }
+
+    /** Generate or verify a corpus as described by ARGS (see the class
+     *  comment).  Exits with code 1 on error or if verification finds a
+     *  difference. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--keys=(\\d+) --length=(\\d+) "
+                                + "--seed=(-?\\d+) --threads=(\\d+) "
+                                + "--limit=(\\d+) --=(.*){3}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Corpus generate CONFIG "
+                            + "CORPUS [--keys=N] [--length=N] [--seed=N] "
+                            + "[--threads=N]\n"
+                            + "       java enigma.Corpus verify CONFIG "
+                            + "CORPUS [--threads=N] [--limit=N]");
+            }
+            List<String> words = options.get("--");
+            int threads = Integer.parseInt(option(options, "--threads",
+                                                  "0"));
+            Corpus corpus =
+                new Corpus(ConfigParser.parse(words.get(1)),
+                           threads == 0
+                           ? Runtime.getRuntime().availableProcessors()
+                           : threads);
+            Path file = Path.of(words.get(2));
+            long start = System.nanoTime();
+            if (words.get(0).equals("generate")) {
+                long keys = Long.parseLong(option(options, "--keys",
+                                                  "100000"));
+                long chars =
+                    corpus.generate(file,
+                                    Long.parseLong(option(options, "--seed",
+                                                          "1")),
+                                    keys,
+                                    Integer.parseInt(option(options,
+                                                            "--length",
+                                                            "256")));
+                report("generated", keys, chars, System.nanoTime() - start);
+                return;
+            } else if (words.get(0).equals("verify")) {
+                List<Mismatch> found =
+                    corpus.verify(file,
+                                  Integer.parseInt(option(options,
+                                                          "--limit",
+                                                          "100")));
+                for (Mismatch m : found) {
+                    System.out.println(m);
+                }
+                report("verified", corpus.keys(), corpus.chars(),
+                       System.nanoTime() - start);
+                if (found.isEmpty()) {
+                    return;
+                }
+                System.err.printf("Error: %d mismatches%n", found.size());
+            } else {
+                throw error("unknown corpus mode");
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the value of option KEY in OPTIONS, or DEFLT if it was not
+     *  given. */
+    private static String option(CommandArgs options, String key,
+                                 String deflt) {
+        return options.contains(key) ? options.get(key).get(0) : deflt;
+    }
+
+    /** Print a summary of KEYS vectors of CHARS characters, DONE in
+     *  NANOS nanoseconds. */
+    private static void report(String done, long keys, long chars,
+                               long nanos) {
+        System.out.printf("%s %d keys, %d characters in %.3f s "
+                          + "(%.1f M chars/s)%n", done, keys, chars,
+                          nanos / NANOS, chars * MICROS / nanos);
+    }
+
+    /** First word of a corpus file. */
+    private static final int MAGIC = 0x454e4756;
+    /** Version of the corpus format. */
+    private static final int VERSION = 2;
+    /** Largest alphabet whose indices fit in one byte. */
+    private static final int MAX_ALPHABET = 256;
+    /** Largest record accepted when verifying, in bytes. */
+    private static final int MAX_RECORD = 1 << 26;
+    /** Number of vectors in a chunk. */
+    private static final int CHUNK = 1024;
+    /** Number of chunks per thread in a window. */
+    private static final int WINDOW = 4;
+    /** Mask selecting an unsigned byte. */
+    private static final int BYTE = 0xff;
+    /** Nanoseconds per second. */
+    private static final double NANOS = 1e9;
+    /** Characters per nanosecond, in millions per second. */
+    private static final double MICROS = 1e3;
+
+    /** The configuration of the machines. */
+    private final MachineConfig _config;
+    /** Number of threads used. */
+    private final int _threads;
+    /** Number of moving rotors in each key. */
+    private final int _pawls;
+    /** Catalog indices of the reflectors, fixed rotors and moving
+     *  rotors. */
+    private final int[] _reflectors, _fixed, _moving;
+    /** Number of vectors and characters checked by the last verify. */
+    private long _keys, _chars;
+}
@@ -0,0 +1,127 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Corpus class.
+ *  @author Jeonghyun Lee
+ */
+public class CorpusTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Names and notches of the naval moving rotors. */
+    private static final String[][] MOVING = {
+        { "I", "Q" }, { "II", "E" }, { "III", "V" }, { "IV", "J" },
+        { "V", "Z" }, { "VI", "ZM" }, { "VII", "ZM" }, { "VIII", "ZM" }
+    };
+
+    /** Return the configuration of the naval machine, built from the
+     *  rotors of NAVALA, with the alphabet ALPHABET. */
+    private static MachineConfig naval(String alphabet) {
+        StringBuilder text = new StringBuilder(alphabet + " 5 3\n");
+        for (String[] rotor : MOVING) {
+            text.append(String.format("%s M%s %s%n", rotor[0], rotor[1],
+                                      NAVALA.get(rotor[0])));
+        }
+        for (String rotor : new String[] { "Beta", "Gamma" }) {
+            text.append(String.format("%s N %s%n", rotor,
+                                      NAVALA.get(rotor)));
+        }
+        for (String rotor : new String[] { "B", "C" }) {
+            text.append(String.format("%s R %s%n", rotor,
+                                      NAVALA.get(rotor)));
+        }
+        return new ConfigParser(text.toString().getBytes()).parse();
+    }
+
+    /** The naval configuration. */
+    private static final MachineConfig NAVAL = naval(UPPER_STRING);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkReproducible() throws IOException {
+        Path dir = Files.createTempDirectory("corpus");
+        Path one = dir.resolve("one.bin"), three = dir.resolve("three.bin");
+        long chars = new Corpus(NAVAL, 1).generate(one, 42, 2500, 30);
+        assertEquals(chars,
+                     new Corpus(NAVAL, 3).generate(three, 42, 2500, 30));
+        assertTrue(Arrays.equals(Files.readAllBytes(one),
+                                 Files.readAllBytes(three)));
+        Corpus corpus = new Corpus(NAVAL, 2);
+        assertEquals(List.of(), corpus.verify(one, 10));
+        assertEquals(2500, corpus.keys());
+        assertEquals(chars, corpus.chars());
+        assertTrue(chars >= 2500 && chars <= 2500 * 30);
+        new Corpus(NAVAL, 1).generate(three, 43, 2500, 30);
+        assertFalse(Arrays.equals(Files.readAllBytes(one),
+                                  Files.readAllBytes(three)));
+    }
+
+    @Test
+    public void checkMismatch() throws IOException {
+        Path file = Files.createTempFile("corpus", ".bin");
+        new Corpus(NAVAL, 2).generate(file, 7, 1500, 12);
+        byte[] bytes = Files.readAllBytes(file);
+        bytes[bytes.length - 1] ^= 1;
+        Files.write(file, bytes);
+        List<Corpus.Mismatch> found = new Corpus(NAVAL, 2).verify(file, 10);
+        assertEquals(1, found.size());
+        assertEquals(1499, found.get(0).key());
+        assertTrue(found.get(0).toString().startsWith("key 1499, offset "));
+    }
+
+    @Test
+    public void checkLargeCatalog() throws IOException {
+        String[] wirings = {
+            "(ABCDEFGH)", "(AC) (BDFH)", "(AEBG)", "(HGFEDCBA)",
+            "(ABD) (CEF)", "(AH) (BG) (CF)", "(ACEGBDFH)"
+        };
+        StringBuilder text = new StringBuilder("ABCDEFGH 3 1\n");
+        text.append("R R (AB) (CD) (EF) (GH)\nN N (AC) (BD)\n");
+        for (int r = 0; r < 70000; r += 1) {
+            text.append(String.format("M%d MA %s%n", r, wirings[r % 7]));
+        }
+        MachineConfig config =
+            new ConfigParser(text.toString().getBytes()).parse();
+        Path file = Files.createTempFile("corpus", ".bin");
+        new Corpus(config, 1).generate(file, 11, 200, 8);
+        assertEquals(List.of(), new Corpus(config, 1).verify(file, 10));
+    }
+
+    @Test
+    public void checkErrors() throws IOException {
+        Path file = Files.createTempFile("corpus", ".bin");
+        new Corpus(NAVAL, 1).generate(file, 7, 10, 12);
+        try {
+            new Corpus(naval(UPPER_STRING.substring(1) + "A"), 1)
+                .verify(file, 10);
+            fail("accepted corpus for another alphabet");
+        } catch (EnigmaException excp) {
+            assertEquals(file + " was made for a different machine",
+                         excp.getMessage());
+        }
+        Files.writeString(file, "* B Beta I II III AAAA\n");
+        try {
+            new Corpus(NAVAL, 1).verify(file, 10);
+            fail("accepted a file that is not a corpus");
+        } catch (EnigmaException excp) {
+            assertEquals(file + " is not a test corpus", excp.getMessage());
+        }
+    }
+}
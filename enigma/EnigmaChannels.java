@@ -0,0 +1,235 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/** Byte channels that convert the text passing through them with a
+ *  Machine.  Bytes are decoded to characters in a given charset,
+ *  converted as by EnigmaReader (characters outside the machine's
+ *  alphabet pass through unchanged) and encoded again.  Each channel
+ *  uses three fixed-size buffers, whatever the amount of data.
+ *  @author Jeonghyun Lee
+ */
+final class EnigmaChannels {
+
+    /** Not instantiated. */
+    private EnigmaChannels() {
+    }
+
+    /** Return a channel whose bytes are those of SOURCE, in CHARSET,
+     *  converted by MACHINE, which must already be set up. */
+    static ReadableByteChannel readable(ReadableByteChannel source,
+                                        Machine machine, Charset charset) {
+        return new Readable(source, machine, charset);
+    }
+
+    /** Return a channel that converts the bytes written to it, in
+     *  CHARSET, by MACHINE, which must already be set up, and writes the
+     *  results to TARGET.  Closing the channel writes any bytes held back
+     *  (the start of an incomplete character) and closes TARGET. */
+    static WritableByteChannel writable(WritableByteChannel target,
+                                        Machine machine, Charset charset) {
+        return new Writable(target, machine, charset);
+    }
+
+    /** The conversion state shared by both kinds of channel. */
+    private abstract static class Converter {
+        /** A converter using MACHINE and CHARSET. */
+        Converter(Machine machine, Charset charset) {
+            _machine = machine;
+            _decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            _encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            _bytesIn = ByteBuffer.allocate(BUFFER);
+            _chars = CharBuffer.allocate(BUFFER);
+            _bytesOut = ByteBuffer.allocate((int) Math.ceil(BUFFER
+                * _encoder.maxBytesPerChar()) + BUFFER);
+            _bytesOut.flip();
+        }
+
+        /** Decode as much of _bytesIn (which is in write mode) as fits
+         *  in _chars, convert the characters decoded, and encode them into
+         *  _bytesOut (which is empty and left in read mode).  If END, there
+         *  are no bytes to come after those in _bytesIn.  Returns true iff
+         *  END and all the input has now been encoded. */
+        boolean convert(boolean end) throws IOException {
+            _bytesIn.flip();
+            int start = _chars.position();
+            CoderResult decoded = check(_decoder.decode(_bytesIn, _chars,
+                                                        end));
+            boolean done = end && decoded.isUnderflow();
+            if (done) {
+                check(_decoder.flush(_chars));
+            }
+            _bytesIn.compact();
+            _machine.filter(_chars.array(), start, _chars.position());
+            _chars.flip();
+            _bytesOut.clear();
+            check(_encoder.encode(_chars, _bytesOut, done));
+            if (done) {
+                check(_encoder.flush(_bytesOut));
+            }
+            _chars.compact();
+            _bytesOut.flip();
+            return done;
+        }
+
+        /** Return RESULT, throwing an exception if it reports an
+         *  error. */
+        private CoderResult check(CoderResult result)
+            throws CharacterCodingException {
+            if (result.isError()) {
+                result.throwException();
+            }
+            return result;
+        }
+
+        /** The converting machine. */
+        private final Machine _machine;
+        /** Decoder of input bytes. */
+        private final CharsetDecoder _decoder;
+        /** Encoder of output characters. */
+        private final CharsetEncoder _encoder;
+        /** Bytes waiting to be decoded (in write mode). */
+        protected final ByteBuffer _bytesIn;
+        /** Characters waiting to be encoded (in write mode). */
+        private final CharBuffer _chars;
+        /** Encoded bytes waiting to be delivered (in read mode). */
+        protected final ByteBuffer _bytesOut;
+        /** True iff this channel is open. */
+        protected boolean _open = true;
+    }
+
+    /** A converting channel for reading. */
+    private static final class Readable extends Converter
+        implements ReadableByteChannel {
+        /** A channel reading from SOURCE, converting with MACHINE, in
+         *  CHARSET. */
+        Readable(ReadableByteChannel source, Machine machine,
+                 Charset charset) {
+            super(machine, charset);
+            _source = source;
+        }
+
+        @Override
+        public synchronized int read(ByteBuffer dst) throws IOException {
+            if (!_open) {
+                throw new ClosedChannelException();
+            }
+            while (!_bytesOut.hasRemaining()) {
+                if (_finished) {
+                    return -1;
+                }
+                if (!_ended) {
+                    int n = _source.read(_bytesIn);
+                    if (n == 0) {
+                        return 0;
+                    }
+                    _ended = n < 0;
+                }
+                _finished = convert(_ended);
+            }
+            int n = Math.min(dst.remaining(), _bytesOut.remaining());
+            int limit = _bytesOut.limit();
+            _bytesOut.limit(_bytesOut.position() + n);
+            dst.put(_bytesOut);
+            _bytesOut.limit(limit);
+            return n;
+        }
+
+        @Override
+        public synchronized boolean isOpen() {
+            return _open;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            _open = false;
+            _source.close();
+        }
+
+        /** The underlying channel. */
+        private final ReadableByteChannel _source;
+        /** True iff _source has reached its end. */
+        private boolean _ended;
+        /** True iff all of _source has been converted. */
+        private boolean _finished;
+    }
+
+    /** A converting channel for writing. */
+    private static final class Writable extends Converter
+        implements WritableByteChannel {
+        /** A channel writing to TARGET, converting with MACHINE, in
+         *  CHARSET. */
+        Writable(WritableByteChannel target, Machine machine,
+                 Charset charset) {
+            super(machine, charset);
+            _target = target;
+        }
+
+        @Override
+        public synchronized int write(ByteBuffer src) throws IOException {
+            if (!_open) {
+                throw new ClosedChannelException();
+            }
+            int written = 0;
+            while (src.hasRemaining()) {
+                int n = Math.min(src.remaining(), _bytesIn.remaining());
+                int limit = src.limit();
+                src.limit(src.position() + n);
+                _bytesIn.put(src);
+                src.limit(limit);
+                written += n;
+                convert(false);
+                drain();
+            }
+            return written;
+        }
+
+        /** Write all of _bytesOut to the target. */
+        private void drain() throws IOException {
+            while (_bytesOut.hasRemaining()) {
+                _target.write(_bytesOut);
+            }
+        }
+
+        @Override
+        public synchronized boolean isOpen() {
+            return _open;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (_open) {
+                _open = false;
+                try {
+                    while (!convert(true)) {
+                        drain();
+                    }
+                    drain();
+                } finally {
+                    _target.close();
+                }
+            }
+        }
+
+        /** The underlying channel. */
+        private final WritableByteChannel _target;
+    }
+
+    /** Size of the byte and character buffers. */
+    private static final int BUFFER = 8192;
+}
@@ -0,0 +1,222 @@
+package enigma;
+
+import java.nio.CharBuffer;
+import java.util.concurrent.Flow;
+
+/** A Flow.Processor that converts each CharBuffer it receives with a
+ *  Machine and publishes the result to a single subscriber.  Characters
+ *  outside the machine's alphabet pass through unchanged, as for
+ *  EnigmaReader.  By default, the characters of each item from its
+ *  position to its limit are converted into a buffer of the processor's
+ *  own, which is reused for every item, so the publisher's buffers are
+ *  left alone but the subscriber must be done with an item when its
+ *  onNext returns (copying it if it is to be kept).  A processor made
+ *  to convert in place instead converts each item itself and passes it
+ *  on (a read-only buffer is copied first), for publishers that hand
+ *  over their buffers and subscribers that keep them.  Since every item
+ *  received yields one item published, the subscriber's demand is
+ *  passed straight upstream: the processor never requests more than
+ *  its subscriber has, and never buffers items.
+ *  @author Jeonghyun Lee
+ */
+class EnigmaProcessor implements Flow.Processor<CharBuffer, CharBuffer> {
+
+    /** A processor converting with MACHINE, which must already be set
+     *  up, into a buffer of its own. */
+    EnigmaProcessor(Machine machine) {
+        this(machine, false);
+    }
+
+    /** A processor converting with MACHINE, which must already be set
+     *  up, in place iff INPLACE. */
+    EnigmaProcessor(Machine machine, boolean inPlace) {
+        _machine = machine;
+        _inPlace = inPlace;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super CharBuffer> subscriber) {
+        synchronized (this) {
+            if (_subscriber == null) {
+                _subscriber = subscriber;
+                subscriber = null;
+            }
+        }
+        if (subscriber != null) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("already "
+                                                         + "subscribed"));
+            return;
+        }
+        _subscriber.onSubscribe(new Downstream());
+        Throwable pending;
+        synchronized (this) {
+            pending = _pendingError;
+        }
+        if (pending != null) {
+            _subscriber.onError(pending);
+        } else if (_pendingComplete) {
+            _subscriber.onComplete();
+        }
+    }
+
+    /** The subscription given to my subscriber. */
+    private class Downstream implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            Flow.Subscription upstream;
+            synchronized (EnigmaProcessor.this) {
+                if (_cancelled) {
+                    return;
+                }
+                if (n <= 0) {
+                    _cancelled = true;
+                    upstream = _upstream;
+                    _upstream = null;
+                } else if (_upstream == null) {
+                    _demand = addCapped(_demand, n);
+                    return;
+                } else {
+                    upstream = _upstream;
+                }
+            }
+            if (n <= 0) {
+                if (upstream != null) {
+                    upstream.cancel();
+                }
+                _subscriber.onError(new IllegalArgumentException(
+                    "non-positive request"));
+            } else {
+                upstream.request(n);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            Flow.Subscription upstream;
+            synchronized (EnigmaProcessor.this) {
+                _cancelled = true;
+                upstream = _upstream;
+                _upstream = null;
+            }
+            if (upstream != null) {
+                upstream.cancel();
+            }
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        long demand;
+        synchronized (this) {
+            if (_upstream != null || _cancelled) {
+                demand = -1;
+            } else {
+                _upstream = subscription;
+                demand = _demand;
+                _demand = 0;
+            }
+        }
+        if (demand < 0) {
+            subscription.cancel();
+        } else if (demand > 0) {
+            subscription.request(demand);
+        }
+    }
+
+    @Override
+    public void onNext(CharBuffer item) {
+        if (_cancelled) {
+            return;
+        }
+        if (!_inPlace) {
+            if (_buffer.capacity() < item.remaining()) {
+                _buffer = CharBuffer.allocate(Math.max(item.remaining(),
+                                                       2 * _buffer.capacity()));
+            }
+            item = _buffer.clear().put(item.duplicate()).flip();
+        } else if (item.isReadOnly() || !item.hasArray()) {
+            item = CharBuffer.allocate(item.remaining()).put(item.duplicate())
+                .flip();
+        }
+        try {
+            _machine.filter(item.array(), item.arrayOffset() + item.position(),
+                            item.arrayOffset() + item.limit());
+        } catch (RuntimeException excp) {
+            Flow.Subscription upstream;
+            synchronized (this) {
+                _cancelled = true;
+                upstream = _upstream;
+                _upstream = null;
+            }
+            if (upstream != null) {
+                upstream.cancel();
+            }
+            _subscriber.onError(excp);
+            return;
+        }
+        _subscriber.onNext(item);
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        Flow.Subscriber<? super CharBuffer> subscriber;
+        synchronized (this) {
+            subscriber = _subscriber;
+            if (subscriber == null) {
+                _pendingError = throwable;
+            }
+        }
+        if (subscriber != null) {
+            subscriber.onError(throwable);
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        Flow.Subscriber<? super CharBuffer> subscriber;
+        synchronized (this) {
+            subscriber = _subscriber;
+            if (subscriber == null) {
+                _pendingComplete = true;
+            }
+        }
+        if (subscriber != null) {
+            subscriber.onComplete();
+        }
+    }
+
+    /** Return A + B, or Long.MAX_VALUE if that overflows. */
+    private static long addCapped(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    /** The converting machine. */
+    private final Machine _machine;
+    /** True iff items are converted in place. */
+    private final boolean _inPlace;
+    /** Holds converted items unless _inPlace. */
+    private CharBuffer _buffer = CharBuffer.allocate(0);
+    /** My subscriber, or null. */
+    private volatile Flow.Subscriber<? super CharBuffer> _subscriber;
+    /** My subscription to my publisher, or null. */
+    private Flow.Subscription _upstream;
+    /** Demand from my subscriber not yet passed upstream, because I had
+     *  no publisher. */
+    private long _demand;
+    /** True iff my subscriber has cancelled. */
+    private volatile boolean _cancelled;
+    /** An error received before I had a subscriber, or null. */
+    private Throwable _pendingError;
+    /** True iff my publisher completed before I had a subscriber. */
+    private volatile boolean _pendingComplete;
+}
@@ -0,0 +1,94 @@
+package enigma;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/** A Reader that converts the characters read from another Reader with
+ *  a Machine.  Characters in the machine's alphabet are converted, in
+ *  order, as Machine.convert would convert them; all others (blanks,
+ *  line breaks, punctuation) are passed through unchanged and do not
+ *  advance the rotors.  Characters are converted in the caller's buffer
+ *  as they are read, so apart from a buffer reused by skip, the reader
+ *  holds no more than the underlying Reader does.
+ *  @author Jeonghyun Lee
+ */
+class EnigmaReader extends FilterReader {
+
+    /** A reader converting the characters of IN with MACHINE, which must
+     *  already be set up. */
+    EnigmaReader(Reader in, Machine machine) {
+        super(in);
+        _machine = machine;
+    }
+
+    @Override
+    public int read() throws IOException {
+        synchronized (lock) {
+            int n = read(_one, 0, 1);
+            return n < 0 ? -1 : _one[0];
+        }
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        synchronized (lock) {
+            int n = in.read(cbuf, off, len);
+            if (n > 0) {
+                _machine.filter(cbuf, off, off + n);
+            }
+            return n;
+        }
+    }
+
+    /** Skip up to N characters, converting them so that the characters
+     *  after them are converted correctly.  Returns the number skipped. */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n < 0) {
+            throw new IllegalArgumentException("skip value is negative");
+        }
+        synchronized (lock) {
+            if (_skipBuffer == null) {
+                _skipBuffer = new char[SKIP_BUFFER];
+            }
+            char[] buf = _skipBuffer;
+            long skipped = 0;
+            while (skipped < n) {
+                int k = read(buf, 0, (int) Math.min(n - skipped, buf.length));
+                if (k < 0) {
+                    break;
+                }
+                skipped += k;
+            }
+            return skipped;
+        }
+    }
+
+    /** Returns false: the machine cannot be moved back to a mark. */
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) throws IOException {
+        throw new IOException("mark not supported");
+    }
+
+    @Override
+    public void reset() throws IOException {
+        throw new IOException("reset not supported");
+    }
+
+    /** Largest buffer used by skip. */
+    private static final int SKIP_BUFFER = 8192;
+
+    /** The converting machine. */
+    private final Machine _machine;
+    /** Buffer for reading single characters. */
+    private final char[] _one = new char[1];
+    /** Buffer for the characters skipped, or null before the first
+     *  skip. */
+    private char[] _skipBuffer;
+}
@@ -0,0 +1,209 @@
+package enigma;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for EnigmaReader, EnigmaWriter,
+ *  EnigmaChannels and EnigmaProcessor.
+ *  @author Jeonghyun Lee
+ */
+public class EnigmaStreamsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine set to B Beta III IV I AXLE with plugboard
+     *  (HQ) (EX) (IP) (TR) (BY). */
+    private Machine machine() {
+        return navalMachine(HIAWATHA_PLUGBOARD);
+    }
+
+    /** Plain text, with characters outside the alphabet. */
+    private static final String PLAIN =
+        "FROM HIS SHOULDER, HIAWATHA\nTOOK THE CAMERA OF ROSEWOOD\u00e9!\n";
+
+    /** PLAIN converted. */
+    private static final String CIPHER;
+    static {
+        StringBuilder letters = new StringBuilder();
+        for (char c : PLAIN.toCharArray()) {
+            if (UPPER.contains(c)) {
+                letters.append(c);
+            }
+        }
+        EnigmaStreamsTest test = new EnigmaStreamsTest();
+        String converted = test.machine().convert(letters.toString());
+        StringBuilder cipher = new StringBuilder();
+        int k = 0;
+        for (char c : PLAIN.toCharArray()) {
+            if (UPPER.contains(c)) {
+                cipher.append(converted.charAt(k));
+                k += 1;
+            } else {
+                cipher.append(c);
+            }
+        }
+        CIPHER = cipher.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkReader() throws IOException {
+        Reader in = new EnigmaReader(new StringReader(PLAIN), machine());
+        StringBuilder result = new StringBuilder();
+        result.append((char) in.read());
+        char[] buf = new char[3];
+        for (int n = in.read(buf, 0, 3); n >= 0; n = in.read(buf, 0, 3)) {
+            result.append(buf, 0, n);
+        }
+        assertEquals(CIPHER, result.toString());
+        assertTrue(CIPHER.startsWith("QVPQ S"));
+
+        Reader skipping = new EnigmaReader(new StringReader(PLAIN),
+                                           machine());
+        assertEquals(10, skipping.skip(10));
+        char[] rest = new char[PLAIN.length() - 10];
+        assertEquals(rest.length, skipping.read(rest));
+        assertEquals(CIPHER.substring(10), new String(rest));
+    }
+
+    @Test
+    public void checkWriter() throws IOException {
+        StringWriter out = new StringWriter();
+        Writer w = new EnigmaWriter(out, machine());
+        char[] plain = PLAIN.toCharArray();
+        w.write(plain[0]);
+        w.write(plain, 1, 9);
+        w.write(PLAIN, 10, PLAIN.length() - 10);
+        w.flush();
+        assertEquals(CIPHER, out.toString());
+        assertEquals(PLAIN, new String(plain));
+    }
+
+    @Test
+    public void checkChannels() throws IOException {
+        byte[] plain = PLAIN.getBytes(StandardCharsets.UTF_8);
+        ReadableByteChannel in =
+            EnigmaChannels.readable(Channels.newChannel(
+                new ByteArrayInputStream(plain)), machine(),
+                StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteBuffer buf = ByteBuffer.allocate(5);
+        while (in.read(buf) >= 0) {
+            bytes.write(buf.array(), 0, buf.position());
+            buf.clear();
+        }
+        assertEquals(CIPHER, bytes.toString(StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream sink = new ByteArrayOutputStream();
+        WritableByteChannel out =
+            EnigmaChannels.writable(Channels.newChannel(sink), machine(),
+                                    StandardCharsets.UTF_8);
+        byte[] cipher = CIPHER.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < cipher.length; i += 7) {
+            out.write(ByteBuffer.wrap(cipher, i,
+                                      Math.min(7, cipher.length - i)));
+        }
+        out.close();
+        assertEquals(PLAIN, sink.toString(StandardCharsets.UTF_8));
+    }
+
+    /** Publish PLAIN in pieces through PROCESSOR, adding the pieces
+     *  submitted to SUBMITTED, and return the text received. */
+    private String process(EnigmaProcessor processor,
+                           List<CharBuffer> submitted)
+        throws InterruptedException {
+        List<String> received = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        processor.subscribe(new Flow.Subscriber<CharBuffer>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                _subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(CharBuffer item) {
+                received.add(item.toString());
+                _subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+
+            private Flow.Subscription _subscription;
+        });
+        try (SubmissionPublisher<CharBuffer> publisher =
+                 new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            for (int i = 0; i < PLAIN.length(); i += 4) {
+                String part = PLAIN.substring(i, Math.min(i + 4,
+                                                          PLAIN.length()));
+                CharBuffer item = i % 8 == 0 ? CharBuffer.wrap(part)
+                    : CharBuffer.wrap(part.toCharArray());
+                submitted.add(item);
+                publisher.submit(item);
+            }
+        }
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        return String.join("", received);
+    }
+
+    @Test
+    public void checkProcessor() throws InterruptedException {
+        List<CharBuffer> submitted = new ArrayList<>();
+        assertEquals(CIPHER, process(new EnigmaProcessor(machine()),
+                                     submitted));
+        assertEquals(PLAIN, submitted.stream().map(CharBuffer::toString)
+                     .collect(Collectors.joining()));
+    }
+
+    @Test
+    public void checkProcessorInPlace() throws InterruptedException {
+        List<CharBuffer> submitted = new ArrayList<>();
+        assertEquals(CIPHER, process(new EnigmaProcessor(machine(), true),
+                                     submitted));
+        for (int k = 0; k < submitted.size(); k += 1) {
+            int end = Math.min(4 * k + 4, PLAIN.length());
+            String expected = k % 2 == 0 ? PLAIN.substring(4 * k, end)
+                : CIPHER.substring(4 * k, end);
+            assertEquals(expected, submitted.get(k).toString());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package enigma;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/** A Writer that converts the characters written to it with a Machine
+ *  before passing them on to another Writer.  Characters in the
+ *  machine's alphabet are converted as by EnigmaReader; all others are
+ *  passed through unchanged.  The caller's characters are copied, a
+ *  buffer at a time, into one reused buffer and converted there, so
+ *  the caller's arrays are never modified and memory use does not grow
+ *  with the amount written.
+ *  @author Jeonghyun Lee
+ */
+class EnigmaWriter extends FilterWriter {
+
+    /** A writer converting characters with MACHINE, which must already be
+     *  set up, and writing them to OUT. */
+    EnigmaWriter(Writer out, Machine machine) {
+        super(out);
+        _machine = machine;
+    }
+
+    @Override
+    public void write(int c) throws IOException {
+        synchronized (lock) {
+            _buffer[0] = (char) c;
+            _machine.filter(_buffer, 0, 1);
+            out.write(_buffer, 0, 1);
+        }
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        synchronized (lock) {
+            while (len > 0) {
+                int n = Math.min(len, _buffer.length);
+                System.arraycopy(cbuf, off, _buffer, 0, n);
+                _machine.filter(_buffer, 0, n);
+                out.write(_buffer, 0, n);
+                off += n;
+                len -= n;
+            }
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        synchronized (lock) {
+            while (len > 0) {
+                int n = Math.min(len, _buffer.length);
+                str.getChars(off, off + n, _buffer, 0);
+                _machine.filter(_buffer, 0, n);
+                out.write(_buffer, 0, n);
+                off += n;
+                len -= n;
+            }
+        }
+    }
+
+    /** Size of the conversion buffer. */
+    private static final int BUFFER = 8192;
+
+    /** The converting machine. */
+    private final Machine _machine;
+    /** The conversion buffer. */
+    private final char[] _buffer = new char[BUFFER];
+}
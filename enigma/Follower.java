@@ -0,0 +1,316 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+
+/** Converts an input file that is still being appended to, as Main
+ *  would convert the whole of it, handling only the bytes added since
+ *  it last looked.  Only complete lines are handled, so a message line
+ *  split across appends waits for the rest of it.  Output is appended to
+ *  the output file.  After each pass over new input, the offset of the
+ *  first unhandled input byte, the length of the output, the input line
+ *  number and the machine's settings line and rotor positions are saved
+ *  in a state file (the output file's name followed by ".follow"), so a
+ *  Follower started again with the same files continues where the last
+ *  one stopped, first cutting off any output written after its last
+ *  save.  Between passes, it waits for the input's directory to report a
+ *  change or for a short interval to pass, whichever comes first, and
+ *  then checks the input's size, since change notices may be slow or
+ *  missing on some file systems.  The input must keep its identity: a
+ *  file that is replaced or shortened is not followed.
+ *  @author Jeonghyun Lee
+ */
+class Follower {
+
+    /** A follower of the file INPUT, converting its messages with the
+     *  machines described by CONFIG after cleaning them with NORMALIZER
+     *  and appending the results to the file OUTPUT. */
+    Follower(MachineConfig config, Normalizer normalizer, Path input,
+             Path output) {
+        this(config, normalizer, input, output, CHECKPOINT);
+    }
+
+    /** A follower of INPUT as for Follower(CONFIG, NORMALIZER, INPUT,
+     *  OUTPUT), saving its state within a pass after every CHECKPOINT
+     *  bytes of input handled. */
+    Follower(MachineConfig config, Normalizer normalizer, Path input,
+             Path output, long checkpoint) {
+        if (checkpoint <= 0) {
+            throw error("follow checkpoint interval must be positive");
+        }
+        _checkpoint = checkpoint;
+        _machine = config.newMachine();
+        _normalizer = normalizer;
+        _input = input;
+        _output = output;
+        _state = Path.of(output + STATE_SUFFIX);
+        _posn = new int[_machine.numRotors() - 1];
+        try {
+            _out = FileChannel.open(output, StandardOpenOption.CREATE,
+                                    StandardOpenOption.WRITE);
+            if (Files.exists(_state)) {
+                restore();
+            }
+            _out.truncate(_outputLength);
+            _out.position(_outputLength);
+        } catch (IOException excp) {
+            throw error("could not open %s", output);
+        }
+    }
+
+    /** Convert new input as it arrives, returning once none has arrived
+     *  for IDLE milliseconds, or never if IDLE is 0. */
+    void run(long idle) {
+        Path dir = _input.toAbsolutePath().getParent();
+        try (WatchService watcher = dir.getFileSystem().newWatchService()) {
+            dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                         StandardWatchEventKinds.ENTRY_MODIFY);
+            long last = System.nanoTime();
+            while (true) {
+                if (poll()) {
+                    last = System.nanoTime();
+                    continue;
+                }
+                long waited =
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - last);
+                if (idle > 0 && waited >= idle) {
+                    return;
+                }
+                long wait = idle > 0 ? Math.min(POLL_MILLIS, idle - waited)
+                    : POLL_MILLIS;
+                WatchKey key = watcher.poll(wait, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not watch %s", _input);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+    }
+
+    /** Convert every complete line added to the input since the last
+     *  call, append the results to the output and save my state.
+     *  Returns true iff there were any. */
+    boolean poll() {
+        if (!Files.exists(_input)) {
+            return false;
+        }
+        try (FileChannel in = FileChannel.open(_input)) {
+            long size = in.size();
+            if (size < _offset) {
+                throw error("%s is shorter than when it was last read",
+                            _input);
+            }
+            long start = _offset;
+            boolean handled = false;
+            ByteBuffer buf = ByteBuffer.allocate(BLOCK);
+            while (_offset + _pending < size) {
+                if (_pending == buf.capacity()) {
+                    buf = ByteBuffer.allocate(2 * buf.capacity())
+                        .put(buf.flip());
+                }
+                int got = in.read(buf, _offset + _pending);
+                if (got <= 0) {
+                    break;
+                }
+                int end = buf.position();
+                int lineStart = 0;
+                for (int i = _pending; i < end; i += 1) {
+                    if (buf.get(i) == '\n') {
+                        line(buf.array(), lineStart, i);
+                        lineStart = i + 1;
+                    }
+                }
+                _offset += lineStart;
+                _pending = end - lineStart;
+                handled |= lineStart > 0;
+                buf.position(lineStart).limit(end);
+                buf.compact();
+                if (_offset - start >= _checkpoint) {
+                    save();
+                    start = _offset;
+                }
+            }
+            _pending = 0;
+            if (_offset != start) {
+                save();
+            }
+            return handled;
+        } catch (IOException excp) {
+            throw error("could not read %s", _input);
+        }
+    }
+
+    /** Handle the input line held in BYTES[START .. END-1], without its
+     *  line end. */
+    private void line(byte[] bytes, int start, int end) throws IOException {
+        if (end > start && bytes[end - 1] == '\r') {
+            end -= 1;
+        }
+        String text = new String(bytes, start, end - start, CHARSET);
+        _line += 1;
+        if (LineFormat.isSettings(text)) {
+            Main.prepare(_machine, text).apply(_machine);
+            _settings = text;
+        } else if (_settings == null) {
+            throw new EnigmaException("Have to contain *");
+        } else if (text.isEmpty()) {
+            write(System.lineSeparator());
+        } else {
+            if (_chars.length < text.length()) {
+                _chars = new char[Math.max(text.length(),
+                                           2 * _chars.length)];
+                _grouped = new char[LineFormat.size(_chars.length)];
+            }
+            int n = _normalizer.convert(_machine, text, (int) _line,
+                                        _chars);
+            n = LineFormat.group(_chars, 0, n, 0, _grouped, 0);
+            write(new String(_grouped, 0, n) + LineFormat.MESSAGE_END);
+        }
+    }
+
+    /** Append TEXT to the output. */
+    private void write(String text) throws IOException {
+        ByteBuffer bytes = CHARSET.encode(text);
+        while (bytes.hasRemaining()) {
+            _out.write(bytes);
+        }
+    }
+
+    /** Make the output durable and then record my state, replacing the
+     *  state file as a whole. */
+    private void save() throws IOException {
+        _out.force(false);
+        _outputLength = _out.position();
+        if (_settings != null) {
+            _machine.getRotors(_posn);
+        }
+        Path temp = Path.of(_state + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temp);
+             DataOutputStream out =
+                 new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeLong(_offset);
+            out.writeLong(_outputLength);
+            out.writeLong(_line);
+            out.writeBoolean(_settings != null);
+            if (_settings != null) {
+                out.writeUTF(_settings);
+                out.writeInt(_posn.length);
+                for (int p : _posn) {
+                    out.writeInt(p);
+                }
+            }
+        }
+        Files.move(temp, _state, StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Restore my state from the state file. */
+    private void restore() throws IOException {
+        try (InputStream file = Files.newInputStream(_state);
+             DataInputStream in =
+                 new DataInputStream(new BufferedInputStream(file))) {
+            if (in.readInt() != MAGIC) {
+                throw error("%s is not a follow state file", _state);
+            }
+            _offset = in.readLong();
+            _outputLength = in.readLong();
+            _line = in.readLong();
+            if (in.readBoolean()) {
+                _settings = in.readUTF();
+                if (in.readInt() != _posn.length) {
+                    throw error("%s was saved for a different machine",
+                                _state);
+                }
+                for (int i = 0; i < _posn.length; i += 1) {
+                    _posn[i] = in.readInt();
+                }
+                Main.prepare(_machine, _settings).apply(_machine);
+                _machine.setRotors(_posn);
+            }
+        }
+        if (_out.size() < _outputLength) {
+            throw error("%s is shorter than when it was last written",
+                        _output);
+        }
+    }
+
+    /** Close the output. */
+    void close() {
+        try {
+            _out.close();
+        } catch (IOException excp) {
+            throw error("could not write %s", _output);
+        }
+    }
+
+    /** Return the offset of the first input byte not yet handled. */
+    long offset() {
+        return _offset;
+    }
+
+    /** Suffix of the name of the state file. */
+    static final String STATE_SUFFIX = ".follow";
+    /** First word of a state file. */
+    private static final int MAGIC = 0x454e4746;
+    /** Size of the blocks in which input is read. */
+    private static final int BLOCK = 1 << 16;
+    /** Default number of input bytes handled between saves of state
+     *  within a pass. */
+    private static final long CHECKPOINT = 1 << 24;
+    /** Longest wait between checks of the input's size. */
+    private static final long POLL_MILLIS = 500;
+    /** Encoding of input and output. */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /** Input bytes handled between saves of state within a pass. */
+    private final long _checkpoint;
+    /** The machine converting messages. */
+    private final Machine _machine;
+    /** Cleans message lines. */
+    private final Normalizer _normalizer;
+    /** The input, output and state files. */
+    private final Path _input, _output, _state;
+    /** The output, positioned at its end. */
+    private final FileChannel _out;
+    /** Offset of the first input byte not yet handled. */
+    private long _offset;
+    /** During poll, number of bytes read past _offset. */
+    private int _pending;
+    /** Length of the output at the last save. */
+    private long _outputLength;
+    /** Number of input lines handled. */
+    private long _line;
+    /** The last settings line, or null if there has been none. */
+    private String _settings;
+    /** Holds rotor positions. */
+    private final int[] _posn;
+    /** Holds converted messages. */
+    private char[] _chars = new char[0];
+    /** Holds converted messages in groups. */
+    private char[] _grouped = new char[LineFormat.size(0)];
+}
@@ -0,0 +1,147 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Follower class.
+ *  @author Jeonghyun Lee
+ */
+public class FollowerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small configuration. */
+    private static final MachineConfig CONFIG = smallConfig();
+
+    /** Input appended in pieces by the tests, split within a message
+     *  line and within a settings line. */
+    private static final String[] PIECES = {
+        "* X K P Q ABC (AH)\nABC DEF\nHHHH GG",
+        "GG\n\nABCDEFGH ABCDEFGH\r\n* X K Q P",
+        " HGF\nAAAA\n",
+        "BBBB BBBB\nCC"
+    };
+
+    /** Return a follower of INPUT for CONFIG writing OUTPUT. */
+    private static Follower follower(Path input, Path output) {
+        return new Follower(CONFIG, Normalizer.parse(CONFIG.alphabet(), ""),
+                            input, output);
+    }
+
+    /** Append TEXT to INPUT. */
+    private static void append(Path input, String text) throws IOException {
+        Files.writeString(input, text, StandardOpenOption.CREATE,
+                          StandardOpenOption.APPEND);
+    }
+
+    /** Return the output of Main for the input consisting of the complete
+     *  lines of TEXT, using files in DIR. */
+    private static String expected(Path dir, String text) throws IOException {
+        Path input = dir.resolve("whole.in"), output = dir.resolve("whole.out");
+        Files.writeString(input, text.substring(0, text.lastIndexOf('\n')));
+        Main.convertFile(CONFIG, input, output);
+        return Files.readString(output);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkIncremental() throws IOException {
+        Path dir = Files.createTempDirectory("follow");
+        Path input = dir.resolve("in"), output = dir.resolve("out");
+        Follower follower = follower(input, output);
+        assertFalse(follower.poll());
+        StringBuilder text = new StringBuilder();
+        for (String piece : PIECES) {
+            append(input, piece);
+            text.append(piece);
+            assertTrue(follower.poll());
+            assertEquals(text.lastIndexOf("\n") + 1, follower.offset());
+            assertEquals(expected(dir, text.toString()),
+                         Files.readString(output));
+        }
+        assertFalse(follower.poll());
+        follower.close();
+    }
+
+    @Test
+    public void checkCheckpoints() throws IOException {
+        Path dir = Files.createTempDirectory("follow");
+        Path input = dir.resolve("in"), output = dir.resolve("out");
+        Follower follower =
+            new Follower(CONFIG, Normalizer.parse(CONFIG.alphabet(), ""),
+                         input, output, 1);
+        StringBuilder text = new StringBuilder();
+        for (String piece : PIECES) {
+            append(input, piece);
+            text.append(piece);
+            assertTrue(follower.poll());
+        }
+        assertFalse(follower.poll());
+        follower.close();
+        append(input, "\n");
+        text.append("\n");
+        follower = follower(input, output);
+        assertTrue(follower.poll());
+        follower.close();
+        assertEquals(expected(dir, text.toString()),
+                     Files.readString(output));
+    }
+
+    @Test
+    public void checkRestart() throws IOException {
+        Path dir = Files.createTempDirectory("follow");
+        Path input = dir.resolve("in"), output = dir.resolve("out");
+        Follower follower = follower(input, output);
+        append(input, PIECES[0] + PIECES[1]);
+        follower.poll();
+        follower.close();
+        append(output, "GARBAGE");
+        append(input, PIECES[2] + PIECES[3] + "\n");
+        follower = follower(input, output);
+        follower.run(100);
+        assertEquals(expected(dir, String.join("", PIECES) + "\n"),
+                     Files.readString(output));
+    }
+
+    @Test
+    public void checkErrors() throws IOException {
+        Path dir = Files.createTempDirectory("follow");
+        Path input = dir.resolve("in"), output = dir.resolve("out");
+        Follower follower = follower(input, output);
+        append(input, PIECES[0]);
+        follower.poll();
+        Files.writeString(input, "* X");
+        try {
+            follower.poll();
+            fail("followed a truncated file");
+        } catch (EnigmaException excp) {
+            assertEquals(input + " is shorter than when it was last read",
+                         excp.getMessage());
+        }
+        follower.close();
+        Files.writeString(input, "ABC\n");
+        Files.delete(Path.of(output + Follower.STATE_SUFFIX));
+        follower = follower(input, output);
+        try {
+            follower.poll();
+            fail("accepted input without a settings line");
+        } catch (EnigmaException excp) {
+            assertEquals("Have to contain *", excp.getMessage());
+        }
+        follower.close();
+    }
+}
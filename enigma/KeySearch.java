@@ -0,0 +1,508 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** A search of the key space of a configuration for the keys that best
+ *  decrypt a ciphertext.  The key space is every choice of reflector,
+ *  fixed rotors and moving rotors (in their usual slots), every setting
+ *  of every non-reflector rotor, and every ring setting of the
+ *  rightmost RINGS rotors, under a fixed plugboard.  Keys are numbered
+ *  from 0 with rotor positions varying fastest, so any range of key
+ *  numbers can be searched on its own.  A decryption is scored by the
+ *  number of characters matching a crib, if one is given, and
+ *  otherwise by its index of coincidence.
+ *
+ *  As a program, KeySearch runs either a SearchCoordinator, which
+ *  hands out ranges of keys to workers and merges their results, or a
+ *  SearchWorker.
+ *  @author Jeonghyun Lee
+ */
+class KeySearch {
+
+    /** A search over the configuration in the file named CONFIGNAME for
+     *  decryptions of CIPHERTEXT, scored against CRIB (if non-empty),
+     *  with plugboard PLUGBOARD, searching the rings of the rightmost
+     *  RINGS rotors, and keeping the TOP best keys. */
+    KeySearch(String configName, String ciphertext, String crib,
+              String plugboard, int rings, int top) {
+        _configName = configName;
+        _config = ConfigParser.parse(configName);
+        _alphabet = _config.alphabet();
+        _ciphertext = ciphertext;
+        _cribText = crib;
+        _plugboardText = plugboard;
+        _text = indices(ciphertext);
+        _crib = indices(crib);
+        _plugboard = new Permutation(plugboard, _alphabet);
+        _ringSlots = rings;
+        _top = top;
+        if (_text.length == 0) {
+            throw error("empty ciphertext");
+        }
+        if (rings < 0 || rings >= _config.numRotors()) {
+            throw error("bad number of ring settings");
+        }
+        for (MachineConfig.RotorSpec spec : _config.rotors()) {
+            switch (spec.kind()) {
+            case MachineConfig.RotorSpec.MOVING:
+                _moving.add(spec.name());
+                break;
+            case MachineConfig.RotorSpec.FIXED:
+                _fixed.add(spec.name());
+                break;
+            default:
+                _reflectors.add(spec.name());
+                break;
+            }
+        }
+        int pawls = _config.numPawls();
+        int fixedSlots = _config.numRotors() - 1 - pawls;
+        _fixedOrders = arrangements(_fixed.size(), fixedSlots);
+        _movingOrders = arrangements(_moving.size(), pawls);
+        _positions = power(_alphabet.size(), _config.numRotors() - 1);
+        _ringSettings = power(_alphabet.size(), rings);
+        _size = multiply(multiply(multiply(_reflectors.size(),
+                                           _fixedOrders),
+                                  _movingOrders),
+                         multiply(_ringSettings, _positions));
+        if (_size == 0) {
+            throw error("configuration has no complete rotor selection");
+        }
+    }
+
+    /** Return the number of keys. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the number of keys to keep. */
+    int top() {
+        return _top;
+    }
+
+    /** Return a fresh machine for searching. */
+    Machine newMachine() {
+        Machine machine = _config.newMachine();
+        machine.setPlugboard(_plugboard);
+        return machine;
+    }
+
+    /** Score the keys numbered START <= K < END using MACHINE (as
+     *  returned by newMachine()), offering them to RESULT. */
+    void search(Machine machine, long start, long end, TopKeys result) {
+        int n = machine.numRotors() - 1;
+        int size = _alphabet.size();
+        int[] posn = new int[n];
+        int[] rings = new int[n];
+        String[] names = new String[n + 1];
+        int[] counts = new int[size];
+        long selection = -1;
+        for (long key = start; key < end; key += 1) {
+            long posIndex = key % _positions;
+            long outer = key / _positions;
+            if (outer != selection) {
+                selection = outer;
+                rotorNames(outer / _ringSettings, names);
+                machine.insertRotors(names);
+                digits(outer % _ringSettings, rings, n - _ringSlots,
+                       _ringSlots);
+                machine.setRings(rings);
+                digits(posIndex, posn, 0, n);
+            }
+            machine.setRotors(posn);
+            result.offer(key, score(machine, counts));
+            for (int i = n - 1; i >= 0; i -= 1) {
+                posn[i] += 1;
+                if (posn[i] < size) {
+                    break;
+                }
+                posn[i] = 0;
+            }
+        }
+    }
+
+    /** Return the score of decrypting my ciphertext with MACHINE, using
+     *  COUNTS as scratch space. */
+    private double score(Machine machine, int[] counts) {
+        int[] text = _text;
+        if (_crib.length > 0) {
+            int matches = 0;
+            for (int i = 0; i < text.length; i += 1) {
+                int c = machine.convert(text[i]);
+                if (i < _crib.length && c == _crib[i]) {
+                    matches += 1;
+                }
+            }
+            return matches;
+        }
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < text.length; i += 1) {
+            counts[machine.convert(text[i])] += 1;
+        }
+        long sum = 0;
+        for (int c : counts) {
+            sum += (long) c * (c - 1);
+        }
+        long n = text.length;
+        return n < 2 ? 0.0 : (double) sum / (n * (n - 1));
+    }
+
+    /** Return a settings line, without plugboard, for KEY. */
+    String describe(long key) {
+        int n = _config.numRotors() - 1;
+        String[] names = new String[n + 1];
+        int[] posn = new int[n];
+        int[] rings = new int[n];
+        long outer = key / _positions;
+        rotorNames(outer / _ringSettings, names);
+        digits(outer % _ringSettings, rings, n - _ringSlots, _ringSlots);
+        digits(key % _positions, posn, 0, n);
+        StringBuilder line = new StringBuilder("*");
+        for (String name : names) {
+            line.append(' ').append(name);
+        }
+        line.append(' ');
+        for (int p : posn) {
+            line.append(_alphabet.toChar(p));
+        }
+        if (_ringSlots > 0) {
+            line.append(' ');
+            for (int r : rings) {
+                line.append(_alphabet.toChar(r));
+            }
+        }
+        return line.toString();
+    }
+
+    /** Fill NAMES with the rotors of selection number SELECTION. */
+    private void rotorNames(long selection, String[] names) {
+        int reflectors = _reflectors.size();
+        names[0] = _reflectors.get((int) (selection % reflectors));
+        selection /= reflectors;
+        int fixedSlots = _config.numRotors() - 1 - _config.numPawls();
+        unrank(selection % _fixedOrders, _fixed, names, 1, fixedSlots);
+        unrank(selection / _fixedOrders, _moving, names, 1 + fixedSlots,
+               _config.numPawls());
+    }
+
+    /** Store in NAMES[START .. START+K-1] arrangement number RANK of K
+     *  distinct names from POOL. */
+    private static void unrank(long rank, List<String> pool, String[] names,
+                               int start, int k) {
+        ArrayList<String> left = new ArrayList<>(pool);
+        for (int j = 0; j < k; j += 1) {
+            int n = left.size();
+            names[start + j] = left.remove((int) (rank % n));
+            rank /= n;
+        }
+    }
+
+    /** Store the base-size() digits of VALUE, most significant first,
+     *  in RESULT[START .. START+N-1], clearing the rest of RESULT. */
+    private void digits(long value, int[] result, int start, int n) {
+        int size = _alphabet.size();
+        Arrays.fill(result, 0);
+        for (int i = start + n - 1; i >= start; i -= 1) {
+            result[i] = (int) (value % size);
+            value /= size;
+        }
+    }
+
+    /** Return the number of arrangements of K of N things. */
+    private static long arrangements(int n, int k) {
+        long result = 1;
+        for (int j = 0; j < k; j += 1) {
+            result = multiply(result, Math.max(0, n - j));
+        }
+        return result;
+    }
+
+    /** Return BASE to the power EXP. */
+    private static long power(int base, int exp) {
+        long result = 1;
+        for (int j = 0; j < exp; j += 1) {
+            result = multiply(result, base);
+        }
+        return result;
+    }
+
+    /** Return A * B, which must not overflow. */
+    private static long multiply(long a, long b) {
+        try {
+            return Math.multiplyExact(a, b);
+        } catch (ArithmeticException excp) {
+            throw error("key space too large");
+        }
+    }
+
+    /** Return the alphabet indices of the characters of TEXT, ignoring
+     *  whitespace. */
+    private int[] indices(String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char ch = text.charAt(i);
+            if (!Character.isWhitespace(ch)) {
+                if (!_alphabet.contains(ch)) {
+                    throw error("character %c not in alphabet", ch);
+                }
+                result[n] = _alphabet.toInt(ch);
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Send a description of this search, from which fromJob can
+     *  reconstruct it, to OUT. */
+    void sendJob(PrintWriter out) {
+        out.println("CONFIG " + Path.of(_configName).toAbsolutePath());
+        out.println("TEXT " + _ciphertext);
+        out.println("CRIB " + _cribText);
+        out.println("PLUGBOARD " + _plugboardText);
+        out.println("RINGS " + _ringSlots);
+        out.println("TOP " + _top);
+        out.println("END");
+        out.flush();
+    }
+
+    /** Return the search described on IN by sendJob. */
+    static KeySearch fromJob(BufferedReader in) throws IOException {
+        String config = null, text = "", crib = "", plugboard = "";
+        int rings = 0, top = 1;
+        for (String line = in.readLine(); !"END".equals(line);
+             line = in.readLine()) {
+            if (line == null) {
+                throw error("incomplete search description");
+            }
+            int sp = line.indexOf(' ');
+            String field = sp < 0 ? line : line.substring(0, sp);
+            String value = sp < 0 ? "" : line.substring(sp + 1);
+            switch (field) {
+            case "CONFIG":
+                config = value;
+                break;
+            case "TEXT":
+                text = value;
+                break;
+            case "CRIB":
+                crib = value;
+                break;
+            case "PLUGBOARD":
+                plugboard = value;
+                break;
+            case "RINGS":
+                rings = (int) number(field, value, Integer.MAX_VALUE);
+                break;
+            case "TOP":
+                top = (int) number(field, value, Integer.MAX_VALUE);
+                break;
+            default:
+                throw error("unknown search field %s", field);
+            }
+        }
+        if (config == null) {
+            throw error("search description names no configuration");
+        }
+        return new KeySearch(config, text, crib, plugboard, rings, top);
+    }
+
+    /** Return VALUE, the value of the search field or option NAME, as
+     *  a number no greater than MAX. */
+    private static long number(String name, String value, long max) {
+        try {
+            long result = Long.parseLong(value);
+            if (result <= max) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Fall through. */
+        }
+        throw error("bad value for %s: %s", name, value);
+    }
+
+    /** Return the socket address described by ADDRESS, which is either
+     *  unix:PATH or [tcp:]HOST:PORT. */
+    static SocketAddress address(String address) {
+        if (address.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(address.substring(5));
+        }
+        if (address.startsWith("tcp:")) {
+            address = address.substring(4);
+        }
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            throw error("bad address: %s", address);
+        }
+        try {
+            return new InetSocketAddress(address.substring(0, colon),
+                                         Integer.parseInt(address
+                                                          .substring(colon
+                                                                     + 1)));
+        } catch (NumberFormatException excp) {
+            throw error("bad port in address: %s", address);
+        }
+    }
+
+    /** Return a server channel listening on ADDRESS (as for address()). */
+    static ServerSocketChannel listen(String address) throws IOException {
+        SocketAddress where = address(address);
+        ServerSocketChannel server;
+        if (where instanceof UnixDomainSocketAddress) {
+            Files.deleteIfExists(((UnixDomainSocketAddress) where).getPath());
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            server = ServerSocketChannel.open();
+        }
+        server.bind(where);
+        return server;
+    }
+
+    /** Return a channel connected to ADDRESS (as for address()). */
+    static SocketChannel connect(String address) throws IOException {
+        return SocketChannel.open(address(address));
+    }
+
+    /** Return a line reader on CHANNEL. */
+    static BufferedReader reader(SocketChannel channel) {
+        return new BufferedReader(
+            new InputStreamReader(Channels.newInputStream(channel),
+                                  StandardCharsets.UTF_8));
+    }
+
+    /** Return a line writer on CHANNEL. */
+    static PrintWriter writer(SocketChannel channel) {
+        return new PrintWriter(
+            new OutputStreamWriter(Channels.newOutputStream(channel),
+                                   StandardCharsets.UTF_8));
+    }
+
+    /** Run a coordinator or worker, as specified by ARGS:
+     *  <pre>
+     *    coordinator ADDRESS CONFIG CIPHERTEXT [--crib=TEXT]
+     *        [--plugboard=CYCLES] [--rings=N] [--top=K] [--lease=KEYS]
+     *        [--timeout=MILLIS]
+     *    worker ADDRESS
+     *  </pre>
+     *  ADDRESS is unix:PATH or [tcp:]HOST:PORT.  CIPHERTEXT names a file
+     *  whose non-blank characters are the ciphertext.  The coordinator
+     *  prints the best keys found, one per line, preceded by their
+     *  scores. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--crib=(.+) --plugboard=(.+) --rings=(\\d+) "
+                                + "--top=(\\d+) --lease=(\\d+) "
+                                + "--timeout=(\\d+) --=(.*){2,4}", args);
+            List<String> words = options.get("--");
+            if (!options.ok()) {
+                throw error("Usage: java enigma.KeySearch coordinator ADDRESS"
+                            + " CONFIG CIPHERTEXT [OPTIONS] | worker "
+                            + "ADDRESS");
+            }
+            if (words.get(0).equals("worker") && words.size() == 2) {
+                new SearchWorker(words.get(1)).run();
+            } else if (words.get(0).equals("coordinator")
+                       && words.size() == 4) {
+                String text =
+                    new String(ConfigParser.read(words.get(3)),
+                               StandardCharsets.UTF_8)
+                    .replaceAll("\\s", "");
+                KeySearch search =
+                    new KeySearch(words.get(2), text,
+                                  option(options, "--crib", ""),
+                                  option(options, "--plugboard", ""),
+                                  (int) number("--rings",
+                                               option(options, "--rings",
+                                                      "0"),
+                                               Integer.MAX_VALUE),
+                                  (int) number("--top",
+                                               option(options, "--top",
+                                                      "10"),
+                                               Integer.MAX_VALUE));
+                SearchCoordinator coordinator =
+                    new SearchCoordinator(search,
+                                          number("--lease",
+                                                 option(options, "--lease",
+                                                        "100000"),
+                                                 Long.MAX_VALUE),
+                                          number("--timeout",
+                                                 option(options,
+                                                        "--timeout",
+                                                        "60000"),
+                                                 Long.MAX_VALUE));
+                try (ServerSocketChannel server = listen(words.get(1))) {
+                    coordinator.serve(server);
+                }
+                for (TopKeys.Entry e : coordinator.result().entries()) {
+                    System.out.printf("%.6f %s%n", e.score(),
+                                      search.describe(e.key()));
+                }
+            } else {
+                throw error("unknown search mode");
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the value of option KEY in OPTIONS, or DEFLT if it is
+     *  absent. */
+    private static String option(CommandArgs options, String key,
+                                 String deflt) {
+        return options.contains(key) ? options.get(key).get(0) : deflt;
+    }
+
+    /** Name of the configuration file. */
+    private final String _configName;
+    /** The configuration searched. */
+    private final MachineConfig _config;
+    /** Its alphabet. */
+    private final Alphabet _alphabet;
+    /** The ciphertext, its crib, and the plugboard cycles, as given. */
+    private final String _ciphertext, _cribText, _plugboardText;
+    /** Indices of the ciphertext characters. */
+    private final int[] _text;
+    /** Indices of the crib characters. */
+    private final int[] _crib;
+    /** The plugboard used for every key. */
+    private final Permutation _plugboard;
+    /** Number of rightmost rotors whose rings are searched. */
+    private final int _ringSlots;
+    /** Number of keys to keep. */
+    private final int _top;
+    /** Names of the available rotors of each kind. */
+    private final ArrayList<String> _reflectors = new ArrayList<>(),
+        _fixed = new ArrayList<>(), _moving = new ArrayList<>();
+    /** Number of arrangements of the fixed and moving rotors. */
+    private final long _fixedOrders, _movingOrders;
+    /** Number of combinations of rotor positions and of ring settings. */
+    private final long _positions, _ringSettings;
+    /** Number of keys. */
+    private final long _size;
+}
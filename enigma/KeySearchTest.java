@@ -0,0 +1,183 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySearch class and its
+ *  coordinator and workers.
+ *  @author Jeonghyun Lee
+ */
+public class KeySearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the name of a new file holding SMALL_CONFIG. */
+    private static String configFile() {
+        try {
+            Path file = Files.createTempFile("search", ".conf");
+            file.toFile().deleteOnExit();
+            Files.writeString(file, SMALL_CONFIG);
+            return file.toString();
+        } catch (IOException excp) {
+            throw new UncheckedIOException(excp);
+        }
+    }
+
+    /** Return the encryption of TEXT under settings line SETTINGS (with
+     *  no plugboard) in the machine described by CONFIGNAME. */
+    private static String encrypt(String configName, String[] rotors,
+                                  String setting, String text) {
+        Machine machine = ConfigParser.parse(configName).newMachine();
+        machine.insertRotors(rotors);
+        machine.setRotors(setting);
+        machine.setPlugboard(new Permutation("", machine.alphabet()));
+        return machine.convert(text);
+    }
+
+    /** Return a thread running a SearchWorker for the coordinator at
+     *  ADDRESS. */
+    private static Thread worker(String address) {
+        return new Thread(() -> {
+            try {
+                new SearchWorker(address).run();
+            } catch (IOException excp) {
+                throw new UncheckedIOException(excp);
+            }
+        });
+    }
+
+    /** Connect to the coordinator at ADDRESS as a worker that takes one
+     *  lease and never reports on it.  Returns the open connection. */
+    private static SocketChannel failingWorker(String address)
+        throws IOException {
+        SocketChannel channel = KeySearch.connect(address);
+        BufferedReader in = KeySearch.reader(channel);
+        PrintWriter out = KeySearch.writer(channel);
+        KeySearch.fromJob(in);
+        out.println("LEASE");
+        out.flush();
+        assertTrue(in.readLine().startsWith("WORK "));
+        return channel;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkKeySpace() {
+        String config = configFile();
+        KeySearch search = new KeySearch(config, "ABC", "", "", 1, 1);
+        assertEquals(2L * 1 * 6 * 8 * 8 * 8 * 8, search.size());
+        assertEquals("* X K P Q AAA AAA", search.describe(0));
+        assertEquals("* X K P Q AAB AAB", search.describe(512 + 1));
+        assertEquals("* Y K P Q AAA AAA", search.describe(8 * 512));
+    }
+
+    @Test
+    public void checkLocalSearch() {
+        String config = configFile();
+        String plain = "HEADBADGEBEEFACADE";
+        String cipher = encrypt(config, new String[] { "Y", "K", "S", "P" },
+                                "CFB", plain);
+        KeySearch search = new KeySearch(config, cipher, plain, "", 0, 1);
+        TopKeys best = new TopKeys(1);
+        search.search(search.newMachine(), 0, search.size(), best);
+        List<TopKeys.Entry> entries = best.entries();
+        assertEquals(plain.length(), entries.get(0).score(), 0.0);
+        assertEquals("* Y K S P CFB", search.describe(entries.get(0).key()));
+    }
+
+    @Test
+    public void checkDistributedSearch() throws Exception {
+        String config = configFile();
+        String plain = "HEADBADGEBEEFACADE";
+        String cipher = encrypt(config, new String[] { "X", "K", "Q", "S" },
+                                "HAG", plain);
+        KeySearch search = new KeySearch(config, cipher, plain, "", 0, 3);
+        Path dir = Files.createTempDirectory("search");
+        String address = "unix:" + dir.resolve("socket");
+        SearchCoordinator coordinator =
+            new SearchCoordinator(search, 50, 1000);
+        try (ServerSocketChannel server = KeySearch.listen(address)) {
+            Thread[] workers = new Thread[3];
+            for (int i = 0; i < workers.length; i += 1) {
+                workers[i] = worker(address);
+                workers[i].start();
+            }
+            coordinator.serve(server);
+        }
+        TopKeys.Entry first = coordinator.result().entries().get(0);
+        assertEquals(plain.length(), first.score(), 0.0);
+        assertEquals("* X K Q S HAG", search.describe(first.key()));
+    }
+
+    @Test
+    public void checkWorkerFailure() throws Exception {
+        String config = configFile();
+        String plain = "HEADBADGEBEEFACADE";
+        String cipher = encrypt(config, new String[] { "Y", "K", "P", "Q" },
+                                "DEH", plain);
+        KeySearch search = new KeySearch(config, cipher, "", "", 0, 5);
+        TopKeys expected = new TopKeys(5);
+        search.search(search.newMachine(), 0, search.size(), expected);
+
+        Path dir = Files.createTempDirectory("search");
+        String address = "unix:" + dir.resolve("socket");
+        SearchCoordinator coordinator =
+            new SearchCoordinator(search, 50, 200);
+        try (ServerSocketChannel server = KeySearch.listen(address)) {
+            Thread serving = new Thread(() -> {
+                try {
+                    coordinator.serve(server);
+                } catch (IOException excp) {
+                    throw new UncheckedIOException(excp);
+                }
+            });
+            serving.start();
+            failingWorker(address).close();
+            try (SocketChannel stalled = failingWorker(address)) {
+                Thread worker = worker(address);
+                worker.start();
+                worker.join();
+                serving.join();
+            }
+        }
+        List<TopKeys.Entry> found = coordinator.result().entries();
+        assertEquals(expected.entries().size(), found.size());
+        for (int i = 0; i < found.size(); i += 1) {
+            assertEquals(expected.entries().get(i).key(),
+                         found.get(i).key());
+            assertEquals(expected.entries().get(i).score(),
+                         found.get(i).score(), 0.0);
+        }
+    }
+
+    @Test
+    public void checkBadJob() throws IOException {
+        String job = "CONFIG " + configFile() + "\nRINGS x\nEND\n";
+        try {
+            KeySearch.fromJob(new BufferedReader(new StringReader(job)));
+            fail("bad RINGS accepted");
+        } catch (EnigmaException excp) {
+            assertEquals("bad value for RINGS: x", excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Finds the settings lines of a key sheet that give the same
+ *  keystream.  Lines that differ on paper may still set up the same
+ *  machine: a fixed rotor or reflector moved on by one position with its
+ *  ring moved on by one is wired just as before, and plugboard pairs may
+ *  cancel against the rotors' wiring.  Two settings lines are treated as
+ *  equivalent when the end-to-end permutations that the machine applies
+ *  to the first WINDOW characters after each is applied are the same.
+ *  Each line is reduced to a fingerprint of that sequence: every
+ *  permutation is hashed in two independent ways, and each hash is
+ *  folded into a polynomial rolling hash of the sequence, giving 128
+ *  bits.  Lines are fingerprinted in parallel, each task with its own
+ *  machine, and grouped by sorting the fingerprints.  Usage:
+ *  <pre>
+ *    java enigma.KeySheet CONFIG KEYS [--window=N] [--unique]
+ *  </pre>
+ *  KEYS holds settings lines, as in Main's input; blank lines are
+ *  ignored.  The groups of two or more equivalent lines are printed,
+ *  followed by a summary, or with --unique, the first line of each group
+ *  (which is a key sheet with the duplicates removed).
+ *  @author Jeonghyun Lee
+ */
+class KeySheet {
+
+    /** A fingerprinter of settings lines for the machines described by
+     *  CONFIG over windows of WINDOW characters. */
+    KeySheet(MachineConfig config, int window) {
+        if (window <= 0) {
+            throw error("window must be positive");
+        }
+        _config = config;
+        _window = window;
+    }
+
+    /** Store in RESULT[2K] and RESULT[2K+1] the fingerprint of settings
+     *  line SETTINGS[K], for each K, computing them in parallel.
+     *  Returns the error message for each line that is not a valid
+     *  settings line, or null for lines that are. */
+    String[] fingerprints(List<String> settings, long[] result) {
+        String[] errors = new String[settings.size()];
+        int chunks = (settings.size() + CHUNK - 1) / CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(k -> {
+            Machine machine = _config.newMachine();
+            int end = Math.min(settings.size(), (k + 1) * CHUNK);
+            for (int i = k * CHUNK; i < end; i += 1) {
+                try {
+                    fingerprint(machine, settings.get(i), result, 2 * i);
+                } catch (EnigmaException excp) {
+                    errors[i] = excp.getMessage();
+                }
+            }
+        });
+        return errors;
+    }
+
+    /** Set MACHINE according to SETTINGS and store its fingerprint in
+     *  RESULT[K] and RESULT[K+1].  The permutations are those of
+     *  Machine.mapping, found as by Machine.Outer, with the conversion
+     *  by the rotors other than the rightmost and the reflector
+     *  recomputed only when their positions change. */
+    void fingerprint(Machine machine, String settings, long[] result,
+                     int k) {
+        Main.prepare(machine, settings).apply(machine);
+        int size = machine.alphabet().size();
+        int last = machine.numRotors() - 1;
+        int[] posn = new int[last];
+        int[] held = new int[last - 1];
+        int[] inner = new int[size];
+        int[] mapping = new int[size];
+        Machine.Outer outer = new Machine.Outer(machine);
+        machine.getRotors(posn);
+        long h1 = 0, h2 = 0;
+        for (int t = 0; t < _window; t += 1) {
+            machine.step(posn);
+            if (t == 0 || !Arrays.equals(posn, 0, last - 1, held, 0,
+                                         last - 1)) {
+                System.arraycopy(posn, 0, held, 0, last - 1);
+                machine.innerMapping(posn, inner);
+            }
+            outer.mapping(posn, inner, mapping);
+            long a = FNV_SEED, b = 0;
+            for (int x : mapping) {
+                a = (a ^ x) * FNV_PRIME;
+                b = (b + x + 1) * POLY;
+            }
+            h1 = h1 * ROLL1 + mix(a);
+            h2 = h2 * ROLL2 + mix(b);
+        }
+        result[k] = h1;
+        result[k + 1] = h2;
+    }
+
+    /** Return a 64-bit mix of H. */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= MIX;
+        return h ^ (h >>> 33);
+    }
+
+    /** Return the groups of indices of equivalent settings lines, given
+     *  their FINGERPRINTS and ERRORS (as from fingerprints), excluding
+     *  lines with errors.  Each group is in increasing order, and the
+     *  groups are ordered by their first members. */
+    static List<int[]> groups(long[] fingerprints, String[] errors) {
+        Integer[] order = IntStream.range(0, errors.length)
+            .filter(i -> errors[i] == null).boxed().toArray(Integer[]::new);
+        Comparator<Integer> byFingerprint =
+            Comparator.<Integer>comparingLong(i -> fingerprints[2 * i])
+            .thenComparingLong(i -> fingerprints[2 * i + 1])
+            .thenComparingInt(i -> i);
+        Arrays.parallelSort(order, byFingerprint);
+        ArrayList<int[]> result = new ArrayList<>();
+        for (int j = 0; j < order.length; ) {
+            int end = j + 1;
+            while (end < order.length
+                   && fingerprints[2 * order[end]]
+                      == fingerprints[2 * order[j]]
+                   && fingerprints[2 * order[end] + 1]
+                      == fingerprints[2 * order[j] + 1]) {
+                end += 1;
+            }
+            int[] group = new int[end - j];
+            for (int m = j; m < end; m += 1) {
+                group[m - j] = order[m];
+            }
+            result.add(group);
+            j = end;
+        }
+        result.sort(Comparator.comparingInt(g -> g[0]));
+        return result;
+    }
+
+    /** Print the equivalent lines of the key sheet KEYS on OUT, or only
+     *  the first of each group if UNIQUE.  Lines that are not valid
+     *  settings are reported on ERR.  Returns true iff every line was
+     *  valid. */
+    boolean report(List<String> keys, boolean unique, PrintStream out,
+                   PrintStream err) {
+        ArrayList<String> settings = new ArrayList<>();
+        ArrayList<Integer> lines = new ArrayList<>();
+        for (int i = 0; i < keys.size(); i += 1) {
+            if (!keys.get(i).isBlank()) {
+                settings.add(keys.get(i));
+                lines.add(i + 1);
+            }
+        }
+        long[] fingerprints = new long[2 * settings.size()];
+        String[] errors = fingerprints(settings, fingerprints);
+        for (int i = 0; i < errors.length; i += 1) {
+            if (errors[i] != null) {
+                err.printf("line %d: %s%n", lines.get(i), errors[i]);
+            }
+        }
+        List<int[]> groups = groups(fingerprints, errors);
+        int duplicates = 0;
+        for (int[] group : groups) {
+            if (unique) {
+                out.println(settings.get(group[0]));
+            } else if (group.length > 1) {
+                out.printf("%d equivalent settings:%n", group.length);
+                for (int i : group) {
+                    out.printf("  line %d: %s%n", lines.get(i),
+                               settings.get(i));
+                }
+            }
+            duplicates += group.length - 1;
+        }
+        if (!unique) {
+            out.printf("%d keys, %d distinct keystreams over %d "
+                       + "characters, %d duplicates%n",
+                       settings.size(), groups.size(), _window, duplicates);
+        }
+        return Arrays.stream(errors).allMatch(e -> e == null);
+    }
+
+    /** Group the key sheet given by ARGS (see the class comment).  Exits
+     *  with code 1 if there is an error or an invalid settings line. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--window=(\\d+) --unique --=(.*){2}",
+                                args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.KeySheet CONFIG KEYS "
+                            + "[--window=N] [--unique]");
+            }
+            List<String> words = options.get("--");
+            int window = options.contains("--window")
+                ? Integer.parseInt(options.get("--window").get(0)) : WINDOW;
+            List<String> keys;
+            try {
+                keys = Files.readAllLines(Path.of(words.get(1)),
+                                          Charset.defaultCharset());
+            } catch (IOException excp) {
+                throw error("could not read %s", words.get(1));
+            }
+            KeySheet sheet =
+                new KeySheet(ConfigParser.parse(words.get(0)), window);
+            if (sheet.report(keys, options.contains("--unique"),
+                             System.out, System.err)) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Default number of characters compared. */
+    static final int WINDOW = 1024;
+    /** Number of lines fingerprinted by one task. */
+    private static final int CHUNK = 256;
+    /** FNV-1a 64-bit offset basis. */
+    private static final long FNV_SEED = 0xcbf29ce484222325L;
+    /** FNV-1a 64-bit prime. */
+    private static final long FNV_PRIME = 0x100000001b3L;
+    /** Multiplier of the second permutation hash. */
+    private static final long POLY = 0x9e3779b97f4a7c15L;
+    /** Multipliers of the two rolling hashes. */
+    private static final long ROLL1 = 0xc2b2ae3d27d4eb4fL,
+        ROLL2 = 0x165667b19e3779f9L;
+    /** Multiplier of the final mix of a hash. */
+    private static final long MIX = 0xff51afd7ed558ccdL;
+
+    /** The configuration of the machines. */
+    private final MachineConfig _config;
+    /** Number of characters compared. */
+    private final int _window;
+}
@@ -0,0 +1,86 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySheet class.
+ *  @author Jeonghyun Lee
+ */
+public class KeySheetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small configuration. */
+    private static final MachineConfig CONFIG = smallConfig();
+
+    /** A key sheet. */
+    private static final List<String> KEYS = List.of(
+        "* X K P Q ABC (AH)",
+        "* X K P Q ABD (AH)",
+        "",
+        "* X K P Q BBC BAA (HA)",
+        "* X K P Z ABC",
+        "* X K P Q ABC (AH) (BC)",
+        "* X K P Q ABC AAA (AH)");
+
+    /** Return the groups of KEYS, each as a string of indices. */
+    private static String groups(List<String> keys, int window) {
+        long[] fingerprints = new long[2 * keys.size()];
+        String[] errors =
+            new KeySheet(CONFIG, window).fingerprints(keys, fingerprints);
+        StringBuilder result = new StringBuilder();
+        for (int[] group : KeySheet.groups(fingerprints, errors)) {
+            result.append(result.length() == 0 ? "" : " ");
+            for (int i : group) {
+                result.append(i);
+            }
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkGroups() {
+        assertEquals("036 1 5", groups(KEYS, 100));
+        assertEquals("0 1", groups(KEYS.subList(0, 2), 1));
+        assertEquals("01", groups(List.of(KEYS.get(0), KEYS.get(0)), 1));
+    }
+
+    @Test
+    public void checkReport() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        assertFalse(new KeySheet(CONFIG, 100)
+                    .report(KEYS, false, new PrintStream(bytes),
+                            new PrintStream(errors)));
+        assertEquals(String.format("line 5: Rotor does not exist.%n"),
+                     errors.toString());
+        assertEquals(String.format("3 equivalent settings:%n"
+                                   + "  line 1: * X K P Q ABC (AH)%n"
+                                   + "  line 4: * X K P Q BBC BAA (HA)%n"
+                                   + "  line 7: * X K P Q ABC AAA (AH)%n"
+                                   + "6 keys, 3 distinct keystreams over "
+                                   + "100 characters, 2 duplicates%n"),
+                     bytes.toString());
+        bytes.reset();
+        new KeySheet(CONFIG, 100).report(KEYS, true, new PrintStream(bytes),
+                                          new PrintStream(errors));
+        assertEquals(String.format("* X K P Q ABC (AH)%n"
+                                   + "* X K P Q ABD (AH)%n"
+                                   + "* X K P Q ABC (AH) (BC)%n"),
+                     bytes.toString());
+    }
+}
@@ -0,0 +1,59 @@
+package enigma;
+
+/** The format of Main's lines.  An input line holding SETTINGS_MARK is
+ *  a settings line; any other is a message line.  A converted message
+ *  is written in groups of GROUP characters separated by blanks (the
+ *  last group may be shorter) and ended by MESSAGE_END, whatever the
+ *  platform's line separator.  Main, Pipeline, Follower, Reencrypt and
+ *  RoundTrip all read and write lines through this class.
+ *  @author Jeonghyun Lee
+ */
+final class LineFormat {
+
+    /** Marks a settings line. */
+    static final char SETTINGS_MARK = '*';
+    /** Number of characters in a group of output. */
+    static final int GROUP = 5;
+    /** Ends each converted message line. */
+    static final String MESSAGE_END = "\r\n";
+
+    /** Not instantiated. */
+    private LineFormat() {
+    }
+
+    /** Return true iff LINE is a settings line. */
+    static boolean isSettings(String line) {
+        return line.indexOf(SETTINGS_MARK) >= 0;
+    }
+
+    /** Return the largest number of characters needed to write a
+     *  converted message of LENGTH characters, MESSAGE_END included. */
+    static int size(int length) {
+        return length + length / GROUP + MESSAGE_END.length();
+    }
+
+    /** Copy MSG[FROM .. TO-1] into DEST starting at AT, as the part of a
+     *  message beginning at its character number COLUMN, with a blank
+     *  before each character at a positive multiple of GROUP.  Returns
+     *  the position in DEST after the last character copied. */
+    static int group(char[] msg, int from, int to, int column, char[] dest,
+                     int at) {
+        for (int i = from; i < to; i += 1, column += 1) {
+            if (column > 0 && column % GROUP == 0) {
+                dest[at] = ' ';
+                at += 1;
+            }
+            dest[at] = msg[i];
+            at += 1;
+        }
+        return at;
+    }
+
+    /** Return MSG in groups, without MESSAGE_END. */
+    static String group(String msg) {
+        char[] result = new char[size(msg.length())];
+        return new String(result, 0,
+                          group(msg.toCharArray(), 0, msg.length(), 0,
+                                result, 0));
+    }
+}
@@ -0,0 +1,47 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the LineFormat class.
+ *  @author Jeonghyun Lee
+ */
+public class LineFormatTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkGroup() {
+        assertEquals("", LineFormat.group(""));
+        assertEquals("ABCDE", LineFormat.group("ABCDE"));
+        assertEquals("ABCDE F", LineFormat.group("ABCDEF"));
+        assertEquals("ABCDE FGHIJ K", LineFormat.group("ABCDEFGHIJK"));
+    }
+
+    @Test
+    public void checkGroupInParts() {
+        char[] msg = "ABCDEFGHIJKLM".toCharArray();
+        char[] dest = new char[LineFormat.size(msg.length)];
+        int n = 0;
+        for (int from = 0, to = 3; from < msg.length;
+             from = to, to = Math.min(msg.length, to + 4)) {
+            n = LineFormat.group(msg, from, to, from, dest, n);
+        }
+        assertEquals("ABCDE FGHIJ KLM", new String(dest, 0, n));
+        assertTrue(n + LineFormat.MESSAGE_END.length() <= dest.length);
+    }
+
+    @Test
+    public void checkSettings() {
+        assertTrue(LineFormat.isSettings("* B Beta III IV I AXLE"));
+        assertTrue(LineFormat.isSettings("ABC * DEF"));
+        assertFalse(LineFormat.isSettings("ABC DEF"));
+        assertFalse(LineFormat.isSettings(""));
+    }
+}
@@ -0,0 +1,238 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A sparse index of the lines of a file of Main's input, so that
+ *  RangeDecryptor.find can start looking for a line at a checkpoint
+ *  near it rather than at the beginning of the file.  A checkpoint is
+ *  taken at the first line beginning at least interval() bytes after
+ *  the previous checkpoint, and records the line's number and byte
+ *  position, the byte position of the settings line in force (or -1 if
+ *  there is none) and the number of characters converted under that
+ *  settings line before the line.  Which characters are counted
+ *  depends on the alphabet and the normalization options, which are
+ *  summed up in a key, and the checkpoints hold only for the contents of
+ *  the file when they were taken, which are identified by its size and
+ *  modification time.  An index read for another key or for a file that
+ *  has changed since is empty.  Checkpoints are added as find scans
+ *  past them, so the index covers the file up to the furthest line
+ *  looked for so far.
+ *  @author Jeonghyun Lee
+ */
+class LineIndex {
+
+    /** An empty index for a file of SIZE bytes last modified at
+     *  MODIFIED (in milliseconds), whose characters are counted as
+     *  described by KEY, taking a checkpoint every INTERVAL bytes. */
+    LineIndex(String key, long size, long modified, int interval) {
+        if (interval <= 0) {
+            throw error("line index interval must be positive");
+        }
+        _key = key;
+        _size = size;
+        _modified = modified;
+        _interval = interval;
+    }
+
+    /** An empty index for a file of SIZE bytes last modified at
+     *  MODIFIED, whose characters are counted as described by KEY. */
+    LineIndex(String key, long size, long modified) {
+        this(key, size, modified, INTERVAL);
+    }
+
+    /** Return the key describing how characters are counted by a
+     *  machine over ALPHA whose messages are cleaned as normalization
+     *  options SPEC describe (see Normalizer.parse). */
+    static String key(Alphabet alpha, String spec) {
+        StringBuilder result = new StringBuilder(spec).append('\n');
+        for (int k = 0; k < alpha.size(); k += 1) {
+            result.append(alpha.toChar(k));
+        }
+        return result.toString();
+    }
+
+    /** Return the number of bytes between checkpoints. */
+    int interval() {
+        return _interval;
+    }
+
+    /** Return the number of checkpoints. */
+    int size() {
+        return _count;
+    }
+
+    /** Return true iff checkpoints have been added since I was created
+     *  or read. */
+    boolean changed() {
+        return _changed;
+    }
+
+    /** Return the index of the last checkpoint at or before line number
+     *  LINE, or -1 if there is none. */
+    int floor(long line) {
+        int lo = 0, hi = _count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (line(mid) <= line) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo - 1;
+    }
+
+    /** Return the line number of checkpoint K. */
+    long line(int k) {
+        return _entries[k * FIELDS];
+    }
+
+    /** Return the byte position of the line of checkpoint K. */
+    long start(int k) {
+        return _entries[k * FIELDS + 1];
+    }
+
+    /** Return the byte position of the settings line in force at
+     *  checkpoint K, or -1 if there is none. */
+    long settings(int k) {
+        return _entries[k * FIELDS + 2];
+    }
+
+    /** Return the number of characters converted under settings(K)
+     *  before the line of checkpoint K. */
+    long before(int k) {
+        return _entries[k * FIELDS + 3];
+    }
+
+    /** Return true iff a line beginning at byte START is due for a
+     *  checkpoint. */
+    boolean due(long start) {
+        return start >= (_count == 0 ? 0 : start(_count - 1)) + _interval;
+    }
+
+    /** Record a checkpoint at line number LINE, beginning at byte START,
+     *  under the settings line at byte SETTINGS (-1 if none), after
+     *  BEFORE characters converted under it, if it is due. */
+    void add(long line, long start, long settings, long before) {
+        if (!due(start)) {
+            return;
+        }
+        if ((_count + 1) * FIELDS > _entries.length) {
+            _entries = Arrays.copyOf(_entries,
+                                     Math.max(FIELDS, 2 * _entries.length));
+        }
+        int k = _count * FIELDS;
+        _entries[k] = line;
+        _entries[k + 1] = start;
+        _entries[k + 2] = settings;
+        _entries[k + 3] = before;
+        _count += 1;
+        _changed = true;
+    }
+
+    /** Write this index to the file NAME, replacing it atomically.
+     *  Failure to write the index is not an error. */
+    void write(Path name) {
+        Path temp = null;
+        try {
+            Path dir = name.toAbsolutePath().getParent();
+            temp = Files.createTempFile(dir, "lines", ".tmp");
+            try (OutputStream file = Files.newOutputStream(temp);
+                 DataOutputStream out =
+                     new DataOutputStream(new BufferedOutputStream(file))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(_key);
+                out.writeLong(_size);
+                out.writeLong(_modified);
+                out.writeInt(_interval);
+                out.writeInt(_count);
+                for (int i = 0; i < _count * FIELDS; i += 1) {
+                    out.writeLong(_entries[i]);
+                }
+            }
+            Files.move(temp, name, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            _changed = false;
+        } catch (IOException excp) {
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+        }
+    }
+
+    /** Return the index stored in the file NAME by write, if it is for
+     *  KEY and a file of SIZE bytes last modified at MODIFIED, and
+     *  otherwise an empty index for them. */
+    static LineIndex read(Path name, String key, long size, long modified) {
+        LineIndex empty = new LineIndex(key, size, modified);
+        if (!Files.isReadable(name)) {
+            return empty;
+        }
+        try (InputStream file = Files.newInputStream(name);
+             DataInputStream in =
+                 new DataInputStream(new BufferedInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION
+                || !in.readUTF().equals(key) || in.readLong() != size
+                || in.readLong() != modified) {
+                return empty;
+            }
+            int interval = in.readInt();
+            if (interval <= 0) {
+                return empty;
+            }
+            LineIndex index = new LineIndex(key, size, modified, interval);
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                long line = in.readLong(), start = in.readLong(),
+                    settings = in.readLong(), before = in.readLong();
+                int last = index._count - 1;
+                if (!index.due(start) || start >= size
+                    || last >= 0 && line <= index.line(last)
+                    || settings >= start || before < 0) {
+                    return empty;
+                }
+                index.add(line, start, settings, before);
+            }
+            index._changed = false;
+            return index;
+        } catch (IOException excp) {
+            return empty;
+        }
+    }
+
+    /** First word of an index file. */
+    private static final int MAGIC = 0x454e474c;
+    /** Version of the index file format. */
+    private static final int VERSION = 1;
+    /** Default number of bytes between checkpoints. */
+    static final int INTERVAL = 1 << 18;
+    /** Number of longs in each checkpoint. */
+    private static final int FIELDS = 4;
+
+    /** Describes how characters are counted. */
+    private final String _key;
+    /** Size of the indexed file. */
+    private final long _size;
+    /** Modification time of the indexed file. */
+    private final long _modified;
+    /** Bytes between checkpoints. */
+    private final int _interval;
+    /** The checkpoints, FIELDS longs each. */
+    private long[] _entries = new long[0];
+    /** Number of checkpoints. */
+    private int _count;
+    /** True iff checkpoints have been added since creation or reading. */
+    private boolean _changed;
+}
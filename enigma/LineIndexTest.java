@@ -0,0 +1,170 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the LineIndex class and
+ *  Main's --line-index option.
+ *  @author Jeonghyun Lee
+ */
+public class LineIndexTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Normalizes messages over UPPER by default. */
+    private static final Normalizer NORMALIZER =
+        Normalizer.parse(TestUtils.UPPER, "");
+
+    /** Key of indices counted by NORMALIZER. */
+    private static final String KEY = LineIndex.key(TestUtils.UPPER, "");
+
+    /** Return a temporary file holding LINES lines of input, with a
+     *  settings line every 7 lines and line endings varying. */
+    private static Path input(int lines) throws IOException {
+        StringBuilder text = new StringBuilder();
+        String[] ends = { "\n", "\r\n", "\r" };
+        for (int i = 0; i < lines; i += 1) {
+            if (i % 7 == 0) {
+                text.append("* B Beta III IV I ")
+                    .append((char) ('A' + i % 26)).append("XLE (HQ)");
+            } else {
+                text.append("FROM HIS SHOULDER ".substring(0, 1 + i % 17));
+            }
+            text.append(ends[i % 3]);
+        }
+        Path input = Files.createTempFile("lines", ".in");
+        Files.writeString(input, text);
+        return input;
+    }
+
+    /** Return an empty index for INPUT with a checkpoint every INTERVAL
+     *  bytes. */
+    private static LineIndex index(Path input, int interval)
+        throws IOException {
+        return new LineIndex(KEY, Files.size(input), 0, interval);
+    }
+
+    /** Check that LINE of CHANNEL is found at the same place, under the
+     *  same settings and after as many characters, with INDEX as
+     *  without. */
+    private static void checkFind(FileChannel channel, long line,
+                                  LineIndex index) throws IOException {
+        RangeDecryptor.Line expected =
+            RangeDecryptor.find(channel, line, NORMALIZER);
+        RangeDecryptor.Line actual =
+            RangeDecryptor.find(channel, line, NORMALIZER, index);
+        assertEquals("start " + line, expected.start(), actual.start());
+        assertEquals("settings " + line, expected.settings(),
+                     actual.settings());
+        assertEquals("before " + line, expected.before(), actual.before());
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkFind() throws IOException {
+        Path input = input(300);
+        LineIndex index = index(input, 100);
+        try (FileChannel channel = FileChannel.open(input)) {
+            checkFind(channel, 150, index);
+            int checkpoints = index.size();
+            assertTrue(checkpoints > 10);
+            assertTrue(index.line(checkpoints - 1) <= 150);
+            for (long line = 2; line < 300; line += 1) {
+                if (line % 7 != 1) {
+                    checkFind(channel, line, index);
+                }
+            }
+            assertTrue(index.size() > checkpoints);
+            for (int k = 1; k < index.size(); k += 1) {
+                assertTrue(index.start(k) - index.start(k - 1) >= 100);
+            }
+        }
+    }
+
+    @Test
+    public void checkFloor() {
+        LineIndex index = new LineIndex(KEY, 1000, 0, 10);
+        assertEquals(-1, index.floor(5));
+        index.add(3, 20, 0, 4);
+        index.add(9, 25, 0, 9);
+        index.add(12, 40, 30, 0);
+        assertEquals(2, index.size());
+        assertEquals(-1, index.floor(2));
+        assertEquals(0, index.floor(3));
+        assertEquals(0, index.floor(11));
+        assertEquals(1, index.floor(12));
+        assertEquals(1, index.floor(500));
+    }
+
+    @Test
+    public void checkReadWrite() throws IOException {
+        Path input = input(100);
+        Path name = Path.of(input + ".lines");
+        LineIndex index = index(input, 50);
+        try (FileChannel channel = FileChannel.open(input)) {
+            RangeDecryptor.find(channel, 90, NORMALIZER, index);
+        }
+        assertTrue(index.changed());
+        index.write(name);
+        assertFalse(index.changed());
+        long size = Files.size(input);
+        LineIndex read = LineIndex.read(name, KEY, size, 0);
+        assertFalse(read.changed());
+        assertEquals(50, read.interval());
+        assertEquals(index.size(), read.size());
+        for (int k = 0; k < index.size(); k += 1) {
+            assertEquals(index.line(k), read.line(k));
+            assertEquals(index.start(k), read.start(k));
+            assertEquals(index.settings(k), read.settings(k));
+            assertEquals(index.before(k), read.before(k));
+        }
+        assertEquals(0, LineIndex.read(name, KEY, size + 1, 0).size());
+        assertEquals(0, LineIndex.read(name, KEY, size, 1).size());
+        assertEquals(0, LineIndex.read(name, LineIndex.key(TestUtils.UPPER,
+                                                           "fold"),
+                                       size, 0).size());
+        Files.write(name, new byte[] { 'E', 'N', 'G' });
+        assertEquals(0, LineIndex.read(name, KEY, size, 0).size());
+    }
+
+    @Test
+    public void checkMainLineIndex() throws IOException {
+        Path dir = Files.createTempDirectory("lines");
+        Path config = dir.resolve("config"), output = dir.resolve("out");
+        Files.writeString(config, "ABCDEFGHIJKLMNOPQRSTUVWXYZ 5 3\n"
+                          + "I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ)"
+                          + " (S)\n"
+                          + "III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+                          + "IV MJ (AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)\n"
+                          + "Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+                          + "B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ)"
+                          + " (LO) (MP) (RX) (SZ) (TV)\n");
+        Path input = input(60000);
+        Main.main("--range=59993:2:9", config.toString(), input.toString(),
+                  output.toString());
+        String expected = Files.readString(output);
+        assertEquals(10, expected.length());
+        for (int k = 0; k < 2; k += 1) {
+            Main.main("--line-index", "--range=59993:2:9", config.toString(),
+                      input.toString(), output.toString());
+            assertEquals(expected, Files.readString(output));
+        }
+        Path name = Path.of(input + ".lines");
+        LineIndex index =
+            LineIndex.read(name, KEY, Files.size(input),
+                           Files.getLastModifiedTime(input).toMillis());
+        assertTrue(index.size() > 0);
+    }
+}
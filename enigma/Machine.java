@@ -2,7 +2,9 @@ package enigma;
 
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashMap;
 
 
 import static enigma.EnigmaException.*;
@@ -19,10 +21,24 @@ class Machine {
      */
     Machine(Alphabet alpha, int numRotors, int pawls,
             Collection<Rotor> allRotors) {
+        this(alpha, numRotors, pawls, (RotorCatalog) null);
+        for (Rotor rotor : allRotors) {
+            String name = rotor.name();
+            _allRotors.put(name, _allRotors.containsKey(name) ? null : rotor);
+        }
+    }
+
+    /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor
+     *  slots, and 0 <= PAWLS < NUMROTORS pawls, whose available rotors
+     *  are those in CATALOG.  Each rotor is made from CATALOG the first
+     *  time it is selected. */
+    Machine(Alphabet alpha, int numRotors, int pawls, RotorCatalog catalog) {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
-        _allRotors = new ArrayList<Rotor>(allRotors);
+        _catalog = catalog;
+        _tableBudget = Long.getLong("enigma.stateTable", TABLE_BUDGET);
+        _codec = new StateCodec(alpha.size(), numRotors - 1);
     }
 
     /**
@@ -45,6 +61,7 @@ class Machine {
      * undefined results.
      */
     Rotor getRotor(int k) {
+        syncRotors();
         return _rotors.get(k);
     }
 
@@ -58,32 +75,84 @@ class Machine {
      * Initially, all rotors are set at their 0 setting.
      */
     void insertRotors(String[] rotors) {
-        _rotors = new ArrayList<Rotor>(_allRotors.size());
+        insertRotors(findRotors(rotors));
+    }
+
+    /** Return the rotors named ROTORS from my set of available rotors
+     *  (ROTORS[0] names the reflector), checking that they can be
+     *  inserted in my slots. */
+    Rotor[] findRotors(String[] rotors) {
+        return findRotors(rotors, true);
+    }
+
+    /** Return the rotors named ROTORS from my set of available rotors
+     *  (ROTORS[0] names the reflector).  If CHECKED, check that they can
+     *  be inserted in my slots; otherwise they are only looked up, and
+     *  must already be known to fit (as by a Validator). */
+    Rotor[] findRotors(String[] rotors, boolean checked) {
+        Rotor[] result = new Rotor[rotors.length];
         int count = 0;
-        for (String name : rotors) {
-            int a = _rotors.size();
-            for (Rotor rotor : _allRotors) {
-                if (rotor.name().equals(name)) {
-                    _rotors.add(rotor);
-                    if (rotor.rotates()) {
-                        count += 1;
-                    }
+        for (int i = 0; i < rotors.length; i += 1) {
+            result[i] = rotor(rotors[i]);
+            if (result[i] == null) {
+                throw new EnigmaException("Rotor does not exist.");
+            }
+            if (!checked) {
+                continue;
+            }
+            for (int j = 0; j < i; j += 1) {
+                if (result[j] == result[i]) {
+                    throw new EnigmaException("Rotor repeated.");
                 }
             }
-            if (_rotors.size() != a + 1) {
-                throw new EnigmaException("Rotor does not exist.");
+            if (result[i].rotates()) {
+                count += 1;
             }
         }
 
-        if (!_rotors.get(0).reflecting()) {
+        if (!checked) {
+            return result;
+        }
+        if (!result[0].reflecting()) {
             throw new EnigmaException("Rotor must be a reflector.");
         }
         if (count > numPawls()) {
             throw new EnigmaException("Many Rotor Exist.");
         }
-        if (_rotors == null) {
-            throw new EnigmaException("Need at least one Rotor");
+        return result;
+    }
+
+    /** Return my rotor named NAME, making it from my catalog if this is
+     *  its first use, or null if I have no such rotor (or several). */
+    private Rotor rotor(String name) {
+        Rotor result = _allRotors.get(name);
+        if (result == null && _catalog != null
+            && !_allRotors.containsKey(name)) {
+            int r = _catalog.find(name);
+            result = r < 0 ? null : _catalog.newRotor(r);
+            _allRotors.put(name, result);
         }
+        return result;
+    }
+
+    /** Set my rotor slots to ROTORS, as returned by findRotors. */
+    void insertRotors(Rotor[] rotors) {
+        leaveTable();
+        _untilTable = _tableDelay;
+        _rotors = new ArrayList<Rotor>(Arrays.asList(rotors));
+        _stepping = new Stepping(_steppingModel, rotors);
+        _blockEnd = _rotors.size() - 2;
+        for (int i = _rotors.size() - 1, moving = 0; i > 0; i -= 1) {
+            if (_rotors.get(i).rotates()) {
+                moving += 1;
+                if (moving == 2) {
+                    _blockEnd = i - 1;
+                    break;
+                }
+            }
+        }
+        _block = null;
+        repack();
     }
 
 
@@ -94,9 +163,130 @@ class Machine {
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
+        leaveTable();
         for (int i = 0; i < setting.length(); i++) {
             _rotors.get(i + 1).set(setting.charAt(i));
         }
+        _block = null;
+        repack();
+    }
+
+    /** Set my rotors to the positions in SETTING, an array of
+     *  numRotors()-1 indices, the first of which is the position of the
+     *  leftmost rotor (not counting the reflector). */
+    void setRotors(int[] setting) {
+        leaveTable();
+        for (int i = 0; i < setting.length; i += 1) {
+            _rotors.get(i + 1).set(setting[i]);
+        }
+        _block = null;
+        repack();
+    }
+
+    /** Store the positions of my rotors in SETTING, ordered as for
+     *  setRotors. */
+    void getRotors(int[] setting) {
+        syncRotors();
+        for (int i = 0; i < setting.length; i += 1) {
+            setting[i] = _rotors.get(i + 1).setting();
+        }
+    }
+
+    /** Return the codec with which my rotor positions are packed. */
+    StateCodec stateCodec() {
+        return _codec;
+    }
+
+    /** Return the positions of my rotors packed by stateCodec() into one
+     *  long, which requires that stateCodec().words() be 1.  Takes
+     *  constant time. */
+    long state() {
+        if (_codec.words() != 1) {
+            throw error("machine state does not fit in one long");
+        }
+        if (_tableActive) {
+            return _table.state(_tableState);
+        }
+        return _packed;
+    }
+
+    /** Store the positions of my rotors, packed by stateCodec(), in
+     *  STATE, which has stateCodec().words() elements. */
+    void state(long[] state) {
+        syncRotors();
+        int[] posn = new int[_rotors.size() - 1];
+        getRotors(posn);
+        _codec.encode(posn, state);
+    }
+
+    /** Set my rotor positions to those packed in STATE, as returned by
+     *  state().  Takes constant time: my rotors are brought up to date
+     *  only when next needed. */
+    void setState(long state) {
+        leaveTable();
+        if (_codec.words() != 1) {
+            throw error("machine state does not fit in one long");
+        }
+        _packed = state;
+        _stale = true;
+    }
+
+    /** Set my rotor positions to those packed in STATE, as stored by
+     *  state(long[]). */
+    void setState(long[] state) {
+        int[] posn = new int[_rotors.size() - 1];
+        _codec.decode(state, posn);
+        setRotors(posn);
+    }
+
+    /** Return the state (packed as by state()) that follows STATE, in
+     *  which my rotors are those now inserted, without changing my
+     *  rotors. */
+    long step(long state) {
+        return _stepping.step(state, _codec);
+    }
+
+    /** Make my rotors advance according to the stepping model named
+     *  MODEL (see Stepping).  Initially, the model is "ratchet". */
+    void setStepping(String model) {
+        if (!Stepping.isModel(model)) {
+            throw error("unknown stepping model %s", model);
+        }
+        leaveTable();
+        _untilTable = _tableDelay;
+        _steppingModel = model;
+        if (_rotors != null) {
+            _stepping = new Stepping(model, _rotors.toArray(new Rotor[0]));
+        }
+    }
+
+    /** Return the stepping rule of my current rotors. */
+    Stepping stepping() {
+        return _stepping;
+    }
+
+    /** Recompute _packed from the positions of my rotors. */
+    private void repack() {
+        if (_codec.words() == 1) {
+            long state = 0;
+            for (int i = 1; i < _rotors.size(); i += 1) {
+                state = _codec.withDigit(state, i - 1,
+                                         _rotors.get(i).setting());
+            }
+            _packed = state;
+        }
+        _stale = false;
+    }
+
+    /** Set the rings of my rotors to RINGS, an array of numRotors()-1
+     *  indices ordered as for setRotors. */
+    void setRings(int[] rings) {
+        leaveTable();
+        _untilTable = _tableDelay;
+        for (int i = 0; i < rings.length; i += 1) {
+            _rotors.get(i + 1).setRing(rings[i]);
+        }
+        _block = null;
     }
 
     /** Return the current plugboard's permutation. */
@@ -106,6 +296,8 @@ class Machine {
 
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
+        leaveTable();
+        _untilTable = _tableDelay;
         _plugboard = plugboard;
     }
 
@@ -113,6 +305,13 @@ class Machine {
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
+        if (tableMode()) {
+            _tableState = _table.next(_tableState);
+            return _table.convert(_tableState, c);
+        }
+        if (_stale) {
+            syncRotors();
+        }
         advanceRotors();
         if (Main.verbose()) {
             System.err.printf("[");
@@ -134,66 +333,413 @@ class Machine {
         return c;
     }
 
+    /** Use a state table of at most BUDGET bytes (0 to never use one),
+     *  building a new one once DELAY characters have been converted
+     *  without one under the same setup (-1 for as many characters as
+     *  the table has entries, which bounds the time spent building
+     *  tables that are little used).  Changing my rotors, rings,
+     *  plugboard or stepping starts the count again.  Initially, BUDGET
+     *  is the value of the system property enigma.stateTable, or 8 MB,
+     *  and DELAY is -1. */
+    void setStateTableBudget(long budget, long delay) {
+        leaveTable();
+        _tableBudget = budget;
+        _tableDelay = delay;
+        _untilTable = delay;
+    }
+
+    /** Return the number of state tables I have built. */
+    long tablesBuilt() {
+        return _tablesBuilt;
+    }
+
+    /** Take state tables from CACHE when it has one for my setup, and
+     *  add the tables I build to it, or (if CACHE is null) always build
+     *  my own tables.  Initially, CACHE is null. */
+    void setTableCache(TableCache cache) {
+        leaveTable();
+        _tableCache = cache;
+    }
+
+    /** Return true iff characters should be converted using _table, in
+     *  state _tableState, entering table mode if a table fits my budget
+     *  and either matches my setup, is in _tableCache, or is due to be
+     *  built.  Table mode is
+     *  not used when verbose output or metrics are wanted, as they need
+     *  every rotor to be stepped. */
+    private boolean tableMode() {
+        if (_tableActive) {
+            return true;
+        }
+        if (_tableCheck) {
+            _tableCheck = false;
+            _tableUsable = _tableBudget > 0 && !Main.verbose()
+                && !Metrics.enabled() && StateTable.fits(this, _tableBudget);
+            if (_tableUsable && _untilTable < 0) {
+                _untilTable = StateTable.entries(this);
+            }
+            if (_tableUsable && _table != null && _table.matches(this)) {
+                enterTable();
+                return true;
+            }
+            if (_tableUsable && _tableCache != null) {
+                StateTable stored = _tableCache.find(this);
+                if (stored != null) {
+                    _table = stored;
+                    enterTable();
+                    return true;
+                }
+            }
+        }
+        if (!_tableUsable) {
+            return false;
+        }
+        if (_untilTable > 0) {
+            _untilTable -= 1;
+            return false;
+        }
+        _table = _tableCache == null ? new StateTable(this)
+            : _tableCache.store(this);
+        _tablesBuilt += 1;
+        enterTable();
+        return true;
+    }
+
+    /** Enter table mode, in the state of my rotors. */
+    private void enterTable() {
+        int[] posn = new int[_rotors.size() - 1];
+        getRotors(posn);
+        _tableState = _table.pack(posn);
+        _tableActive = true;
+    }
+
+    /** Bring my rotors up to date with the state of table mode, if I am
+     *  in it, or with _packed, if they are stale. */
+    private void syncRotors() {
+        if (_tableActive) {
+            int[] posn = new int[_rotors.size() - 1];
+            for (int i = 0; i < posn.length; i += 1) {
+                posn[i] = _rotors.get(i + 1).setting();
+            }
+            _table.unpack(_tableState, posn);
+            for (int i = 0; i < posn.length; i += 1) {
+                _rotors.get(i + 1).set(posn[i]);
+            }
+            _block = null;
+            repack();
+        } else if (_stale) {
+            for (int i = 1; i < _rotors.size(); i += 1) {
+                _rotors.get(i).set(_codec.digit(_packed, i - 1));
+            }
+            _block = null;
+            _stale = false;
+        }
+    }
+
+    /** Leave table mode, if I am in it, bringing my rotors up to date. */
+    private void leaveTable() {
+        syncRotors();
+        _tableActive = false;
+        _tableCheck = true;
+    }
+
+    /** Store in RESULT the conversion of each character (as an index in
+     *  the range 0..alphabet size - 1) by me if my rotors were at
+     *  positions POSN (ordered as for setRotors), without advancing or
+     *  changing them. */
+    void mapping(int[] posn, int[] result) {
+        int p = posn[_rotors.size() - 2];
+        for (int c = 0; c < result.length; c += 1) {
+            result[c] = outerBackward(innerConvert(outerForward(c, p), posn),
+                                      p);
+        }
+    }
+
+    /** Return the conversion of C by my plugboard and then my rightmost
+     *  rotor at position P, on the way in. */
+    private int outerForward(int c, int p) {
+        Rotor right = _rotors.get(_rotors.size() - 1);
+        return right.convertForward(_plugboard.permute(c), p);
+    }
+
+    /** Return the conversion of C by my rightmost rotor at position P and
+     *  then my plugboard, on the way out. */
+    private int outerBackward(int c, int p) {
+        Rotor right = _rotors.get(_rotors.size() - 1);
+        return _plugboard.permute(right.convertBackward(c, p));
+    }
+
+    /** The conversions by a machine's plugboard and rightmost rotor,
+     *  tabulated for each position of that rotor, so that its mapping at
+     *  a sequence of positions can be found from its innerMapping, which
+     *  changes only when another rotor moves, by composing tables. */
+    static final class Outer {
+        /** The conversions by MACHINE's plugboard and rightmost rotor as
+         *  they are now set. */
+        Outer(Machine machine) {
+            _size = machine.alphabet().size();
+            _slot = machine.numRotors() - 2;
+            _in = new int[_size * _size];
+            _out = new int[_size * _size];
+            for (int p = 0, k = 0; p < _size; p += 1) {
+                for (int c = 0; c < _size; c += 1, k += 1) {
+                    _in[k] = machine.outerForward(c, p);
+                    _out[k] = machine.outerBackward(c, p);
+                }
+            }
+        }
+
+        /** Store in RESULT the conversion of each character by the
+         *  machine at positions POSN, as for Machine.mapping, given
+         *  INNER, its innerMapping at POSN. */
+        void mapping(int[] posn, int[] inner, int[] result) {
+            int p = posn[_slot] * _size;
+            for (int c = 0; c < _size; c += 1) {
+                result[c] = _out[p + inner[_in[p + c]]];
+            }
+        }
+
+        /** Size of the alphabet. */
+        private final int _size;
+        /** Index in a position array of the rightmost rotor. */
+        private final int _slot;
+        /** Conversions on the way in and out, by position and then
+         *  character. */
+        private final int[] _in, _out;
+    }
+
+    /** Store in RESULT the conversion of each character by my rotors
+     *  other than the rightmost, at positions POSN (ordered as for
+     *  setRotors), from the rightmost rotor's side through the reflector
+     *  and back, without advancing or changing them.  This part of
+     *  mapping changes only when a rotor other than the rightmost
+     *  moves. */
+    void innerMapping(int[] posn, int[] result) {
+        for (int c = 0; c < result.length; c += 1) {
+            result[c] = innerConvert(c, posn);
+        }
+    }
+
+    /** Return the conversion of C by my rotors other than the rightmost
+     *  at positions POSN, as for innerMapping. */
+    private int innerConvert(int c, int[] posn) {
+        int last = _rotors.size() - 1;
+        Rotor reflector = _rotors.get(0);
+        int character = c;
+        for (int i = last - 1; i > 0; i -= 1) {
+            character = _rotors.get(i).convertForward(character,
+                                                      posn[i - 1]);
+        }
+        character = reflector.convertBackward(character,
+                                              reflector.setting());
+        for (int i = 1; i < last; i += 1) {
+            character = _rotors.get(i).convertBackward(character,
+                                                       posn[i - 1]);
+        }
+        return character;
+    }
+
+    /** Advance the rotor positions POSN (ordered as for setRotors) as my
+     *  rotors would advance before converting a character, according to
+     *  my stepping model.  My rotors are not changed. */
+    void step(int[] posn) {
+        _stepping.step(posn);
+    }
+
     /** Advance all rotors to their next position. */
     private void advanceRotors() {
-        ArrayList<Boolean> ab = new ArrayList<Boolean>(_rotors.size());
-        for (int i = 0; i < _rotors.size() - 1; i++) {
-            ab.add(false);
-        }
-        ab.add(true);
-        Rotor rotor2 = _rotors.get(_rotors.size() - 1);
-        assert rotor2.rotates();
-        for (int i = _rotors.size() - 1; i > 0; i--) {
-            Rotor c = _rotors.get(i);
-            Rotor n = _rotors.get(i - 1);
-            if (!c.rotates()) {
+        int carry = 0;
+        for (int i = _rotors.size() - 1; i > 0; i -= 1) {
+            Rotor rotor = _rotors.get(i);
+            carry = _stepping.next(i, rotor.setting(), carry);
+            if ((carry & Stepping.MOVED) == 0) {
                 continue;
             }
-            if (c.atNotch() && n.rotates()) {
-                ab.set(i, true);
-                ab.set(i - 1, true);
+            rotor.advance();
+            if (_codec.words() == 1) {
+                _packed = _codec.increment(_packed, i - 1);
             }
-        }
-        for (int i = 0; i < _rotors.size(); i++) {
-            if (ab.get(i)) {
-                _rotors.get(i).advance();
+            if (i <= _blockEnd) {
+                _block = null;
+            }
+            if (Metrics.enabled()) {
+                Metrics.step(i);
+                if ((carry & Stepping.DOUBLE) != 0) {
+                    Metrics.doubleStep(i);
+                }
             }
         }
-        if (_rotors == null) {
-            throw new EnigmaException("Need at least one Rotor");
+    }
+
+
+
+    /** Advance my rotors as if N characters had been converted.  Runs
+     *  of steps in which only the fast rotor moves are taken at once, so
+     *  the rotors are examined once per step of a slower rotor.  The
+     *  rotor positions after each such step are compared with a mark
+     *  moved to the current positions after 1, 2, 4, ... of them
+     *  (Brent's method); once they match, the machine's stepping has
+     *  entered a cycle of known length, and N is reduced modulo that
+     *  length.  The time taken is thus bounded by the length of the
+     *  machine's cycle of states, whatever N is, though it is not a
+     *  closed form: under an arbitrary stepping model, the cycle of a
+     *  slow rotor depends on every rotor to its right. */
+    void skip(long n) {
+        leaveTable();
+        int size = _alphabet.size();
+        int last = _rotors.size() - 1;
+        Rotor fast = _rotors.get(last);
+        int[] mark = new int[last];
+        getRotors(mark);
+        long marked = n;
+        long events = 0, power = 1;
+        boolean cycled = false;
+        while (n > 0) {
+            long quiet = Math.min(quietSteps(), n);
+            fast.set((int) ((fast.setting() + quiet) % size));
+            if (_codec.words() == 1) {
+                _packed = _codec.withDigit(_packed, last - 1,
+                                           fast.setting());
+            }
+            n -= quiet;
+            if (n == 0) {
+                break;
+            }
+            advanceRotors();
+            n -= 1;
+            if (cycled) {
+                continue;
+            }
+            if (atPositions(mark)) {
+                n %= marked - n;
+                cycled = true;
+            } else if (++events == power) {
+                getRotors(mark);
+                marked = n;
+                events = 0;
+                power *= 2;
+            }
         }
     }
 
+    /** Return true iff my rotors are at the positions POSN, ordered as
+     *  for setRotors. */
+    private boolean atPositions(int[] posn) {
+        for (int i = 0; i < posn.length; i += 1) {
+            if (_rotors.get(i + 1).setting() != posn[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 
+    /** Return the number of steps that can be taken from the current
+     *  state in which only the fast rotor moves.  With the other rotors
+     *  held, whether any of them moves depends only on the transition
+     *  bits of the fast rotor, so each possible value of those bits is
+     *  tried once. */
+    private long quietSteps() {
+        int last = _rotors.size() - 1;
+        boolean[] moves = new boolean[Stepping.CARRIES];
+        for (int bits = 0; bits < moves.length; bits += 1) {
+            int carry = bits;
+            for (int i = last - 1; i > 0 && !moves[bits]; i -= 1) {
+                carry = _stepping.next(i, _rotors.get(i).setting(), carry);
+                moves[bits] = (carry & Stepping.MOVED) != 0;
+            }
+        }
+        int size = _alphabet.size();
+        int fast = _rotors.get(last).setting();
+        for (int d = 0; d < size; d += 1) {
+            int bits = _stepping.next(last, (fast + d) % size, 0);
+            if (moves[bits & (Stepping.CARRIES - 1)]) {
+                return d;
+            }
+        }
+        return Long.MAX_VALUE;
+    }
 
     /** Return the result of applying the rotors to the character C (as an
-     *  index in the range 0..alphabet size - 1). */
+     *  index in the range 0..alphabet size - 1).  The rotors to the right
+     *  of the block are applied one at a time; the block is applied as a
+     *  single table lookup. */
     private int applyRotors(int c) {
         int character = c;
-        for (int i = _rotors.size() - 1; i > 0; i--) {
+        int last = _rotors.size() - 1;
+        for (int i = last; i > _blockEnd; i--) {
             character = _rotors.get(i).convertForward(character);
         }
-        for (int i = 0; i < _rotors.size(); i++) {
+        if (_block == null) {
+            _block = composeBlock();
+        }
+        character = _block[character];
+        for (int i = _blockEnd + 1; i <= last; i++) {
             character = _rotors.get(i).convertBackward(character);
         }
         return character;
     }
 
+    /** Return the table of the composed conversion made by the rotors of
+     *  the block in their current positions: forward through rotors
+     *  _blockEnd .. 1, through the reflector, and back. */
+    private int[] composeBlock() {
+        int[] result = new int[_alphabet.size()];
+        for (int c = 0; c < result.length; c += 1) {
+            int character = c;
+            for (int i = _blockEnd; i > 0; i--) {
+                character = _rotors.get(i).convertForward(character);
+            }
+            for (int i = 0; i <= _blockEnd; i++) {
+                character = _rotors.get(i).convertBackward(character);
+            }
+            result[c] = character;
+        }
+        return result;
+    }
+
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String result = "";
-        for (int i = 0; i < msg.length(); i++) {
+        char[] result = new char[msg.length()];
+        for (int i = 0; i < result.length; i++) {
             int input = _alphabet.toInt(msg.charAt(i));
             int output = convert(input);
-            result += _alphabet.toChar(output);
+            result[i] = _alphabet.toChar(output);
         }
-        return result;
+        if (Metrics.enabled()) {
+            Metrics.message(msg.length());
+        }
+        return new String(result);
     }
 
+    /** Convert MSG[START .. END-1], which must be characters of my
+     *  alphabet, in place, updating the state of the rotors accordingly.
+     *  Unlike convert(String), this does not count as a message in the
+     *  metrics, since MSG may hold part of one. */
+    void convert(char[] msg, int start, int end) {
+        for (int i = start; i < end; i += 1) {
+            msg[i] = _alphabet.toChar(convert(_alphabet.toInt(msg[i])));
+        }
+    }
 
+    /** Convert, in place, the characters of TEXT[START .. END-1] that are
+     *  in my alphabet, leaving the others unchanged and not advancing the
+     *  rotors for them. */
+    void filter(char[] text, int start, int end) {
+        for (int i = start; i < end; i += 1) {
+            int c = _alphabet.indexOf(text[i]);
+            if (c >= 0) {
+                text[i] = _alphabet.toChar(convert(c));
+            }
+        }
+    }
+
+    /** Set the rings of my rotors according to RSTRING, a string of
+     *  numRotors()-1 characters ordered as for setRotors, or the empty
+     *  string for all rings at their 0 setting. */
     void settingRotor(String rString) {
-        if (rString == "") {
+        leaveTable();
+        if (rString.isEmpty()) {
             for (int i = 0; i < _rotors.size() - 1; i++) {
                 rString = rString + _alphabet.toChar(0);
             }
@@ -201,6 +747,7 @@ class Machine {
         for (int i = 0; i < _rotors.size() - 1; i++) {
             _rotors.get(i + 1).settingRing(rString.charAt(i));
         }
+        _block = null;
     }
 
 
@@ -213,12 +760,59 @@ class Machine {
     private int _numRotors;
     /**  */
     private int _pawls;
-    /**  */
-    private ArrayList<Rotor> _allRotors;
+    /** My rotors made so far, by name (null for a name that names no
+     *  rotor, or several). */
+    private final HashMap<String, Rotor> _allRotors = new HashMap<>();
+    /** Name of my stepping model. */
+    private String _steppingModel = Stepping.RATCHET;
+    /** My stepping model compiled for my current rotors. */
+    private Stepping _stepping;
+    /** Catalog from which my other rotors are made, or null. */
+    private final RotorCatalog _catalog;
     /**  */
     private ArrayList<Rotor> _rotors;
     /**  */
     private Permutation _plugboard;
+    /** Index of the rightmost rotor of the block: the reflector and the
+     *  rotors to the left of the two rightmost moving rotors, which move
+     *  rarely and so are applied as one composed table. */
+    private int _blockEnd;
+    /** The composed table of the block in its current position, or null
+     *  if a rotor in the block has moved since it was computed. */
+    private int[] _block;
+    /** Default largest size of a state table, in bytes. */
+    private static final long TABLE_BUDGET = 8 << 20;
+    /** Largest size of a state table, in bytes. */
+    private long _tableBudget;
+    /** The most recently built or loaded state table, or null. */
+    private StateTable _table;
+    /** Cache of state tables shared with other processes, or null. */
+    private TableCache _tableCache;
+    /** True iff I am in table mode, in which my state is _tableState
+     *  and my rotors' positions may be out of date. */
+    private boolean _tableActive;
+    /** Codec packing my rotor positions. */
+    private final StateCodec _codec;
+    /** My rotor positions packed by _codec, if they fit in one long and
+     *  I am not in table mode. */
+    private long _packed;
+    /** True iff my rotors' positions are out of date, and those in
+     *  _packed are current. */
+    private boolean _stale;
+    /** My state in table mode. */
+    private int _tableState;
+    /** True iff my setup has changed since tableMode last checked
+     *  whether a table can be used. */
+    private boolean _tableCheck = true;
+    /** True iff a table fits my budget and current setup. */
+    private boolean _tableUsable;
+    /** Number of characters to convert without a table under the
+     *  current setup before building one, or -1 if not yet determined. */
+    private long _untilTable = -1;
+    /** Value of _untilTable for a new setup. */
+    private long _tableDelay = -1;
+    /** Number of state tables built. */
+    private long _tablesBuilt;
 
 
 
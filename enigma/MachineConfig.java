@@ -0,0 +1,154 @@
+package enigma;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.Objects;
+
+import static enigma.EnigmaException.*;
+
+/** A validated machine description, as read from a configuration file:
+ *  the alphabet, the numbers of slots and pawls, and the catalog of
+ *  available rotors.  A MachineConfig is immutable, so any number of
+ *  machines may be made from it.
+ *  @author Jeonghyun Lee
+ */
+class MachineConfig {
+
+    /** A description of a machine with NUMROTORS slots and PAWLS pawls,
+     *  whose rotors advance according to the stepping model STEPPING,
+     *  and whose available rotors are those in CATALOG, over CATALOG's
+     *  alphabet. */
+    MachineConfig(int numRotors, int pawls, String stepping,
+                  RotorCatalog catalog) {
+        if (numRotors <= 1) {
+            throw error("need at least two rotor slots");
+        }
+        if (pawls < 0 || pawls >= numRotors) {
+            throw error("number of pawls must be less than number of "
+                        + "rotor slots");
+        }
+        if (catalog.size() == 0) {
+            throw error("no rotors described");
+        }
+        if (!Stepping.isModel(stepping)) {
+            throw error("unknown stepping model %s", stepping);
+        }
+        _alphabet = catalog.alphabet();
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _stepping = stepping;
+        _catalog = catalog;
+        _rotors = new AbstractList<RotorSpec>() {
+            @Override
+            public RotorSpec get(int r) {
+                Objects.checkIndex(r, _catalog.size());
+                return new RotorSpec(_catalog, r);
+            }
+
+            @Override
+            public int size() {
+                return _catalog.size();
+            }
+        };
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return the name of the stepping model (see Stepping). */
+    String stepping() {
+        return _stepping;
+    }
+
+    /** Return the catalog of available rotors. */
+    RotorCatalog catalog() {
+        return _catalog;
+    }
+
+    /** Return the descriptions of the available rotors, in configuration
+     *  order. */
+    List<RotorSpec> rotors() {
+        return _rotors;
+    }
+
+    /** Return a new machine whose rotors, made as they are first
+     *  selected, start at their 0 settings. */
+    Machine newMachine() {
+        Machine machine = new Machine(_alphabet, _numRotors, _pawls,
+                                      _catalog);
+        machine.setStepping(_stepping);
+        return machine;
+    }
+
+    /** A view of one rotor of a catalog. */
+    static class RotorSpec {
+
+        /** Kind code of a moving rotor. */
+        static final char MOVING = 'M';
+        /** Kind code of a fixed rotor. */
+        static final char FIXED = 'N';
+        /** Kind code of a reflector. */
+        static final char REFLECTOR = 'R';
+
+        /** A view of rotor number R of CATALOG. */
+        RotorSpec(RotorCatalog catalog, int r) {
+            _catalog = catalog;
+            _r = r;
+        }
+
+        /** Return my name. */
+        String name() {
+            return _catalog.name(_r);
+        }
+
+        /** Return my kind code. */
+        char kind() {
+            return _catalog.kind(_r);
+        }
+
+        /** Return my notches. */
+        String notches() {
+            return _catalog.notches(_r);
+        }
+
+        /** Return a copy of my wiring table. */
+        int[] wiring() {
+            return _catalog.wiring(_r);
+        }
+
+        /** Return a new rotor of my description. */
+        Rotor newRotor() {
+            return _catalog.newRotor(_r);
+        }
+
+        /** The catalog holding me. */
+        private final RotorCatalog _catalog;
+        /** My number in _catalog. */
+        private final int _r;
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** Number of rotor slots. */
+    private final int _numRotors;
+    /** Number of pawls. */
+    private final int _pawls;
+    /** Name of the stepping model. */
+    private final String _stepping;
+    /** Available rotors. */
+    private final RotorCatalog _catalog;
+    /** Views of the available rotors, in configuration order. */
+    private final List<RotorSpec> _rotors;
+}
@@ -1,5 +1,9 @@
 package enigma;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import org.junit.Test;
 import org.junit.Rule;
@@ -76,4 +80,293 @@ public class MachineTest {
         assertEquals("QVPQSOKOILPUBKJZPISFXDW",
                 mach.convert("FROMHISSHOULDERHIAWATHA"));
     }
+
+    @Test
+    public void testInnerMapping() {
+        Permutation plug = new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ);
+        int[] posn = new int[4], result = new int[26], inner = new int[26];
+        int[] outerResult = new int[26];
+        Machine mach = mach1();
+        mach.setPlugboard(plug);
+        Rotor right = mach.getRotor(4);
+        Machine.Outer outer = new Machine.Outer(mach);
+        for (int t = 0; t < 700; t += 1) {
+            mach.getRotors(posn);
+            mach.step(posn);
+            mach.mapping(posn, result);
+            mach.innerMapping(posn, inner);
+            for (int c = 0; c < 26; c += 1) {
+                int x = right.convertForward(plug.permute(c), posn[3]);
+                x = right.convertBackward(inner[x], posn[3]);
+                assertEquals(plug.permute(x), result[c]);
+            }
+            outer.mapping(posn, inner, outerResult);
+            assertArrayEquals(result, outerResult);
+            assertEquals(result[t % 26], mach.convert(t % 26));
+        }
+    }
+
+    @Test
+    public void testSkip() {
+        int[] expected = new int[4], actual = new int[4];
+        int[] counts = { 0, 1, 25, 26, 27, 600, 16900, 16901, 40000 };
+        for (int n : counts) {
+            Machine stepped = mach1();
+            stepped.setPlugboard(new Permutation("", AZ));
+            for (int i = 0; i < n; i += 1) {
+                stepped.convert(0);
+            }
+            stepped.getRotors(expected);
+            Machine skipped = mach1();
+            skipped.skip(n);
+            skipped.getRotors(actual);
+            assertArrayEquals("skip " + n, expected, actual);
+        }
+    }
+
+    @Test
+    public void testLongSkip() {
+        long[] counts = { 1L << 40, Long.MAX_VALUE / 3, Long.MAX_VALUE };
+        int[] expected = new int[4], actual = new int[4];
+        for (long n : counts) {
+            Machine whole = mach1();
+            whole.skip(n);
+            whole.getRotors(expected);
+            Machine parts = mach1();
+            parts.skip(n / 2);
+            parts.skip(n - n / 2);
+            parts.getRotors(actual);
+            assertArrayEquals("skip " + n, expected, actual);
+        }
+    }
+
+    @Test
+    public void testSkipManyWords() {
+        HashMap<String, Rotor> rotors = new HashMap<>(ROTORS);
+        String[] names = new String[16];
+        names[0] = "B";
+        for (int i = 1; i < 13; i += 1) {
+            names[i] = "F" + i;
+            rotors.put(names[i], new FixedRotor(names[i],
+                                                new Permutation("", AZ)));
+        }
+        names[13] = "III";
+        names[14] = "IV";
+        names[15] = "I";
+        Machine wide = new Machine(AZ, 16, 3, rotors.values());
+        wide.insertRotors(names);
+        wide.setRotors("AAAAAAAAAAAAXLE");
+        assertTrue(wide.stateCodec().words() > 1);
+        int[] expected = new int[4], actual = new int[15];
+        for (long n : new long[] { 25, 16901, 1L << 40, Long.MAX_VALUE }) {
+            Machine narrow = mach1();
+            narrow.skip(n);
+            narrow.getRotors(expected);
+            wide.setRotors("AAAAAAAAAAAAXLE");
+            wide.skip(n);
+            wide.getRotors(actual);
+            for (int i = 1; i < 4; i += 1) {
+                assertEquals("skip " + n, expected[i], actual[i + 11]);
+            }
+        }
+    }
+
+    /** Return a machine like mach1, but with rotors of its own. */
+    private Machine freshMach1() {
+        HashMap<String, String> nav = TestUtils.NAVALA;
+        Machine mach = new Machine(AZ, 5, 3, java.util.List.of(
+                new Reflector("B", new Permutation(nav.get("B"), AZ)),
+                new FixedRotor("Beta", new Permutation(nav.get("Beta"), AZ)),
+                new MovingRotor("III", new Permutation(nav.get("III"), AZ),
+                        "V"),
+                new MovingRotor("IV", new Permutation(nav.get("IV"), AZ),
+                        "J"),
+                new MovingRotor("I", new Permutation(nav.get("I"), AZ),
+                        "Q")));
+        mach.insertRotors(ROTORS1);
+        mach.setRotors(SETTING1);
+        mach.setPlugboard(new Permutation("", AZ));
+        return mach;
+    }
+
+    @Test
+    public void testBlockCache() {
+        Machine running = freshMach1();
+        Machine fresh = freshMach1();
+        running.setStateTableBudget(0, -1);
+        fresh.setStateTableBudget(0, -1);
+        running.settingRotor("BCDE");
+        fresh.settingRotor("BCDE");
+        int[] posn = new int[4];
+        for (int i = 0; i < 20000; i += 1) {
+            running.getRotors(posn);
+            fresh.setRotors(posn);
+            int c = i % 26;
+            assertEquals("character " + i, fresh.convert(c),
+                    running.convert(c));
+        }
+    }
+
+    @Test
+    public void testStateTable() {
+        Machine tabled = freshMach1();
+        Machine stepped = freshMach1();
+        tabled.setStateTableBudget(1 << 20, 0);
+        stepped.setStateTableBudget(0, -1);
+        int[] expected = new int[4], actual = new int[4];
+        for (int i = 0; i < 20000; i += 1) {
+            if (i == 5000) {
+                tabled.settingRotor("QRST");
+                stepped.settingRotor("QRST");
+            } else if (i == 10000) {
+                Permutation plugs = new Permutation("(AQ) (EZ) (MP)", AZ);
+                tabled.setPlugboard(plugs);
+                stepped.setPlugboard(plugs);
+            } else if (i == 15000) {
+                tabled.setRotors("ZDVE");
+                stepped.setRotors("ZDVE");
+            }
+            int c = (i * 7) % 26;
+            assertEquals("character " + i, stepped.convert(c),
+                    tabled.convert(c));
+        }
+        stepped.getRotors(expected);
+        tabled.getRotors(actual);
+        assertArrayEquals("final positions", expected, actual);
+    }
+
+    @Test
+    public void testShortSetups() {
+        Machine mach = freshMach1();
+        mach.setStateTableBudget(1 << 20, -1);
+        long entries = StateTable.entries(mach);
+        Permutation[] plugs = {
+            new Permutation("(AQ)", AZ), new Permutation("(EZ)", AZ)
+        };
+        for (int k = 0; k < 6; k += 1) {
+            mach.setPlugboard(plugs[k % 2]);
+            for (long i = 0; i < entries / 2; i += 1) {
+                mach.convert((int) (i % 26));
+            }
+        }
+        assertEquals(0, mach.tablesBuilt());
+        mach.setPlugboard(plugs[0]);
+        for (long i = 0; i <= entries; i += 1) {
+            mach.convert((int) (i % 26));
+        }
+        assertEquals(1, mach.tablesBuilt());
+    }
+
+    @Test
+    public void testWideState() {
+        HashMap<String, String> nav = TestUtils.NAVALA;
+        java.util.ArrayList<Rotor> rotors = new java.util.ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(nav.get("B"), AZ)));
+        String[] names = new String[15];
+        names[0] = "B";
+        for (int i = 1; i < 12; i += 1) {
+            names[i] = "F" + i;
+            rotors.add(new FixedRotor(names[i],
+                                      new Permutation(nav.get("Beta"), AZ)));
+        }
+        String[] moving = { "I", "II", "III" };
+        for (int i = 0; i < 3; i += 1) {
+            names[12 + i] = moving[i];
+            rotors.add(new MovingRotor(moving[i],
+                                       new Permutation(nav.get(moving[i]),
+                                                       AZ), "Q"));
+        }
+        Machine mach = new Machine(AZ, 15, 3, rotors);
+        mach.insertRotors(names);
+        mach.setPlugboard(new Permutation("", AZ));
+        mach.setStateTableBudget(1 << 20, 0);
+        assertEquals(2, mach.stateCodec().words());
+        mach.convert(0);
+        try {
+            mach.state();
+            fail("packed a wide state into one long");
+        } catch (EnigmaException excp) {
+            assertEquals("machine state does not fit in one long",
+                         excp.getMessage());
+        }
+    }
+
+    @Test
+    public void testPackedState() {
+        Machine mach = freshMach1();
+        Machine other = freshMach1();
+        other.setStateTableBudget(0, -1);
+        StateCodec codec = mach.stateCodec();
+        int[] posn = new int[4], next = new int[4];
+        for (int i = 0; i < 3000; i += 1) {
+            mach.getRotors(posn);
+            long state = mach.state();
+            assertEquals(codec.encode(posn), state);
+            System.arraycopy(posn, 0, next, 0, 4);
+            mach.step(next);
+            assertEquals(codec.encode(next), mach.step(state));
+            other.setState(state);
+            assertEquals("character " + i, mach.convert(i % 26),
+                    other.convert(i % 26));
+            assertEquals(mach.state(), other.state());
+        }
+        long[] words = new long[codec.words()];
+        mach.state(words);
+        assertEquals(mach.state(), words[0]);
+    }
+
+    @Test
+    public void testTableCache() throws IOException {
+        Path dir = Files.createTempDirectory("tables");
+        TableCache cache = new TableCache(dir.toString());
+        Machine builder = freshMach1();
+        assertNull(cache.find(builder));
+        builder.setTableCache(cache);
+        builder.setStateTableBudget(1 << 20, 0);
+        Machine stepped = freshMach1();
+        stepped.setStateTableBudget(0, -1);
+        Machine loader = freshMach1();
+        loader.setTableCache(cache);
+        loader.setStateTableBudget(1 << 20, Long.MAX_VALUE);
+        for (int i = 0; i < 2000; i += 1) {
+            int c = (i * 7) % 26;
+            int expected = stepped.convert(c);
+            assertEquals("character " + i, expected, builder.convert(c));
+            assertEquals("character " + i, expected, loader.convert(c));
+        }
+        assertNotNull(cache.find(freshMach1()));
+        Machine other = freshMach1();
+        other.setPlugboard(new Permutation("(AQ)", AZ));
+        assertNull(cache.find(other));
+        try (DirectoryStream<Path> entries =
+                 Files.newDirectoryStream(dir, "*.etab")) {
+            for (Path entry : entries) {
+                Files.write(entry, new byte[] { 1, 2, 3 });
+            }
+        }
+        assertNotNull(cache.find(freshMach1()));
+        assertNull(new TableCache(dir.toString()).find(freshMach1()));
+    }
+
+    @Test
+    public void testTableCacheLimit() throws IOException {
+        Path dir = Files.createTempDirectory("tables");
+        TableCache cache = new TableCache(dir.toString(), 2);
+        TableCache other = new TableCache(dir.toString());
+        String[] plugs = { "(AQ)", "(EZ)", "(MP)" };
+        for (String plug : plugs) {
+            Machine mach = freshMach1();
+            mach.setPlugboard(new Permutation(plug, AZ));
+            assertNull(cache.find(mach));
+            other.store(mach);
+            assertNotNull(cache.find(mach));
+        }
+        assertEquals(2, cache.mapped());
+        for (String plug : plugs) {
+            Machine mach = freshMach1();
+            mach.setPlugboard(new Permutation(plug, AZ));
+            assertNotNull(cache.find(mach));
+            assertTrue(cache.mapped() <= 2);
+        }
+    }
 }
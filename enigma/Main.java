@@ -1,13 +1,27 @@
 package enigma;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import java.util.Scanner;
-import java.util.ArrayList;
-import java.util.NoSuchElementException;
 
+import java.util.Arrays;
 import java.util.List;
 
 
@@ -33,14 +47,108 @@ public final class Main {
     public static void main(String... args) {
         try {
             CommandArgs options =
-                new CommandArgs("--verbose --=(.*){1,3}", args);
+                new CommandArgs("--verbose --metrics --config-cache=(.+) "
+                                + "--index=(\\d+) "
+                                + "--range=(\\d+:\\d+(?::\\d+)?) --line-index "
+                                + "--pipeline=(\\d+) --table-cache=(.+) "
+                                + "--batch=(\\d+) --normalize=(.+) "
+                                + "--validate --round-trip=(.+) --follow "
+                                + "--=(.*){1,3}", args);
             if (!options.ok()) {
-                throw error("Usage: java enigma.Main [--verbose] "
-                            + "[INPUT [OUTPUT]]");
+                throw error("Usage: java enigma.Main [--verbose] [--metrics] "
+                            + "[--config-cache=DIR] [--index=K] "
+                            + "[--range=[LINE:]START:END [--line-index]] "
+                            + "[--pipeline=N] [--table-cache=DIR] "
+                            + "[--normalize=OPTS] [--validate] "
+                            + "[--round-trip=FRACTION] "
+                            + "CONFIG [INPUT [OUTPUT]]\n"
+                            + "       java enigma.Main --batch=N [options] "
+                            + "CONFIG INPUTS OUTPUT-DIR\n"
+                            + "       java enigma.Main --follow [options] "
+                            + "CONFIG INPUT OUTPUT");
             }
 
             _verbose = options.contains("--verbose");
-            new Main(options.get("--")).process();
+            if (options.contains("--config-cache")) {
+                _configCache =
+                    new ConfigCache(options.get("--config-cache").get(0));
+            }
+            if (options.contains("--table-cache")) {
+                _tableCache =
+                    new TableCache(options.get("--table-cache").get(0));
+            }
+            if (options.contains("--metrics")) {
+                Metrics.enable(true);
+            }
+            if (Metrics.enabled()) {
+                Metrics.register();
+            }
+            if (options.contains("--index")) {
+                _indexInterval =
+                    Integer.parseInt(options.get("--index").get(0));
+            }
+            _normalization = options.contains("--normalize")
+                ? options.get("--normalize").get(0) : "";
+            _lineIndex = options.contains("--line-index");
+            if (_lineIndex && !options.contains("--range")) {
+                throw error("--line-index requires --range");
+            }
+            _validate = options.contains("--validate");
+            if (_validate && options.contains("--range")) {
+                throw error("--validate cannot be used with --range");
+            }
+            if (options.contains("--round-trip")) {
+                _roundTripFraction =
+                    fraction(options.get("--round-trip").get(0));
+                if (options.contains("--range")) {
+                    throw error("--round-trip cannot be used with --range");
+                }
+            }
+            if (options.contains("--pipeline")) {
+                _pipelineDepth =
+                    Integer.parseInt(options.get("--pipeline").get(0));
+            }
+            if (options.contains("--follow")) {
+                for (String other : FOLLOW_EXCLUDES) {
+                    if (options.contains(other)) {
+                        throw error("--follow cannot be used with %s", other);
+                    }
+                }
+                follow(options.get("--"));
+                return;
+            }
+            if (options.contains("--batch")) {
+                if (batch(options.get("--"),
+                          Integer.parseInt(options.get("--batch").get(0)),
+                          options.contains("--range"))) {
+                    return;
+                }
+                System.exit(1);
+            }
+            Main main = new Main(options.get("--"));
+            try {
+                if (options.contains("--range")) {
+                    String[] range =
+                        options.get("--range").get(0).split(":");
+                    int k = range.length - 2;
+                    main.processRange(k == 0 ? 2 : Long.parseLong(range[0]),
+                                      Long.parseLong(range[k]),
+                                      Long.parseLong(range[k + 1]));
+                } else if (_pipelineDepth > 0) {
+                    main.processPipelined();
+                } else {
+                    main.process();
+                }
+            } finally {
+                main._output.flush();
+            }
+            main.flush();
+            if (Metrics.enabled()) {
+                System.err.printf("Metrics: %s%n", Metrics.summary());
+                System.err.printf("Settings cache: %d hits, %d misses%n",
+                                  main._settingsCache.hits(),
+                                  main._settingsCache.misses());
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -48,12 +156,109 @@ public final class Main {
         System.exit(1);
     }
 
+    /** Return the fraction given by option value VALUE. */
+    private static double fraction(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException excp) {
+            throw error("bad fraction: %s", value);
+        }
+    }
+
+    /** Convert each file named by INPUTS (a directory or a glob) from
+     *  ARGS, which must be a configuration file, INPUTS and an output
+     *  directory, into a file of the same name in the output directory,
+     *  converting up to PARALLELISM files at a time (all available
+     *  processors if 0), and print a summary.  RANGE is true iff --range
+     *  was given, which is not allowed.  Returns true iff every file was
+     *  converted. */
+    private static boolean batch(List<String> args, int parallelism,
+                                 boolean range) {
+        if (args.size() != 3) {
+            throw error("--batch requires CONFIG INPUTS OUTPUT-DIR");
+        }
+        if (range) {
+            throw error("--batch cannot be used with --range");
+        }
+        boolean timed = Metrics.enabled();
+        long start = Metrics.start(timed);
+        MachineConfig config = _configCache != null
+            ? _configCache.load(args.get(0)) : ConfigParser.parse(args.get(0));
+        Metrics.end(Metrics.READ_CONFIG, timed, start, 0);
+        Batch batch = new Batch(config, Batch.inputs(args.get(1)),
+                                Path.of(args.get(2)),
+                                parallelism == 0
+                                ? Runtime.getRuntime().availableProcessors()
+                                : parallelism);
+        List<Batch.Result> results = batch.run();
+        batch.report(results, System.out);
+        if (Metrics.enabled()) {
+            System.err.printf("Metrics: %s%n", Metrics.summary());
+        }
+        return results.stream().allMatch(r -> r.error() == null);
+    }
+
+    /** Convert the messages appended to the input named by ARGS, which
+     *  must be a configuration file, an input file and an output file, as
+     *  they arrive, until interrupted (see Follower). */
+    private static void follow(List<String> args) {
+        if (args.size() != 3) {
+            throw error("--follow requires CONFIG INPUT OUTPUT");
+        }
+        MachineConfig config = _configCache != null
+            ? _configCache.load(args.get(0)) : ConfigParser.parse(args.get(0));
+        Normalizer normalizer =
+            Normalizer.parse(config.alphabet(), _normalization);
+        new Follower(config, normalizer, Path.of(args.get(1)),
+                     Path.of(args.get(2))).run(0);
+    }
+
+    /** Apply CONFIG to the messages in file INPUT, writing the results to
+     *  file OUTPUT, as for main with the current options. */
+    static void convertFile(MachineConfig config, Path input, Path output) {
+        try (PrintStream out = new PrintStream(new BufferedOutputStream(
+                 Files.newOutputStream(output)))) {
+            Main main = new Main(config, input.toString(), out,
+                                 output.toString());
+            try {
+                if (_pipelineDepth > 0) {
+                    main.processPipelined();
+                } else {
+                    main.process();
+                }
+            } finally {
+                main._input.close();
+            }
+            if (out.checkError()) {
+                throw error("could not write %s", output);
+            }
+        } catch (IOException excp) {
+            throw error("could not open %s", output);
+        }
+    }
+
+    /** Prepare to apply CONFIG to the messages in the file named INPUT,
+     *  sending the results to OUTPUT, which writes the file named
+     *  OUTPUTNAME (see convertFile). */
+    private Main(MachineConfig config, String input, PrintStream output,
+                 String outputName) {
+        _config = config;
+        _inputName = input;
+        _input = getInput(input);
+        _output = output;
+        if (_indexInterval > 0) {
+            _index = new StateIndex(_indexInterval);
+            _indexName = outputName + ".idx";
+        }
+    }
+
     /** Open the necessary files for non-option arguments ARGS (see comment
       *  on main). */
     Main(List<String> args) {
-        _config = getInput(args.get(0));
+        _configName = args.get(0);
 
         if (args.size() > 1) {
+            _inputName = args.get(1);
             _input = getInput(args.get(1));
         } else {
             _input = new Scanner(System.in);
@@ -64,6 +269,14 @@ public final class Main {
         } else {
             _output = System.out;
         }
+
+        if (_indexInterval > 0) {
+            if (args.size() <= 2) {
+                throw error("--index requires an output file");
+            }
+            _index = new StateIndex(_indexInterval);
+            _indexName = args.get(2) + ".idx";
+        }
     }
 
     /** Return a Scanner reading from the file named NAME. */
@@ -78,7 +291,8 @@ public final class Main {
     /** Return a PrintStream writing to the file named NAME. */
     private PrintStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new PrintStream(new BufferedOutputStream(
+                new FileOutputStream(name)));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -87,117 +301,298 @@ public final class Main {
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
-    private void process() {
+    void process() {
+        long begin = System.nanoTime();
+        long allocation = Metrics.allocationMark();
+        boolean timed = Metrics.enabled();
+        long start = Metrics.start(timed);
         Machine machine = readConfig();
+        Normalizer normalizer =
+            Normalizer.parse(machine.alphabet(), _normalization);
+        Metrics.end(Metrics.READ_CONFIG, timed, start, 0);
+        if (_validate) {
+            validate(normalizer);
+        }
+        RoundTrip roundTrip = _roundTripFraction == 0 ? null
+            : new RoundTrip(config(), normalizer, _encoder.charset(),
+                            Runtime.getRuntime().availableProcessors(),
+                            ROUND_TRIP_QUEUE, _roundTripFraction);
+        int[] positions = new int[machine.numRotors() - 1];
         String n = _input.nextLine();
-        if (!n.contains("*")) {
+        if (!LineFormat.isSettings(n)) {
             throw new EnigmaException("Have to contain *");
         }
+        String settings = n;
+        int line = 1;
         while (n != null) {
-            if (n.contains("*")) {
+            if (LineFormat.isSettings(n)) {
+                timed = Metrics.enabled();
+                start = Metrics.start(timed);
                 setUp(machine, n);
+                if (_index != null) {
+                    _index.setUp(line);
+                }
+                settings = n;
+                Metrics.end(Metrics.SET_UP, timed, start, 0);
             } else if (n.equals("")) {
                 _output.println();
             } else {
-                n = n.replaceAll("\\s", "");
-                printMessageLine(machine.convert(n));
+                if (_buffer.length < n.length()) {
+                    _buffer = new char[Math.max(n.length(),
+                                                2 * _buffer.length)];
+                }
+                boolean check = roundTrip != null && roundTrip.sampled();
+                if (check) {
+                    machine.getRotors(positions);
+                }
+                timed = Metrics.enabled();
+                start = Metrics.start(timed);
+                int length;
+                if (_index != null) {
+                    String msg =
+                        new String(_buffer, 0,
+                                   normalizer.normalize(n, line, _buffer));
+                    String result = _index.convert(machine, line, msg);
+                    result.getChars(0, result.length(), _buffer, 0);
+                    length = result.length();
+                } else {
+                    length = normalizer.convert(machine, n, line, _buffer);
+                }
+                Metrics.end(Metrics.CONVERT, timed, start, length);
+                timed = Metrics.enabled();
+                start = Metrics.start(timed);
+                printMessageLine(_buffer, length);
+                Metrics.end(Metrics.OUTPUT, timed, start, length);
+                if (check) {
+                    roundTrip.submit(line, settings, positions, n,
+                                     _lineBytes.array(),
+                                     _lineBytes.position());
+                }
             }
             if (_input.hasNextLine()) {
                 n = _input.nextLine();
+                line += 1;
             } else {
                 n = null;
             }
         }
+        if (_index != null) {
+            _index.write(Path.of(_indexName));
+        }
+        if (roundTrip != null) {
+            reportRoundTrip(roundTrip);
+        }
+        Metrics.allocated(allocation, System.nanoTime() - begin);
+    }
 
+    /** Wait for ROUNDTRIP to finish checking, reporting each message
+     *  that did not survive the round trip on the standard error. */
+    private void reportRoundTrip(RoundTrip roundTrip) {
+        List<RoundTrip.Failure> failures = roundTrip.finish();
+        String name = _inputName == null ? "input" : _inputName;
+        for (RoundTrip.Failure failure : failures) {
+            System.err.printf("%s: round trip failed: %s%n", name, failure);
+        }
+        if (!failures.isEmpty()) {
+            throw error("%d messages in %s failed the round trip",
+                        failures.size(), name);
+        }
     }
 
-    /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+    /** Do the work of process, reading, converting and writing on
+     *  separate threads connected by a Pipeline of _pipelineDepth chunks,
+     *  so that input and output overlap conversion. */
+    void processPipelined() {
+        if (_index != null) {
+            throw error("--pipeline cannot be used with --index");
+        }
+        if (_roundTripFraction != 0) {
+            throw error("--pipeline cannot be used with --round-trip");
+        }
+        long begin = System.nanoTime();
+        long allocation = Metrics.allocationMark();
+        boolean timed = Metrics.enabled();
+        long start = Metrics.start(timed);
+        Machine machine = readConfig();
+        Normalizer normalizer =
+            Normalizer.parse(machine.alphabet(), _normalization);
+        Metrics.end(Metrics.READ_CONFIG, timed, start, 0);
+        if (_validate) {
+            validate(normalizer);
+        }
+        Reader input;
         try {
-            _alphabet = new Alphabet(_config.next());
-            int a = _config.nextInt();
-            int b = _config.nextInt();
-            ArrayList<Rotor> rotor = new ArrayList<>();
-            if (!_config.hasNext()) {
-                throw new EnigmaException("Does noe Exist");
-            }
-            _ringStr = _config.next();
-            while (_config.hasNext(".*")) {
-                rotor.add(readRotor());
+            input = new InputStreamReader(_inputName == null ? System.in
+                                          : new FileInputStream(_inputName),
+                                          Charset.defaultCharset());
+        } catch (IOException excp) {
+            throw error("could not open %s", _inputName);
+        }
+        Writer output = new OutputStreamWriter(_output,
+                                               Charset.defaultCharset());
+        try (input) {
+            new Pipeline(_pipelineDepth, PIPELINE_CHUNK)
+                .run(input, output, machine, s -> setUp(machine, s),
+                     normalizer);
+        } catch (IOException excp) {
+            throw error("could not read %s", _inputName);
+        }
+        Metrics.allocated(allocation, System.nanoTime() - begin);
+    }
+
+    /** Configure an Enigma machine from the contents of configuration
+     *  file _configName and send the conversion of characters FROM <= K
+     *  < TO of message line number LINE of input file _inputName to
+     *  _output, as process would convert them, cleaning lines as
+     *  --normalize specifies.  Only the bytes holding those characters
+     *  are converted, and only those and the bytes before them are read
+     *  (see RangeDecryptor).  With --line-index, the line is looked for
+     *  from the nearest checkpoint in the LineIndex kept in the file
+     *  _inputName.lines, which is brought up to date. */
+    private void processRange(long line, long from, long to) {
+        if (_inputName == null) {
+            throw error("--range requires an input file");
+        }
+        Machine machine = readConfig();
+        Normalizer normalizer =
+            Normalizer.parse(machine.alphabet(), _normalization);
+        Path input = Path.of(_inputName);
+        Path indexName = Path.of(_inputName + ".lines");
+        try (FileChannel channel = FileChannel.open(input)) {
+            LineIndex index = !_lineIndex ? null
+                : LineIndex.read(indexName,
+                                 LineIndex.key(machine.alphabet(),
+                                               _normalization),
+                                 channel.size(),
+                                 Files.getLastModifiedTime(input).toMillis());
+            RangeDecryptor.Line found =
+                RangeDecryptor.find(channel, line, normalizer, index);
+            if (index != null && index.changed()) {
+                index.write(indexName);
             }
-            return new Machine(_alphabet, a, b, rotor);
-        } catch (NoSuchElementException excp) {
-            throw error("Configuration file Error");
+            setUp(machine, found.settings().trim());
+            machine.skip(found.before());
+            RangeDecryptor range =
+                new RangeDecryptor(machine, normalizer, channel, found);
+            printMessageLine(range.convert(from, to));
+        } catch (IOException excp) {
+            throw error("could not read %s", _inputName);
         }
     }
 
-    /** Return a rotor, reading its description from _config. */
-    private Rotor readRotor() {
-        try {
-            String name = _ringStr;
-            String type = _config.next();
-            String cycles = "";
-            String n = _config.next();
-            if (type == null || type.startsWith("(")) {
-                throw new EnigmaException("Type Error");
-            }
-            while (n.startsWith("(") && _config.hasNext()) {
-                cycles += n + " ";
-                n = _config.next();
-                _ringStr = n;
-            }
-            if (!_config.hasNext()) {
-                cycles += n;
-            }
-            Permutation perm = new Permutation(cycles, _alphabet);
-            if (type.charAt(0) == 'N') {
-                return new FixedRotor(name, perm);
-            } else if (type.charAt(0) == 'M') {
-                return new MovingRotor(name, perm, type.substring(1));
-            } else {
-                return new Reflector(name, perm);
+    /** Check every line of input file _inputName against the
+     *  configuration and NORMALIZER before any of it is converted,
+     *  reporting each problem found on the standard error.  If there are
+     *  none, settings lines are afterwards applied without the checks
+     *  that validation has already made. */
+    private void validate(Normalizer normalizer) {
+        if (_inputName == null) {
+            throw error("--validate requires an input file");
+        }
+        List<Validator.Diagnostic> problems =
+            new Validator(config(), normalizer)
+            .validate(Path.of(_inputName),
+                      Runtime.getRuntime().availableProcessors(),
+                      VALIDATION_LIMIT);
+        if (!problems.isEmpty()) {
+            for (Validator.Diagnostic problem : problems) {
+                System.err.printf("%s: %s%n", _inputName, problem);
             }
-        } catch (NoSuchElementException excp) {
-            throw error("Bad Rotor");
+            throw error("%s%d problems in %s",
+                        problems.size() == VALIDATION_LIMIT ? "at least "
+                        : "", problems.size(), _inputName);
+        }
+        _trusted = true;
+    }
+
+    /** Return the machine configuration, reading it from configuration
+     *  file _configName into _config if that has not been done. */
+    private MachineConfig config() {
+        if (_config == null) {
+            _config = _configCache != null ? _configCache.load(_configName)
+                : ConfigParser.parse(_configName);
         }
+        return _config;
+    }
+
+    /** Return an Enigma machine configured by _config, if it has been
+     *  read, and otherwise from the contents of configuration file
+     *  _configName. */
+    private Machine readConfig() {
+        Machine machine = config().newMachine();
+        machine.setTableCache(_tableCache);
+        return machine;
     }
+
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
+     *  which must have the format specified in the assignment.  Settings
+     *  lines seen before are taken from _settingsCache. */
     private void setUp(Machine M, String settings) {
-        String[] r = new String[M.numRotors()];
-        Scanner setting = new Scanner(settings);
-        setting.next();
-        for (int i = 0; i < M.numRotors(); i++) {
-            String ar = setting.next();
-            r[i] = ar;
-        }
-        M.insertRotors(r);
-        if (!setting.hasNext()) {
+        SettingsCache.Settings prepared = _settingsCache.get(settings);
+        if (prepared == null) {
+            prepared = prepare(M, settings, _trusted);
+            _settingsCache.put(settings, prepared);
+        }
+        prepared.apply(M);
+    }
+
+    /** Return the settings for M given on SETTINGS, which must have the
+     *  format specified in the assignment. */
+    static SettingsCache.Settings prepare(Machine M, String settings) {
+        return prepare(M, settings, false);
+    }
+
+    /** Return the settings for M given on SETTINGS, as for
+     *  prepare(Machine, String).  If TRUSTED, SETTINGS has passed a
+     *  Validator, so the rotors are not checked against M's slots and
+     *  the positions and rings are not checked. */
+    static SettingsCache.Settings prepare(Machine M, String settings,
+                                          boolean trusted) {
+        Alphabet alphabet = M.alphabet();
+        String[] words = settings.trim().split("\\s+");
+        int n = M.numRotors();
+        if (words.length <= n) {
             throw new EnigmaException("rotor setting unable");
         }
-        String sr = setting.next();
-        if (sr.equals("") || sr.startsWith("(")) {
+        Rotor[] rotors =
+            M.findRotors(Arrays.copyOfRange(words, 1, n + 1), !trusted);
+        if (words.length == n + 1 || words[n + 1].startsWith("(")) {
             throw new EnigmaException("rotor setting unable");
         }
-        String quote = "";
-        String quote2 = "";
-        if (setting.hasNext()) {
-            quote = setting.next();
+        String sr = words[n + 1];
+        int k = n + 2;
+        String ring = "";
+        if (k < words.length && !words[k].startsWith("(")) {
+            ring = words[k];
+            k += 1;
         }
-        if (!quote.equals("") && !quote.startsWith("(")) {
-            sr = sr.concat(" " + quote);
-        } else if (!quote.equals("")) {
-            quote2 = quote2.concat(quote + " ");
+        String cycles = String.join(" ",
+                                    Arrays.asList(words).subList(k,
+                                                                 words.length));
+        if (!trusted && (sr.length() != n - 1
+                         || !ring.isEmpty() && ring.length() != n - 1)) {
+            throw new EnigmaException("rotor setting unable");
         }
-        while (setting.hasNext()) {
-            quote2 = quote2.concat(setting.next() + " ");
+        int[] positions = new int[sr.length()];
+        int[] rings = new int[sr.length()];
+        for (int i = 0; i < sr.length(); i += 1) {
+            positions[i] = trusted ? alphabet.indexOf(sr.charAt(i))
+                : alphabet.toInt(sr.charAt(i));
+            if (!ring.isEmpty()) {
+                rings[i] = trusted ? alphabet.indexOf(ring.charAt(i))
+                    : alphabet.toInt(ring.charAt(i));
+            }
         }
-        M.setRotors(sr);
-        if (quote2.length() != 0) {
-            M.setPlugboard(new Permutation(quote2, _alphabet));
-        } else {
-            M.setPlugboard(new Permutation("", _alphabet));
+        return new SettingsCache.Settings(rotors, positions, rings,
+                                          new Permutation(cycles,
+                                                          alphabet));
+    }
+
+    /** Flush my output, throwing an EnigmaException if any of it could
+     *  not be written. */
+    void flush() {
+        if (_output.checkError()) {
+            throw error("could not write output");
         }
     }
 
@@ -209,29 +604,124 @@ public final class Main {
     /** Print MSG in groups of five (except that the last group may
      *  have fewer letters). */
     private void printMessageLine(String msg) {
-        for (int i = 0; i < msg.length(); i++) {
-            _output.print(msg.charAt(i));
-            if ((i != msg.length() - 1) && (i % 5 == 4)) {
-                _output.print(" ");
-            }
-        }
-        _output.print("\r\n");
+        printMessageLine(msg.toCharArray(), msg.length());
     }
 
-    /** Alphabet used in this machine. */
-    private Alphabet _alphabet;
+    /** Print MSG[0 .. LENGTH-1] in groups of five, as for
+     *  printMessageLine(String). */
+    private void printMessageLine(char[] msg, int length) {
+        int size = LineFormat.size(length);
+        if (_line.length < size) {
+            _line = new char[Math.max(size, 2 * _line.length)];
+            _lineChars = CharBuffer.wrap(_line);
+            _lineBytes = ByteBuffer.allocate(
+                (int) Math.ceil(_line.length * _encoder.maxBytesPerChar()));
+        }
+        int k = LineFormat.group(msg, 0, length, 0, _line, 0);
+        LineFormat.MESSAGE_END.getChars(0, LineFormat.MESSAGE_END.length(),
+                                        _line, k);
+        k += LineFormat.MESSAGE_END.length();
+        _lineChars.clear().limit(k);
+        _lineBytes.clear();
+        _encoder.reset().encode(_lineChars, _lineBytes, true);
+        _encoder.flush(_lineBytes);
+        _output.write(_lineBytes.array(), 0, _lineBytes.position());
+    }
 
     /** Source of input messages. */
     private Scanner _input;
 
-    /** Source of machine configuration. */
-    private Scanner _config;
+    /** Name of the input file, or null for the standard input. */
+    private String _inputName;
+
+    /** Name of the machine configuration file. */
+    private String _configName;
+
+    /** The machine configuration, if already read, or null. */
+    private MachineConfig _config;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
 
     /** True if --verbose specified. */
     private static boolean _verbose;
-    /** */
-    private String _ringStr = "";
+
+    /** Cache of compiled configurations, or null if none was
+     *  specified. */
+    private static ConfigCache _configCache;
+
+    /** Cache of state tables, or null if none was specified. */
+    private static TableCache _tableCache;
+
+    /** Characters between state index snapshots, or 0 if no index is
+     *  to be written. */
+    private static int _indexInterval;
+
+    /** State index recorded for the output, or null. */
+    private StateIndex _index;
+
+    /** Prepared settings of the settings lines seen so far. */
+    private final SettingsCache _settingsCache =
+        new SettingsCache(SETTINGS_CACHE_ENTRIES, SETTINGS_CACHE_BYTES);
+
+    /** Largest number of entries in _settingsCache. */
+    private static final int SETTINGS_CACHE_ENTRIES = 4096;
+
+    /** Largest estimated size of _settingsCache, in bytes. */
+    private static final long SETTINGS_CACHE_BYTES = 1 << 24;
+
+    /** Number of chunks in the pipeline, or 0 for no pipeline. */
+    private static int _pipelineDepth;
+
+    /** Number of message characters in each pipeline chunk. */
+    private static final int PIPELINE_CHUNK = 1 << 14;
+
+    /** Name of the file to which _index is written. */
+    private String _indexName;
+
+    /** Normalization options for message lines (see Normalizer.parse). */
+    private static String _normalization = "";
+
+    /** True if --line-index specified. */
+    private static boolean _lineIndex;
+
+    /** True if --validate specified. */
+    private static boolean _validate;
+
+    /** Largest number of problems reported by validation. */
+    private static final int VALIDATION_LIMIT = 100;
+
+    /** True iff the input has passed validation, so that settings lines
+     *  need not be checked again. */
+    private boolean _trusted;
+
+    /** Fraction of messages checked by a round trip, or 0 if
+     *  --round-trip was not specified. */
+    private static double _roundTripFraction;
+
+    /** Largest number of messages waiting for a round-trip check. */
+    private static final int ROUND_TRIP_QUEUE = 256;
+
+    /** Options that cannot be used with --follow. */
+    private static final String[] FOLLOW_EXCLUDES = {
+        "--batch", "--range", "--pipeline", "--index", "--validate",
+        "--round-trip"
+    };
+
+    /** Holds the converted message line being printed. */
+    private char[] _buffer = new char[0];
+
+    /** Holds the message line being printed, in groups. */
+    private char[] _line = new char[0];
+
+    /** Views _line as a buffer. */
+    private CharBuffer _lineChars = CharBuffer.wrap(_line);
+
+    /** Holds the encoding of _line. */
+    private ByteBuffer _lineBytes = ByteBuffer.allocate(0);
+
+    /** Encodes printed message lines, as a PrintStream would. */
+    private final CharsetEncoder _encoder = Charset.defaultCharset()
+        .newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
 }
@@ -0,0 +1,358 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import static enigma.EnigmaException.*;
+
+/** Counters and JFR events describing the work done by Main and Machine.
+ *  Collection is switched on with --metrics, the enigma.metrics system
+ *  property, or at run time through JMX.  While it is off, each hook
+ *  costs one volatile read.  Counters are striped LongAdders, so threads
+ *  converting in parallel do not contend on them.
+ *  @author Jeonghyun Lee
+ */
+final class Metrics implements MetricsMXBean {
+
+    /** Section number for reading the configuration. */
+    static final int READ_CONFIG = 0;
+    /** Section number for processing a settings line. */
+    static final int SET_UP = 1;
+    /** Section number for converting a message line. */
+    static final int CONVERT = 2;
+    /** Section number for printing a converted line. */
+    static final int OUTPUT = 3;
+
+    /** Names of the sections, indexed by section number. */
+    private static final String[] SECTIONS = {
+        "readConfig", "setUp", "convert", "output"
+    };
+
+    /** Name under which the MXBean is registered. */
+    static final String OBJECT_NAME = "enigma:type=Metrics";
+
+    /** The single instance, published through JMX. */
+    private static final Metrics INSTANCE = new Metrics();
+
+    /** Nanoseconds per second. */
+    private static final double NANOS = 1e9;
+
+    /** Metrics are not instantiated outside this class. */
+    private Metrics() {
+        for (int i = 0; i < _nanos.length; i += 1) {
+            _nanos[i] = new LongAdder();
+        }
+    }
+
+    /** Return the single instance. */
+    static Metrics instance() {
+        return INSTANCE;
+    }
+
+    /** Return true iff metrics are being collected.  This is the only
+     *  cost paid by the hooks while collection is off. */
+    static boolean enabled() {
+        return _enabled;
+    }
+
+    /** Turn collection on iff ON. */
+    static void enable(boolean on) {
+        _enabled = on;
+    }
+
+    /** Register the MXBean with the platform MBean server, if that has
+     *  not already been done. */
+    static synchronized void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(INSTANCE, name);
+            }
+        } catch (JMException excp) {
+            throw error("could not register metrics: %s", excp.getMessage());
+        }
+    }
+
+    /** Return the start time of a section timed iff TIMED, which is
+     *  normally the value of enabled() as the section begins: the
+     *  current System.nanoTime() if TIMED, and otherwise 0.  The result
+     *  is meaningful only when TIMED, since nanoTime may itself be 0 or
+     *  negative; pass TIMED to end() as well. */
+    static long start(boolean timed) {
+        return timed ? System.nanoTime() : 0;
+    }
+
+    /** Record the end of SECTION, begun at START (as returned by
+     *  start(TIMED)), which handled CHARS characters.  Does nothing
+     *  unless TIMED, so that turning collection on or off during the
+     *  section does not record a bogus time. */
+    static void end(int section, boolean timed, long start, long chars) {
+        if (!timed) {
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        INSTANCE._nanos[section].add(elapsed);
+        SectionEvent event = new SectionEvent();
+        if (event.shouldCommit()) {
+            event.section = SECTIONS[section];
+            event.nanos = elapsed;
+            event.chars = chars;
+            event.commit();
+        }
+    }
+
+    /** Record the conversion of a message line of LENGTH characters. */
+    static void message(int length) {
+        INSTANCE._messages.increment();
+        INSTANCE._chars.add(length);
+        INSTANCE._longest.accumulate(length);
+    }
+
+    /** Record one step of the rotor in SLOT. */
+    static void step(int slot) {
+        LongAdder[] steps = INSTANCE._steps;
+        if (slot >= steps.length) {
+            steps = INSTANCE.grow(slot + 1, false);
+        }
+        steps[slot].increment();
+    }
+
+    /** Record that the rotor in SLOT is about to move only because it is
+     *  at its own notch (a double step).  The step itself is recorded
+     *  separately by step(). */
+    static void doubleStep(int slot) {
+        LongAdder[] doubles = INSTANCE._doubleSteps;
+        if (slot >= doubles.length) {
+            doubles = INSTANCE.grow(slot + 1, true);
+        }
+        doubles[slot].increment();
+        StepEvent event = new StepEvent();
+        if (event.shouldCommit()) {
+            event.slot = slot;
+            event.commit();
+        }
+    }
+
+    /** Return a marker for measuring allocation by the current thread,
+     *  or -1 if metrics are off or allocation cannot be measured.  Only
+     *  the calling thread's allocation is measured: work handed to other
+     *  threads must be marked and recorded on those threads (as
+     *  Pipeline's reader and writer do). */
+    static long allocationMark() {
+        if (!_enabled || !THREADS.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return THREADS.getThreadAllocatedBytes(Thread.currentThread()
+                                               .getId());
+    }
+
+    /** Record the allocation done by the current thread since MARK (as
+     *  returned by allocationMark()) over a period of NANOS
+     *  nanoseconds.  Threads working alongside one that records the
+     *  period pass 0 for NANOS, so that the allocation rate is the
+     *  total allocation over the elapsed time. */
+    static void allocated(long mark, long nanos) {
+        if (mark < 0) {
+            return;
+        }
+        INSTANCE._allocated.add(allocationMark() - mark);
+        INSTANCE._allocationNanos.add(nanos);
+    }
+
+    /** Return a one-line summary of the counters. */
+    static String summary() {
+        Metrics m = INSTANCE;
+        return String.format("%d chars in %d messages (%.0f chars/s); "
+                             + "readConfig %d us, setUp %d us, "
+                             + "convert %d us, output %d us; "
+                             + "%d bytes allocated",
+                             m.getCharsConverted(), m.getMessages(),
+                             m.getCharsPerSecond(),
+                             m.getReadConfigNanos() / 1000,
+                             m.getSetUpNanos() / 1000,
+                             m.getConvertNanos() / 1000,
+                             m.getOutputNanos() / 1000,
+                             m.getAllocatedBytes());
+    }
+
+    /** Make room for counters for at least SLOTS rotor slots, and return
+     *  the double step counters if DOUBLES, or else the step counters. */
+    private synchronized LongAdder[] grow(int slots, boolean doubles) {
+        if (_steps.length < slots || _doubleSteps.length < slots) {
+            LongAdder[] steps = new LongAdder[slots];
+            LongAdder[] doubleSteps = new LongAdder[slots];
+            for (int i = 0; i < slots; i += 1) {
+                steps[i] = i < _steps.length ? _steps[i] : new LongAdder();
+                doubleSteps[i] =
+                    i < _doubleSteps.length ? _doubleSteps[i]
+                    : new LongAdder();
+            }
+            _doubleSteps = doubleSteps;
+            _steps = steps;
+        }
+        return doubles ? _doubleSteps : _steps;
+    }
+
+    /** Return the current values of COUNTERS. */
+    private static long[] sums(LongAdder[] counters) {
+        long[] result = new long[counters.length];
+        for (int i = 0; i < counters.length; i += 1) {
+            result[i] = counters[i].sum();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return _enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean on) {
+        enable(on);
+    }
+
+    @Override
+    public synchronized void reset() {
+        _chars.reset();
+        _messages.reset();
+        _longest.reset();
+        _allocated.reset();
+        _allocationNanos.reset();
+        for (LongAdder counter : _nanos) {
+            counter.reset();
+        }
+        _steps = new LongAdder[0];
+        _doubleSteps = new LongAdder[0];
+    }
+
+    @Override
+    public long getCharsConverted() {
+        return _chars.sum();
+    }
+
+    @Override
+    public long getMessages() {
+        return _messages.sum();
+    }
+
+    @Override
+    public long getLongestMessage() {
+        return _longest.get();
+    }
+
+    @Override
+    public double getCharsPerSecond() {
+        long nanos = getConvertNanos();
+        return nanos == 0 ? 0.0 : getCharsConverted() * NANOS / nanos;
+    }
+
+    @Override
+    public long getReadConfigNanos() {
+        return _nanos[READ_CONFIG].sum();
+    }
+
+    @Override
+    public long getSetUpNanos() {
+        return _nanos[SET_UP].sum();
+    }
+
+    @Override
+    public long getConvertNanos() {
+        return _nanos[CONVERT].sum();
+    }
+
+    @Override
+    public long getOutputNanos() {
+        return _nanos[OUTPUT].sum();
+    }
+
+    @Override
+    public long[] getRotorSteps() {
+        return sums(_steps);
+    }
+
+    @Override
+    public long[] getDoubleSteps() {
+        return sums(_doubleSteps);
+    }
+
+    @Override
+    public long getAllocatedBytes() {
+        return _allocated.sum();
+    }
+
+    @Override
+    public double getAllocationRate() {
+        long nanos = _allocationNanos.sum();
+        return nanos == 0 ? 0.0 : getAllocatedBytes() * NANOS / nanos;
+    }
+
+    /** JFR event recording the time spent in one section of the work. */
+    @Name("enigma.Section")
+    @Label("Enigma Section")
+    @Category("Enigma")
+    static class SectionEvent extends Event {
+        /** Which section (see SECTIONS). */
+        @Label("Section")
+        String section;
+
+        /** Time spent in the section. */
+        @Label("Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long nanos;
+
+        /** Characters handled in the section. */
+        @Label("Characters")
+        long chars;
+    }
+
+    /** JFR event recording a double step. */
+    @Name("enigma.DoubleStep")
+    @Label("Enigma Double Step")
+    @Category("Enigma")
+    static class StepEvent extends Event {
+        /** Slot of the rotor that double-stepped. */
+        @Label("Slot")
+        int slot;
+    }
+
+    /** Source of per-thread allocation counts. */
+    private static final com.sun.management.ThreadMXBean THREADS =
+        (com.sun.management.ThreadMXBean)
+        ManagementFactory.getThreadMXBean();
+
+    /** True iff metrics are being collected. */
+    private static volatile boolean _enabled =
+        Boolean.getBoolean("enigma.metrics");
+
+    /** Characters converted. */
+    private final LongAdder _chars = new LongAdder();
+    /** Message lines converted. */
+    private final LongAdder _messages = new LongAdder();
+    /** Longest message line converted. */
+    private final LongAccumulator _longest =
+        new LongAccumulator(Math::max, 0);
+    /** Nanoseconds spent in each section. */
+    private final LongAdder[] _nanos = new LongAdder[SECTIONS.length];
+    /** Steps per rotor slot. */
+    private volatile LongAdder[] _steps = new LongAdder[0];
+    /** Double steps per rotor slot. */
+    private volatile LongAdder[] _doubleSteps = new LongAdder[0];
+    /** Bytes allocated while measured. */
+    private final LongAdder _allocated = new LongAdder();
+    /** Nanoseconds over which allocation was measured. */
+    private final LongAdder _allocationNanos = new LongAdder();
+}
@@ -0,0 +1,57 @@
+package enigma;
+
+/** Management interface through which the counters kept by Metrics are
+ *  published over JMX (object name enigma:type=Metrics).
+ *  @author Jeonghyun Lee
+ */
+public interface MetricsMXBean {
+
+    /** Return true iff metrics are being collected. */
+    boolean isEnabled();
+
+    /** Turn metric collection on iff ON. */
+    void setEnabled(boolean on);
+
+    /** Clear all counters. */
+    void reset();
+
+    /** Return the number of characters converted. */
+    long getCharsConverted();
+
+    /** Return the number of message lines converted. */
+    long getMessages();
+
+    /** Return the length of the longest message line converted. */
+    long getLongestMessage();
+
+    /** Return the conversion throughput in characters per second. */
+    double getCharsPerSecond();
+
+    /** Return the nanoseconds spent reading the configuration. */
+    long getReadConfigNanos();
+
+    /** Return the nanoseconds spent processing settings lines. */
+    long getSetUpNanos();
+
+    /** Return the nanoseconds spent converting messages. */
+    long getConvertNanos();
+
+    /** Return the nanoseconds spent writing output. */
+    long getOutputNanos();
+
+    /** Return the number of steps taken by the rotor in each slot. */
+    long[] getRotorSteps();
+
+    /** Return the number of double steps taken by the rotor in each
+     *  slot. */
+    long[] getDoubleSteps();
+
+    /** Return the bytes allocated by processing threads: the thread
+     *  running Main and the threads it starts to read, write and check
+     *  messages, each measured separately and summed. */
+    long getAllocatedBytes();
+
+    /** Return the allocation rate of processing threads in bytes per
+     *  second of elapsed time. */
+    double getAllocationRate();
+}
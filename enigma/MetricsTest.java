@@ -0,0 +1,136 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author Jeonghyun Lee
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkCounters() {
+        Metrics metrics = Metrics.instance();
+        boolean was = Metrics.enabled();
+        try {
+            metrics.reset();
+            Metrics.enable(true);
+            assertTrue(metrics.isEnabled());
+            Metrics.message(5);
+            Metrics.message(9);
+            Metrics.step(2);
+            Metrics.step(2);
+            Metrics.doubleStep(3);
+            Metrics.end(Metrics.CONVERT, true, System.nanoTime() - 1000, 14);
+            assertEquals(14, metrics.getCharsConverted());
+            assertEquals(2, metrics.getMessages());
+            assertEquals(9, metrics.getLongestMessage());
+            assertEquals(2, metrics.getRotorSteps()[2]);
+            assertEquals(0, metrics.getRotorSteps()[3]);
+            assertEquals(1, metrics.getDoubleSteps()[3]);
+            assertTrue(metrics.getConvertNanos() >= 1000);
+            assertTrue(metrics.getCharsPerSecond() > 0);
+            assertTrue(Metrics.summary().startsWith("14 chars in 2 messages"));
+            metrics.reset();
+            assertEquals(0, metrics.getCharsConverted());
+            assertEquals(0, metrics.getLongestMessage());
+            assertEquals(0, metrics.getConvertNanos());
+            assertEquals(0, metrics.getRotorSteps().length);
+            assertEquals(0, metrics.getDoubleSteps().length);
+        } finally {
+            Metrics.enable(was);
+        }
+    }
+
+    @Test
+    public void checkEnable() {
+        boolean was = Metrics.enabled();
+        try {
+            Metrics.instance().setEnabled(false);
+            assertFalse(Metrics.enabled());
+            assertEquals(-1, Metrics.allocationMark());
+            long before = Metrics.instance().getSetUpNanos();
+            boolean timed = Metrics.enabled();
+            long start = Metrics.start(timed);
+            Metrics.instance().setEnabled(true);
+            assertTrue(Metrics.enabled());
+            Metrics.end(Metrics.SET_UP, timed, start, 0);
+            assertEquals(before, Metrics.instance().getSetUpNanos());
+        } finally {
+            Metrics.enable(was);
+        }
+    }
+
+    @Test
+    public void checkStartAtZero() {
+        Metrics metrics = Metrics.instance();
+        boolean was = Metrics.enabled();
+        try {
+            metrics.reset();
+            Metrics.enable(true);
+            Metrics.end(Metrics.OUTPUT, true, 0, 1);
+            assertTrue(metrics.getOutputNanos() != 0);
+            metrics.reset();
+            Metrics.end(Metrics.OUTPUT, true, -1, 1);
+            assertTrue(metrics.getOutputNanos() != 0);
+        } finally {
+            metrics.reset();
+            Metrics.enable(was);
+        }
+    }
+
+    @Test
+    public void checkAllocationByThreads() throws InterruptedException {
+        Metrics metrics = Metrics.instance();
+        boolean was = Metrics.enabled();
+        try {
+            metrics.reset();
+            Metrics.enable(true);
+            if (Metrics.allocationMark() < 0) {
+                return;
+            }
+            Thread worker = new Thread(() -> {
+                long mark = Metrics.allocationMark();
+                byte[][] junk = new byte[64][];
+                for (int i = 0; i < junk.length; i += 1) {
+                    junk[i] = new byte[1 << 16];
+                }
+                Metrics.allocated(mark, 0);
+            });
+            worker.start();
+            worker.join();
+            assertTrue(metrics.getAllocatedBytes() >= 64 << 16);
+            assertEquals(0.0, metrics.getAllocationRate(), 0.0);
+        } finally {
+            metrics.reset();
+            Metrics.enable(was);
+        }
+    }
+
+    @Test
+    public void checkResetWhileCounting() throws InterruptedException {
+        Metrics metrics = Metrics.instance();
+        Thread resetter = new Thread(() -> {
+            for (int i = 0; i < 2000; i += 1) {
+                metrics.reset();
+            }
+        });
+        resetter.start();
+        while (resetter.isAlive()) {
+            for (int slot = 0; slot < 6; slot += 1) {
+                Metrics.step(slot);
+                Metrics.doubleStep(slot);
+            }
+        }
+        resetter.join();
+        metrics.reset();
+    }
+}
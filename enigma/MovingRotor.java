@@ -18,6 +18,10 @@ class MovingRotor extends Rotor {
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
         _notches = notches;
+        _notchAt = new boolean[perm.size()];
+        for (int i = 0; i < notches.length(); i += 1) {
+            _notchAt[perm.alphabet().toInt(notches.charAt(i))] = true;
+        }
     }
 
     @Override
@@ -32,11 +36,22 @@ class MovingRotor extends Rotor {
     }
 
     @Override
-    boolean atNotch() {
-        return _notches.indexOf
-                (permutation().alphabet().toChar(setting())) != -1;
+    boolean atNotch(int posn) {
+        return _notchAt[posn];
     }
 
-    /**  */
+    @Override
+    int stepsToNotch() {
+        for (int d = 0; d < _notchAt.length; d += 1) {
+            if (_notchAt[(setting() + d) % _notchAt.length]) {
+                return d;
+            }
+        }
+        return -1;
+    }
+
+    /** My notches, as characters of my alphabet. */
     private String _notches;
+    /** _notchAt[K] is true iff I have a notch at position K. */
+    private final boolean[] _notchAt;
 }
@@ -0,0 +1,165 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Cleans message lines for a machine in one pass.  Every possible char
+ *  is compiled in advance into an entry of a table holding either the
+ *  index in the alphabet it stands for, or a code saying that it is to
+ *  be skipped or is an error.  Blanks (the characters matched by \s in
+ *  a regular expression) are always skipped.  When folding, a character
+ *  not in the alphabet stands for its upper- or lower-case form if that
+ *  is.  Any other character is skipped or is an error, according to the
+ *  policy.  A Normalizer is immutable, so it may be shared by any
+ *  number of threads.
+ *  @author Jeonghyun Lee
+ */
+class Normalizer {
+
+    /** A normalizer for messages over ALPHA that folds case iff FOLD,
+     *  and skips characters that are neither blanks nor (after folding)
+     *  in ALPHA iff SKIP, treating them as errors otherwise. */
+    Normalizer(Alphabet alpha, boolean fold, boolean skip) {
+        _chars = new char[alpha.size()];
+        for (int k = 0; k < _chars.length; k += 1) {
+            _chars[k] = alpha.toChar(k);
+        }
+        _skip = skip;
+        _codes = new char[Character.MAX_VALUE + 1];
+        for (int c = 0; c < _codes.length; c += 1) {
+            char ch = (char) c;
+            int k = alpha.indexOf(ch);
+            if (k < 0 && fold) {
+                k = alpha.indexOf(Character.toUpperCase(ch));
+                if (k < 0) {
+                    k = alpha.indexOf(Character.toLowerCase(ch));
+                }
+            }
+            if (isBlank(ch)) {
+                _codes[c] = SKIP;
+            } else if (k >= 0) {
+                _codes[c] = (char) (k + FIRST);
+            } else {
+                _codes[c] = skip ? SKIP : ERROR;
+            }
+        }
+    }
+
+    /** Return a normalizer for messages over ALPHA described by SPEC, a
+     *  comma-separated list of the words "fold" (fold case), "skip"
+     *  (skip foreign characters) and "strict" (treat foreign characters
+     *  as errors, the default).  An empty SPEC gives the default
+     *  normalizer, which only removes blanks. */
+    static Normalizer parse(Alphabet alpha, String spec) {
+        boolean fold = false, skip = false;
+        for (String word : spec.split(",")) {
+            switch (word.trim()) {
+            case "":
+                break;
+            case "fold":
+                fold = true;
+                break;
+            case "skip":
+                skip = true;
+                break;
+            case "strict":
+                skip = false;
+                break;
+            default:
+                throw error("unknown normalization option: %s", word);
+            }
+        }
+        return new Normalizer(alpha, fold, skip);
+    }
+
+    /** Return the character of my alphabet that character C, at column
+     *  COLUMN of input line LINE, stands for, or -1 if it is to be
+     *  skipped. */
+    int normalize(char c, int line, int column) {
+        int code = _codes[c];
+        if (code == ERROR) {
+            throw foreign(c, line, column);
+        }
+        return code == SKIP ? -1 : _chars[code - FIRST];
+    }
+
+    /** Return true iff C may appear in a message, being a blank, skipped
+     *  or (after folding) in my alphabet. */
+    boolean accepts(char c) {
+        return _codes[c] != ERROR;
+    }
+
+    /** Return true iff I skip foreign characters rather than treating
+     *  them as errors. */
+    boolean skipsForeign() {
+        return _skip;
+    }
+
+    /** Store the characters of my alphabet that LINE, input line
+     *  LINENUM, stands for in OUT, which must be at least as long as
+     *  LINE, and return their number. */
+    int normalize(CharSequence line, int lineNum, char[] out) {
+        int n = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            int code = _codes[c];
+            if (code >= FIRST) {
+                out[n] = _chars[code - FIRST];
+                n += 1;
+            } else if (code == ERROR) {
+                throw foreign(c, lineNum, i + 1);
+            }
+        }
+        return n;
+    }
+
+    /** Convert the message that LINE, input line LINENUM, stands for with
+     *  MACHINE, store the result in OUT, which must be at least as long
+     *  as LINE, and return its length.  Each character is looked up and
+     *  converted as it is read. */
+    int convert(Machine machine, CharSequence line, int lineNum,
+                char[] out) {
+        int n = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            int code = _codes[c];
+            if (code >= FIRST) {
+                out[n] = _chars[machine.convert(code - FIRST)];
+                n += 1;
+            } else if (code == ERROR) {
+                throw foreign(c, lineNum, i + 1);
+            }
+        }
+        if (Metrics.enabled()) {
+            Metrics.message(n);
+        }
+        return n;
+    }
+
+    /** Return an exception reporting foreign character C at column
+     *  COLUMN of input line LINE. */
+    private static EnigmaException foreign(char c, int line, int column) {
+        return error("line %d, column %d: character %s not in alphabet",
+                     line, column, Alphabet.describe(c));
+    }
+
+    /** Return true iff C is a blank (as matched by \s in a regular
+     *  expression). */
+    static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000b'
+            || c == '\f' || c == '\r';
+    }
+
+    /** Table code of a character that is an error. */
+    private static final char ERROR = 0;
+    /** Table code of a character that is skipped. */
+    private static final char SKIP = 1;
+    /** Table code of alphabet index 0; index K has code K + FIRST. */
+    private static final char FIRST = 2;
+
+    /** The code of every char. */
+    private final char[] _codes;
+    /** The characters of my alphabet, by index. */
+    private final char[] _chars;
+    /** True iff foreign characters are skipped. */
+    private final boolean _skip;
+}
@@ -0,0 +1,112 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Normalizer class.
+ *  @author Jeonghyun Lee
+ */
+public class NormalizerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine with rotors B, Beta, III, IV and I, set as in
+     *  the Hiawatha example. */
+    private static Machine machine() {
+        return navalMachine(HIAWATHA_PLUGBOARD);
+    }
+
+    /** Return the normalization of LINE by NORM. */
+    private static String normalize(Normalizer norm, String line) {
+        char[] out = new char[line.length()];
+        return new String(out, 0, norm.normalize(line, 1, out));
+    }
+
+    /** Return the message of an EnigmaException thrown by normalizing
+     *  LINE, input line 7, with NORM. */
+    private static String failure(Normalizer norm, String line) {
+        try {
+            norm.normalize(line, 7, new char[line.length()]);
+        } catch (EnigmaException excp) {
+            return excp.getMessage();
+        }
+        fail("accepted " + line);
+        return null;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkDefault() {
+        Normalizer norm = Normalizer.parse(UPPER, "");
+        assertEquals("FROMHISSHOULDER",
+                     normalize(norm, " FROM\tHIS \u000bSHOULDER\f"));
+        assertEquals("", normalize(norm, "  \t"));
+        assertEquals("line 7, column 6: character 'h' not in alphabet",
+                     failure(norm, "FROM his"));
+        assertEquals("line 7, column 5: character U+00A0 not in alphabet",
+                     failure(norm, "FROM\u00a0HIS"));
+        assertEquals(-1, norm.normalize(' ', 1, 1));
+        assertEquals('Q', norm.normalize('Q', 1, 1));
+    }
+
+    @Test
+    public void checkFoldAndSkip() {
+        Normalizer fold = Normalizer.parse(UPPER, "fold");
+        assertEquals("FROMHISSHOULDER", normalize(fold, "From his shoulder"));
+        assertEquals("line 7, column 5: character ',' not in alphabet",
+                     failure(fold, "From, his"));
+        Normalizer skip = Normalizer.parse(UPPER, "skip");
+        assertEquals("FH", normalize(skip, "From, His 2nd"));
+        Normalizer both = Normalizer.parse(UPPER, "fold, skip");
+        assertEquals("FROMHISND", normalize(both, "From, His 2nd!"));
+        assertEquals("FROMHIS",
+                     normalize(Normalizer.parse(UPPER, "skip,strict,fold"),
+                               "FROMhis"));
+        Alphabet lower = new Alphabet("abc");
+        assertEquals("abca", normalize(new Normalizer(lower, true, false),
+                                       "ABca"));
+        try {
+            Normalizer.parse(UPPER, "fold,lenient");
+            fail("accepted unknown option");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkConvert() {
+        String line =
+            "From his shoulder Hiawatha, took the camera of rosewood";
+        String clean = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+        Normalizer norm = Normalizer.parse(UPPER, "fold,skip");
+        char[] out = new char[line.length()];
+        int n = norm.convert(machine(), line, 1, out);
+        assertEquals(machine().convert(clean), new String(out, 0, n));
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW",
+                     new String(out, 0, "FROMHISSHOULDERHIAWATHA".length()));
+    }
+
+    @Test
+    public void checkAlphabet() {
+        Alphabet alpha = new Alphabet("Q\u00e9Z");
+        assertEquals(1, alpha.indexOf('\u00e9'));
+        assertEquals(-1, alpha.indexOf('\uffff'));
+        assertFalse(alpha.contains('A'));
+        try {
+            alpha.toInt('A');
+            fail("accepted character not in alphabet");
+        } catch (EnigmaException excp) {
+            assertEquals("character 'A' not in alphabet",
+                         excp.getMessage());
+        }
+    }
+}
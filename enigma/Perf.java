@@ -0,0 +1,493 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** End-to-end scaling benchmarks for Main.  Perf generates synthetic
+ *  configuration and input files, runs Main over them in a fresh JVM
+ *  per scenario, and records throughput, peak resident set size and
+ *  garbage-collection time as JSON.  It can then compare a set of
+ *  results against a stored baseline, failing if any scenario is worse
+ *  than the baseline by more than a given percentage.  Usage:
+ *  <pre>
+ *    java enigma.Perf gen DIR [--alphabet=N] [--rotors=N] [--slots=N]
+ *        [--pawls=N] [--notches=PERCENT] [--messages=N] [--lines=N]
+ *        [--length=N] [--plugs=N] [--seed=N]
+ *    java enigma.Perf run RESULTS
+ *    java enigma.Perf check BASELINE RESULTS BUDGET
+ *  </pre>
+ *  gen writes DIR/perf.conf and DIR/perf.in.  run writes the results of
+ *  the standard scenarios (see SCENARIOS) to RESULTS.  check compares
+ *  them with BASELINE, allowing BUDGET percent of slack.  The times
+ *  measured include writing all of the output.  Results depend on the
+ *  host, so a baseline is only meaningful on the machine that recorded
+ *  it: regenerate it (make perf-baseline) on each host before using
+ *  check there, and after changes that are meant to alter performance.
+ *  @author Jeonghyun Lee
+ */
+final class Perf {
+
+    /** Parameters of a generated workload. */
+    static class Workload {
+        /** Number of characters in the alphabet. */
+        int alphabet = 26;
+        /** Number of rotors of each kind: moving, fixed, reflectors. */
+        int moving = 8, fixed = 2, reflectors = 2;
+        /** Number of rotor slots and of pawls. */
+        int slots = 5, pawls = 3;
+        /** Percentage of positions of a moving rotor that have
+         *  notches. */
+        int notchPercent = 4;
+        /** Number of messages (each with its own settings line). */
+        int messages = 100;
+        /** Number of lines per message, and characters per line. */
+        int lines = 10, length = 1000;
+        /** Number of plugboard pairs. */
+        int plugs = 10;
+        /** Seed for the random generator. */
+        long seed = 1;
+
+        /** Return the total number of message characters. */
+        long chars() {
+            return (long) messages * lines * length;
+        }
+    }
+
+    /** Characters from which alphabets are drawn. */
+    private static final String CHARS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789"
+        + "!#$%&+,-./:;<=>?@[]^_{|}~";
+
+    /** The standard scenarios, by name. */
+    static final Map<String, Workload> SCENARIOS = new LinkedHashMap<>();
+    static {
+        Workload w = new Workload();
+        SCENARIOS.put("baseline", w);
+
+        w = new Workload();
+        w.messages = 5;
+        w.lines = 200;
+        SCENARIOS.put("long-messages", w);
+
+        w = new Workload();
+        w.messages = 2000;
+        w.lines = 1;
+        w.length = 50;
+        SCENARIOS.put("many-settings", w);
+
+        w = new Workload();
+        w.moving = 14;
+        w.slots = 12;
+        w.pawls = 10;
+        w.notchPercent = 20;
+        SCENARIOS.put("deep-stack", w);
+
+        w = new Workload();
+        w.alphabet = 64;
+        w.plugs = 30;
+        SCENARIOS.put("wide-alphabet", w);
+
+        w = new Workload();
+        w.moving = 2000;
+        w.fixed = 200;
+        w.reflectors = 50;
+        w.messages = 20;
+        SCENARIOS.put("large-catalog", w);
+    }
+
+    /** Not instantiated. */
+    private Perf() {
+    }
+
+    /** Run the command given by ARGS (see class comment). */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--alphabet=(\\d+) --rotors=(\\d+) "
+                                + "--slots=(\\d+) --pawls=(\\d+) "
+                                + "--notches=(\\d+) --messages=(\\d+) "
+                                + "--lines=(\\d+) --length=(\\d+) "
+                                + "--plugs=(\\d+) --seed=(\\d+) "
+                                + "--=(.*){2,4}", args);
+            List<String> words = options.get("--");
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Perf gen DIR [OPTIONS] | "
+                            + "run RESULTS | check BASELINE RESULTS BUDGET");
+            }
+            switch (words.get(0) + words.size()) {
+            case "gen2":
+                generate(Path.of(words.get(1)), workload(options));
+                break;
+            case "run2":
+                run(Path.of(words.get(1)));
+                break;
+            case "check4":
+                if (!check(Path.of(words.get(1)), Path.of(words.get(2)),
+                           Double.parseDouble(words.get(3)))) {
+                    System.exit(1);
+                }
+                break;
+            case "measure4":
+                measure(words.get(1), words.get(2), words.get(3));
+                break;
+            default:
+                throw error("unknown perf command");
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the workload described by OPTIONS. */
+    private static Workload workload(CommandArgs options) {
+        Workload w = new Workload();
+        w.alphabet = intOption(options, "--alphabet", w.alphabet);
+        int rotors = intOption(options, "--rotors",
+                               w.moving + w.fixed + w.reflectors);
+        w.reflectors = Math.max(1, rotors / 8);
+        w.fixed = Math.max(1, rotors / 8);
+        w.moving = Math.max(1, rotors - w.reflectors - w.fixed);
+        w.slots = intOption(options, "--slots", w.slots);
+        w.pawls = intOption(options, "--pawls", w.pawls);
+        w.notchPercent = intOption(options, "--notches", w.notchPercent);
+        w.messages = intOption(options, "--messages", w.messages);
+        w.lines = intOption(options, "--lines", w.lines);
+        w.length = intOption(options, "--length", w.length);
+        w.plugs = intOption(options, "--plugs", w.plugs);
+        w.seed = intOption(options, "--seed", (int) w.seed);
+        return w;
+    }
+
+    /** Return the value of integer option KEY in OPTIONS, or DEFLT. */
+    private static int intOption(CommandArgs options, String key,
+                                 int deflt) {
+        if (!options.contains(key)) {
+            return deflt;
+        }
+        return Integer.parseInt(options.get(key).get(0));
+    }
+
+    /** Write perf.conf and perf.in for workload W into directory DIR. */
+    static void generate(Path dir, Workload w) throws IOException {
+        if (w.alphabet < 2 || w.alphabet > CHARS.length()
+            || w.alphabet % 2 != 0) {
+            throw error("alphabet size must be even, from 2 to %d",
+                        CHARS.length());
+        }
+        if (w.pawls >= w.slots || w.moving < w.pawls
+            || w.fixed < w.slots - 1 - w.pawls || w.plugs * 2 > w.alphabet) {
+            throw error("inconsistent workload");
+        }
+        Files.createDirectories(dir);
+        Random random = new Random(w.seed);
+        String alpha = CHARS.substring(0, w.alphabet);
+        try (PrintWriter out =
+             new PrintWriter(Files.newBufferedWriter(dir.resolve("perf.conf")
+                                                     ))) {
+            out.println(alpha);
+            out.printf("%d %d%n", w.slots, w.pawls);
+            for (int r = 0; r < w.moving; r += 1) {
+                StringBuilder notches = new StringBuilder();
+                for (int k = 0; k < w.alphabet; k += 1) {
+                    if (random.nextInt(100) < w.notchPercent) {
+                        notches.append(alpha.charAt(k));
+                    }
+                }
+                if (notches.length() == 0) {
+                    notches.append(alpha.charAt(random.nextInt(w.alphabet)));
+                }
+                out.printf("M%d M%s %s%n", r, notches,
+                           cycles(alpha, shuffle(w.alphabet, random)));
+            }
+            for (int r = 0; r < w.fixed; r += 1) {
+                out.printf("F%d N %s%n", r,
+                           cycles(alpha, shuffle(w.alphabet, random)));
+            }
+            for (int r = 0; r < w.reflectors; r += 1) {
+                out.printf("R%d R %s%n", r,
+                           pairs(alpha, w.alphabet / 2, random));
+            }
+        }
+        try (PrintWriter out =
+             new PrintWriter(Files.newBufferedWriter(dir.resolve("perf.in")))
+             ) {
+            char[] line = new char[w.length];
+            for (int m = 0; m < w.messages; m += 1) {
+                out.print("* R" + random.nextInt(w.reflectors));
+                int fixedSlots = w.slots - 1 - w.pawls;
+                for (int r : choose(w.fixed, fixedSlots, random)) {
+                    out.print(" F" + r);
+                }
+                for (int r : choose(w.moving, w.pawls, random)) {
+                    out.print(" M" + r);
+                }
+                out.print(' ');
+                for (int s = 1; s < w.slots; s += 1) {
+                    out.print(alpha.charAt(random.nextInt(w.alphabet)));
+                }
+                if (w.plugs > 0) {
+                    out.print(' ');
+                    out.print(pairs(alpha, w.plugs, random));
+                }
+                out.println();
+                for (int l = 0; l < w.lines; l += 1) {
+                    for (int k = 0; k < line.length; k += 1) {
+                        line[k] = alpha.charAt(random.nextInt(w.alphabet));
+                    }
+                    out.println(line);
+                }
+            }
+        }
+    }
+
+    /** Return a random permutation of 0 .. N-1, using RANDOM. */
+    private static int[] shuffle(int n, Random random) {
+        int[] result = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            int j = random.nextInt(k + 1);
+            result[k] = result[j];
+            result[j] = k;
+        }
+        return result;
+    }
+
+    /** Return K distinct values from 0 .. N-1, in random order, using
+     *  RANDOM. */
+    private static int[] choose(int n, int k, Random random) {
+        int[] all = shuffle(n, random);
+        int[] result = new int[k];
+        System.arraycopy(all, 0, result, 0, k);
+        return result;
+    }
+
+    /** Return PERM, a permutation of the indices of ALPHA, in cycle
+     *  notation. */
+    private static String cycles(String alpha, int[] perm) {
+        StringBuilder result = new StringBuilder();
+        boolean[] done = new boolean[perm.length];
+        for (int k = 0; k < perm.length; k += 1) {
+            if (!done[k]) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(');
+                for (int j = k; !done[j]; j = perm[j]) {
+                    done[j] = true;
+                    result.append(alpha.charAt(j));
+                }
+                result.append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return N random disjoint pairs of characters of ALPHA, in cycle
+     *  notation, using RANDOM. */
+    private static String pairs(String alpha, int n, Random random) {
+        int[] order = shuffle(alpha.length(), random);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            if (i > 0) {
+                result.append(' ');
+            }
+            result.append('(').append(alpha.charAt(order[2 * i]))
+                .append(alpha.charAt(order[2 * i + 1])).append(')');
+        }
+        return result.toString();
+    }
+
+    /** Run the standard scenarios, each in its own JVM, and write their
+     *  results to RESULTS. */
+    static void run(Path results) throws IOException {
+        Path dir = Files.createTempDirectory("enigma-perf");
+        StringBuilder json = new StringBuilder("{\n  \"scenarios\": [\n");
+        String sep = "";
+        for (Map.Entry<String, Workload> e : SCENARIOS.entrySet()) {
+            Path work = dir.resolve(e.getKey());
+            generate(work, e.getValue());
+            String result = child(e.getKey(), work, e.getValue().chars());
+            System.err.println(result);
+            json.append(sep).append("    ").append(result);
+            sep = ",\n";
+        }
+        json.append("\n  ]\n}\n");
+        Files.writeString(results, json);
+    }
+
+    /** Return the JSON result of measuring scenario NAME, whose files
+     *  are in WORK and which converts CHARS characters, in a new JVM. */
+    private static String child(String name, Path work, long chars)
+        throws IOException {
+        String java = Path.of(System.getProperty("java.home"), "bin",
+                              "java").toString();
+        ProcessBuilder builder =
+            new ProcessBuilder(java, "-cp",
+                               System.getProperty("java.class.path"),
+                               "enigma.Perf", "measure", name,
+                               work.toString(), Long.toString(chars));
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        Process process = builder.start();
+        String result;
+        try (BufferedReader in =
+             new BufferedReader(new InputStreamReader(process
+                                                      .getInputStream(),
+                                                      StandardCharsets
+                                                      .UTF_8))) {
+            result = in.readLine();
+        }
+        try {
+            if (process.waitFor() != 0 || result == null) {
+                throw error("scenario %s failed", name);
+            }
+        } catch (InterruptedException excp) {
+            throw error("interrupted");
+        }
+        return result;
+    }
+
+    /** Run Main over the files of scenario NAME in directory WORK,
+     *  which hold CHARS message characters, and print a JSON object
+     *  describing the run. */
+    private static void measure(String name, String work, String chars)
+        throws IOException {
+        Path dir = Path.of(work);
+        File output = File.createTempFile("perf", ".out");
+        output.deleteOnExit();
+        long gc0 = gcMillis();
+        long start = System.nanoTime();
+        Main main = new Main(List.of(dir.resolve("perf.conf").toString(),
+                                     dir.resolve("perf.in").toString(),
+                                     output.toString()));
+        main.process();
+        main.flush();
+        double seconds = (System.nanoTime() - start) / NANOS;
+        long gc = gcMillis() - gc0;
+        long n = Long.parseLong(chars);
+        System.out.printf("{\"name\": \"%s\", \"chars\": %d, "
+                          + "\"seconds\": %.3f, \"charsPerSecond\": %.0f, "
+                          + "\"peakRssKb\": %d, \"gcMillis\": %d}%n",
+                          name, n, seconds, n / seconds, peakRss(), gc);
+    }
+
+    /** Return the total time spent in garbage collection so far, in
+     *  milliseconds. */
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    /** Return this process's peak resident set size in kilobytes, or -1
+     *  if it is not available. */
+    private static long peakRss() {
+        try {
+            for (String line
+                     : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException excp) {
+            return -1;
+        }
+        return -1;
+    }
+
+    /** Pattern matching one scenario in a results file. */
+    private static final Pattern SCENARIO =
+        Pattern.compile("\\{\"name\": \"([^\"]*)\", \"chars\": \\d+, "
+                        + "\"seconds\": [0-9.]+, \"charsPerSecond\": "
+                        + "([0-9.]+), \"peakRssKb\": (-?\\d+), "
+                        + "\"gcMillis\": (\\d+)\\}");
+
+    /** Return the scenarios in results file FILE, by name, as arrays of
+     *  throughput, peak RSS and GC time. */
+    private static Map<String, double[]> readResults(Path file)
+        throws IOException {
+        Map<String, double[]> result = new LinkedHashMap<>();
+        Matcher m = SCENARIO.matcher(Files.readString(file));
+        while (m.find()) {
+            result.put(m.group(1),
+                       new double[] { Double.parseDouble(m.group(2)),
+                                      Double.parseDouble(m.group(3)),
+                                      Double.parseDouble(m.group(4)) });
+        }
+        return result;
+    }
+
+    /** Compare RESULTS with BASELINE, printing a line per scenario, and
+     *  return true iff no scenario's throughput is lower, or peak RSS or
+     *  GC time higher, than the baseline by more than BUDGET percent.
+     *  GC times within GC_SLACK milliseconds of the baseline always
+     *  pass. */
+    static boolean check(Path baseline, Path results, double budget)
+        throws IOException {
+        Map<String, double[]> base = readResults(baseline);
+        Map<String, double[]> now = readResults(results);
+        double slack = budget / PERCENT;
+        ArrayList<String> failures = new ArrayList<>();
+        for (Map.Entry<String, double[]> e : base.entrySet()) {
+            double[] b = e.getValue();
+            double[] r = now.get(e.getKey());
+            if (r == null) {
+                failures.add(e.getKey() + ": missing");
+                continue;
+            }
+            System.out.printf("%-16s %12.0f chars/s (%+.1f%%) %9.0f KB "
+                              + "(%+.1f%%) %6.0f ms GC%n", e.getKey(),
+                              r[0], change(b[0], r[0]), r[1],
+                              change(b[1], r[1]), r[2]);
+            if (r[0] < b[0] * (1 - slack)) {
+                failures.add(e.getKey() + ": throughput");
+            }
+            if (b[1] > 0 && r[1] > b[1] * (1 + slack)) {
+                failures.add(e.getKey() + ": peak RSS");
+            }
+            if (r[2] > b[2] * (1 + slack) + GC_SLACK) {
+                failures.add(e.getKey() + ": GC time");
+            }
+        }
+        for (String failure : failures) {
+            System.out.printf("over budget: %s%n", failure);
+        }
+        return failures.isEmpty();
+    }
+
+    /** Return the percentage change from BEFORE to AFTER. */
+    private static double change(double before, double after) {
+        return before == 0 ? 0 : (after - before) * PERCENT / before;
+    }
+
+    /** Nanoseconds per second. */
+    private static final double NANOS = 1e9;
+    /** Hundred. */
+    private static final double PERCENT = 100;
+    /** GC time differences below this many milliseconds are noise. */
+    private static final double GC_SLACK = 50;
+}
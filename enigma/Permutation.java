@@ -1,6 +1,6 @@
 package enigma;
 
-
+import java.util.Arrays;
 
 import static enigma.EnigmaException.*;
 
@@ -20,22 +20,91 @@ class Permutation {
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
         _cycles = cycles;
-
-
+        _map = identity(alphabet.size());
+        _inverse = identity(alphabet.size());
+        boolean[] seen = new boolean[alphabet.size()];
+        int start = -1;
+        for (int i = 0; i < cycles.length(); i += 1) {
+            char ch = cycles.charAt(i);
+            if (ch == '(') {
+                if (start >= 0) {
+                    throw error("nested cycle in %s", cycles);
+                }
+                start = i + 1;
+            } else if (ch == ')') {
+                if (start < 0) {
+                    throw error("unbalanced cycle in %s", cycles);
+                }
+                addCycle(cycles.substring(start, i), seen);
+                start = -1;
+            } else if (start < 0 && !Character.isWhitespace(ch)) {
+                throw error("character outside cycle in %s", cycles);
+            }
+        }
+        if (start >= 0) {
+            throw error("unbalanced cycle in %s", cycles);
+        }
     }
 
-
-    public String[] split(String str) {
-        return str.replaceAll("[()]", "").split("\\s");
+    /** A permutation of ALPHABET that maps K to MAP[K].  MAP is not
+     *  copied, and must not be modified afterwards. */
+    Permutation(int[] map, Alphabet alphabet) {
+        if (map.length != alphabet.size()) {
+            throw error("permutation table has wrong size");
+        }
+        _alphabet = alphabet;
+        _cycles = null;
+        _map = map;
+        _inverse = new int[map.length];
+        Arrays.fill(_inverse, -1);
+        for (int k = 0; k < map.length; k += 1) {
+            if (map[k] < 0 || map[k] >= map.length
+                || _inverse[map[k]] >= 0) {
+                throw error("permutation table is not a permutation");
+            }
+            _inverse[map[k]] = k;
+        }
     }
 
-        /**
-         * Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-         * c0c1...cm.
-         */
-    private void addCycle(String cycle) {
-        _cycles += cycle;
+    /** Return the identity mapping on 0 .. N-1. */
+    private static int[] identity(int n) {
+        int[] result = new int[n];
+        for (int k = 0; k < n; k += 1) {
+            result[k] = k;
+        }
+        return result;
+    }
 
+    /**
+     * Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
+     * c0c1...cm.  SEEN[K] is true iff index K has appeared in an earlier
+     * cycle, and is updated.
+     */
+    private void addCycle(String cycle, boolean[] seen) {
+        int first = -1, prev = -1;
+        for (int i = 0; i < cycle.length(); i += 1) {
+            char ch = cycle.charAt(i);
+            if (Character.isWhitespace(ch)) {
+                continue;
+            }
+            int k = _alphabet.toInt(ch);
+            if (seen[k]) {
+                throw error("character %s repeated in %s",
+                            Alphabet.describe(ch), _cycles);
+            }
+            seen[k] = true;
+            if (first < 0) {
+                first = k;
+            } else {
+                _map[prev] = k;
+                _inverse[k] = prev;
+            }
+            prev = k;
+        }
+        if (first >= 0) {
+            _map[prev] = first;
+            _inverse[first] = prev;
+        }
     }
 
     /**
@@ -61,28 +130,7 @@ class Permutation {
      * alphabet size.
      */
     int permute(int p) {
-        String[] split = cycleSplitter(_cycles);
-        char ch = _alphabet.toChar(wrap(p));
-        for (int i = 0; i < split.length; i++) {
-            for (int j = 0; j < split[i].length(); j++) {
-                if (split[i].charAt(j) == ch && (j + 1)
-                        == split[i].length()) {
-                    ch = split[i].charAt(0);
-                    return _alphabet.toInt(ch);
-                } else if (split[i].charAt(j) == ch) {
-                    ch = split[i].charAt(j + 1);
-                    return _alphabet.toInt(ch);
-                }
-            }
-        }
-        return _alphabet.toInt(ch);
-    }
-
-    public static String[] cycleSplitter(String cycles) {
-        String[] result;
-        String space = cycles.replaceAll("[()]", "");
-        result = space.split(" ");
-        return result;
+        return _map[wrap(p)];
     }
 
     /**
@@ -90,25 +138,14 @@ class Permutation {
      * to  C modulo the alphabet size.
      */
     int invert(int c) {
-        String[] split = cycleSplitter(_cycles);
-        char ch = _alphabet.toChar(wrap(c));
-        for (int i = 0; i < split.length; i++) {
-            for (int j = 0; j < split[i].length(); j++) {
-                if (split[i].charAt(j) == ch && j == 0) {
-                    ch = split[i].charAt
-                            (split[i].length() - 1);
-                    return _alphabet.toInt(ch);
-                } else if (split[i].charAt(j) == ch) {
-                    ch = split[i].charAt(j - 1);
-                    return _alphabet.toInt(ch);
-                }
-            }
-        }
-        return _alphabet.toInt(ch);
+        return _inverse[wrap(c)];
     }
 
-
-
+    /** Return the table mapping each index K to permute(K).  The result
+     *  must not be modified. */
+    int[] table() {
+        return _map;
+    }
 
     /**
      * Return the result of applying this permutation to the index of P
@@ -139,23 +176,21 @@ class Permutation {
      * permutation for which no value maps to itself).
      */
     boolean derangement() {
-        String[] split = cycleSplitter(_cycles);
-        int count = 0;
-        for (int i = 0; i < split.length; i++) {
-            if (split[i].length() == 1) {
+        for (int k = 0; k < _map.length; k += 1) {
+            if (_map[k] == k) {
                 return false;
             }
-            for (int j = 0; j < split[i].length(); j++) {
-                count += 1;
-            }
         }
-        return count == size();
+        return true;
     }
 
-
-
     /** Alphabet of this permutation. */
-    private Alphabet _alphabet;
-    /** */
-    private String _cycles;
+    private final Alphabet _alphabet;
+    /** The cycles I was created from, or null if I was created from a
+     *  table. */
+    private final String _cycles;
+    /** My mapping: index K goes to _map[K]. */
+    private final int[] _map;
+    /** The inverse of _map. */
+    private final int[] _inverse;
 }
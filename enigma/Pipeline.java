@@ -0,0 +1,368 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static enigma.EnigmaException.*;
+
+/** Converts a stream of settings and message lines, as Main.process
+ *  does, in three stages on separate threads: a reader, which splits the
+ *  input into lines, cleans message lines with a Normalizer and packs
+ *  them into chunks; a converter, which applies settings lines to the
+ *  machine and converts the chunks in place; and a writer, which
+ *  formats converted chunks into groups of five and writes them.
+ *  Chunks pass between stages through single-producer, single-consumer
+ *  ring buffers and return to the reader once written, so a fixed set
+ *  of chunks is reused and none are allocated while messages are
+ *  converted.  The number of chunks bounds how far the reader may run
+ *  ahead of the writer.
+ *  @author Jeonghyun Lee
+ */
+class Pipeline {
+
+    /** A bounded ring buffer passing values from one producer thread to
+     *  one consumer thread without locks.  A stage that finds its ring
+     *  full (or empty) spins briefly and then parks until it can
+     *  proceed, or until the pipeline fails. */
+    private final class Ring<T> {
+        /** A ring holding up to CAPACITY values. */
+        Ring(int capacity) {
+            _items = new Object[capacity];
+        }
+
+        /** Add X, waiting for space if needed. */
+        void put(T x) {
+            long tail = _tail.get();
+            for (int spins = 0; tail - _head.get() == _items.length;
+                 spins += 1) {
+                idle(spins);
+            }
+            _items[(int) (tail % _items.length)] = x;
+            _tail.lazySet(tail + 1);
+        }
+
+        /** Remove and return the oldest value, waiting for one if
+         *  needed. */
+        @SuppressWarnings("unchecked")
+        T take() {
+            long head = _head.get();
+            for (int spins = 0; head == _tail.get(); spins += 1) {
+                idle(spins);
+            }
+            int k = (int) (head % _items.length);
+            T result = (T) _items[k];
+            _items[k] = null;
+            _head.lazySet(head + 1);
+            return result;
+        }
+
+        /** The values, at positions modulo their number. */
+        private final Object[] _items;
+        /** Number of values ever removed. */
+        private final AtomicLong _head = new AtomicLong();
+        /** Number of values ever added. */
+        private final AtomicLong _tail = new AtomicLong();
+    }
+
+    /** Kinds of chunk. */
+    private static final int MESSAGE = 0, SETTINGS = 1, BLANK = 2, END = 3;
+
+    /** A piece of input passing through the stages. */
+    private static final class Chunk {
+        /** A chunk able to hold SIZE message characters. */
+        Chunk(int size) {
+            _chars = new char[size];
+        }
+
+        /** Kind of chunk (MESSAGE, SETTINGS, BLANK or END). */
+        private int _kind;
+        /** Message characters, in _chars[0 .. _length-1]. */
+        private final char[] _chars;
+        /** Number of message characters. */
+        private int _length;
+        /** True iff this chunk ends its message line. */
+        private boolean _lineEnd;
+        /** The settings line of a SETTINGS chunk. */
+        private String _settings;
+    }
+
+    /** A pipeline using DEPTH chunks of up to SIZE message characters
+     *  each. */
+    Pipeline(int depth, int size) {
+        if (depth < 2 || size < 1) {
+            throw error("pipeline needs at least two chunks");
+        }
+        _free = new Ring<>(depth);
+        _toConvert = new Ring<>(depth);
+        _toWrite = new Ring<>(depth);
+        for (int i = 0; i < depth; i += 1) {
+            _free.put(new Chunk(size));
+        }
+    }
+
+    /** Convert the lines from INPUT with MACHINE, applying settings lines
+     *  with SETUP, and send the results to OUTPUT, which is flushed but
+     *  not closed.  The first line must be a settings line. */
+    void run(Reader input, Writer output, Machine machine,
+             Consumer<String> setUp) {
+        run(input, output, machine, setUp,
+            new Normalizer(machine.alphabet(), false, false));
+    }
+
+    /** Convert the lines from INPUT with MACHINE as for run(INPUT,
+     *  OUTPUT, MACHINE, SETUP), cleaning message lines with NORMALIZER
+     *  rather than just removing their blanks. */
+    void run(Reader input, Writer output, Machine machine,
+             Consumer<String> setUp, Normalizer normalizer) {
+        _normalizer = normalizer;
+        Thread reader = new Thread(() -> counted(() -> read(input)),
+                                   "enigma-reader");
+        Thread writer = new Thread(() -> counted(() -> write(output)),
+                                   "enigma-writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+        reader.start();
+        writer.start();
+        stage(() -> convert(machine, setUp));
+        try {
+            writer.join();
+            reader.join();
+        } catch (InterruptedException excp) {
+            fail(excp);
+        }
+        if (_failure instanceof EnigmaException) {
+            throw (EnigmaException) _failure;
+        } else if (_failure != null) {
+            throw error("pipeline failed: %s", _failure.getMessage());
+        }
+    }
+
+    /** A stage's work, which may fail with an IOException. */
+    private interface Stage {
+        /** Do the work. */
+        void run() throws IOException;
+    }
+
+    /** Run BODY, recording its failure, if any, as the pipeline's. */
+    private void stage(Stage body) {
+        try {
+            body.run();
+        } catch (Stopped excp) {
+            return;
+        } catch (IOException | RuntimeException excp) {
+            fail(excp);
+        }
+    }
+
+    /** Run BODY as a stage on a thread of its own, recording the
+     *  thread's allocation in Metrics. */
+    private void counted(Stage body) {
+        long mark = Metrics.allocationMark();
+        stage(body);
+        Metrics.allocated(mark, 0);
+    }
+
+    /** Record EXCP as the cause of the pipeline's failure, unless a
+     *  failure has already been recorded. */
+    private synchronized void fail(Throwable excp) {
+        if (_failure == null) {
+            _failure = excp;
+        }
+    }
+
+    /** Thrown to unwind a stage when the pipeline has failed. */
+    private static final class Stopped extends RuntimeException {
+        /** A Stopped exception. */
+        Stopped() {
+            super(null, null, false, false);
+        }
+    }
+
+    /** Wait briefly, having already waited SPINS times; stop if the
+     *  pipeline has failed. */
+    private void idle(int spins) {
+        if (_failure != null) {
+            throw new Stopped();
+        }
+        if (spins < SPINS) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+
+    /** The reader stage: split INPUT into lines and send them on as
+     *  chunks. */
+    private void read(Reader input) throws IOException {
+        char[] block = new char[BLOCK];
+        char[] line = new char[BLOCK];
+        int length = 0;
+        boolean afterReturn = false;
+        int lineNum = 1;
+        for (int n = input.read(block); n >= 0; n = input.read(block)) {
+            for (int i = 0; i < n; i += 1) {
+                char c = block[i];
+                if (c == '\n' && afterReturn) {
+                    afterReturn = false;
+                    continue;
+                }
+                afterReturn = c == '\r';
+                if (c == '\n' || c == '\r') {
+                    sendLine(line, length, lineNum);
+                    length = 0;
+                    lineNum += 1;
+                } else {
+                    if (length == line.length) {
+                        line = Arrays.copyOf(line, 2 * length);
+                    }
+                    line[length] = c;
+                    length += 1;
+                }
+            }
+        }
+        if (length > 0) {
+            sendLine(line, length, lineNum);
+        }
+        Chunk end = _free.take();
+        end._kind = END;
+        _toConvert.put(end);
+    }
+
+    /** Send the line LINE[0 .. LENGTH-1], input line LINENUM, to the
+     *  converter. */
+    private void sendLine(char[] line, int length, int lineNum) {
+        if (length == 0) {
+            Chunk chunk = _free.take();
+            chunk._kind = BLANK;
+            _toConvert.put(chunk);
+            return;
+        }
+        for (int i = 0; i < length; i += 1) {
+            if (line[i] == LineFormat.SETTINGS_MARK) {
+                Chunk chunk = _free.take();
+                chunk._kind = SETTINGS;
+                chunk._settings = new String(line, 0, length);
+                _toConvert.put(chunk);
+                return;
+            }
+        }
+        Chunk chunk = _free.take();
+        chunk._kind = MESSAGE;
+        chunk._length = 0;
+        for (int i = 0; i < length; i += 1) {
+            int c = _normalizer.normalize(line[i], lineNum, i + 1);
+            if (c < 0) {
+                continue;
+            }
+            if (chunk._length == chunk._chars.length) {
+                chunk._lineEnd = false;
+                _toConvert.put(chunk);
+                chunk = _free.take();
+                chunk._kind = MESSAGE;
+                chunk._length = 0;
+            }
+            chunk._chars[chunk._length] = (char) c;
+            chunk._length += 1;
+        }
+        chunk._lineEnd = true;
+        _toConvert.put(chunk);
+    }
+
+    /** The converter stage: apply settings chunks to MACHINE with SETUP,
+     *  and convert message chunks with it. */
+    private void convert(Machine machine, Consumer<String> setUp) {
+        boolean first = true;
+        int lineLength = 0;
+        while (true) {
+            Chunk chunk = _toConvert.take();
+            if (first && chunk._kind != SETTINGS) {
+                throw new EnigmaException("Have to contain *");
+            }
+            first = false;
+            if (chunk._kind == SETTINGS) {
+                boolean timed = Metrics.enabled();
+                long start = Metrics.start(timed);
+                setUp.accept(chunk._settings);
+                Metrics.end(Metrics.SET_UP, timed, start, 0);
+                chunk._settings = null;
+            } else if (chunk._kind == MESSAGE) {
+                boolean timed = Metrics.enabled();
+                long start = Metrics.start(timed);
+                machine.convert(chunk._chars, 0, chunk._length);
+                Metrics.end(Metrics.CONVERT, timed, start, chunk._length);
+                lineLength += chunk._length;
+                if (chunk._lineEnd) {
+                    if (Metrics.enabled()) {
+                        Metrics.message(lineLength);
+                    }
+                    lineLength = 0;
+                }
+            }
+            _toWrite.put(chunk);
+            if (chunk._kind == END) {
+                return;
+            }
+        }
+    }
+
+    /** The writer stage: write converted chunks to OUTPUT in groups of
+     *  five characters, and return chunks to the reader. */
+    private void write(Writer output) throws IOException {
+        char[] buf = new char[BLOCK];
+        int column = 0;
+        String newline = System.lineSeparator();
+        try {
+            while (true) {
+                Chunk chunk = _toWrite.take();
+                if (chunk._kind == END) {
+                    return;
+                } else if (chunk._kind == BLANK) {
+                    output.write(newline);
+                } else if (chunk._kind == MESSAGE) {
+                    boolean timed = Metrics.enabled();
+                    long start = Metrics.start(timed);
+                    for (int i = 0; i < chunk._length; ) {
+                        int count = Math.min(chunk._length - i,
+                                             buf.length / 2);
+                        int n = LineFormat.group(chunk._chars, i, i + count,
+                                                 column, buf, 0);
+                        output.write(buf, 0, n);
+                        i += count;
+                        column += count;
+                    }
+                    if (chunk._lineEnd) {
+                        output.write(LineFormat.MESSAGE_END);
+                        column = 0;
+                    }
+                    Metrics.end(Metrics.OUTPUT, timed, start, chunk._length);
+                }
+                _free.put(chunk);
+            }
+        } finally {
+            output.flush();
+        }
+    }
+
+    /** Size of the reader's and writer's character blocks. */
+    private static final int BLOCK = 1 << 16;
+    /** Number of times a waiting stage spins before parking. */
+    private static final int SPINS = 1000;
+    /** Time for which a waiting stage parks, in nanoseconds. */
+    private static final long PARK_NANOS = 50_000;
+
+    /** Chunks free for the reader to fill. */
+    private final Ring<Chunk> _free;
+    /** Chunks waiting to be converted. */
+    private final Ring<Chunk> _toConvert;
+    /** Chunks waiting to be written. */
+    private final Ring<Chunk> _toWrite;
+    /** The first failure of any stage, or null. */
+    private volatile Throwable _failure;
+    /** Cleans message lines for the reader. */
+    private Normalizer _normalizer;
+}
@@ -0,0 +1,97 @@
+package enigma;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Pipeline class.
+ *  @author Jeonghyun Lee
+ */
+public class PipelineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Set MACH according to SETTINGS, a line of the form "* B Beta III
+     *  IV I POSN PLUGBOARD...". */
+    private static void setUp(Machine mach, String settings) {
+        String[] words = settings.trim().split("\\s+", 8);
+        mach.insertRotors(new String[] { words[1], words[2], words[3],
+                                         words[4], words[5] });
+        mach.setRotors(words[6]);
+        mach.setPlugboard(new Permutation(words.length > 7 ? words[7] : "",
+                                          UPPER));
+    }
+
+    /** Return the output of a pipeline of DEPTH chunks of SIZE characters
+     *  given INPUT. */
+    private String run(int depth, int size, String input) {
+        Machine mach = navalMachine();
+        StringWriter out = new StringWriter();
+        new Pipeline(depth, size).run(new StringReader(input), out, mach,
+                                      s -> setUp(mach, s));
+        return out.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkMessages() {
+        String nl = System.lineSeparator();
+        String input = "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+            + "FROM HIS shoulder\n".toUpperCase()
+            + "HIAWATHA\r\n"
+            + "\n"
+            + "   \n"
+            + "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\r\n"
+            + "QVPQS OKOIL PUBKJ ZPISF XDW";
+        String expected = "QVPQS OKOIL PUBKJ\r\n"
+            + "ZPISF XDW\r\n"
+            + nl
+            + "\r\n"
+            + "FROMH ISSHO ULDER HIAWA THA\r\n";
+        for (int size = 1; size <= 30; size += 1) {
+            assertEquals("chunk size " + size, expected,
+                         run(2, size, input));
+        }
+    }
+
+    @Test
+    public void checkLongMessage() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 2000; i += 1) {
+            msg.append("FROMHISSHOULDERHIAWATHA");
+        }
+        Machine mach = navalMachine();
+        setUp(mach, "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)");
+        assertEquals(grouped(mach.convert(msg.toString())) + "\r\n",
+                     run(3, 7, "* B Beta III IV I AXLE (HQ) (EX) (IP) "
+                         + "(TR) (BY)\n" + msg + "\n"));
+    }
+
+    @Test
+    public void checkErrors() {
+        try {
+            run(2, 4, "FROMHIS\n");
+            fail("accepted input without settings");
+        } catch (EnigmaException excp) {
+            assertEquals("Have to contain *", excp.getMessage());
+        }
+        try {
+            run(2, 4, "* B Beta III IV I AXLE\nFROM\n* B Beta III IV X AXLE"
+                + "\nFROM\n");
+            fail("accepted missing rotor");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+}
@@ -0,0 +1,360 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import static enigma.EnigmaException.*;
+
+/** Converts arbitrary ranges of characters of one message line in a
+ *  file, without reading or converting anything before the range.  The
+ *  line may be written in groups of characters separated by runs of
+ *  blanks of a fixed length, as Main writes it (groups of five,
+ *  separated by single spaces), or without separators.  The layout is
+ *  determined from the start of the line, so each character's byte
+ *  position can be computed directly, and the machine is brought to the
+ *  rotor state for the start of the range with Machine.skip.  Lines are
+ *  cleaned by a Normalizer, as Main cleans them.  When it skips foreign
+ *  characters, a character's position no longer follows from the
+ *  layout, so the line is read from its start up to the end of the
+ *  range, converting only the range.  The characters of the alphabet
+ *  must all be ASCII, and bytes outside ASCII are taken to be foreign
+ *  characters.  A message line after the first in a file of Main's
+ *  input is found with find, which scans the bytes before it, without
+ *  converting them, for the settings line in force and the number of
+ *  characters converted since.  Given a LineIndex, find scans only from
+ *  the nearest checkpoint before the line, so that once the file has
+ *  been indexed, the time taken no longer grows with the line's
+ *  position.  Bringing the machine to the start of the range takes time
+ *  bounded by the machine's cycle of states (see Machine.skip).
+ *  @author Jeonghyun Lee
+ */
+class RangeDecryptor {
+
+    /** Where a message line is in a file of Main's input. */
+    static final class Line {
+        /** Message line number NUMBER, beginning at byte START, under
+         *  settings line SETTINGS, after BEFORE characters of earlier
+         *  message lines under that settings line. */
+        Line(long number, long start, String settings, long before) {
+            _number = number;
+            _start = start;
+            _settings = settings;
+            _before = before;
+        }
+
+        /** Return the line number (from 1). */
+        long number() {
+            return _number;
+        }
+
+        /** Return the byte position of the line. */
+        long start() {
+            return _start;
+        }
+
+        /** Return the settings line in force. */
+        String settings() {
+            return _settings;
+        }
+
+        /** Return the number of characters converted under settings()
+         *  before the line. */
+        long before() {
+            return _before;
+        }
+
+        /** Line number. */
+        private final long _number;
+        /** Byte position of the line. */
+        private final long _start;
+        /** Settings line in force. */
+        private final String _settings;
+        /** Characters converted before the line. */
+        private final long _before;
+    }
+
+    /** Return where line number LINE (from 1) of CHANNEL, which holds
+     *  input for Main whose message lines are cleaned by NORMALIZER,
+     *  begins.  Lines end with \n, \r or \r\n.  LINE must be a message
+     *  line after a settings line. */
+    static Line find(FileChannel channel, long line, Normalizer normalizer)
+        throws IOException {
+        return find(channel, line, normalizer, null);
+    }
+
+    /** Return where line number LINE of CHANNEL begins, as for
+     *  find(CHANNEL, LINE, NORMALIZER), starting from the last checkpoint
+     *  of INDEX before LINE, if INDEX is not null and has one, and adding
+     *  checkpoints to INDEX for the lines passed on the way. */
+    static Line find(FileChannel channel, long line, Normalizer normalizer,
+                     LineIndex index) throws IOException {
+        if (line < 1) {
+            throw error("bad line number");
+        }
+        long posn = 0, current = 1, before = 0, chars = 0;
+        long settings = -1, start = 0;
+        int checkpoint = index == null ? -1 : index.floor(line);
+        if (checkpoint >= 0) {
+            current = index.line(checkpoint);
+            posn = index.start(checkpoint);
+            settings = index.settings(checkpoint);
+            before = index.before(checkpoint);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(BLOCK);
+        int column = 0, foreign = 0;
+        char foreignChar = 0;
+        boolean star = false, cr = false, fresh = true;
+        while (current < line) {
+            buf.clear();
+            int n = channel.read(buf, posn);
+            if (n < 0) {
+                throw error("input has no line %d", line);
+            }
+            int i;
+            for (i = 0; i < n && current < line; i += 1) {
+                byte b = buf.get(i);
+                if (cr && b == '\n') {
+                    cr = false;
+                    continue;
+                }
+                cr = false;
+                if (fresh) {
+                    start = posn + i;
+                    fresh = false;
+                    if (index != null) {
+                        index.add(current, start, settings, before);
+                    }
+                }
+                if (isEnd(b)) {
+                    if (!star && foreign > 0) {
+                        normalizer.normalize(foreignChar, (int) current,
+                                             foreign);
+                    }
+                    if (star) {
+                        if (column > SETTINGS_LIMIT) {
+                            throw error("settings line %d too long",
+                                        current);
+                        }
+                        settings = start;
+                        before = 0;
+                    } else {
+                        before += chars;
+                    }
+                    star = false;
+                    chars = 0;
+                    column = 0;
+                    foreign = 0;
+                    current += 1;
+                    cr = b == '\r';
+                    fresh = true;
+                } else {
+                    star |= b == LineFormat.SETTINGS_MARK;
+                    column += 1;
+                    char c = toChar(b);
+                    if (!normalizer.accepts(c)) {
+                        if (foreign == 0) {
+                            foreign = column;
+                            foreignChar = c;
+                        }
+                    } else if (normalizer.normalize(c, 0, 0) >= 0) {
+                        chars += 1;
+                    }
+                }
+            }
+            posn += i;
+        }
+        ByteBuffer head = ByteBuffer.allocate(PROBE);
+        int n = channel.read(head, posn);
+        int k = cr && n > 0 && head.get(0) == '\n' ? 1 : 0;
+        if (n <= k) {
+            throw error("input has no line %d", line);
+        }
+        for (int i = k; i < n && !isEnd(head.get(i)); i += 1) {
+            if (head.get(i) == LineFormat.SETTINGS_MARK) {
+                throw error("line %d is not a message line", line);
+            }
+        }
+        if (settings < 0) {
+            throw error("no settings line before line %d", line);
+        }
+        return new Line(line, posn + k, settingsLine(channel, settings),
+                        before);
+    }
+
+    /** Return the text of the settings line beginning at byte START of
+     *  CHANNEL. */
+    private static String settingsLine(FileChannel channel, long start)
+        throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(SETTINGS_LIMIT + 1);
+        int end = 0;
+        while (buf.hasRemaining()
+               && channel.read(buf, start + buf.position()) > 0) {
+            while (end < buf.position() && !isEnd(buf.get(end))) {
+                end += 1;
+            }
+            if (end < buf.position()) {
+                break;
+            }
+        }
+        return new String(buf.array(), 0, end, Charset.defaultCharset());
+    }
+
+    /** A converter for the message line LINE of CHANNEL, cleaned by
+     *  NORMALIZER, using MACHINE, which must be set up for the beginning
+     *  of the line. */
+    RangeDecryptor(Machine machine, Normalizer normalizer,
+                   FileChannel channel, Line line) throws IOException {
+        Alphabet alpha = machine.alphabet();
+        for (int k = 0; k < alpha.size(); k += 1) {
+            if (alpha.toChar(k) >= ASCII) {
+                throw error("range conversion needs an ASCII alphabet");
+            }
+        }
+        _machine = machine;
+        _normalizer = normalizer;
+        _channel = channel;
+        _line = line.number();
+        _start = line.start();
+        _origin = new int[machine.numRotors() - 1];
+        machine.getRotors(_origin);
+
+        ByteBuffer head = ByteBuffer.allocate(PROBE);
+        read(head, _start);
+        int n = head.position();
+        int g = 0;
+        while (g < n && !isBlank(head.get(g)) && !isEnd(head.get(g))) {
+            g += 1;
+        }
+        if (normalizer.skipsForeign()) {
+            _group = -1;
+            _separator = 0;
+        } else if (g < n && isBlank(head.get(g))) {
+            int s = g;
+            while (s < n && isBlank(head.get(s))) {
+                s += 1;
+            }
+            _group = g;
+            _separator = s - g;
+        } else {
+            _group = Long.MAX_VALUE;
+            _separator = 0;
+        }
+        if (_group == 0) {
+            throw error("message line starts with a separator");
+        }
+    }
+
+    /** Return the conversion of characters FROM <= K < TO of the
+     *  message line, numbering its characters from 0 and not counting
+     *  separators. */
+    String convert(long from, long to) throws IOException {
+        if (from < 0 || to < from) {
+            throw error("bad character range");
+        }
+        if (from == to) {
+            return "";
+        }
+        if (to - from > Integer.MAX_VALUE) {
+            throw error("character range too large");
+        }
+        Alphabet alpha = _machine.alphabet();
+        _machine.setRotors(_origin);
+        _machine.skip(from);
+        StringBuilder result = new StringBuilder((int) (to - from));
+        ByteBuffer bytes = ByteBuffer.allocate(BLOCK);
+        long k = _group < 0 ? 0 : from;
+        long posn = _group < 0 ? _start : position(from);
+        boolean end = false;
+        while (k < to && !end) {
+            bytes.clear();
+            int n = _channel.read(bytes, posn);
+            end = n < 0;
+            for (int i = 0; i < n && k < to && !end; i += 1) {
+                byte b = bytes.get(i);
+                end = isEnd(b);
+                int c = end ? -1
+                    : _normalizer.normalize(toChar(b), (int) _line,
+                                            (int) (posn + i - _start + 1));
+                if (c >= 0) {
+                    if (k >= from) {
+                        c = _machine.convert(alpha.toInt((char) c));
+                        result.append(alpha.toChar(c));
+                    }
+                    k += 1;
+                }
+            }
+            posn += Math.max(n, 0);
+        }
+        if (result.length() != to - from) {
+            throw error("character range extends past end of message");
+        }
+        return result.toString();
+    }
+
+    /** Return the byte position in the file of character K of the
+     *  message line, which must have a fixed layout. */
+    long position(long k) {
+        if (_group == Long.MAX_VALUE) {
+            return _start + k;
+        }
+        return _start + k + (k / _group) * _separator;
+    }
+
+    /** Fill BUF from my channel starting at byte POSN, stopping early
+     *  only at end of file. */
+    private void read(ByteBuffer buf, long posn) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = _channel.read(buf, posn + buf.position());
+            if (n < 0) {
+                break;
+            }
+        }
+    }
+
+    /** Return true iff B separates groups. */
+    private static boolean isBlank(byte b) {
+        return !isEnd(b) && Normalizer.isBlank((char) b);
+    }
+
+    /** Return the character that byte B of a file stands for, taking
+     *  bytes outside ASCII to be NON_ASCII. */
+    private static char toChar(byte b) {
+        return b >= 0 ? (char) b : NON_ASCII;
+    }
+
+    /** Return true iff B ends a line. */
+    private static boolean isEnd(byte b) {
+        return b == '\r' || b == '\n';
+    }
+
+    /** The character taken for each byte outside ASCII. */
+    private static final char NON_ASCII = '\ufffd';
+    /** Characters below this are ASCII. */
+    private static final int ASCII = 128;
+    /** Number of bytes examined to determine the layout. */
+    private static final int PROBE = 4096;
+    /** Size of the blocks in which find reads. */
+    private static final int BLOCK = 1 << 16;
+    /** Longest settings line accepted by find. */
+    private static final int SETTINGS_LIMIT = 1 << 16;
+
+    /** The machine doing the conversion. */
+    private final Machine _machine;
+    /** Cleans the message line. */
+    private final Normalizer _normalizer;
+    /** The file read. */
+    private final FileChannel _channel;
+    /** Line number of the message line. */
+    private final long _line;
+    /** Byte position of the start of the message line. */
+    private final long _start;
+    /** Rotor positions at the start of the line. */
+    private final int[] _origin;
+    /** Characters per group (Long.MAX_VALUE if ungrouped, or -1 if the
+     *  layout is not fixed). */
+    private final long _group;
+    /** Bytes between groups. */
+    private final long _separator;
+}
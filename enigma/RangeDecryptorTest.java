@@ -0,0 +1,197 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RangeDecryptor class and
+ *  Main's --range option.
+ *  @author Jeonghyun Lee
+ */
+public class RangeDecryptorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small configuration. */
+    private static final MachineConfig CONFIG = smallConfig();
+
+    /** Settings lines used by the tests. */
+    private static final String SETTINGS1 = "* X K P Q ABC (AH)",
+        SETTINGS2 = "* X K Q P HGF";
+
+    /** A message of 23 characters. */
+    private static final String MSG = "ABCDEFGHHGFEDCBAACEGBDF";
+
+    /** Return the conversion of characters FROM <= K < TO of message
+     *  line LINE of the file INPUT. */
+    private static String range(Path input, long line, long from, long to)
+        throws IOException {
+        return range(input, "", line, from, to);
+    }
+
+    /** Return the conversion of characters FROM <= K < TO of message
+     *  line LINE of the file INPUT, cleaning lines as normalization
+     *  options OPTS specify. */
+    private static String range(Path input, String opts, long line,
+                                long from, long to) throws IOException {
+        Normalizer normalizer = Normalizer.parse(CONFIG.alphabet(), opts);
+        try (FileChannel channel = FileChannel.open(input)) {
+            RangeDecryptor.Line found =
+                RangeDecryptor.find(channel, line, normalizer);
+            Machine machine = CONFIG.newMachine();
+            Main.prepare(machine, found.settings()).apply(machine);
+            machine.skip(found.before());
+            return new RangeDecryptor(machine, normalizer, channel, found)
+                .convert(from, to);
+        }
+    }
+
+    /** Return the conversion by a machine set by SETTINGS of MSGS, one
+     *  after the other. */
+    private static String[] converted(String settings, String... msgs) {
+        Machine machine = CONFIG.newMachine();
+        Main.prepare(machine, settings).apply(machine);
+        String[] result = new String[msgs.length];
+        for (int i = 0; i < msgs.length; i += 1) {
+            result[i] = machine.convert(msgs[i]);
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkGroupBoundaries() throws IOException {
+        String expected = converted(SETTINGS1, MSG)[0];
+        for (String end : new String[] { "\n", "\r\n", "\r" }) {
+            for (int layout = 0; layout < 4; layout += 1) {
+                Path input = Files.createTempFile("range", ".in");
+                Files.writeString(input, SETTINGS1 + end
+                                  + (layout % 2 == 0 ? grouped(MSG) : MSG)
+                                  + (layout < 2 ? end : ""));
+                for (int from = 0; from <= MSG.length(); from += 1) {
+                    for (int to = from; to <= MSG.length(); to += 1) {
+                        assertEquals(from + ":" + to,
+                                     expected.substring(from, to),
+                                     range(input, 2, from, to));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void checkLaterLines() throws IOException {
+        Path input = Files.createTempFile("range", ".in");
+        String first = MSG.substring(0, 12), second = MSG.substring(5);
+        Files.writeString(input, SETTINGS1 + "\r\n" + grouped(first)
+                          + "\r\n\r\n" + second + "\r\n" + SETTINGS2
+                          + "\n" + grouped(MSG) + "\n");
+        String[] expected = converted(SETTINGS1, first, second);
+        assertEquals(expected[0].substring(3, 11), range(input, 2, 3, 11));
+        assertEquals("", range(input, 3, 0, 0));
+        assertEquals(expected[1], range(input, 4, 0, second.length()));
+        assertEquals(expected[1].substring(4, 6), range(input, 4, 4, 6));
+        assertEquals(converted(SETTINGS2, MSG)[0].substring(9, 21),
+                     range(input, 6, 9, 21));
+    }
+
+    @Test
+    public void checkNormalized() throws IOException {
+        Path input = Files.createTempFile("range", ".in");
+        Files.writeString(input, SETTINGS1 + "\n" + "abcde fgh\n"
+                          + MSG.toLowerCase() + "\n" + SETTINGS2 + "\n"
+                          + "AB-CD, EF!\n" + "A.B " + MSG + "\n");
+        String[] expected =
+            converted(SETTINGS1, "ABCDEFGH", MSG);
+        assertEquals(expected[1].substring(3, 17),
+                     range(input, "fold", 3, 3, 17));
+        expected = converted(SETTINGS2, "ABCDEF", "AB" + MSG);
+        assertEquals(expected[0].substring(1, 5),
+                     range(input, "skip", 5, 1, 5));
+        assertEquals(expected[1].substring(4, 20),
+                     range(input, "skip", 6, 4, 20));
+        try {
+            range(input, "fold", 6, 0, 1);
+            fail("accepted foreign characters");
+        } catch (EnigmaException excp) {
+            assertEquals("line 5, column 3: character '-' not in alphabet",
+                         excp.getMessage());
+        }
+    }
+
+    @Test
+    public void checkErrors() throws IOException {
+        Path input = Files.createTempFile("range", ".in");
+        Files.writeString(input, SETTINGS1 + "\r\n" + grouped(MSG)
+                          + "\r\nABC\r\n");
+        String[][] cases = {
+            { "2", "0", "24", "character range extends past end of message" },
+            { "2", "5", "4", "bad character range" },
+            { "1", "0", "1", "line 1 is not a message line" },
+            { "4", "0", "1", "input has no line 4" },
+        };
+        for (String[] c : cases) {
+            try {
+                range(input, Long.parseLong(c[0]), Long.parseLong(c[1]),
+                      Long.parseLong(c[2]));
+                fail("accepted range " + String.join(":", c));
+            } catch (EnigmaException excp) {
+                assertEquals(c[3], excp.getMessage());
+            }
+        }
+        Files.writeString(input, grouped(MSG) + "\n" + grouped(MSG) + "\n");
+        try {
+            range(input, 2, 0, 1);
+            fail("accepted input without a settings line");
+        } catch (EnigmaException excp) {
+            assertEquals("no settings line before line 2", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void checkMainRange() throws IOException {
+        Path dir = Files.createTempDirectory("range");
+        Path config = dir.resolve("config"), input = dir.resolve("in");
+        Path output = dir.resolve("out");
+        Files.writeString(config, SMALL_CONFIG);
+        Files.writeString(input, SETTINGS1 + "\n" + grouped(MSG) + "\n"
+                          + SETTINGS2 + "\n" + MSG + "\n");
+        Main.main("--range=2:7", config.toString(), input.toString(),
+                  output.toString());
+        assertEquals(grouped(converted(SETTINGS1, MSG)[0].substring(2, 7))
+                     + "\r\n", Files.readString(output));
+        Main.main("--range=4:0:23", config.toString(), input.toString(),
+                  output.toString());
+        assertEquals(grouped(converted(SETTINGS2, MSG)[0]) + "\r\n",
+                     Files.readString(output));
+    }
+
+    @Test
+    public void checkMainNormalizedRange() throws IOException {
+        Path dir = Files.createTempDirectory("range");
+        Path config = dir.resolve("config"), input = dir.resolve("in");
+        Path output = dir.resolve("out");
+        Files.writeString(config, SMALL_CONFIG);
+        Files.writeString(input, SETTINGS1 + "\n" + "abcde fgh\n" + MSG
+                          + "\n");
+        Main.main("--normalize=fold", config.toString(), input.toString(),
+                  output.toString());
+        String last = Files.readString(output).split("\r\n")[1];
+        Main.main("--normalize=fold", "--range=3:0:23", config.toString(),
+                  input.toString(), output.toString());
+        assertEquals(last + "\r\n", Files.readString(output));
+    }
+}
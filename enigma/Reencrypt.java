@@ -0,0 +1,160 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** Brings the output of Main, and the state index written with it by
+ *  --index, up to date with an edit to one message line of its input,
+ *  converting again only what the edit affects.  If the edit replaced
+ *  characters by as many others, only the characters from the snapshot
+ *  before the edit to its end are converted; otherwise the rest of the
+ *  line and the later message lines under the same settings line are.
+ *  Usage:
+ *  <pre>
+ *    java enigma.Reencrypt [--normalize=OPTS] CONFIG INPUT OUTPUT \
+ *        LINE START END
+ *  </pre>
+ *  INPUT is the edited input, OUTPUT the output of Main for the input
+ *  before the edit, with its index in OUTPUT.idx, and the edit changed
+ *  characters START <= K < END of message line number LINE (from 1) as
+ *  normalized (positions in the edited line).  OUTPUT and OUTPUT.idx
+ *  are rewritten.
+ *  @author Jeonghyun Lee
+ */
+class Reencrypt {
+
+    /** A re-encrypter for the machines described by CONFIG, whose
+     *  message lines are cleaned by NORMALIZER. */
+    Reencrypt(MachineConfig config, Normalizer normalizer) {
+        _config = config;
+        _normalizer = normalizer;
+    }
+
+    /** Bring the file OUTPUT and its index up to date with the file
+     *  INPUT, in which characters START <= K < END of message line LINE
+     *  have been edited.  Returns the number of message lines converted
+     *  again. */
+    int edit(Path input, Path output, int line, int start, int end) {
+        Path indexName = Path.of(output + ".idx");
+        StateIndex index = StateIndex.read(indexName);
+        List<String> in = readLines(input), out = readLines(output);
+        int[] row = new int[in.size() + 1];
+        int rows = 0;
+        for (int i = 1; i <= in.size(); i += 1) {
+            row[i] = LineFormat.isSettings(in.get(i - 1)) ? -1 : rows++;
+        }
+        if (rows != out.size()) {
+            throw error("%s is not the output for %s", output, input);
+        }
+        if (line < 1 || line > in.size() || row[line] < 0
+            || in.get(line - 1).isEmpty()) {
+            throw error("line %d is not a message line", line);
+        }
+        int settings = line;
+        while (settings > 0 && row[settings] >= 0) {
+            settings -= 1;
+        }
+        if (settings == 0) {
+            throw error("no settings line before line %d", line);
+        }
+        Machine machine = _config.newMachine();
+        Main.prepare(machine, in.get(settings - 1)).apply(machine);
+        String msg = normalize(in.get(line - 1), line);
+        String old = out.get(row[line]).replace(" ", "");
+        out.set(row[line],
+                LineFormat.group(index.reconvert(machine, line, old, msg,
+                                                 start, end)));
+        int count = 1;
+        if (msg.length() != old.length()) {
+            index.setUp(settings);
+            for (int i = line + 1; i <= in.size() && row[i] >= 0; i += 1) {
+                if (!in.get(i - 1).isEmpty()) {
+                    String next = normalize(in.get(i - 1), i);
+                    out.set(row[i],
+                            LineFormat.group(index.convert(machine, i,
+                                                           next)));
+                    count += 1;
+                }
+            }
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i <= in.size(); i += 1) {
+            if (row[i] < 0) {
+                continue;
+            }
+            text.append(out.get(row[i]));
+            text.append(in.get(i - 1).isEmpty() ? System.lineSeparator()
+                        : LineFormat.MESSAGE_END);
+        }
+        try {
+            Files.writeString(output, text, Charset.defaultCharset());
+        } catch (IOException excp) {
+            throw error("could not write %s", output);
+        }
+        index.write(indexName);
+        return count;
+    }
+
+    /** Return the normalized text of TEXT, input line number LINE. */
+    private String normalize(String text, int line) {
+        char[] buffer = new char[text.length()];
+        return new String(buffer, 0,
+                          _normalizer.normalize(text, line, buffer));
+    }
+
+    /** Return the lines of the file NAME. */
+    private static List<String> readLines(Path name) {
+        try {
+            return Files.readAllLines(name, Charset.defaultCharset());
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** Apply the edit described by ARGS (see the class comment).  Exits
+     *  with code 1 if there is an error. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--normalize=(.+) --=(.*){6}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Reencrypt [--normalize=OPTS] "
+                            + "CONFIG INPUT OUTPUT LINE START END");
+            }
+            List<String> words = options.get("--");
+            MachineConfig config = ConfigParser.parse(words.get(0));
+            String spec = options.contains("--normalize")
+                ? options.get("--normalize").get(0) : "";
+            Reencrypt reencrypt =
+                new Reencrypt(config,
+                              Normalizer.parse(config.alphabet(), spec));
+            int count;
+            try {
+                count = reencrypt.edit(Path.of(words.get(1)),
+                                       Path.of(words.get(2)),
+                                       Integer.parseInt(words.get(3)),
+                                       Integer.parseInt(words.get(4)),
+                                       Integer.parseInt(words.get(5)));
+            } catch (NumberFormatException excp) {
+                throw error("bad line or edit bounds");
+            }
+            System.out.printf("%d message lines converted again%n", count);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** The configuration of the machines. */
+    private final MachineConfig _config;
+    /** Cleans message lines. */
+    private final Normalizer _normalizer;
+}
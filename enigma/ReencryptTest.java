@@ -0,0 +1,122 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Reencrypt class.
+ *  @author Jeonghyun Lee
+ */
+public class ReencryptTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small configuration. */
+    private static final MachineConfig CONFIG = smallConfig();
+
+    /** Normalizes lines. */
+    private static final Normalizer NORMALIZER =
+        Normalizer.parse(CONFIG.alphabet(), "");
+
+    /** Input lines used by the tests. */
+    private static final String[] LINES = {
+        "* X K P Q ABC (AH)", "ABCDEFGH ABCDEFGH ABCDEFGH", "HHHH GGGG",
+        "", "AAAAAAAAAAAA", "* X K Q P HGF", "BBBB CCCC"
+    };
+
+    /** Write LINES to INPUT and convert it with Main into OUTPUT. */
+    private static void main(String[] lines, Path input, Path output)
+        throws IOException {
+        Path config = input.resolveSibling("config");
+        Files.writeString(config, SMALL_CONFIG);
+        Files.writeString(input, String.join("\n", lines) + "\n");
+        Main.main(config.toString(), input.toString(), output.toString());
+    }
+
+    /** Write LINES to INPUT, convert it into OUTPUT, and write an index
+     *  of INTERVAL for it to OUTPUT.idx, as Main --index does. */
+    private static void convert(String[] lines, Path input, Path output,
+                                int interval) throws IOException {
+        main(lines, input, output);
+        StateIndex index = new StateIndex(interval);
+        Machine machine = CONFIG.newMachine();
+        for (int i = 1; i <= lines.length; i += 1) {
+            String line = lines[i - 1];
+            if (line.contains("*")) {
+                Main.prepare(machine, line).apply(machine);
+                index.setUp(i);
+            } else if (!line.isEmpty()) {
+                char[] buffer = new char[line.length()];
+                index.convert(machine, i,
+                              new String(buffer, 0,
+                                         NORMALIZER.normalize(line, i,
+                                                              buffer)));
+            }
+        }
+        index.write(Path.of(output + ".idx"));
+    }
+
+    /** Return the output of Main for LINES, using files in DIR. */
+    private static String expected(Path dir, String[] lines)
+        throws IOException {
+        Path output = dir.resolve("whole.out");
+        main(lines, dir.resolve("whole.in"), output);
+        return Files.readString(output);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkEdits() throws IOException {
+        Path dir = Files.createTempDirectory("reencrypt");
+        Path input = dir.resolve("in"), output = dir.resolve("out");
+        convert(LINES, input, output, 4);
+        Reencrypt reencrypt = new Reencrypt(CONFIG, NORMALIZER);
+        String[] lines = LINES.clone();
+        lines[1] = "ABCDEFGH ABCDHHHH ABCDEFGH";
+        Files.writeString(input, String.join("\n", lines) + "\n");
+        assertEquals(1, reencrypt.edit(input, output, 2, 12, 16));
+        assertEquals(expected(dir, lines), Files.readString(output));
+        lines[1] = "ABCDEFGH ABCD ABCDEFGH";
+        Files.writeString(input, String.join("\n", lines) + "\n");
+        assertEquals(3, reencrypt.edit(input, output, 2, 12, 12));
+        assertEquals(expected(dir, lines), Files.readString(output));
+        lines[2] = "HHHH GGGG HHHH";
+        Files.writeString(input, String.join("\n", lines) + "\n");
+        assertEquals(2, reencrypt.edit(input, output, 3, 8, 12));
+        assertEquals(expected(dir, lines), Files.readString(output));
+    }
+
+    @Test
+    public void checkErrors() throws IOException {
+        Path dir = Files.createTempDirectory("reencrypt");
+        Path input = dir.resolve("in"), output = dir.resolve("out");
+        convert(LINES, input, output, 4);
+        Reencrypt reencrypt = new Reencrypt(CONFIG, NORMALIZER);
+        try {
+            reencrypt.edit(input, output, 6, 0, 1);
+            fail("edited a settings line");
+        } catch (EnigmaException excp) {
+            assertEquals("line 6 is not a message line", excp.getMessage());
+        }
+        Files.writeString(input, String.join("\n", LINES) + "\nABC\n");
+        try {
+            reencrypt.edit(input, output, 2, 0, 1);
+            fail("accepted output for other input");
+        } catch (EnigmaException excp) {
+            assertEquals(output + " is not the output for " + input,
+                         excp.getMessage());
+        }
+    }
+}
@@ -62,16 +62,31 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int a = permutation().wrap(p + setting());
-        int b = permutation().permute(a) - setting();
+        return convertForward(p, setting());
+    }
+
+    /** Return the conversion of P (an integer in the range 0..size()-1)
+     *  according to my permutation, as if my setting were POSN. */
+    int convertForward(int p, int posn) {
+        int shift = posn - _ring;
+        int a = permutation().wrap(p + shift);
+        int b = permutation().permute(a) - shift;
         return permutation().wrap(b);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int a = permutation().wrap(e + setting());
-        int b = permutation().invert(a) - setting();
+        return convertBackward(e, setting());
+    }
+
+    /** Return the conversion of E (an integer in the range 0..size()-1)
+     *  according to the inverse of my permutation, as if my setting were
+     *  POSN. */
+    int convertBackward(int e, int posn) {
+        int shift = posn - _ring;
+        int a = permutation().wrap(e + shift);
+        int b = permutation().invert(a) - shift;
         return permutation().wrap(b);
     }
 
@@ -79,9 +94,21 @@ class Rotor {
     /** Returns true iff I am positioned to allow the rotor to my left
      *  to advance. */
     boolean atNotch() {
+        return atNotch(setting());
+    }
+
+    /** Returns true iff I would be positioned to allow the rotor to my
+     *  left to advance if my setting were POSN.  By default, false. */
+    boolean atNotch(int posn) {
         return false;
     }
 
+    /** Return the number of steps I must take to reach a notch (0 if I
+     *  am at one), or -1 if I have no notches.  By default, -1. */
+    int stepsToNotch() {
+        return -1;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
@@ -91,10 +118,21 @@ class Rotor {
         return "Rotor " + _name;
     }
 
+    /** Set my ring setting to character RING. */
     void settingRing(char ring) {
         _ring = alphabet().toInt(ring);
     }
 
+    /** Set my ring setting to index RING. */
+    void setRing(int ring) {
+        _ring = _permutation.wrap(ring);
+    }
+
+    /** Return my ring setting. */
+    int ring() {
+        return _ring;
+    }
+
     /** My name. */
     private final String _name;
 
@@ -102,7 +140,7 @@ class Rotor {
     private Permutation _permutation;
     /**  */
     protected int _setting;
-    /** */
+    /** My ring setting, which offsets my wiring from my setting. */
     private int _ring = 0;
 
 }
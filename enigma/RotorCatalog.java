@@ -0,0 +1,217 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import static enigma.EnigmaException.*;
+
+/** The available rotors of a configuration, stored compactly.  Each
+ *  rotor is a name, a kind code (as for MachineConfig.RotorSpec), its
+ *  notches and the number of its wiring.  Wirings are held in one
+ *  arena of chars, alphabet-size elements each, and a wiring shared by
+ *  several rotors is stored once.  A rotor's Permutation is compiled
+ *  (once per wiring) and its Rotor made only when a machine first asks
+ *  for it by name, so the cost of a large catalog is little more than
+ *  that of its arena until its rotors are used.  Rotors are added while
+ *  a configuration is read, by one thread; afterwards, a catalog may be
+ *  used by any number of threads.
+ *  @author Jeonghyun Lee
+ */
+class RotorCatalog {
+
+    /** An empty catalog of rotors over ALPHA. */
+    RotorCatalog(Alphabet alpha) {
+        _alphabet = alpha;
+        _width = alpha.size();
+        _arena = new char[_width * INITIAL];
+        _kinds = new char[INITIAL];
+        _notches = new String[INITIAL];
+        _names = new String[INITIAL];
+        _wiringOf = new int[INITIAL];
+        _perms = new Permutation[INITIAL];
+        _dedup = new int[INITIAL * 2];
+    }
+
+    /** Add a rotor named NAME of kind KIND with notches NOTCHES,
+     *  mapping index K to WIRING[K] in its 0 setting.  NAME must not
+     *  already be in the catalog. */
+    void add(String name, char kind, String notches, int[] wiring) {
+        if (wiring.length != _width) {
+            throw error("wiring of rotor %s has wrong size", name);
+        }
+        if (_index.putIfAbsent(name, _size) != null) {
+            throw error("duplicate rotor %s", name);
+        }
+        if (_size == _names.length) {
+            int n = 2 * _size;
+            _kinds = Arrays.copyOf(_kinds, n);
+            _notches = Arrays.copyOf(_notches, n);
+            _names = Arrays.copyOf(_names, n);
+            _wiringOf = Arrays.copyOf(_wiringOf, n);
+        }
+        _names[_size] = name;
+        _kinds[_size] = kind;
+        String shared = _notchStrings.putIfAbsent(notches, notches);
+        _notches[_size] = shared == null ? notches : shared;
+        _wiringOf[_size] = intern(wiring);
+        _size += 1;
+    }
+
+    /** Return the number of the wiring WIRING in my arena, adding it if
+     *  it is not already there. */
+    private int intern(int[] wiring) {
+        int mask = _dedup.length - 1;
+        int h = hash(wiring) & mask;
+        while (_dedup[h] != 0) {
+            int w = _dedup[h] - 1;
+            if (sameWiring(w, wiring)) {
+                return w;
+            }
+            h = (h + 1) & mask;
+        }
+        int w = _wirings;
+        if ((w + 1) * _width > _arena.length) {
+            _arena = Arrays.copyOf(_arena, 2 * _arena.length);
+            _perms = Arrays.copyOf(_perms, 2 * _perms.length);
+        }
+        for (int k = 0; k < _width; k += 1) {
+            _arena[w * _width + k] = (char) wiring[k];
+        }
+        _wirings += 1;
+        _dedup[h] = w + 1;
+        if (2 * _wirings > _dedup.length) {
+            rehash();
+        }
+        return w;
+    }
+
+    /** Double the size of _dedup. */
+    private void rehash() {
+        _dedup = new int[2 * _dedup.length];
+        int mask = _dedup.length - 1;
+        int[] wiring = new int[_width];
+        for (int w = 0; w < _wirings; w += 1) {
+            for (int k = 0; k < _width; k += 1) {
+                wiring[k] = _arena[w * _width + k];
+            }
+            int h = hash(wiring) & mask;
+            while (_dedup[h] != 0) {
+                h = (h + 1) & mask;
+            }
+            _dedup[h] = w + 1;
+        }
+    }
+
+    /** Return true iff wiring number W in my arena is WIRING. */
+    private boolean sameWiring(int w, int[] wiring) {
+        for (int k = 0; k < _width; k += 1) {
+            if (_arena[w * _width + k] != wiring[k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return a hash of WIRING. */
+    private static int hash(int[] wiring) {
+        int h = Arrays.hashCode(wiring);
+        return h ^ (h >>> 16);
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotors. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the number of distinct wirings. */
+    int wirings() {
+        return _wirings;
+    }
+
+    /** Return the number of the rotor named NAME, or -1 if there is
+     *  none. */
+    int find(String name) {
+        Integer r = _index.get(name);
+        return r == null ? -1 : r;
+    }
+
+    /** Return the name of rotor number R. */
+    String name(int r) {
+        return _names[r];
+    }
+
+    /** Return the kind code of rotor number R. */
+    char kind(int r) {
+        return _kinds[r];
+    }
+
+    /** Return the notches of rotor number R. */
+    String notches(int r) {
+        return _notches[r];
+    }
+
+    /** Return a copy of the wiring table of rotor number R. */
+    int[] wiring(int r) {
+        int w = _wiringOf[r];
+        int[] result = new int[_width];
+        for (int k = 0; k < _width; k += 1) {
+            result[k] = _arena[w * _width + k];
+        }
+        return result;
+    }
+
+    /** Return a new rotor, at its 0 setting, described by rotor number
+     *  R. */
+    Rotor newRotor(int r) {
+        int w = _wiringOf[r];
+        Permutation perm = _perms[w];
+        if (perm == null) {
+            perm = _perms[w] = new Permutation(wiring(r), _alphabet);
+        }
+        switch (_kinds[r]) {
+        case MachineConfig.RotorSpec.MOVING:
+            return new MovingRotor(_names[r], perm, _notches[r]);
+        case MachineConfig.RotorSpec.FIXED:
+            return new FixedRotor(_names[r], perm);
+        default:
+            return new Reflector(_names[r], perm);
+        }
+    }
+
+    /** Initial capacity, in rotors and wirings. */
+    private static final int INITIAL = 16;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** Number of elements of each wiring. */
+    private final int _width;
+    /** Number of rotors. */
+    private int _size;
+    /** Number of distinct wirings. */
+    private int _wirings;
+    /** Wiring W is _arena[W * _width .. (W + 1) * _width - 1]. */
+    private char[] _arena;
+    /** Open-addressed hash table of wirings: each element is 0 (empty)
+     *  or one more than a wiring's number. */
+    private int[] _dedup;
+    /** Compiled permutation of each wiring, once needed.  Permutations
+     *  are immutable, so a racy initialization is harmless. */
+    private Permutation[] _perms;
+    /** Kind code of each rotor. */
+    private char[] _kinds;
+    /** Notches of each rotor (equal notch strings are shared). */
+    private String[] _notches;
+    /** Name of each rotor. */
+    private String[] _names;
+    /** Wiring number of each rotor. */
+    private int[] _wiringOf;
+    /** Number of each rotor, by name. */
+    private final HashMap<String, Integer> _index = new HashMap<>();
+    /** Distinct notch strings. */
+    private final HashMap<String, String> _notchStrings = new HashMap<>();
+}
@@ -0,0 +1,81 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RotorCatalog class.
+ *  @author Jeonghyun Lee
+ */
+public class RotorCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the wiring of the permutation with cycles CYCLES. */
+    private static int[] wiring(String cycles) {
+        Permutation perm = new Permutation(cycles, UPPER);
+        int[] result = new int[UPPER.size()];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = perm.permute(k);
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkLookupAndSharing() {
+        RotorCatalog catalog = new RotorCatalog(UPPER);
+        catalog.add("I", 'M', "Q", wiring(NAVALA.get("I")));
+        catalog.add("I2", 'M', "E", wiring(NAVALA.get("I")));
+        catalog.add("B", 'R', "", wiring(NAVALA.get("B")));
+        assertEquals(3, catalog.size());
+        assertEquals(2, catalog.wirings());
+        assertEquals(1, catalog.find("I2"));
+        assertEquals(-1, catalog.find("II"));
+        assertEquals("E", catalog.notches(1));
+        assertArrayEquals(wiring(NAVALA.get("B")), catalog.wiring(2));
+        Rotor first = catalog.newRotor(0);
+        Rotor second = catalog.newRotor(1);
+        assertTrue(first instanceof MovingRotor);
+        assertTrue(catalog.newRotor(2) instanceof Reflector);
+        assertEquals("I2", second.name());
+        assertSame(first.permutation(), second.permutation());
+        assertNotSame(first, catalog.newRotor(0));
+        try {
+            catalog.add("I", 'N', "", wiring(""));
+            fail("added a duplicate rotor");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void checkGrowth() {
+        RotorCatalog catalog = new RotorCatalog(UPPER);
+        int[] wiring = wiring("");
+        for (int r = 0; r < 1000; r += 1) {
+            int a = r % 26, b = (r / 26 + a + 1) % 26;
+            int t = wiring[a];
+            wiring[a] = wiring[b];
+            wiring[b] = t;
+            catalog.add("R" + r, 'N', "", wiring);
+        }
+        assertEquals(1000, catalog.size());
+        for (int r = 999; r >= 0; r -= 1) {
+            assertArrayEquals(wiring, catalog.wiring(catalog.find("R" + r)));
+            int a = r % 26, b = (r / 26 + a + 1) % 26;
+            int t = wiring[a];
+            wiring[a] = wiring[b];
+            wiring[b] = t;
+        }
+        assertTrue(catalog.wirings() <= 1000);
+    }
+}
@@ -0,0 +1,310 @@
+package enigma;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static enigma.EnigmaException.*;
+
+/** Checks converted messages off the main path.  Since the machine is
+ *  its own inverse, converting a message's output again under the same
+ *  settings and rotor positions must give back the (normalized) input.
+ *  The thread converting messages hands a sample of them, with the
+ *  settings line and rotor positions they were converted under and the
+ *  bytes it wrote for them, to a bounded queue; a pool of worker
+ *  threads, each with its own Machine, decodes those bytes, checks
+ *  that they hold the output in groups of five ending in CRLF,
+ *  reconverts the output and records any messages that do not come
+ *  back.  The check covers conversion, grouping and encoding up to the
+ *  bytes handed to the output stream; it does not read back what the
+ *  stream (or the file system) does with them.  When the
+ *  queue is full, the converting thread waits, so the check slows the
+ *  conversion down rather than falling arbitrarily far behind it.  A
+ *  fraction F of the messages is checked, evenly spaced: message I is
+ *  checked iff floor((I+1)F) > floor(IF).
+ *  @author Jeonghyun Lee
+ */
+class RoundTrip {
+
+    /** A message that did not survive the round trip. */
+    static final class Failure {
+        /** A failure of message number MESSAGE, input line LINE, first
+         *  differing at character OFFSET of its normalized text, as
+         *  described by DETAIL. */
+        Failure(long message, int line, int offset, String detail) {
+            _message = message;
+            _line = line;
+            _offset = offset;
+            _detail = detail;
+        }
+
+        /** Return the number of the message, from 0. */
+        long message() {
+            return _message;
+        }
+
+        /** Return the input line of the message. */
+        int line() {
+            return _line;
+        }
+
+        /** Return the offset of the first difference. */
+        int offset() {
+            return _offset;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("message %d (line %d), offset %d: %s",
+                                 _message, _line, _offset, _detail);
+        }
+
+        /** Number of the message. */
+        private final long _message;
+        /** Input line of the message. */
+        private final int _line;
+        /** Offset of the first difference. */
+        private final int _offset;
+        /** Description of the difference. */
+        private final String _detail;
+    }
+
+    /** A message waiting to be checked. */
+    private static final class Job {
+        /** Message number MESSAGE, input line LINE, whose text was INPUT
+         *  and for which WRITTEN was written, converted with the machine
+         *  set by settings line SETTINGS and then to rotor positions
+         *  POSITIONS. */
+        Job(long message, int line, String settings, int[] positions,
+            String input, byte[] written) {
+            _message = message;
+            _line = line;
+            _settings = settings;
+            _positions = positions;
+            _input = input;
+            _written = written;
+        }
+
+        /** Message number. */
+        private final long _message;
+        /** Input line. */
+        private final int _line;
+        /** Settings line in force. */
+        private final String _settings;
+        /** Rotor positions at the start of the message. */
+        private final int[] _positions;
+        /** The message line as read. */
+        private final String _input;
+        /** The bytes written for the message. */
+        private final byte[] _written;
+    }
+
+    /** A checker of messages for machines described by CONFIG whose
+     *  lines are cleaned by NORMALIZER and written in CHARSET, checking
+     *  the fraction FRACTION of them on THREADS threads, with up to
+     *  CAPACITY messages waiting. */
+    RoundTrip(MachineConfig config, Normalizer normalizer, Charset charset,
+              int threads, int capacity, double fraction) {
+        if (threads <= 0 || capacity <= 0) {
+            throw error("bad round-trip thread count or queue size");
+        }
+        if (!(fraction > 0 && fraction <= 1)) {
+            throw error("round-trip fraction must be in (0, 1]");
+        }
+        _config = config;
+        _normalizer = normalizer;
+        _charset = charset;
+        _fraction = fraction;
+        _queue = new ArrayBlockingQueue<>(capacity);
+        _workers = new Thread[threads];
+        for (int k = 0; k < threads; k += 1) {
+            _workers[k] = new Thread(() -> {
+                long mark = Metrics.allocationMark();
+                work();
+                Metrics.allocated(mark, 0);
+            }, "round-trip-" + k);
+            _workers[k].setDaemon(true);
+            _workers[k].start();
+        }
+    }
+
+    /** Count the next message, returning true iff it is to be checked,
+     *  in which case it must be passed to submit. */
+    boolean sampled() {
+        long i = _messages;
+        _messages += 1;
+        return (long) ((i + 1) * _fraction) > (long) (i * _fraction);
+    }
+
+    /** Queue for checking the message most recently counted by sampled,
+     *  from input line LINE, whose text INPUT was converted by a machine
+     *  set by settings line SETTINGS and then to rotor positions
+     *  POSITIONS (as from Machine.getRotors), and for which the bytes
+     *  WRITTEN[0 .. LENGTH-1] were written.  POSITIONS and WRITTEN are
+     *  copied. */
+    void submit(int line, String settings, int[] positions, String input,
+                byte[] written, int length) {
+        Job job = new Job(_messages - 1, line, settings, positions.clone(),
+                          input, Arrays.copyOf(written, length));
+        try {
+            _queue.put(job);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("round-trip check interrupted");
+        }
+    }
+
+    /** Wait for every queued message to be checked, stop the workers and
+     *  return the failures found, in order of message.  At most
+     *  FAILURE_LIMIT are kept. */
+    List<Failure> finish() {
+        try {
+            for (int k = 0; k < _workers.length; k += 1) {
+                _queue.put(END);
+            }
+            for (Thread worker : _workers) {
+                worker.join();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("round-trip check interrupted");
+        }
+        synchronized (_failures) {
+            ArrayList<Failure> result = new ArrayList<>(_failures);
+            result.sort((a, b) -> Long.compare(a._message, b._message));
+            return result;
+        }
+    }
+
+    /** Return the number of messages checked so far. */
+    long checked() {
+        synchronized (_failures) {
+            return _checked;
+        }
+    }
+
+    /** Check queued messages until END is taken. */
+    private void work() {
+        Machine machine = _config.newMachine();
+        String settings = null;
+        char[] expected = new char[0];
+        while (true) {
+            Job job;
+            try {
+                job = _queue.take();
+            } catch (InterruptedException excp) {
+                return;
+            }
+            if (job == END) {
+                return;
+            }
+            Failure failure;
+            try {
+                if (!job._settings.equals(settings)) {
+                    Main.prepare(machine, job._settings).apply(machine);
+                    settings = job._settings;
+                }
+                if (expected.length < job._input.length()) {
+                    expected = new char[job._input.length()];
+                }
+                int n = _normalizer.normalize(job._input, job._line,
+                                              expected);
+                machine.setRotors(job._positions);
+                failure = compare(job, machine, expected, n);
+            } catch (RuntimeException excp) {
+                settings = null;
+                failure = new Failure(job._message, job._line, 0,
+                                      "could not be checked: "
+                                      + excp.getMessage());
+            }
+            record(failure);
+        }
+    }
+
+    /** Return the failure of JOB, whose normalized input is
+     *  EXPECTED[0 .. N-1], when the output it wrote is converted by
+     *  MACHINE, or null if it comes back. */
+    private Failure compare(Job job, Machine machine, char[] expected,
+                            int n) {
+        Alphabet alpha = machine.alphabet();
+        String text = new String(job._written, _charset);
+        if (!text.endsWith(LineFormat.MESSAGE_END)) {
+            return new Failure(job._message, job._line, 0,
+                               "output line does not end in CRLF");
+        }
+        int columns = text.length() - LineFormat.MESSAGE_END.length();
+        char[] output = new char[columns - columns / GROUP_WIDTH];
+        for (int k = 0, i = 0; k < columns; k += 1) {
+            char c = text.charAt(k);
+            boolean gap = k % GROUP_WIDTH == LineFormat.GROUP;
+            if (gap != (c == ' ') || gap && k == columns - 1
+                || !gap && !alpha.contains(c)) {
+                return new Failure(job._message, job._line, i,
+                                   String.format("%s at output column %d",
+                                                 Alphabet.describe(c), k));
+            }
+            if (!gap) {
+                output[i] = c;
+                i += 1;
+            }
+        }
+        for (int i = 0; i < Math.min(n, output.length); i += 1) {
+            char c = alpha.toChar(machine.convert(alpha.toInt(output[i])));
+            if (c != expected[i]) {
+                return new Failure(job._message, job._line, i,
+                                   String.format("expected %s, got %s",
+                                                 Alphabet.describe(
+                                                     expected[i]),
+                                                 Alphabet.describe(c)));
+            }
+        }
+        if (n != output.length) {
+            return new Failure(job._message, job._line,
+                               Math.min(n, output.length),
+                               String.format("%d characters in, %d out", n,
+                                             output.length));
+        }
+        return null;
+    }
+
+    /** Count a checked message, recording FAILURE if it is not null. */
+    private void record(Failure failure) {
+        synchronized (_failures) {
+            _checked += 1;
+            if (failure != null && _failures.size() < FAILURE_LIMIT) {
+                _failures.add(failure);
+            }
+        }
+    }
+
+    /** Marks the end of the messages for one worker. */
+    private static final Job END = new Job(-1, 0, null, null, null, null);
+
+    /** Number of columns taken by a group and the blank after it. */
+    private static final int GROUP_WIDTH = LineFormat.GROUP + 1;
+
+    /** Largest number of failures kept. */
+    private static final int FAILURE_LIMIT = 100;
+
+    /** The configuration of the machines. */
+    private final MachineConfig _config;
+    /** Cleans message lines. */
+    private final Normalizer _normalizer;
+    /** Encoding of the output. */
+    private final Charset _charset;
+    /** Fraction of messages checked. */
+    private final double _fraction;
+    /** Messages waiting to be checked. */
+    private final BlockingQueue<Job> _queue;
+    /** The threads checking messages. */
+    private final Thread[] _workers;
+    /** Number of messages counted by sampled. */
+    private long _messages;
+    /** Number of messages checked. */
+    private long _checked;
+    /** Failures found, in the order recorded. */
+    private final ArrayList<Failure> _failures = new ArrayList<>();
+}
@@ -0,0 +1,117 @@
+package enigma;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RoundTrip class.
+ *  @author Jeonghyun Lee
+ */
+public class RoundTripTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A small configuration. */
+    private static final MachineConfig CONFIG = smallConfig();
+
+    /** Settings line used by the tests. */
+    private static final String SETTINGS = "* X K P Q ABC (AH)";
+
+    /** Return a round-trip checker for CONFIG checking FRACTION of the
+     *  messages. */
+    private static RoundTrip roundTrip(double fraction) {
+        return new RoundTrip(CONFIG, Normalizer.parse(CONFIG.alphabet(), ""),
+                             StandardCharsets.UTF_8, 2, 4, fraction);
+    }
+
+    /** Return the bytes Main writes for the output MSG: MSG in groups of
+     *  five and a CRLF, in UTF-8. */
+    private static byte[] written(String msg) {
+        return (grouped(msg) + "\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSampling() {
+        RoundTrip all = roundTrip(1);
+        RoundTrip some = roundTrip(0.25);
+        StringBuilder sampled = new StringBuilder();
+        for (int i = 0; i < 12; i += 1) {
+            assertTrue(all.sampled());
+            sampled.append(some.sampled() ? 'x' : '.');
+        }
+        assertEquals("...x...x...x", sampled.toString());
+        assertEquals(List.of(), all.finish());
+        assertEquals(List.of(), some.finish());
+        assertEquals(0, all.checked());
+    }
+
+    @Test
+    public void checkMessages() {
+        Machine machine = CONFIG.newMachine();
+        Main.prepare(machine, SETTINGS).apply(machine);
+        RoundTrip check = roundTrip(1);
+        int[] positions = new int[3];
+        String[] lines = {
+            "ABC DEF", "HHHH GGGG", "ABCDEFGH", "ABCDEFGHAB", "ABCDEFG", ""
+        };
+        for (int line = 0; line < lines.length; line += 1) {
+            machine.getRotors(positions);
+            char[] output = machine.convert(lines[line].replace(" ", ""))
+                .toCharArray();
+            if (line == 1) {
+                output[5] = output[5] == 'A' ? 'B' : 'A';
+            }
+            String msg = new String(output);
+            if (line == 2) {
+                msg = msg.substring(0, msg.length() - 1);
+            }
+            byte[] bytes = written(msg);
+            if (line == 3) {
+                bytes = (msg + " \r\n").getBytes(StandardCharsets.UTF_8);
+            } else if (line == 4) {
+                bytes = (grouped(msg) + "\n").getBytes(StandardCharsets.UTF_8);
+            }
+            assertTrue(check.sampled());
+            check.submit(line + 2, SETTINGS, positions, lines[line], bytes,
+                         bytes.length);
+        }
+        List<RoundTrip.Failure> failures = check.finish();
+        assertEquals(6, check.checked());
+        assertEquals(4, failures.size());
+        assertEquals(1, failures.get(0).message());
+        assertEquals(3, failures.get(0).line());
+        assertEquals(5, failures.get(0).offset());
+        assertTrue(failures.get(0).toString()
+                   .startsWith("message 1 (line 3), offset 5: expected 'G'"));
+        assertEquals("message 2 (line 4), offset 7: 8 characters in, 7 out",
+                     failures.get(1).toString());
+        assertTrue(failures.get(2).toString()
+                   .startsWith("message 3 (line 5), offset 5: "));
+        assertTrue(failures.get(2).toString().endsWith("at output column 5"));
+        assertEquals("message 4 (line 6), offset 0: output line does not "
+                     + "end in CRLF", failures.get(3).toString());
+    }
+
+    @Test
+    public void checkErrors() {
+        try {
+            roundTrip(0);
+            fail("accepted empty sample");
+        } catch (EnigmaException excp) {
+            assertEquals("round-trip fraction must be in (0, 1]",
+                         excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+
+/** Hands out a KeySearch's key space to SearchWorkers as leases (ranges
+ *  of key numbers) and merges the best keys they report.  A lease that
+ *  is not reported within the lease timeout, or whose worker
+ *  disconnects, goes back into the queue.  Once the queue is empty, a
+ *  worker asking for work is given a backup copy of the oldest lease
+ *  still outstanding, so that a straggling worker cannot hold up the
+ *  end of the search; whichever copy is reported first is used.
+ *
+ *  Workers speak a line protocol: after connecting they are sent the
+ *  search description (see KeySearch.sendJob), and then repeatedly send
+ *  LEASE, to which the reply is WORK ID START END or DONE, followed
+ *  after a WORK reply by RESULT ID KEY:SCORE ....
+ *  @author Jeonghyun Lee
+ */
+class SearchCoordinator {
+
+    /** A lease of keys START <= K < END, numbered ID. */
+    private static class Lease {
+        /** Lease ID of keys START <= K < END. */
+        Lease(long id, long start, long end) {
+            _id = id;
+            _start = start;
+            _end = end;
+        }
+
+        /** Lease number. */
+        private final long _id;
+        /** Bounds of the leased keys. */
+        private final long _start, _end;
+        /** Time (in milliseconds) after which the lease is reissued. */
+        private long _deadline;
+    }
+
+    /** A coordinator for SEARCH that leases out LEASESIZE keys at a time
+     *  and reissues leases not reported within TIMEOUT milliseconds. */
+    SearchCoordinator(KeySearch search, long leaseSize, long timeout) {
+        _search = search;
+        _timeout = timeout;
+        _result = new TopKeys(search.top());
+        _leaseSize = Math.max(1, leaseSize);
+        _leases = search.size() / _leaseSize
+            + (search.size() % _leaseSize == 0 ? 0 : 1);
+        _remaining = _leases;
+    }
+
+    /** Serve workers connecting to SERVER until every lease has been
+     *  reported. */
+    void serve(ServerSocketChannel server) throws IOException {
+        Thread acceptor = new Thread(() -> accept(server), "search-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        synchronized (this) {
+            while (_remaining > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException excp) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Return the best keys reported so far. */
+    synchronized TopKeys result() {
+        TopKeys copy = new TopKeys(_search.top());
+        copy.merge(_result);
+        return copy;
+    }
+
+    /** Accept connections on SERVER, each served by its own thread, until
+     *  SERVER is closed. */
+    private void accept(ServerSocketChannel server) {
+        try {
+            while (true) {
+                SocketChannel channel = server.accept();
+                Thread worker = new Thread(() -> talk(channel),
+                                           "search-worker");
+                worker.setDaemon(true);
+                worker.start();
+            }
+        } catch (ClosedChannelException excp) {
+            return;
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+    }
+
+    /** Carry on the protocol with the worker on CHANNEL. */
+    private void talk(SocketChannel channel) {
+        Lease held = null;
+        try (channel) {
+            BufferedReader in = KeySearch.reader(channel);
+            PrintWriter out = KeySearch.writer(channel);
+            _search.sendJob(out);
+            for (String line = in.readLine(); line != null;
+                 line = in.readLine()) {
+                if (line.equals("LEASE")) {
+                    held = next();
+                    if (held == null) {
+                        out.println("DONE");
+                    } else {
+                        out.printf("WORK %d %d %d%n", held._id, held._start,
+                                   held._end);
+                    }
+                    out.flush();
+                } else if (line.startsWith("RESULT ")) {
+                    String[] words = line.split(" ");
+                    TopKeys part = new TopKeys(_search.top());
+                    for (int i = 2; i < words.length; i += 1) {
+                        int colon = words[i].indexOf(':');
+                        part.offer(Long.parseLong(words[i]
+                                                  .substring(0, colon)),
+                                   Double.parseDouble(words[i]
+                                                      .substring(colon + 1)));
+                    }
+                    complete(Long.parseLong(words[1]), part);
+                    held = null;
+                } else {
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException excp) {
+            /* Treat a broken worker like a disconnected one. */
+        }
+        if (held != null) {
+            abandon(held);
+        }
+    }
+
+    /** Return the next lease to hand out, or null if all are done.
+     *  Leases that have gone back into the queue come first, then leases
+     *  not yet handed out, which are made as they are needed. */
+    private synchronized Lease next() {
+        long now = System.currentTimeMillis();
+        for (Lease lease : _outstanding.values()) {
+            if (lease._deadline < now && _pendingIds.add(lease._id)) {
+                _pending.add(lease);
+            }
+        }
+        Lease lease = _pending.poll();
+        if (lease != null) {
+            _pendingIds.remove(lease._id);
+        } else if (_cursor < _leases) {
+            long start = _cursor * _leaseSize;
+            lease = new Lease(_cursor, start,
+                              Math.min(_search.size(), start + _leaseSize));
+            _cursor += 1;
+        } else {
+            for (Lease l : _outstanding.values()) {
+                if (lease == null || l._deadline < lease._deadline) {
+                    lease = l;
+                }
+            }
+            if (lease == null) {
+                return null;
+            }
+        }
+        lease._deadline = now + _timeout;
+        _outstanding.put(lease._id, lease);
+        return lease;
+    }
+
+    /** Record PART as the result of lease ID. */
+    private synchronized void complete(long id, TopKeys part) {
+        Lease lease = _outstanding.remove(id);
+        if (lease != null) {
+            if (_pendingIds.remove(id)) {
+                _pending.remove(lease);
+            }
+            _result.merge(part);
+            _remaining -= 1;
+            notifyAll();
+        }
+    }
+
+    /** Put LEASE, whose worker has gone, back in the queue if it has not
+     *  been completed. */
+    private synchronized void abandon(Lease lease) {
+        if (_outstanding.containsKey(lease._id)
+            && _pendingIds.add(lease._id)) {
+            _pending.addFirst(lease);
+        }
+    }
+
+    /** The search being coordinated. */
+    private final KeySearch _search;
+    /** Lease timeout in milliseconds. */
+    private final long _timeout;
+    /** Number of keys in each lease. */
+    private final long _leaseSize;
+    /** Number of leases covering the key space. */
+    private final long _leases;
+    /** ID of the next lease not yet handed out. */
+    private long _cursor;
+    /** Leases handed out before that are waiting to be handed out
+     *  again. */
+    private final ArrayDeque<Lease> _pending = new ArrayDeque<>();
+    /** IDs of the leases in _pending. */
+    private final HashSet<Long> _pendingIds = new HashSet<>();
+    /** Leases handed out and not yet reported, by ID. */
+    private final HashMap<Long, Lease> _outstanding = new HashMap<>();
+    /** Number of leases not yet reported. */
+    private long _remaining;
+    /** Best keys reported. */
+    private final TopKeys _result;
+}
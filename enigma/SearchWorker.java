@@ -0,0 +1,67 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.SocketChannel;
+
+import static enigma.EnigmaException.*;
+
+/** A worker in a distributed key search.  It connects to a
+ *  SearchCoordinator, receives the search description, and then
+ *  searches leases of keys until the coordinator reports that there
+ *  are none left.
+ *  @author Jeonghyun Lee
+ */
+class SearchWorker {
+
+    /** A worker for the coordinator at ADDRESS (as for
+     *  KeySearch.address). */
+    SearchWorker(String address) {
+        _address = address;
+    }
+
+    /** Search leases until the coordinator has no more. */
+    void run() throws IOException {
+        try (SocketChannel channel = KeySearch.connect(_address)) {
+            BufferedReader in = KeySearch.reader(channel);
+            PrintWriter out = KeySearch.writer(channel);
+            KeySearch search = KeySearch.fromJob(in);
+            Machine machine = search.newMachine();
+            while (true) {
+                out.println("LEASE");
+                out.flush();
+                String reply = in.readLine();
+                if (reply == null || reply.equals("DONE")) {
+                    return;
+                }
+                String[] words = reply.split(" ");
+                if (words.length != 4 || !words[0].equals("WORK")) {
+                    throw error("unexpected reply from coordinator: %s",
+                                reply);
+                }
+                long start, end;
+                try {
+                    start = Long.parseLong(words[2]);
+                    end = Long.parseLong(words[3]);
+                } catch (NumberFormatException excp) {
+                    throw error("unexpected reply from coordinator: %s",
+                                reply);
+                }
+                TopKeys best = new TopKeys(search.top());
+                search.search(machine, start, end, best);
+                StringBuilder result = new StringBuilder("RESULT ");
+                result.append(words[1]);
+                for (TopKeys.Entry e : best.entries()) {
+                    result.append(' ').append(e.key()).append(':')
+                        .append(e.score());
+                }
+                out.println(result);
+                out.flush();
+            }
+        }
+    }
+
+    /** Address of the coordinator. */
+    private final String _address;
+}
@@ -0,0 +1,173 @@
+package enigma;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** A least-recently-used cache of prepared settings, keyed by settings
+ *  line with its blanks normalized, and bounded both in number of
+ *  entries and in (estimated) bytes.  A prepared setting holds
+ *  everything a settings line determines, already resolved against one
+ *  machine's rotors and alphabet, so that a repeated line costs a hash
+ *  lookup and a copy of its positions into the machine.  Not safe for
+ *  use by several threads at once.
+ *  @author Jeonghyun Lee
+ */
+class SettingsCache {
+
+    /** The settings described by one settings line. */
+    static final class Settings {
+        /** Settings inserting ROTORS (as from Machine.findRotors), at
+         *  positions POSITIONS and rings RINGS (both ordered as for
+         *  Machine.setRotors), with plugboard PLUGBOARD. */
+        Settings(Rotor[] rotors, int[] positions, int[] rings,
+                 Permutation plugboard) {
+            _rotors = rotors.clone();
+            _positions = positions.clone();
+            _rings = rings.clone();
+            _plugboard = plugboard;
+        }
+
+        /** Set MACHINE, whose rotors these are, according to me. */
+        void apply(Machine machine) {
+            machine.insertRotors(_rotors);
+            machine.setRotors(_positions);
+            machine.setRings(_rings);
+            machine.setPlugboard(_plugboard);
+        }
+
+        /** Return an estimate of the bytes I occupy. */
+        long bytes() {
+            return OVERHEAD + (long) _rotors.length * REFERENCE
+                + (long) (_positions.length + _rings.length) * Integer.BYTES
+                + 2L * _plugboard.size() * Integer.BYTES;
+        }
+
+        /** The rotors, by slot. */
+        private final Rotor[] _rotors;
+        /** The rotor positions. */
+        private final int[] _positions;
+        /** The ring settings. */
+        private final int[] _rings;
+        /** The plugboard. */
+        private final Permutation _plugboard;
+    }
+
+    /** A cache of up to MAXENTRIES entries taking up to about MAXBYTES
+     *  bytes. */
+    SettingsCache(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw error("settings cache limits must be positive");
+        }
+        _maxEntries = maxEntries;
+        _maxBytes = maxBytes;
+    }
+
+    /** Return the settings cached for the settings line LINE, or null if
+     *  there are none, counting a hit or a miss. */
+    Settings get(String line) {
+        Settings result = _entries.get(key(line));
+        if (result == null) {
+            _misses += 1;
+        } else {
+            _hits += 1;
+        }
+        return result;
+    }
+
+    /** Cache SETTINGS for settings line LINE, evicting the least recently
+     *  used entries as needed to stay within my limits. */
+    void put(String line, Settings settings) {
+        String key = key(line);
+        Settings old = _entries.put(key, settings);
+        if (old != null) {
+            _bytes -= entryBytes(key, old);
+        }
+        _bytes += entryBytes(key, settings);
+        Iterator<Map.Entry<String, Settings>> eldest =
+            _entries.entrySet().iterator();
+        while ((_entries.size() > _maxEntries || _bytes > _maxBytes)
+               && eldest.hasNext()) {
+            Map.Entry<String, Settings> e = eldest.next();
+            _bytes -= entryBytes(e.getKey(), e.getValue());
+            eldest.remove();
+        }
+    }
+
+    /** Return the number of entries cached. */
+    int size() {
+        return _entries.size();
+    }
+
+    /** Return the estimated bytes taken by my entries. */
+    long bytes() {
+        return _bytes;
+    }
+
+    /** Return the number of calls to get that found an entry. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the number of calls to get that found no entry. */
+    long misses() {
+        return _misses;
+    }
+
+    /** Return LINE with leading and trailing blanks removed and each
+     *  other run of blanks replaced by one space. */
+    static String key(String line) {
+        int start = 0, end = line.length();
+        while (start < end && Character.isWhitespace(line.charAt(start))) {
+            start += 1;
+        }
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) {
+            end -= 1;
+        }
+        boolean normal = true;
+        for (int i = start; i < end && normal; i += 1) {
+            char c = line.charAt(i);
+            normal = c == ' ' ? !Character.isWhitespace(line.charAt(i + 1))
+                : !Character.isWhitespace(c);
+        }
+        if (normal) {
+            return line.substring(start, end);
+        }
+        StringBuilder result = new StringBuilder(end - start);
+        for (int i = start; i < end; i += 1) {
+            char c = line.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                result.append(c);
+            } else if (!Character.isWhitespace(line.charAt(i - 1))) {
+                result.append(' ');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the estimated bytes taken by the entry mapping KEY to
+     *  SETTINGS. */
+    private static long entryBytes(String key, Settings settings) {
+        return OVERHEAD + 2L * key.length() + settings.bytes();
+    }
+
+    /** Estimated bytes of object headers and bookkeeping per entry or
+     *  object. */
+    private static final long OVERHEAD = 64;
+    /** Estimated bytes per reference. */
+    private static final long REFERENCE = 8;
+
+    /** Largest number of entries. */
+    private final int _maxEntries;
+    /** Largest estimated size of the entries, in bytes. */
+    private final long _maxBytes;
+    /** The entries, from least to most recently used. */
+    private final LinkedHashMap<String, Settings> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+    /** Estimated size of the entries, in bytes. */
+    private long _bytes;
+    /** Number of hits and misses. */
+    private long _hits, _misses;
+}
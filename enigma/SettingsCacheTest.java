@@ -0,0 +1,68 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SettingsCache class.
+ *  @author Jeonghyun Lee
+ */
+public class SettingsCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return settings with no rotors and an identity plugboard. */
+    private static SettingsCache.Settings settings() {
+        return new SettingsCache.Settings(new Rotor[0], new int[4],
+                                          new int[4],
+                                          new Permutation("", UPPER));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkKey() {
+        assertEquals("* B Beta III IV I AXLE (HQ) (EX)",
+                     SettingsCache.key("  *  B Beta\tIII IV I AXLE (HQ) "
+                                       + "(EX) \r"));
+        String normal = "* B Beta III IV I AXLE";
+        assertEquals(normal, SettingsCache.key(normal));
+    }
+
+    @Test
+    public void checkHitsAndEviction() {
+        SettingsCache cache = new SettingsCache(2, 1 << 20);
+        SettingsCache.Settings a = settings(), b = settings(),
+            c = settings();
+        assertNull(cache.get("* A"));
+        cache.put("* A", a);
+        cache.put("* B", b);
+        assertSame(a, cache.get("*   A "));
+        cache.put("* C", c);
+        assertEquals(2, cache.size());
+        assertNull(cache.get("* B"));
+        assertSame(a, cache.get("* A"));
+        assertSame(c, cache.get("* C"));
+        assertEquals(3, cache.hits());
+        assertEquals(2, cache.misses());
+    }
+
+    @Test
+    public void checkMemoryLimit() {
+        SettingsCache cache = new SettingsCache(1000, 2000);
+        for (int i = 0; i < 100; i += 1) {
+            cache.put("* " + i, settings());
+            assertTrue(cache.bytes() <= 2000);
+        }
+        assertTrue(cache.size() < 100);
+        assertNotNull(cache.get("* 99"));
+        assertNull(cache.get("* 0"));
+    }
+}
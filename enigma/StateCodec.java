@@ -0,0 +1,130 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** Packs the positions of a machine's non-reflector rotors (digits in
+ *  the range 0 .. radix-1, the leftmost rotor's first) into mixed-radix
+ *  longs.  When all the digits fit in one long, the digit of each rotor
+ *  has a precomputed place value, so that any one digit can be read or
+ *  changed in constant time, and a packed state can be compared, hashed
+ *  and copied as a plain long.  Otherwise, the digits are split across
+ *  words() longs, each holding as many whole digits as fit, with the
+ *  leftmost digits in the first word.
+ *  @author Jeonghyun Lee
+ */
+class StateCodec {
+
+    /** A codec for DIGITS positions, each in the range 0 .. RADIX-1. */
+    StateCodec(int radix, int digits) {
+        if (radix < 1 || digits < 0) {
+            throw error("bad state codec dimensions");
+        }
+        _radix = radix;
+        _digits = digits;
+        int perWord = 0;
+        for (long p = 1; perWord < digits && p <= Long.MAX_VALUE / radix;
+             p *= radix) {
+            perWord += 1;
+        }
+        _perWord = Math.max(1, perWord);
+        _words = Math.max(1, (digits + _perWord - 1) / _perWord);
+        _place = new long[digits];
+        for (int k = digits - 1; k >= 0; k -= 1) {
+            boolean lastInWord = k == digits - 1
+                || (k + 1) % _perWord == 0;
+            _place[k] = lastInWord ? 1 : _place[k + 1] * radix;
+        }
+    }
+
+    /** Return the number of longs in a packed state. */
+    int words() {
+        return _words;
+    }
+
+    /** Return the number of digits in a state. */
+    int digits() {
+        return _digits;
+    }
+
+    /** Return the radix of each digit. */
+    int radix() {
+        return _radix;
+    }
+
+    /** Return the state with positions POSN packed into one long.  Requires
+     *  that words() be 1. */
+    long encode(int[] posn) {
+        checkSingle();
+        long result = 0;
+        for (int k = 0; k < _digits; k += 1) {
+            result += posn[k] * _place[k];
+        }
+        return result;
+    }
+
+    /** Store the positions packed in STATE in POSN.  Requires that
+     *  words() be 1. */
+    void decode(long state, int[] posn) {
+        checkSingle();
+        for (int k = 0; k < _digits; k += 1) {
+            posn[k] = (int) (state / _place[k] % _radix);
+        }
+    }
+
+    /** Store the positions POSN, packed, in STATE, which has words()
+     *  elements. */
+    void encode(int[] posn, long[] state) {
+        for (int w = 0; w < _words; w += 1) {
+            state[w] = 0;
+        }
+        for (int k = 0; k < _digits; k += 1) {
+            state[k / _perWord] += posn[k] * _place[k];
+        }
+    }
+
+    /** Store the positions packed in STATE, which has words() elements,
+     *  in POSN. */
+    void decode(long[] state, int[] posn) {
+        for (int k = 0; k < _digits; k += 1) {
+            posn[k] = (int) (state[k / _perWord] / _place[k] % _radix);
+        }
+    }
+
+    /** Return digit K of STATE.  Requires that words() be 1. */
+    int digit(long state, int k) {
+        return (int) (state / _place[k] % _radix);
+    }
+
+    /** Return STATE with digit K replaced by D.  Requires that words()
+     *  be 1. */
+    long withDigit(long state, int k, int d) {
+        return state + (d - digit(state, k)) * _place[k];
+    }
+
+    /** Return STATE with digit K advanced by one, wrapping around without
+     *  carrying into the next digit.  Requires that words() be 1. */
+    long increment(long state, int k) {
+        if (digit(state, k) == _radix - 1) {
+            return state - (_radix - 1) * _place[k];
+        }
+        return state + _place[k];
+    }
+
+    /** Check that states fit in one long. */
+    private void checkSingle() {
+        if (_words != 1) {
+            throw error("machine state does not fit in one long");
+        }
+    }
+
+    /** Radix of each digit. */
+    private final int _radix;
+    /** Number of digits. */
+    private final int _digits;
+    /** Number of digits in each word. */
+    private final int _perWord;
+    /** Number of words. */
+    private final int _words;
+    /** _place[K] is the place value of digit K within its word. */
+    private final long[] _place;
+}
@@ -0,0 +1,56 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the StateCodec class.
+ *  @author Jeonghyun Lee
+ */
+public class StateCodecTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void checkSingleWord() {
+        StateCodec codec = new StateCodec(26, 4);
+        assertEquals(1, codec.words());
+        int[] posn = { 0, 23, 11, 4 };
+        long state = codec.encode(posn);
+        assertEquals(((0 * 26 + 23) * 26 + 11) * 26 + 4, state);
+        assertEquals(11, codec.digit(state, 2));
+        assertEquals(codec.encode(new int[] { 0, 23, 12, 4 }),
+                     codec.increment(state, 2));
+        assertEquals(codec.encode(new int[] { 0, 23, 11, 0 }),
+                     codec.withDigit(state, 3, 0));
+        long wrapped = codec.withDigit(state, 1, 25);
+        assertEquals(codec.encode(new int[] { 0, 0, 11, 4 }),
+                     codec.increment(wrapped, 1));
+        int[] back = new int[4];
+        codec.decode(state, back);
+        assertArrayEquals(posn, back);
+    }
+
+    @Test
+    public void checkMultipleWords() {
+        StateCodec codec = new StateCodec(26, 30);
+        assertEquals(3, codec.words());
+        int[] posn = new int[30], back = new int[30];
+        for (int k = 0; k < posn.length; k += 1) {
+            posn[k] = (k * 7 + 3) % 26;
+        }
+        long[] state = new long[codec.words()];
+        codec.encode(posn, state);
+        codec.decode(state, back);
+        assertArrayEquals(posn, back);
+        try {
+            codec.encode(posn);
+            fail("packed a large state into one long");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+}
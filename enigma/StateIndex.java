@@ -0,0 +1,217 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static enigma.EnigmaException.*;
+
+/** A record of a machine's rotor positions, taken every interval()
+ *  characters while converting message lines, so that a line can later
+ *  be converted again starting from the snapshot nearest an edit rather
+ *  than from its beginning.  Because the stepping of the rotors does not
+ *  depend on the characters converted, the snapshots stay valid when
+ *  characters of a line are replaced by as many others.  An edit that
+ *  changes a line's length moves the rotor state at which every later
+ *  line converted under the same settings line starts, so the
+ *  snapshots of those lines are discarded (see reconvert).  Each
+ *  snapshot is the machine's state packed into one long, as by
+ *  Machine.state().
+ *  @author Jeonghyun Lee
+ */
+class StateIndex {
+
+    /** An empty index taking a snapshot every INTERVAL characters. */
+    StateIndex(int interval) {
+        if (interval <= 0) {
+            throw error("state index interval must be positive");
+        }
+        _interval = interval;
+    }
+
+    /** Return the number of characters between snapshots. */
+    int interval() {
+        return _interval;
+    }
+
+    /** Record that the lines converted from now on are converted under
+     *  the settings line numbered LINE. */
+    void setUp(int line) {
+        _run = line;
+    }
+
+    /** Return the conversion of MSG, message line number LINE, by
+     *  MACHINE, recording snapshots for it as I go. */
+    String convert(Machine machine, int line, String msg) {
+        Alphabet alpha = machine.alphabet();
+        checkFits(machine);
+        long[] snapshots = new long[count(msg.length())];
+        snapshots[0] = machine.state();
+        StringBuilder result = new StringBuilder(msg.length());
+        for (int i = 0; i < msg.length(); i += 1) {
+            if (i % _interval == 0) {
+                snapshots[i / _interval] = machine.state();
+            }
+            int c = machine.convert(alpha.toInt(msg.charAt(i)));
+            result.append(alpha.toChar(c));
+        }
+        _lines.put(line, snapshots);
+        _runs.put(line, _run);
+        if (Metrics.enabled()) {
+            Metrics.message(msg.length());
+        }
+        return result.toString();
+    }
+
+    /** Return the conversion of INPUT, an edited version of message line
+     *  LINE, given that OUTPUT was the conversion of the line before it
+     *  was edited and that the edit changed only characters START <= K <
+     *  END of the line (positions in INPUT).  MACHINE must have been set
+     *  up with the line's rotors, rings and plugboard.  If INPUT is as
+     *  long as OUTPUT, only the characters from the last snapshot before
+     *  START to END are converted.  Otherwise, conversion continues to
+     *  the end of the line, leaving MACHINE in the state from which the
+     *  later lines converted under the same settings line must be
+     *  converted again, and their snapshots are discarded. */
+    String reconvert(Machine machine, int line, String output,
+                     String input, int start, int end) {
+        long[] snapshots = _lines.get(line);
+        if (snapshots == null || snapshots.length == 0) {
+            throw error("no snapshots for line %d", line);
+        }
+        if (start < 0 || start > end || end > input.length()) {
+            throw error("bad edit bounds");
+        }
+        Alphabet alpha = machine.alphabet();
+        checkFits(machine);
+        int k = Math.min(start / _interval, snapshots.length - 1);
+        int from = k * _interval;
+        boolean resized = input.length() != output.length();
+        int to = resized ? input.length() : end;
+        machine.setState(snapshots[k]);
+        if (resized) {
+            snapshots = Arrays.copyOf(snapshots, count(input.length()));
+            _lines.put(line, snapshots);
+            discardAfter(line);
+        }
+        StringBuilder result = new StringBuilder(input.length());
+        result.append(output, 0, from);
+        for (int i = from; i < to; i += 1) {
+            if (i % _interval == 0) {
+                snapshots[i / _interval] = machine.state();
+            }
+            int c = machine.convert(alpha.toInt(input.charAt(i)));
+            result.append(alpha.toChar(c));
+        }
+        if (to < input.length()) {
+            result.append(output, to, output.length());
+        }
+        return result.toString();
+    }
+
+    /** Discard the snapshots of the lines after LINE converted under the
+     *  same settings line as LINE. */
+    private void discardAfter(int line) {
+        Integer run = _runs.get(line);
+        Iterator<Map.Entry<Integer, Integer>> later =
+            _runs.tailMap(line, false).entrySet().iterator();
+        while (later.hasNext()) {
+            Map.Entry<Integer, Integer> e = later.next();
+            if (!e.getValue().equals(run)) {
+                break;
+            }
+            _lines.remove(e.getKey());
+            later.remove();
+        }
+    }
+
+    /** Return the number of snapshots taken of a line of LENGTH
+     *  characters.  There is always at least one. */
+    private int count(int length) {
+        return Math.max(1, (length + _interval - 1) / _interval);
+    }
+
+    /** Return the number of snapshots recorded for message line LINE. */
+    int snapshots(int line) {
+        long[] snapshots = _lines.get(line);
+        return snapshots == null ? 0 : snapshots.length;
+    }
+
+    /** Write this index to the file NAME. */
+    void write(Path name) {
+        try (OutputStream file = Files.newOutputStream(name);
+             DataOutputStream out =
+                 new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_interval);
+            out.writeInt(_lines.size());
+            for (Map.Entry<Integer, long[]> e : _lines.entrySet()) {
+                out.writeInt(e.getKey());
+                out.writeInt(_runs.get(e.getKey()));
+                out.writeInt(e.getValue().length);
+                for (long s : e.getValue()) {
+                    out.writeLong(s);
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", name);
+        }
+    }
+
+    /** Return the index stored in the file NAME by write. */
+    static StateIndex read(Path name) {
+        try (InputStream file = Files.newInputStream(name);
+             DataInputStream in =
+                 new DataInputStream(new BufferedInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw error("%s is not a state index", name);
+            }
+            StateIndex index = new StateIndex(in.readInt());
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                int line = in.readInt();
+                index._runs.put(line, in.readInt());
+                long[] snapshots = new long[in.readInt()];
+                for (int i = 0; i < snapshots.length; i += 1) {
+                    snapshots[i] = in.readLong();
+                }
+                index._lines.put(line, snapshots);
+            }
+            return index;
+        } catch (IOException excp) {
+            throw error("could not read %s", name);
+        }
+    }
+
+    /** Check that MACHINE's state fits in one long. */
+    private static void checkFits(Machine machine) {
+        if (machine.stateCodec().words() != 1) {
+            throw error("machine state too large for a state index");
+        }
+    }
+
+    /** First word of an index file. */
+    private static final int MAGIC = 0x454e4749;
+    /** Version of the index file format. */
+    private static final int VERSION = 2;
+
+    /** Characters between snapshots. */
+    private final int _interval;
+    /** Snapshots of each message line, by line number. */
+    private final TreeMap<Integer, long[]> _lines = new TreeMap<>();
+    /** Number of the settings line under which each message line was
+     *  converted, by line number. */
+    private final TreeMap<Integer, Integer> _runs = new TreeMap<>();
+    /** Number of the current settings line. */
+    private int _run;
+}
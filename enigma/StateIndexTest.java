@@ -0,0 +1,128 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the StateIndex class.
+ *  @author Jeonghyun Lee
+ */
+public class StateIndexTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a machine set to B Beta III IV I AXLE with plugboard
+     *  (HQ) (EX) (IP) (TR) (BY). */
+    private Machine machine() {
+        return navalMachine(HIAWATHA_PLUGBOARD);
+    }
+
+    /** A long message. */
+    private static final String MSG;
+    static {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 40; i += 1) {
+            msg.append("FROMHISSHOULDERHIAWATHA");
+        }
+        MSG = msg.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkConvert() {
+        StateIndex index = new StateIndex(16);
+        assertEquals(machine().convert(MSG), index.convert(machine(), 3,
+                                                           MSG));
+        assertEquals((MSG.length() + 15) / 16, index.snapshots(3));
+        assertEquals(0, index.snapshots(2));
+    }
+
+    @Test
+    public void checkSameLengthEdit() {
+        StateIndex index = new StateIndex(16);
+        String output = index.convert(machine(), 1, MSG);
+        String edited = MSG.substring(0, 700) + "XY" + MSG.substring(702);
+        assertEquals(machine().convert(edited),
+                     index.reconvert(machine(), 1, output, edited,
+                                     700, 702));
+    }
+
+    @Test
+    public void checkLengthChangingEdit() {
+        StateIndex index = new StateIndex(16);
+        String output = index.convert(machine(), 1, MSG);
+        String edited = MSG.substring(0, 500) + "ABCDEFG"
+            + MSG.substring(503) + "HIAWATHA";
+        assertEquals(machine().convert(edited),
+                     index.reconvert(machine(), 1, output, edited,
+                                     500, 507));
+        assertEquals((edited.length() + 15) / 16, index.snapshots(1));
+        String again = edited.substring(0, 900) + "Q" + edited.substring(901);
+        assertEquals(machine().convert(again),
+                     index.reconvert(machine(), 1, machine().convert(edited),
+                                     again, 900, 901));
+    }
+
+    @Test
+    public void checkShortenedLine() {
+        StateIndex index = new StateIndex(16);
+        Machine mach = machine();
+        index.setUp(1);
+        String output = index.convert(mach, 2, MSG);
+        index.convert(mach, 3, MSG);
+        index.setUp(4);
+        index.convert(machine(), 5, MSG);
+        String edited = MSG.substring(0, 40) + MSG.substring(200);
+        Machine after = machine();
+        assertEquals(machine().convert(edited),
+                     index.reconvert(after, 2, output, edited, 40, 40));
+        assertEquals((edited.length() + 15) / 16, index.snapshots(2));
+        assertEquals(0, index.snapshots(3));
+        assertEquals((MSG.length() + 15) / 16, index.snapshots(5));
+        Machine expected = machine();
+        expected.convert(edited);
+        int[] expectedPosn = new int[4], posn = new int[4];
+        expected.getRotors(expectedPosn);
+        after.getRotors(posn);
+        assertTrue(Arrays.equals(expectedPosn, posn));
+    }
+
+    @Test
+    public void checkReadWrite() throws IOException {
+        StateIndex index = new StateIndex(16);
+        Machine mach = machine();
+        index.setUp(1);
+        String output = index.convert(mach, 2, MSG);
+        index.convert(mach, 4, MSG.substring(0, 100));
+        Path file = Files.createTempFile("index", ".idx");
+        index.write(file);
+        StateIndex copy = StateIndex.read(file);
+        assertEquals(16, copy.interval());
+        assertEquals(index.snapshots(2), copy.snapshots(2));
+        assertEquals(7, copy.snapshots(4));
+        String edited = MSG.substring(0, 300) + "Z" + MSG.substring(300);
+        assertEquals(machine().convert(edited),
+                     copy.reconvert(machine(), 2, output, edited, 300, 301));
+        assertEquals(0, copy.snapshots(4));
+        Files.writeString(file, "not an index");
+        try {
+            StateIndex.read(file);
+            fail("read a file that is not an index");
+        } catch (EnigmaException excp) {
+            assertEquals(file + " is not a state index", excp.getMessage());
+        }
+    }
+}
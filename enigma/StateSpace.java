@@ -0,0 +1,548 @@
+package enigma;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** An analysis of every state of a machine with a particular choice of
+ *  rotors, rings, plugboard and positions of its non-moving rotors.  A
+ *  state is the positions of the moving rotors, numbered as by
+ *  StateTable.  For each state, the analysis finds the machine's
+ *  end-to-end permutation and the state that follows it (as by
+ *  Machine.mapping and Machine.step).  From these it reports:
+ *  <ul>
+ *  <li>the cycles of the stepping, which show the true period of the
+ *  machine, double steps included, and the states it can never
+ *  reach;</li>
+ *  <li>how often each moving rotor advances, and how often it does so
+ *  by double stepping;</li>
+ *  <li>the cycle types of the end-to-end permutations;</li>
+ *  <li>how many states share each permutation.</li>
+ *  </ul>
+ *  States are enumerated in parallel, each task keeping its own
+ *  primitive counters, which are merged at the end.  Permutations are
+ *  compared by 64-bit hash, so two distinct permutations are counted as
+ *  one only if their hashes collide.  The alphabet may have at most 64
+ *  characters.
+ *  @author Jeonghyun Lee
+ */
+class StateSpace {
+
+    /** An analysis of MACHINE, whose rotors, rings and plugboard must be
+     *  set.  The positions of its moving rotors give the starting state
+     *  of the period reported; the others are held fixed. */
+    StateSpace(Machine machine) {
+        _machine = machine;
+        _outer = new Machine.Outer(machine);
+        _stepping = machine.stepping();
+        _size = machine.alphabet().size();
+        if (_size > Long.SIZE) {
+            throw error("alphabet too large for state-space analysis");
+        }
+        int n = machine.numRotors();
+        int moving = 0;
+        for (int i = 1; i < n; i += 1) {
+            if (machine.getRotor(i).rotates()) {
+                moving += 1;
+            }
+        }
+        _slots = new int[moving];
+        for (int i = n - 1; i > 0; i -= 1) {
+            if (machine.getRotor(i).rotates()) {
+                moving -= 1;
+                _slots[moving] = i - 1;
+            }
+        }
+        _template = new int[n - 1];
+        machine.getRotors(_template);
+        long states = 1;
+        for (int i = 0; i < _slots.length; i += 1) {
+            states *= _size;
+            if (states >= Integer.MAX_VALUE || states * BYTES_PER_STATE
+                > Runtime.getRuntime().maxMemory() / 2) {
+                throw error("state space too large to analyze");
+            }
+        }
+        _states = (int) states;
+        _start = pack(_template);
+    }
+
+    /** The counts kept by one task of the analysis. */
+    private class Tally {
+        /** Count the states K * CHUNK <= S < (K + 1) * CHUNK, storing
+         *  the state following each in _next and the hash of its
+         *  permutation in _hashes. */
+        void add(int k) {
+            int[] posn = _template.clone();
+            int[] after = new int[posn.length];
+            int[] result = new int[_size];
+            int[] inner = new int[_size];
+            int[] lengths = new int[_size + 1];
+            int end = (int) Math.min(_states, (long) (k + 1) * CHUNK);
+            for (int s = k * CHUNK; s < end; s += 1) {
+                unpack(s, posn);
+                if (s == k * CHUNK || s % _size == 0) {
+                    _machine.innerMapping(posn, inner);
+                }
+                _outer.mapping(posn, inner, result);
+                _hashes[s] = hash(result);
+                count(cycleType(result, lengths));
+                System.arraycopy(posn, 0, after, 0, posn.length);
+                int carry = 0;
+                for (int i = posn.length, j = _slots.length - 1; i > 0;
+                     i -= 1) {
+                    carry = _stepping.next(i, posn[i - 1], carry);
+                    if (j < 0 || _slots[j] != i - 1) {
+                        continue;
+                    }
+                    if ((carry & Stepping.MOVED) != 0) {
+                        after[i - 1] = (posn[i - 1] + 1) % _size;
+                        _advances[j] += 1;
+                        if ((carry & Stepping.DOUBLE) != 0) {
+                            _doubleSteps[j] += 1;
+                        }
+                    }
+                    j -= 1;
+                }
+                _next[s] = pack(after);
+            }
+            flush();
+        }
+
+        /** Record a permutation of cycle type TYPE (see cycleType). */
+        private void count(long type) {
+            if (type != _runType) {
+                flush();
+                _runType = type;
+            }
+            _runLength += 1;
+        }
+
+        /** Add the current run of permutations to _types. */
+        private void flush() {
+            if (_runLength > 0) {
+                addType(_runType, _runLength);
+                _runLength = 0;
+            }
+        }
+
+        /** Add the counts of OTHER to mine. */
+        void merge(Tally other) {
+            for (int j = 0; j < _slots.length; j += 1) {
+                _advances[j] += other._advances[j];
+                _doubleSteps[j] += other._doubleSteps[j];
+            }
+            for (int h = 0; h < other._typeCounts.length; h += 1) {
+                if (other._typeCounts[h] != 0) {
+                    addType(other._typeKeys[h], other._typeCounts[h]);
+                }
+            }
+        }
+
+        /** Add COUNT (positive) to the number of permutations of cycle
+         *  type TYPE. */
+        private void addType(long type, long count) {
+            int mask = _typeKeys.length - 1;
+            int h = typeHash(type) & mask;
+            while (_typeCounts[h] != 0 && _typeKeys[h] != type) {
+                h = (h + 1) & mask;
+            }
+            if (_typeCounts[h] == 0) {
+                _typeKeys[h] = type;
+                _types += 1;
+            }
+            _typeCounts[h] += count;
+            if (2 * _types > _typeKeys.length) {
+                rehashTypes();
+            }
+        }
+
+        /** Double the size of the table of cycle types. */
+        private void rehashTypes() {
+            long[] keys = _typeKeys, counts = _typeCounts;
+            _typeKeys = new long[2 * keys.length];
+            _typeCounts = new long[2 * keys.length];
+            int mask = _typeKeys.length - 1;
+            for (int k = 0; k < keys.length; k += 1) {
+                if (counts[k] != 0) {
+                    int h = typeHash(keys[k]) & mask;
+                    while (_typeCounts[h] != 0) {
+                        h = (h + 1) & mask;
+                    }
+                    _typeKeys[h] = keys[k];
+                    _typeCounts[h] = counts[k];
+                }
+            }
+        }
+
+        /** Number of advances of each moving rotor, by index in
+         *  _slots. */
+        private final long[] _advances = new long[_slots.length];
+        /** Number of those advances that are double steps. */
+        private final long[] _doubleSteps = new long[_slots.length];
+        /** Open-addressed hash table of the number of permutations of
+         *  each cycle type: _typeCounts[H] is 0 if entry H is empty, and
+         *  otherwise the number of permutations of cycle type
+         *  _typeKeys[H]. */
+        private long[] _typeKeys = new long[TYPE_TABLE],
+            _typeCounts = new long[TYPE_TABLE];
+        /** Number of cycle types in the table. */
+        private int _types;
+        /** The cycle type of the current run of permutations with the
+         *  same cycle type, and its length. */
+        private long _runType, _runLength;
+    }
+
+    /** Analyze every state. */
+    void analyze() {
+        _next = new int[_states];
+        _hashes = new long[_states];
+        int chunks = (_states + CHUNK - 1) / CHUNK;
+        _tally = IntStream.range(0, chunks).parallel()
+            .collect(Tally::new, Tally::add, Tally::merge);
+        findCycles();
+        findPeriod();
+        findDuplicates();
+        _next = null;
+        _hashes = null;
+    }
+
+    /** Record the lengths of the cycles of the stepping, the number of
+     *  states on them, and the number of states with no predecessor. */
+    private void findCycles() {
+        boolean[] reached = new boolean[_states];
+        for (int s = 0; s < _states; s += 1) {
+            reached[_next[s]] = true;
+        }
+        for (boolean r : reached) {
+            _unreachable += r ? 0 : 1;
+        }
+        int[] walk = new int[_states];
+        int run = 0;
+        for (int s = 0; s < _states; s += 1) {
+            if (walk[s] != 0) {
+                continue;
+            }
+            run += 1;
+            int t = s;
+            while (walk[t] == 0) {
+                walk[t] = run;
+                t = _next[t];
+            }
+            if (walk[t] == run) {
+                int length = 1;
+                for (int u = _next[t]; u != t; u = _next[u]) {
+                    length += 1;
+                }
+                _stepCycles.merge(length, 1L, Long::sum);
+                _onCycles += length;
+            }
+        }
+    }
+
+    /** Record the number of steps from the starting state to a cycle,
+     *  and the length of that cycle. */
+    private void findPeriod() {
+        int power = 1, length = 1;
+        int tortoise = _start, hare = _next[_start];
+        while (tortoise != hare) {
+            if (power == length) {
+                tortoise = hare;
+                power *= 2;
+                length = 0;
+            }
+            hare = _next[hare];
+            length += 1;
+        }
+        _period = length;
+        tortoise = hare = _start;
+        for (int i = 0; i < length; i += 1) {
+            hare = _next[hare];
+        }
+        _tail = 0;
+        while (tortoise != hare) {
+            tortoise = _next[tortoise];
+            hare = _next[hare];
+            _tail += 1;
+        }
+    }
+
+    /** Record the number of distinct permutations and how many states
+     *  share each. */
+    private void findDuplicates() {
+        Arrays.parallelSort(_hashes);
+        int run = 1;
+        for (int s = 1; s <= _states; s += 1) {
+            if (s < _states && _hashes[s] == _hashes[s - 1]) {
+                run += 1;
+            } else {
+                _sharing.merge(run, 1L, Long::sum);
+                _distinct += 1;
+                run = 1;
+            }
+        }
+    }
+
+    /** Return a code for the cycle type of PERM, a permutation of 0 ..
+     *  _size - 1, using LENGTHS (of _size + 1 elements) as scratch.
+     *  Listing the cycle lengths in decreasing order, each length L
+     *  contributes a one bit followed by L - 1 zero bits, so the code is
+     *  exact and never 0. */
+    private static long cycleType(int[] perm, int[] lengths) {
+        Arrays.fill(lengths, 0);
+        long seen = 0;
+        for (int c = 0; c < perm.length; c += 1) {
+            if ((seen & (1L << c)) == 0) {
+                int length = 0;
+                for (int d = c; (seen & (1L << d)) == 0; d = perm[d]) {
+                    seen |= 1L << d;
+                    length += 1;
+                }
+                lengths[length] += 1;
+            }
+        }
+        long code = 0;
+        for (int length = perm.length; length > 0; length -= 1) {
+            for (int i = 0; i < lengths[length]; i += 1) {
+                code = (code << length) | (1L << (length - 1));
+            }
+        }
+        return code;
+    }
+
+    /** Return the cycle type coded as by cycleType as a string such as
+     *  "2^12 1^2", listing the lengths in decreasing order. */
+    static String cycleTypeString(long code) {
+        StringBuilder result = new StringBuilder();
+        int length = 0, last = 0, count = 0;
+        for (int bit = Long.SIZE - 1 - Long.numberOfLeadingZeros(code);
+             bit >= -1; bit -= 1) {
+            if (bit >= 0 && (code & (1L << bit)) == 0) {
+                length += 1;
+                continue;
+            }
+            if (length != last && count > 0) {
+                result.append(last).append('^').append(count).append(' ');
+                count = 0;
+            }
+            if (length > 0) {
+                last = length;
+                count += 1;
+            }
+            length = 1;
+        }
+        result.append(last).append('^').append(count);
+        return result.toString();
+    }
+
+    /** Return a 64-bit hash of PERM. */
+    private static long hash(int[] perm) {
+        long h = HASH_SEED;
+        for (int c : perm) {
+            h = (h ^ c) * HASH_PRIME;
+        }
+        h ^= h >>> 33;
+        h *= HASH_MIX;
+        return h ^ (h >>> 33);
+    }
+
+    /** Return a hash of the cycle type TYPE, for the tables of Tally. */
+    private static int typeHash(long type) {
+        long h = type * HASH_MIX;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /** Return the state in which the rotors are at positions POSN
+     *  (ordered as for Machine.setRotors). */
+    private int pack(int[] posn) {
+        int result = 0;
+        for (int slot : _slots) {
+            result = result * _size + posn[slot];
+        }
+        return result;
+    }
+
+    /** Store the rotor positions of STATE in POSN (ordered as for
+     *  Machine.setRotors). */
+    private void unpack(int state, int[] posn) {
+        for (int i = _slots.length - 1; i >= 0; i -= 1) {
+            posn[_slots[i]] = state % _size;
+            state /= _size;
+        }
+    }
+
+    /** Return the number of states. */
+    int states() {
+        return _states;
+    }
+
+    /** Return the number of steps after which the machine, started in
+     *  its starting state, repeats itself. */
+    int period() {
+        return _period;
+    }
+
+    /** Return the number of steps from the starting state to the first
+     *  state that recurs. */
+    int tail() {
+        return _tail;
+    }
+
+    /** Return the number of states that follow no state. */
+    long unreachable() {
+        return _unreachable;
+    }
+
+    /** Return the number of states on cycles of the stepping. */
+    long onCycles() {
+        return _onCycles;
+    }
+
+    /** Return the number of cycles of the stepping of each length. */
+    Map<Integer, Long> stepCycles() {
+        return _stepCycles;
+    }
+
+    /** Return the number of times the moving rotor in slot SLOT (as for
+     *  setRotors) advances, over all states. */
+    long advances(int slot) {
+        return _tally._advances[Arrays.binarySearch(_slots, slot)];
+    }
+
+    /** Return the number of those advances of the rotor in slot SLOT
+     *  that are double steps. */
+    long doubleSteps(int slot) {
+        return _tally._doubleSteps[Arrays.binarySearch(_slots, slot)];
+    }
+
+    /** Return the number of states whose permutation has each cycle type
+     *  (as by cycleTypeString). */
+    Map<String, Long> cycleTypes() {
+        TreeMap<String, Long> result = new TreeMap<>();
+        for (int h = 0; h < _tally._typeCounts.length; h += 1) {
+            if (_tally._typeCounts[h] != 0) {
+                result.put(cycleTypeString(_tally._typeKeys[h]),
+                           _tally._typeCounts[h]);
+            }
+        }
+        return result;
+    }
+
+    /** Return the number of distinct permutations. */
+    long distinct() {
+        return _distinct;
+    }
+
+    /** Return the number of permutations occurring in each number of
+     *  states. */
+    Map<Integer, Long> sharing() {
+        return _sharing;
+    }
+
+    /** Print a report of my analysis on OUT. */
+    void report(PrintStream out) {
+        out.printf("States: %d (%d moving rotors, %d characters)%n",
+                   _states, _slots.length, _size);
+        out.printf("Period: %d, after %d steps from the starting state%n",
+                   _period, _tail);
+        out.printf("Stepping: %d states on cycles, %d unreachable%n",
+                   _onCycles, _unreachable);
+        _stepCycles.forEach((length, count) ->
+            out.printf("  %d cycle(s) of length %d%n", count, length));
+        out.println("Rotor advances over all states:");
+        for (int j = 0; j < _slots.length; j += 1) {
+            out.printf("  %s: %d advances, %d double steps%n",
+                       _machine.getRotor(_slots[j] + 1).name(),
+                       _tally._advances[j], _tally._doubleSteps[j]);
+        }
+        out.println("Permutation cycle types:");
+        cycleTypes().forEach((type, count) ->
+            out.printf("  %s: %d states%n", type, count));
+        out.printf("Distinct permutations: %d%n", _distinct);
+        _sharing.forEach((states, count) ->
+            out.printf("  %d permutation(s) in %d state(s) each%n",
+                       count, states));
+    }
+
+    /** Analyze the machine described by the configuration file and
+     *  settings line given by ARGS, and print a report.  Usage:
+     *  <pre>
+     *    java enigma.StateSpace CONFIG SETTINGS
+     *  </pre>
+     *  SETTINGS is a settings line, as in Main's input.  The positions
+     *  of its moving rotors give the starting state. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options = new CommandArgs("--=(.*){2}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.StateSpace CONFIG SETTINGS");
+            }
+            List<String> words = options.get("--");
+            Machine machine = ConfigParser.parse(words.get(0)).newMachine();
+            Main.prepare(machine, words.get(1).trim()).apply(machine);
+            StateSpace space = new StateSpace(machine);
+            space.analyze();
+            space.report(System.out);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Number of states counted by one task. */
+    private static final int CHUNK = 4096;
+    /** Initial size of a Tally's table of cycle types (a power of
+     *  two). */
+    private static final int TYPE_TABLE = 16;
+    /** Bytes of working storage per state (at most). */
+    private static final long BYTES_PER_STATE = 3 * Long.BYTES;
+    /** FNV-1a 64-bit offset basis. */
+    private static final long HASH_SEED = 0xcbf29ce484222325L;
+    /** FNV-1a 64-bit prime. */
+    private static final long HASH_PRIME = 0x100000001b3L;
+    /** Multiplier of the final mix of a hash. */
+    private static final long HASH_MIX = 0xff51afd7ed558ccdL;
+
+    /** The machine analyzed. */
+    private final Machine _machine;
+    /** The conversions by _machine's plugboard and rightmost rotor. */
+    private final Machine.Outer _outer;
+    /** The stepping rule of _machine's rotors. */
+    private final Stepping _stepping;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Indices (as for Machine.setRotors) of the moving rotors, from left
+     *  to right. */
+    private final int[] _slots;
+    /** Positions of all the rotors at the start. */
+    private final int[] _template;
+    /** Number of states. */
+    private final int _states;
+    /** The starting state. */
+    private final int _start;
+    /** During analyze, the state following each state. */
+    private int[] _next;
+    /** During analyze, the hash of each state's permutation (sorted by
+     *  findDuplicates). */
+    private long[] _hashes;
+    /** The merged counts. */
+    private Tally _tally;
+    /** Period and tail from the starting state. */
+    private int _period, _tail;
+    /** Numbers of unreachable states and of states on cycles. */
+    private long _unreachable, _onCycles;
+    /** Number of stepping cycles of each length. */
+    private final TreeMap<Integer, Long> _stepCycles = new TreeMap<>();
+    /** Number of distinct permutations. */
+    private long _distinct;
+    /** Number of permutations shared by each number of states. */
+    private final TreeMap<Integer, Long> _sharing = new TreeMap<>();
+}
@@ -0,0 +1,84 @@
+package enigma;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the StateSpace class.
+ *  @author Jeonghyun Lee
+ */
+public class StateSpaceTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkNavalMachine() {
+        StateSpace space = new StateSpace(navalMachine("(AQ) (EP)"));
+        space.analyze();
+        assertEquals(26 * 26 * 26, space.states());
+        assertEquals(26 * 25 * 26, space.period());
+        assertEquals(0, space.tail());
+        assertEquals(Map.of(26 * 25 * 26, 1L), space.stepCycles());
+        assertEquals(26 * 25 * 26, space.onCycles());
+        assertEquals(26 * 25, space.unreachable());
+        assertEquals(26 * 26 * 26, space.advances(3));
+        assertEquals(0, space.doubleSteps(3));
+        assertEquals(26 * 25, space.doubleSteps(2));
+        assertEquals(Map.of("2^13", 26L * 26 * 26), space.cycleTypes());
+        assertEquals(26 * 26 * 26, space.distinct());
+    }
+
+    @Test
+    public void checkSmallMachine() {
+        Machine mach = smallConfig().newMachine();
+        mach.insertRotors(new String[] { "X", "K", "P", "Q" });
+        mach.setRotors("BCD");
+        mach.setPlugboard(new Permutation("(AH)", mach.alphabet()));
+        StateSpace space = new StateSpace(mach);
+        space.analyze();
+        HashSet<List<Integer>> perms = new HashSet<>();
+        int[] posn = new int[3];
+        int[] result = new int[8];
+        for (int s = 0; s < 64; s += 1) {
+            posn[0] = 1;
+            posn[1] = s / 8;
+            posn[2] = s % 8;
+            mach.mapping(posn, result);
+            perms.add(List.of(result[0], result[1], result[2], result[3],
+                              result[4], result[5], result[6], result[7]));
+        }
+        assertEquals(64, space.states());
+        assertEquals(perms.size(), space.distinct());
+        long states = 0, permutations = 0;
+        for (Map.Entry<Integer, Long> e : space.sharing().entrySet()) {
+            states += e.getKey() * e.getValue();
+            permutations += e.getValue();
+        }
+        assertEquals(64, states);
+        assertEquals(space.distinct(), permutations);
+        long typed = 0;
+        for (long n : space.cycleTypes().values()) {
+            typed += n;
+        }
+        assertEquals(64, typed);
+    }
+
+    @Test
+    public void checkCycleTypeString() {
+        assertEquals("2^2 1^1", StateSpace.cycleTypeString(0b10101L));
+        assertEquals("3^2 2^1 1^1",
+                     StateSpace.cycleTypeString(0b100100101L));
+        assertEquals("8^1", StateSpace.cycleTypeString(1L << 7));
+    }
+}
@@ -0,0 +1,320 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+import static enigma.EnigmaException.*;
+
+/** The complete behavior of a machine with a particular choice of
+ *  rotors, rings, plugboard and positions of its non-moving rotors,
+ *  tabulated over every state of its moving rotors.  A state is the
+ *  positions of the moving rotors packed into one int.  For each state,
+ *  the table holds the machine's end-to-end conversion of every
+ *  character (one byte each), the state that follows it and the
+ *  positions of all the rotors packed as by Machine.state(), so that
+ *  converting a character takes two buffer loads.  The tables are built
+ *  in parallel into heap buffers, or are taken from a buffer holding
+ *  the sections() of an identical table, such as one memory-mapped by
+ *  TableCache from a file written by another process.
+ *  @author Jeonghyun Lee
+ */
+class StateTable {
+
+    /** A table for MACHINE with its current rotors, rings, plugboard and
+     *  non-moving rotor positions.  MACHINE must fit (see fits). */
+    StateTable(Machine machine) {
+        this(machine, null);
+    }
+
+    /** A table for MACHINE with its current rotors, rings, plugboard and
+     *  non-moving rotor positions, whose contents are the concatenated
+     *  sections() of an identical table, in native byte order, starting
+     *  at index 0 of STORED, or are built if STORED is null.  MACHINE
+     *  must fit (see fits). */
+    StateTable(Machine machine, ByteBuffer stored) {
+        _size = machine.alphabet().size();
+        int n = machine.numRotors();
+        _rotors = new Rotor[n];
+        _rings = new int[n];
+        int moving = 0;
+        for (int i = 0; i < n; i += 1) {
+            _rotors[i] = machine.getRotor(i);
+            _rings[i] = _rotors[i].ring();
+            if (i > 0 && _rotors[i].rotates()) {
+                moving += 1;
+            }
+        }
+        _slots = new int[moving];
+        for (int i = n - 1; i > 0; i -= 1) {
+            if (_rotors[i].rotates()) {
+                moving -= 1;
+                _slots[moving] = i - 1;
+            }
+        }
+        _template = new int[n - 1];
+        machine.getRotors(_template);
+        for (int slot : _slots) {
+            _template[slot] = 0;
+        }
+        _plugboard = machine.plugboard().table().clone();
+        _stepping = machine.stepping().model();
+        long states = states(_size, _slots.length);
+        if (states < 0 || _size > BYTE_LIMIT) {
+            throw error("machine too large for a state table");
+        }
+        _states = (int) states;
+        StateCodec codec = machine.stateCodec();
+        Machine.Outer outer = new Machine.Outer(machine);
+        int fullBytes = codec.words() == 1 ? _states * Long.BYTES : 0;
+        int nextBytes = _states * Integer.BYTES;
+        int mapBytes = _states * _size;
+        if (stored != null) {
+            if (stored.capacity() < (long) fullBytes + nextBytes + mapBytes) {
+                throw error("stored state table is truncated");
+            }
+            _sections = new ByteBuffer[] {
+                stored.slice(0, fullBytes),
+                stored.slice(fullBytes, nextBytes),
+                stored.slice(fullBytes + nextBytes, mapBytes)
+            };
+        } else {
+            _sections = new ByteBuffer[] {
+                ByteBuffer.allocate(fullBytes),
+                ByteBuffer.allocate(nextBytes),
+                ByteBuffer.allocate(mapBytes)
+            };
+        }
+        for (ByteBuffer section : _sections) {
+            section.order(ByteOrder.nativeOrder());
+        }
+        _full = fullBytes == 0 ? null : _sections[0].asLongBuffer();
+        _next = _sections[1].asIntBuffer();
+        _map = _sections[2];
+        if (stored == null) {
+            build(machine);
+        }
+    }
+
+    /** Fill my sections with the behavior of MACHINE. */
+    private void build(Machine machine) {
+        StateCodec codec = machine.stateCodec();
+        Machine.Outer outer = new Machine.Outer(machine);
+        int chunks = (_states + CHUNK - 1) / CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(k -> {
+            int[] posn = _template.clone();
+            int[] inner = new int[_size];
+            int[] result = new int[_size];
+            int end = Math.min(_states, (k + 1) * CHUNK);
+            for (int s = k * CHUNK; s < end; s += 1) {
+                unpack(s, posn);
+                if (s == k * CHUNK || s % _size == 0) {
+                    machine.innerMapping(posn, inner);
+                }
+                outer.mapping(posn, inner, result);
+                if (_full != null) {
+                    _full.put(s, codec.encode(posn));
+                }
+                for (int c = 0; c < _size; c += 1) {
+                    _map.put(s * _size + c, (byte) result[c]);
+                }
+                machine.step(posn);
+                _next.put(s, pack(posn));
+            }
+        });
+    }
+
+    /** Return my contents as a sequence of read-only buffers: the packed
+     *  positions of each state (empty if they do not fit in a long), the
+     *  state following each state, and the conversions in each state,
+     *  with numbers in native byte order. */
+    ByteBuffer[] sections() {
+        ByteBuffer[] result = new ByteBuffer[_sections.length];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = _sections[i].asReadOnlyBuffer();
+        }
+        return result;
+    }
+
+    /** Return the total size of the sections() of a table for MACHINE,
+     *  with its current rotors, which must fit. */
+    static long bytes(Machine machine) {
+        long entries = entries(machine);
+        long states = entries / machine.alphabet().size();
+        int full = machine.stateCodec().words() == 1 ? Long.BYTES : 0;
+        return entries + states * (Integer.BYTES + full);
+    }
+
+    /** Return a description of everything that determines the contents
+     *  of a table for MACHINE with its current setup: the alphabet
+     *  size, the stepping model, the wiring, ring, rotation, notches and
+     *  (if non-moving) position of each rotor, and the plugboard.  Two
+     *  setups with equal keys have identical tables. */
+    static byte[] key(Machine machine) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            int size = machine.alphabet().size();
+            out.writeInt(size);
+            out.writeInt(machine.numRotors());
+            out.writeUTF(machine.stepping().model());
+            for (int i = 0; i < machine.numRotors(); i += 1) {
+                Rotor rotor = machine.getRotor(i);
+                out.writeBoolean(rotor.rotates());
+                out.writeBoolean(rotor.reflecting());
+                out.writeInt(rotor.ring());
+                out.writeInt(rotor.rotates() ? 0 : rotor.setting());
+                for (int k : rotor.permutation().table()) {
+                    out.writeInt(k);
+                }
+                for (int p = 0; p < size; p += 1) {
+                    out.writeBoolean(rotor.atNotch(p));
+                }
+            }
+            for (int k : machine.plugboard().table()) {
+                out.writeInt(k);
+            }
+        } catch (IOException excp) {
+            throw error("could not describe state table");
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Return true iff a table for MACHINE, with its current rotors,
+     *  would take no more than BUDGET bytes. */
+    static boolean fits(Machine machine, long budget) {
+        long entries = entries(machine);
+        int size = machine.alphabet().size();
+        return entries >= 0 && size <= BYTE_LIMIT
+            && entries + entries / size * (Integer.BYTES + Long.BYTES)
+               <= budget;
+    }
+
+    /** Return the number of character conversions in a table for
+     *  MACHINE, with its current rotors, or -1 if it is too large to
+     *  build. */
+    static long entries(Machine machine) {
+        int size = machine.alphabet().size();
+        int moving = 0;
+        for (int i = 1; i < machine.numRotors(); i += 1) {
+            if (machine.getRotor(i).rotates()) {
+                moving += 1;
+            }
+        }
+        long states = states(size, moving);
+        return states < 0 ? -1 : states * size;
+    }
+
+    /** Return SIZE**MOVING if it is small enough to index a table of
+     *  SIZE-byte rows and one of longs, and otherwise -1. */
+    private static long states(int size, int moving) {
+        long result = 1;
+        for (int i = 0; i < moving; i += 1) {
+            result *= size;
+            if (result * Math.max(size, Long.BYTES) > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return result;
+    }
+
+    /** Return true iff I describe MACHINE as it is currently set up,
+     *  apart from the positions of its moving rotors, which must be
+     *  synchronized with its rotors. */
+    boolean matches(Machine machine) {
+        if (machine.numRotors() != _rotors.length
+            || !machine.stepping().model().equals(_stepping)
+            || !Arrays.equals(machine.plugboard().table(), _plugboard)) {
+            return false;
+        }
+        for (int i = 0; i < _rotors.length; i += 1) {
+            Rotor rotor = machine.getRotor(i);
+            if (rotor != _rotors[i] || rotor.ring() != _rings[i]) {
+                return false;
+            }
+        }
+        int next = 0;
+        for (int i = 0; i < _template.length; i += 1) {
+            if (next < _slots.length && _slots[next] == i) {
+                next += 1;
+            } else if (_template[i] != _rotors[i + 1].setting()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the state in which my machine's rotors are at positions
+     *  POSN (ordered as for Machine.setRotors). */
+    int pack(int[] posn) {
+        int result = 0;
+        for (int slot : _slots) {
+            result = result * _size + posn[slot];
+        }
+        return result;
+    }
+
+    /** Store the rotor positions of STATE in POSN (ordered as for
+     *  Machine.setRotors). */
+    void unpack(int state, int[] posn) {
+        for (int i = _slots.length - 1; i >= 0; i -= 1) {
+            posn[_slots[i]] = state % _size;
+            state /= _size;
+        }
+    }
+
+    /** Return the state following STATE. */
+    int next(int state) {
+        return _next.get(state);
+    }
+
+    /** Return the positions of all my machine's rotors in STATE, packed
+     *  as by Machine.state(). */
+    long state(int state) {
+        return _full.get(state);
+    }
+
+    /** Return the conversion of C in STATE. */
+    int convert(int state, int c) {
+        return _map.get(state * _size + c) & BYTE_MASK;
+    }
+
+    /** Largest alphabet whose characters fit in a byte. */
+    private static final int BYTE_LIMIT = 256;
+    /** Mask for a byte's unsigned value. */
+    private static final int BYTE_MASK = 0xff;
+    /** Number of states built by one task. */
+    private static final int CHUNK = 1024;
+
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Number of states. */
+    private final int _states;
+    /** The rotors tabulated, by slot. */
+    private final Rotor[] _rotors;
+    /** The ring settings tabulated, by slot. */
+    private final int[] _rings;
+    /** Indices (as for Machine.setRotors) of the moving rotors, from left
+     *  to right. */
+    private final int[] _slots;
+    /** Positions of the non-moving rotors (0 for the moving ones). */
+    private final int[] _template;
+    /** The plugboard tabulated. */
+    private final int[] _plugboard;
+    /** Name of the stepping model tabulated. */
+    private final String _stepping;
+    /** My contents, as returned by sections(). */
+    private final ByteBuffer[] _sections;
+    /** Element S * _size + C is the conversion of C in state S. */
+    private final ByteBuffer _map;
+    /** Element S is the packed positions of all rotors in state S, or
+     *  _full is null if they do not fit in a long. */
+    private final LongBuffer _full;
+    /** Element S is the state following S. */
+    private final IntBuffer _next;
+}
@@ -0,0 +1,197 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The rule by which a machine's rotors advance, compiled for one
+ *  choice of rotors into a table of transitions.  Whether the rotor in
+ *  a slot moves depends only on its own position and on what happened
+ *  to the rotor to its right, so rotors are stepped from right to left,
+ *  each slot's entry for its position and the bits returned for its
+ *  right neighbor giving the bits for the slot.  Every model thus runs
+ *  on the same loop of table lookups.  The models are
+ *  <ul>
+ *  <li> "ratchet" (the default): the Enigma's pawls.  A moving rotor
+ *       advances if it is the rightmost rotor, if the moving rotor to
+ *       its right is at a notch, or if it is itself at a notch and has a
+ *       moving rotor to its left (the double step).
+ *  <li> "odometer": a moving rotor advances if it is the rightmost
+ *       rotor, or if the moving rotor to its right advances from a
+ *       notch, so there are no double steps.
+ *  <li> "fixed-left": as "ratchet", except that the leftmost moving rotor
+ *       has no pawl, so that (unless it is also the rightmost) it never
+ *       advances and does not double-step the rotor to its right.
+ *  <li> "cog": cog wheels driven by the notches.  A moving rotor advances
+ *       if it is the rightmost rotor, or whenever the moving rotor to
+ *       its right is at a notch, whether or not that rotor moved, so a
+ *       rotor held at a notch keeps driving its neighbor.
+ *  </ul>
+ *  Any model allows several notches on a rotor.
+ *  @author Jeonghyun Lee
+ */
+class Stepping {
+
+    /** Name of the ratchet-and-pawl model. */
+    static final String RATCHET = "ratchet";
+    /** Name of the odometer model. */
+    static final String ODOMETER = "odometer";
+    /** Name of the ratchet model with a non-stepping leftmost rotor. */
+    static final String FIXED_LEFT = "fixed-left";
+    /** Name of the cog-wheel model. */
+    static final String COG = "cog";
+
+    /** Transition bit: the rotor moves. */
+    static final int MOVED = 1;
+    /** Transition bit: the rotor is at a notch before moving. */
+    static final int NOTCH = 2;
+    /** Transition bit: the rotor moves only because of its own notch. */
+    static final int DOUBLE = 4;
+    /** Number of distinct values of the bits passed to a rotor's left
+     *  neighbor (MOVED and NOTCH). */
+    static final int CARRIES = 4;
+
+    /** Return true iff MODEL names a stepping model. */
+    static boolean isModel(String model) {
+        switch (model) {
+        case RATCHET: case ODOMETER: case FIXED_LEFT: case COG:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /** The rule of stepping model MODEL for the rotors ROTORS, by slot
+     *  (ROTORS[0] being the reflector). */
+    Stepping(String model, Rotor[] rotors) {
+        if (!isModel(model)) {
+            throw error("unknown stepping model %s", model);
+        }
+        _model = model;
+        _size = rotors[0].size();
+        int last = rotors.length - 1;
+        int leftmost = last;
+        for (int i = last; i > 0; i -= 1) {
+            if (rotors[i].rotates()) {
+                leftmost = i;
+            }
+        }
+        _table = new byte[rotors.length * _size * CARRIES];
+        for (int i = 1; i <= last; i += 1) {
+            if (!rotors[i].rotates()) {
+                continue;
+            }
+            int rules = rules(i == last, i == leftmost,
+                              rotors[i - 1].rotates(),
+                              i - 1 == leftmost,
+                              i < last && rotors[i + 1].rotates());
+            for (int p = 0; p < _size; p += 1) {
+                boolean notch = rotors[i].atNotch(p);
+                for (int carry = 0; carry < CARRIES; carry += 1) {
+                    _table[((i * _size + p) * CARRIES) + carry] =
+                        (byte) transition(rules, notch, carry);
+                }
+            }
+        }
+    }
+
+    /** Return my model's rules (a set of ALWAYS, SELF, PUSHED and CARRY)
+     *  for a moving rotor that is the rightmost iff RIGHTMOST and the
+     *  leftmost moving rotor iff LEFTMOST, whose left neighbor moves iff
+     *  LEFTMOVES and is the leftmost moving rotor iff LEFTISLEFTMOST,
+     *  and whose right neighbor moves iff RIGHTMOVES. */
+    private int rules(boolean rightmost, boolean leftmost,
+                      boolean leftMoves, boolean leftIsLeftmost,
+                      boolean rightMoves) {
+        int always = rightmost ? ALWAYS : 0;
+        switch (_model) {
+        case ODOMETER:
+            return always | (rightMoves ? CARRY : 0);
+        case COG:
+            return always | (rightMoves ? PUSHED : 0);
+        case FIXED_LEFT:
+            if (leftmost && !rightmost) {
+                return 0;
+            }
+            return always | (leftMoves && !leftIsLeftmost ? SELF : 0)
+                | (rightMoves ? PUSHED : 0);
+        default:
+            return always | (leftMoves ? SELF : 0)
+                | (rightMoves ? PUSHED : 0);
+        }
+    }
+
+    /** Return the transition bits of a rotor with rules RULES that is at
+     *  a notch iff NOTCH, given the bits CARRY of its right neighbor. */
+    private static int transition(int rules, boolean notch, int carry) {
+        boolean self = (rules & SELF) != 0 && notch;
+        boolean pushed = (rules & PUSHED) != 0 && (carry & NOTCH) != 0
+            || (rules & CARRY) != 0 && carry == (MOVED | NOTCH);
+        boolean always = (rules & ALWAYS) != 0;
+        int result = notch ? NOTCH : 0;
+        if (always || self || pushed) {
+            result |= MOVED;
+        }
+        if (self && !always && !pushed) {
+            result |= DOUBLE;
+        }
+        return result;
+    }
+
+    /** Return my model's name. */
+    String model() {
+        return _model;
+    }
+
+    /** Return the transition bits (a set of MOVED, NOTCH and DOUBLE) of
+     *  the rotor in slot I at position POSN, where CARRY is the value
+     *  returned for the rotor in slot I + 1, or 0 if I is the last
+     *  slot. */
+    int next(int i, int posn, int carry) {
+        return _table[((i * _size + posn) * CARRIES) + (carry & CARRY_MASK)];
+    }
+
+    /** Advance the rotor positions POSN (ordered as for
+     *  Machine.setRotors) by one step. */
+    void step(int[] posn) {
+        int carry = 0;
+        for (int i = posn.length; i > 0; i -= 1) {
+            carry = next(i, posn[i - 1], carry);
+            if ((carry & MOVED) != 0) {
+                posn[i - 1] = posn[i - 1] + 1 == _size ? 0 : posn[i - 1] + 1;
+            }
+        }
+    }
+
+    /** Return the state that follows STATE, in which rotor positions are
+     *  packed by CODEC into one long. */
+    long step(long state, StateCodec codec) {
+        long result = state;
+        int carry = 0;
+        for (int i = codec.digits(); i > 0; i -= 1) {
+            carry = next(i, codec.digit(state, i - 1), carry);
+            if ((carry & MOVED) != 0) {
+                result = codec.increment(result, i - 1);
+            }
+        }
+        return result;
+    }
+
+    /** Rule: the rotor always moves. */
+    private static final int ALWAYS = 1;
+    /** Rule: the rotor moves when at a notch. */
+    private static final int SELF = 2;
+    /** Rule: the rotor moves when its right neighbor is at a notch. */
+    private static final int PUSHED = 4;
+    /** Rule: the rotor moves when its right neighbor moves from a
+     *  notch. */
+    private static final int CARRY = 8;
+    /** Mask selecting the incoming transition bits. */
+    private static final int CARRY_MASK = CARRIES - 1;
+
+    /** My model's name. */
+    private final String _model;
+    /** Size of the alphabet. */
+    private final int _size;
+    /** Element (I * _size + P) * CARRIES + C is the transition bits of
+     *  slot I at position P given incoming bits C. */
+    private final byte[] _table;
+}
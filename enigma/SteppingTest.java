@@ -0,0 +1,137 @@
+package enigma;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Stepping class.
+ *  @author Jeonghyun Lee
+ */
+public class SteppingTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Alphabet of the test machines. */
+    private static final Alphabet ABCD = new Alphabet("ABCD");
+
+    /** Return a machine over ABCD stepping by MODEL, with a reflector and
+     *  moving rotors L, M and F (from left to right) whose notches are
+     *  NOTCHES[0], NOTCHES[1] and NOTCHES[2], at positions AAA and with
+     *  state tables disabled. */
+    private static Machine machine(String model, String... notches) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R", new Permutation("(AB) (CD)", ABCD)));
+        String[] names = { "L", "M", "F" };
+        for (int i = 0; i < names.length; i += 1) {
+            rotors.add(new MovingRotor(names[i],
+                                       new Permutation("(ABCD)", ABCD),
+                                       notches[i]));
+        }
+        Machine machine = new Machine(ABCD, 4, 3, rotors);
+        machine.setStepping(model);
+        machine.insertRotors(new String[] { "R", "L", "M", "F" });
+        machine.setRotors("AAA");
+        machine.setPlugboard(new Permutation("", ABCD));
+        machine.setStateTableBudget(0, -1);
+        return machine;
+    }
+
+    /** Check that MACHINE passes through the rotor positions POSITIONS,
+     *  each a string of three digits, starting from its current
+     *  positions, both by step(int[]) and by converting characters. */
+    private static void checkSteps(Machine machine, String... positions) {
+        int[] posn = new int[3];
+        int[] actual = new int[3];
+        machine.getRotors(posn);
+        for (int k = 0; k < positions.length; k += 1) {
+            assertEquals("step " + k, positions[k], digits(posn));
+            machine.getRotors(actual);
+            assertEquals("convert " + k, positions[k], digits(actual));
+            machine.step(posn);
+            machine.convert(0);
+        }
+    }
+
+    /** Return POSN as a string of digits. */
+    private static String digits(int[] posn) {
+        StringBuilder result = new StringBuilder();
+        for (int p : posn) {
+            result.append(p);
+        }
+        return result.toString();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkRatchet() {
+        checkSteps(machine(Stepping.RATCHET, "A", "B", "C"),
+                   "000", "001", "002", "013", "120", "121");
+    }
+
+    @Test
+    public void checkOdometer() {
+        Machine machine = machine(Stepping.ODOMETER, "D", "D", "D");
+        int[] posn = new int[3];
+        for (int n = 0; n < 64; n += 1) {
+            machine.getRotors(posn);
+            assertEquals(n, (posn[0] * 4 + posn[1]) * 4 + posn[2]);
+            machine.convert(0);
+        }
+        machine.getRotors(posn);
+        assertEquals("000", digits(posn));
+    }
+
+    @Test
+    public void checkFixedLeft() {
+        checkSteps(machine(Stepping.FIXED_LEFT, "A", "B", "C"),
+                   "000", "001", "002", "013", "010", "011", "012",
+                   "023");
+    }
+
+    @Test
+    public void checkCog() {
+        checkSteps(machine(Stepping.COG, "A", "B", "C"),
+                   "000", "001", "002", "013", "110", "211", "312",
+                   "023", "020");
+    }
+
+    @Test
+    public void checkSkipAndState() {
+        String[] models = { Stepping.RATCHET, Stepping.ODOMETER,
+                            Stepping.FIXED_LEFT, Stepping.COG };
+        for (String model : models) {
+            Machine stepped = machine(model, "AC", "B", "CD");
+            Machine skipped = machine(model, "AC", "B", "CD");
+            long state = stepped.state();
+            for (int n = 0; n < 150; n += 1) {
+                state = stepped.step(state);
+                stepped.convert(0);
+                assertEquals(model + " state " + n, stepped.state(), state);
+            }
+            skipped.skip(150);
+            int[] expected = new int[3], actual = new int[3];
+            stepped.getRotors(expected);
+            skipped.getRotors(actual);
+            assertArrayEquals(model, expected, actual);
+        }
+    }
+
+    @Test
+    public void checkErrors() {
+        try {
+            machine("pinwheel", "A", "B", "C");
+            fail("accepted unknown stepping model");
+        } catch (EnigmaException excp) {
+            assertEquals("unknown stepping model pinwheel",
+                         excp.getMessage());
+        }
+    }
+}
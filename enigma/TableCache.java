@@ -0,0 +1,199 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** A directory of prebuilt state tables.  Each entry is a binary file,
+ *  named by a hash of the key (see StateTable.key) of the machine setup
+ *  it tabulates, holding the full key followed by the table's sections.
+ *  Entries are memory-mapped read-only when loaded, so that every
+ *  process using the same setup shares one copy of the table in the
+ *  page cache and none of them rebuilds it, and are written atomically,
+ *  so several processes may share a directory.  Tables are stored in
+ *  native byte order; an entry written on a host of the other byte
+ *  order is ignored and replaced.  The entries most recently mapped by
+ *  this process are remembered, so that a setup that recurs costs one
+ *  lookup; a setup found to have no entry is looked for again in the
+ *  directory each time, so that an entry written meanwhile by another
+ *  process is picked up.  Safe for use by several threads at once.
+ *  @author Jeonghyun Lee
+ */
+class TableCache {
+
+    /** A cache kept in the directory named DIR. */
+    TableCache(String dir) {
+        this(dir, MAPPED_ENTRIES);
+    }
+
+    /** A cache kept in the directory named DIR, remembering up to
+     *  MAXMAPPED mapped entries. */
+    TableCache(String dir, int maxMapped) {
+        if (maxMapped <= 0) {
+            throw error("table cache limit must be positive");
+        }
+        _dir = Path.of(dir);
+        _mapped = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<ByteBuffer, ByteBuffer> eldest) {
+                return size() > maxMapped;
+            }
+        };
+    }
+
+    /** Return the table for MACHINE, with its current setup, stored in
+     *  this cache, or null if there is none.  MACHINE must fit (see
+     *  StateTable.fits). */
+    StateTable find(Machine machine) {
+        byte[] key = StateTable.key(machine);
+        ByteBuffer known;
+        synchronized (_mapped) {
+            known = _mapped.get(ByteBuffer.wrap(key));
+        }
+        if (known == null) {
+            known = load(key, StateTable.bytes(machine));
+            if (known == null) {
+                return null;
+            }
+            synchronized (_mapped) {
+                _mapped.put(ByteBuffer.wrap(key), known);
+            }
+        }
+        return new StateTable(machine, known);
+    }
+
+    /** Return the number of mapped entries remembered. */
+    int mapped() {
+        synchronized (_mapped) {
+            return _mapped.size();
+        }
+    }
+
+    /** Return the sections of the entry for a table with the given KEY
+     *  taking BYTES bytes, memory-mapped, or null if there is no valid
+     *  entry. */
+    private ByteBuffer load(byte[] key, long bytes) {
+        Path entry = entry(key);
+        if (!Files.isReadable(entry)) {
+            return null;
+        }
+        long data = dataOffset(key);
+        try (FileChannel channel = FileChannel.open(entry)) {
+            if (channel.size() != data + bytes) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate((int) data);
+            while (header.hasRemaining()) {
+                if (channel.read(header) < 0) {
+                    return null;
+                }
+            }
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION
+                || header.get() != order()
+                || header.getInt() != key.length) {
+                return null;
+            }
+            byte[] stored = new byte[key.length];
+            header.get(stored);
+            if (!Arrays.equals(stored, key)) {
+                return null;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, data, bytes);
+        } catch (IOException excp) {
+            return null;
+        }
+    }
+
+    /** Return a new table for MACHINE, with its current setup, after
+     *  adding it to this cache (to be found by other processes: this one
+     *  keeps using the table it built).  MACHINE must fit (see
+     *  StateTable.fits).  Failure to write the cache is not an error. */
+    StateTable store(Machine machine) {
+        StateTable table = new StateTable(machine);
+        byte[] key = StateTable.key(machine);
+        long data = dataOffset(key);
+        if (data + StateTable.bytes(machine) > Integer.MAX_VALUE) {
+            return table;
+        }
+        Path entry = entry(key);
+        Path temp = null;
+        try {
+            Files.createDirectories(_dir);
+            temp = Files.createTempFile(_dir, "table", ".tmp");
+            try (FileChannel channel =
+                     FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate((int) data);
+                header.putInt(MAGIC).putInt(VERSION).put(order())
+                    .putInt(key.length).put(key).clear();
+                writeAll(channel, header);
+                for (ByteBuffer section : table.sections()) {
+                    writeAll(channel, section);
+                }
+            }
+            temp.toFile().setReadable(true, false);
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            synchronized (_mapped) {
+                _mapped.remove(ByteBuffer.wrap(key));
+            }
+        } catch (IOException excp) {
+            if (temp != null) {
+                temp.toFile().delete();
+            }
+        }
+        return table;
+    }
+
+    /** Return the path of the entry for a table with the given KEY. */
+    private Path entry(byte[] key) {
+        return _dir.resolve(String.format("%016x.etab",
+                                          ConfigCache.hash(key)));
+    }
+
+    /** Return the offset of the sections in an entry for a table with
+     *  the given KEY: the size of its header, rounded up so that the
+     *  sections are aligned for their longs. */
+    private static long dataOffset(byte[] key) {
+        long header = 3 * Integer.BYTES + 1 + key.length;
+        return (header + Long.BYTES - 1) / Long.BYTES * Long.BYTES;
+    }
+
+    /** Return the code for this host's byte order. */
+    private static byte order() {
+        return ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? (byte) 0
+            : (byte) 1;
+    }
+
+    /** Write all of BUF to CHANNEL. */
+    private static void writeAll(FileChannel channel, ByteBuffer buf)
+        throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    /** First word of every cache entry. */
+    private static final int MAGIC = 0x454e5442;
+    /** Version of the entry format. */
+    private static final int VERSION = 1;
+    /** Default largest number of mapped entries remembered. */
+    private static final int MAPPED_ENTRIES = 64;
+
+    /** Directory holding the entries. */
+    private final Path _dir;
+    /** Maps the keys of the entries most recently found to their mapped
+     *  sections, in order of use. */
+    private final LinkedHashMap<ByteBuffer, ByteBuffer> _mapped;
+}
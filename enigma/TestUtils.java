@@ -18,6 +18,71 @@ class TestUtils {
         return testId + " (" + String.format(msgFormat, args) + ")";
     }
 
+    /** Text of a small configuration: an alphabet of eight letters,
+     *  four slots and two pawls, moving rotors P, Q and S, fixed rotor
+     *  K, and reflectors X and Y. */
+    static final String SMALL_CONFIG =
+        "ABCDEFGH 4 2\n"
+        + "P MB (AE) (BCDFHG)\n"
+        + "Q MD (ACBD) (EGFH)\n"
+        + "S MF (AH) (BEC)\n"
+        + "K N (AB) (CDE)\n"
+        + "X R (AB) (CD) (EF) (GH)\n"
+        + "Y R (AH) (BG) (CF) (DE)\n";
+
+    /** Return the configuration described by SMALL_CONFIG. */
+    static MachineConfig smallConfig() {
+        return new ConfigParser(SMALL_CONFIG.getBytes()).parse();
+    }
+
+    /** Return MSG in groups of five (except that the last group may have
+     *  fewer letters), as Main prints a message line. */
+    static String grouped(String msg) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < msg.length(); i += 1) {
+            if (i > 0 && i % 5 == 0) {
+                result.append(' ');
+            }
+            result.append(msg.charAt(i));
+        }
+        return result.toString();
+    }
+
+    /** Return an unset machine over UPPER with 5 rotor slots and 3 pawls
+     *  whose rotors are B, Beta, III, IV and I from NAVALA. */
+    static Machine navalMachine() {
+        HashMap<String, Rotor> rotors = new HashMap<>();
+        rotors.put("B", new Reflector("B",
+                                      new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.put("Beta", new FixedRotor("Beta",
+                                          new Permutation(NAVALA.get("Beta"),
+                                                          UPPER)));
+        rotors.put("III", new MovingRotor("III",
+                                          new Permutation(NAVALA.get("III"),
+                                                          UPPER), "V"));
+        rotors.put("IV", new MovingRotor("IV",
+                                         new Permutation(NAVALA.get("IV"),
+                                                         UPPER), "J"));
+        rotors.put("I", new MovingRotor("I",
+                                        new Permutation(NAVALA.get("I"),
+                                                        UPPER), "Q"));
+        return new Machine(UPPER, 5, 3, rotors.values());
+    }
+
+    /** Return navalMachine() set to B Beta III IV I AXLE with plugboard
+     *  PLUGBOARD. */
+    static Machine navalMachine(String plugboard) {
+        Machine mach = navalMachine();
+        mach.insertRotors(new String[] { "B", "Beta", "III", "IV", "I" });
+        mach.setRotors("AXLE");
+        mach.setPlugboard(new Permutation(plugboard, UPPER));
+        return mach;
+    }
+
+    /** The plugboard of the Hiawatha example machine. */
+    static final String HIAWATHA_PLUGBOARD = "(HQ) (EX) (IP) (TR) (BY)";
+
     /** The naval rotors in the A (0) setting. */
     static final HashMap<String, String> NAVALA = new HashMap<>();
     static {
@@ -0,0 +1,91 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/** The best-scoring keys seen so far in a key search, up to a fixed
+ *  number of them.  Keys are identified by their index in a KeySearch's
+ *  key space.
+ *  @author Jeonghyun Lee
+ */
+class TopKeys {
+
+    /** A scored key. */
+    static class Entry {
+        /** KEY has score SCORE. */
+        Entry(long key, double score) {
+            _key = key;
+            _score = score;
+        }
+
+        /** Return my key index. */
+        long key() {
+            return _key;
+        }
+
+        /** Return my score. */
+        double score() {
+            return _score;
+        }
+
+        /** Key index. */
+        private final long _key;
+        /** Score; higher is better. */
+        private final double _score;
+    }
+
+    /** Orders entries from worst to best, breaking ties by key. */
+    private static final Comparator<Entry> WORST_FIRST =
+        Comparator.comparingDouble(Entry::score)
+        .thenComparing(Comparator.comparingLong(Entry::key).reversed());
+
+    /** A collection holding up to LIMIT keys. */
+    TopKeys(int limit) {
+        _limit = limit;
+    }
+
+    /** Return the lowest score that can still enter this collection. */
+    double threshold() {
+        if (_heap.size() < _limit) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        return _heap.peek().score();
+    }
+
+    /** Consider KEY, with SCORE, for inclusion. */
+    void offer(long key, double score) {
+        if (_limit == 0 || score < threshold() || _keys.contains(key)) {
+            return;
+        }
+        _heap.add(new Entry(key, score));
+        _keys.add(key);
+        if (_heap.size() > _limit) {
+            _keys.remove(_heap.poll().key());
+        }
+    }
+
+    /** Add all of OTHER's entries to this collection. */
+    void merge(TopKeys other) {
+        for (Entry e : other._heap) {
+            offer(e.key(), e.score());
+        }
+    }
+
+    /** Return my entries, best first. */
+    List<Entry> entries() {
+        ArrayList<Entry> result = new ArrayList<>(_heap);
+        result.sort(WORST_FIRST.reversed());
+        return result;
+    }
+
+    /** Maximum number of entries. */
+    private final int _limit;
+    /** Entries, worst at the head. */
+    private final PriorityQueue<Entry> _heap =
+        new PriorityQueue<>(WORST_FIRST);
+    /** Keys of the entries in _heap. */
+    private final HashSet<Long> _keys = new HashSet<>();
+}
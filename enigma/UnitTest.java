@@ -16,7 +16,30 @@ public class UnitTest {
         }
         System.exit(textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class,
+                MetricsTest.class,
+                ConfigParserTest.class,
+                KeySearchTest.class,
+                StateIndexTest.class,
+                ReencryptTest.class,
+                RangeDecryptorTest.class,
+                PipelineTest.class,
+                EnigmaStreamsTest.class,
+                SettingsCacheTest.class,
+                StateCodecTest.class,
+                BatchTest.class,
+                StateSpaceTest.class,
+                RotorCatalogTest.class,
+                NormalizerTest.class,
+                SteppingTest.class,
+                ValidatorTest.class,
+                CorpusTest.class,
+                RoundTripTest.class,
+                KeySheetTest.class,
+                FollowerTest.class,
+                LineIndexTest.class,
+                ConfigCacheTest.class,
+                LineFormatTest.class));
     }
 
 }
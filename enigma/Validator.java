@@ -0,0 +1,533 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Checks every line of an input file against a configuration before
+ *  any of it is converted, so that a bad line deep in a large input is
+ *  reported at once rather than when it is reached.  Settings lines
+ *  must name rotors of the configuration that can be inserted together
+ *  and give well-formed positions, rings and plugboard cycles; message
+ *  lines must hold only characters that a Normalizer accepts.  Each
+ *  problem is reported with its line and column.  The file is split at
+ *  line ends into ranges, which are checked in parallel, each decoded
+ *  from the default charset (which must encode a line end as the
+ *  single byte '\n') and numbered separately, the line numbers being
+ *  fixed up once the lengths of the ranges before it are known.
+ *  @author Jeonghyun Lee
+ */
+class Validator {
+
+    /** A problem at a particular place in the input. */
+    static final class Diagnostic implements Comparable<Diagnostic> {
+        /** The problem MESSAGE, at column COLUMN of line LINE. */
+        Diagnostic(long line, int column, String message) {
+            _line = line;
+            _column = column;
+            _message = message;
+        }
+
+        /** Return my line number. */
+        long line() {
+            return _line;
+        }
+
+        /** Return my column number. */
+        int column() {
+            return _column;
+        }
+
+        /** Return my description of the problem. */
+        String message() {
+            return _message;
+        }
+
+        @Override
+        public int compareTo(Diagnostic other) {
+            int c = Long.compare(_line, other._line);
+            return c != 0 ? c : Integer.compare(_column, other._column);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("line %d, column %d: %s", _line, _column,
+                                 _message);
+        }
+
+        /** Line number, from 1. */
+        private final long _line;
+        /** Column number, from 1. */
+        private final int _column;
+        /** Description of the problem. */
+        private final String _message;
+    }
+
+    /** A validator of input for machines described by CONFIG whose
+     *  message lines are cleaned by NORMALIZER. */
+    Validator(MachineConfig config, Normalizer normalizer) {
+        this(config, normalizer, RANGE);
+    }
+
+    /** A validator as for Validator(CONFIG, NORMALIZER) that checks
+     *  ranges of about RANGE bytes. */
+    Validator(MachineConfig config, Normalizer normalizer, long range) {
+        if (range <= 0) {
+            throw error("validation range must be positive");
+        }
+        _config = config;
+        _alphabet = config.alphabet();
+        _normalizer = normalizer;
+        _rangeSize = range;
+    }
+
+    /** Return the problems in the file INPUT, in order, checking up to
+     *  PARALLELISM ranges of it at a time.  At most LIMIT problems are
+     *  returned. */
+    List<Diagnostic> validate(Path input, int parallelism, int limit) {
+        if (parallelism <= 0) {
+            throw error("validation parallelism must be positive");
+        }
+        try (FileChannel channel = FileChannel.open(input)) {
+            long[] bounds = split(channel, _rangeSize);
+            ArrayList<Callable<Range>> tasks = new ArrayList<>();
+            for (int k = 0; k + 1 < bounds.length; k += 1) {
+                long start = bounds[k], end = bounds[k + 1];
+                tasks.add(() -> check(channel, start, end, limit));
+            }
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            ArrayList<Diagnostic> result = new ArrayList<>();
+            try {
+                long lines = 0;
+                for (Future<Range> future : pool.invokeAll(tasks)) {
+                    Range range = future.get();
+                    for (Diagnostic d : range._problems) {
+                        result.add(new Diagnostic(d.line() + lines,
+                                                  d.column(), d.message()));
+                    }
+                    lines += range._lines;
+                }
+            } catch (InterruptedException excp) {
+                throw error("validation interrupted");
+            } catch (ExecutionException excp) {
+                throw error("could not read %s", input);
+            } finally {
+                pool.shutdown();
+            }
+            if (bounds[bounds.length - 1] == 0) {
+                result.add(new Diagnostic(1, 1, "input is empty"));
+            }
+            result.sort(null);
+            return result.size() > limit ? result.subList(0, limit) : result;
+        } catch (IOException excp) {
+            throw error("could not read %s", input);
+        }
+    }
+
+    /** Return the offsets at which the ranges of the file open on
+     *  CHANNEL start, followed by its size.  Each range but the last is
+     *  about RANGE bytes, extended to just after a line end. */
+    private static long[] split(FileChannel channel, long range)
+        throws IOException {
+        long size = channel.size();
+        long[] result = new long[2];
+        int n = 1;
+        ByteBuffer buf = ByteBuffer.allocate(BLOCK);
+        for (long p = range; p < size; ) {
+            buf.clear();
+            int got = channel.read(buf, p);
+            int i = 0;
+            while (i < got && buf.get(i) != '\n') {
+                i += 1;
+            }
+            p += i;
+            if (i == got) {
+                continue;
+            }
+            p += 1;
+            if (p < size) {
+                if (n + 1 == result.length) {
+                    result = Arrays.copyOf(result, 2 * result.length);
+                }
+                result[n] = p;
+                n += 1;
+            }
+            p += range;
+        }
+        result[n] = size;
+        return Arrays.copyOf(result, n + 1);
+    }
+
+    /** The outcome of checking one range of a file. */
+    private static final class Range {
+        /** Number of lines started in the range. */
+        private long _lines;
+        /** Problems found, numbered from the start of the range. */
+        private final ArrayList<Diagnostic> _problems = new ArrayList<>();
+    }
+
+    /** Return the outcome of checking the lines in bytes START .. END-1
+     *  of the file open on CHANNEL, recording at most LIMIT problems.
+     *  START begins a line. */
+    private Range check(FileChannel channel, long start, long end,
+                        int limit) throws IOException {
+        CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(BLOCK);
+        CharBuffer chars = CharBuffer.allocate(BLOCK);
+        Lines lines = new Lines(start == 0, limit);
+        long p = start;
+        boolean done = false;
+        while (!done) {
+            bytes.limit((int) Math.min(bytes.capacity(),
+                                       bytes.position() + end - p));
+            int got = channel.read(bytes, p);
+            if (got > 0) {
+                p += got;
+            }
+            done = p >= end || got < 0;
+            bytes.flip();
+            decoder.decode(bytes, chars, done);
+            if (done) {
+                decoder.flush(chars);
+            }
+            bytes.compact();
+            chars.flip();
+            while (chars.hasRemaining()) {
+                lines.add(chars.get());
+            }
+            chars.clear();
+        }
+        lines.finish();
+        return lines._range;
+    }
+
+    /** Splits characters into lines and checks them. */
+    private final class Lines {
+        /** Lines of a range that starts the file iff FIRST, recording at
+         *  most LIMIT problems. */
+        Lines(boolean first, int limit) {
+            _first = first;
+            _limit = limit;
+        }
+
+        /** Add the next character, C. */
+        void add(char c) {
+            if (c == '\n' && _afterReturn) {
+                _afterReturn = false;
+                return;
+            }
+            _afterReturn = c == '\r';
+            if (c == '\n' || c == '\r') {
+                endLine();
+                return;
+            }
+            _column += 1;
+            if (!_long && _length < _text.length) {
+                _text[_length] = c;
+                _length += 1;
+                return;
+            }
+            if (!_long) {
+                _long = true;
+                CharBuffer text = CharBuffer.wrap(_text, 0, _length);
+                if (contains(text, LineFormat.SETTINGS_MARK)) {
+                    report(indexOf(text, LineFormat.SETTINGS_MARK) + 1,
+                           "settings line too long");
+                } else if (_first && _range._lines == 0) {
+                    report(1, "input must begin with a settings line");
+                } else {
+                    checkMessage(text);
+                }
+            }
+            if (!_reported) {
+                if (c == LineFormat.SETTINGS_MARK) {
+                    report(_column, "settings line too long");
+                } else if (!_normalizer.accepts(c)) {
+                    report(_column, String.format("character %s not in "
+                                                  + "alphabet",
+                                                  Alphabet.describe(c)));
+                }
+            }
+        }
+
+        /** Finish the last line, if it does not end with a line end. */
+        void finish() {
+            if (_column > 0) {
+                endLine();
+            }
+        }
+
+        /** Check the line just ended and start the next. */
+        private void endLine() {
+            if (!_long) {
+                CharBuffer text = CharBuffer.wrap(_text, 0, _length);
+                if (contains(text, LineFormat.SETTINGS_MARK)) {
+                    Diagnostic problem = checkSettings(text, 1);
+                    if (problem != null) {
+                        report(problem.column(), problem.message());
+                    }
+                } else if (_first && _range._lines == 0) {
+                    report(1, "input must begin with a settings line");
+                } else {
+                    checkMessage(text);
+                }
+            }
+            _range._lines += 1;
+            _length = _column = 0;
+            _long = _reported = false;
+        }
+
+        /** Check the message line TEXT, the current line. */
+        private void checkMessage(CharSequence text) {
+            for (int i = 0; i < text.length(); i += 1) {
+                char c = text.charAt(i);
+                if (!_normalizer.accepts(c)) {
+                    report(i + 1, String.format("character %s not in "
+                                                + "alphabet",
+                                                Alphabet.describe(c)));
+                    return;
+                }
+            }
+        }
+
+        /** Record the problem MSG at column COLUMN of the current line,
+         *  the first for that line, if there is room. */
+        private void report(int column, String msg) {
+            _reported = true;
+            if (_range._problems.size() < _limit) {
+                _range._problems.add(new Diagnostic(_range._lines + 1,
+                                                    column, msg));
+            }
+        }
+
+        /** True iff my range starts the file. */
+        private final boolean _first;
+        /** Largest number of problems recorded. */
+        private final int _limit;
+        /** The outcome of the range. */
+        private final Range _range = new Range();
+        /** The start of the current line. */
+        private final char[] _text = new char[SETTINGS_LIMIT];
+        /** Number of characters in _text. */
+        private int _length;
+        /** Number of characters in the current line. */
+        private int _column;
+        /** True iff the current line is longer than _text. */
+        private boolean _long;
+        /** True iff a problem has been reported for the current line. */
+        private boolean _reported;
+        /** True iff the last character was a carriage return. */
+        private boolean _afterReturn;
+    }
+
+    /** Return the first problem with settings line TEXT, line number
+     *  LINE, or null if it has none. */
+    Diagnostic checkSettings(CharSequence text, long line) {
+        int[] words = words(text);
+        int count = words.length / 2;
+        if (count == 0 || words[1] - words[0] != 1
+            || text.charAt(words[0]) != LineFormat.SETTINGS_MARK) {
+            return new Diagnostic(line, count == 0 ? 1 : words[0] + 1,
+                                  "settings line must begin with *");
+        }
+        int n = _config.numRotors();
+        RotorCatalog catalog = _config.catalog();
+        int[] chosen = new int[n];
+        int moving = 0;
+        for (int i = 0; i < n; i += 1) {
+            if (i + 1 >= count) {
+                return new Diagnostic(line, text.length() + 1,
+                                      "missing rotor name");
+            }
+            int start = words[2 * i + 2];
+            String name = text.subSequence(start, words[2 * i + 3])
+                .toString();
+            int r = chosen[i] = catalog.find(name);
+            if (r < 0) {
+                return new Diagnostic(line, start + 1,
+                                      "no rotor named " + name);
+            }
+            for (int j = 0; j < i; j += 1) {
+                if (chosen[j] == r) {
+                    return new Diagnostic(line, start + 1,
+                                          "rotor " + name + " repeated");
+                }
+            }
+            char kind = catalog.kind(r);
+            if (i == 0 && kind != MachineConfig.RotorSpec.REFLECTOR) {
+                return new Diagnostic(line, start + 1,
+                                      "rotor " + name
+                                      + " is not a reflector");
+            }
+            if (kind == MachineConfig.RotorSpec.MOVING) {
+                moving += 1;
+                if (moving > _config.numPawls()) {
+                    return new Diagnostic(line, start + 1,
+                                          "too many moving rotors");
+                }
+            }
+        }
+        int k = n + 1;
+        if (k >= count || text.charAt(words[2 * k]) == '(') {
+            return new Diagnostic(line, k >= count ? text.length() + 1
+                                  : words[2 * k] + 1,
+                                  "missing rotor positions");
+        }
+        Diagnostic problem = checkPositions(text, words[2 * k],
+                                            words[2 * k + 1], line,
+                                            "rotor positions");
+        k += 1;
+        if (problem == null && k < count
+            && text.charAt(words[2 * k]) != '(') {
+            problem = checkPositions(text, words[2 * k], words[2 * k + 1],
+                                     line, "ring settings");
+            k += 1;
+        }
+        if (problem == null && k < count) {
+            problem = checkCycles(text, words[2 * k], line);
+        }
+        return problem;
+    }
+
+    /** Return the first problem with TEXT[START .. END-1], on line LINE,
+     *  as a word of rotor positions or rings called WHAT, or null. */
+    private Diagnostic checkPositions(CharSequence text, int start, int end,
+                                      long line, String what) {
+        int want = _config.numRotors() - 1;
+        if (end - start != want) {
+            return new Diagnostic(line, start + 1,
+                                  what + " must have " + want
+                                  + " characters");
+        }
+        for (int i = start; i < end; i += 1) {
+            if (!_alphabet.contains(text.charAt(i))) {
+                return notInAlphabet(text.charAt(i), line, i + 1);
+            }
+        }
+        return null;
+    }
+
+    /** Return the first problem with the plugboard cycles that make up
+     *  TEXT from position START, on line LINE, or null. */
+    private Diagnostic checkCycles(CharSequence text, int start,
+                                   long line) {
+        boolean[] seen = new boolean[_alphabet.size()];
+        int open = -1;
+        for (int i = start; i < text.length(); i += 1) {
+            char c = text.charAt(i);
+            if (c == '(') {
+                if (open >= 0) {
+                    return new Diagnostic(line, i + 1, "nested cycle");
+                }
+                open = i;
+            } else if (c == ')') {
+                if (open < 0) {
+                    return new Diagnostic(line, i + 1, "unbalanced cycle");
+                }
+                open = -1;
+            } else if (!Character.isWhitespace(c)) {
+                int k = _alphabet.indexOf(c);
+                if (open < 0) {
+                    return new Diagnostic(line, i + 1,
+                                          "character outside cycle");
+                } else if (k < 0) {
+                    return notInAlphabet(c, line, i + 1);
+                } else if (seen[k]) {
+                    return new Diagnostic(line, i + 1,
+                                          "character "
+                                          + Alphabet.describe(c)
+                                          + " repeated in cycles");
+                }
+                seen[k] = true;
+            }
+        }
+        if (open >= 0) {
+            return new Diagnostic(line, open + 1, "unbalanced cycle");
+        }
+        return null;
+    }
+
+    /** Return a problem reporting that C, at column COLUMN of line LINE,
+     *  is not in the alphabet. */
+    private static Diagnostic notInAlphabet(char c, long line, int column) {
+        return new Diagnostic(line, column,
+                              "character " + Alphabet.describe(c)
+                              + " not in alphabet");
+    }
+
+    /** Return the bounds of the whitespace-separated words of TEXT: word
+     *  K is TEXT[RESULT[2K] .. RESULT[2K+1]-1]. */
+    private static int[] words(CharSequence text) {
+        int[] result = new int[INITIAL_WORDS];
+        int n = 0;
+        int i = 0;
+        while (true) {
+            while (i < text.length()
+                   && Character.isWhitespace(text.charAt(i))) {
+                i += 1;
+            }
+            if (i == text.length()) {
+                return Arrays.copyOf(result, n);
+            }
+            if (n + 2 > result.length) {
+                result = Arrays.copyOf(result, 2 * result.length);
+            }
+            result[n] = i;
+            while (i < text.length()
+                   && !Character.isWhitespace(text.charAt(i))) {
+                i += 1;
+            }
+            result[n + 1] = i;
+            n += 2;
+        }
+    }
+
+    /** Return true iff TEXT contains C. */
+    private static boolean contains(CharSequence text, char c) {
+        return indexOf(text, c) >= 0;
+    }
+
+    /** Return the position of the first C in TEXT, or -1. */
+    private static int indexOf(CharSequence text, char c) {
+        for (int i = 0; i < text.length(); i += 1) {
+            if (text.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** Default approximate size of each range checked, in bytes. */
+    private static final long RANGE = 1 << 24;
+    /** Size of the blocks in which ranges are read. */
+    private static final int BLOCK = 1 << 16;
+    /** Longest line that may be a settings line. */
+    private static final int SETTINGS_LIMIT = 1 << 16;
+    /** Initial capacity of the bounds of a line's words. */
+    private static final int INITIAL_WORDS = 32;
+
+    /** The configuration checked against. */
+    private final MachineConfig _config;
+    /** The configuration's alphabet. */
+    private final Alphabet _alphabet;
+    /** Decides which message characters are acceptable. */
+    private final Normalizer _normalizer;
+    /** Approximate size of each range checked, in bytes. */
+    private final long _rangeSize;
+}
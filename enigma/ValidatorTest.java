@@ -0,0 +1,161 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Validator class.
+ *  @author Jeonghyun Lee
+ */
+public class ValidatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** The machine configuration used by the tests. */
+    private static final MachineConfig MACHINE = smallConfig();
+
+    /** Return a validator for MACHINE checking ranges of about RANGE
+     *  bytes, with the default normalizer. */
+    private static Validator validator(long range) {
+        return new Validator(MACHINE,
+                             Normalizer.parse(MACHINE.alphabet(), ""),
+                             range);
+    }
+
+    /** Return the problem with settings line TEXT, as a string, or null
+     *  if it has none. */
+    private static String settings(String text) {
+        Validator.Diagnostic problem = validator(1).checkSettings(text, 3);
+        return problem == null ? null : problem.toString();
+    }
+
+    /** Return the problems that validating a file containing TEXT in
+     *  ranges of about RANGE bytes reports, as strings. */
+    private static List<String> validate(String text, long range)
+        throws IOException {
+        Path input = Files.createTempFile("validate", ".in");
+        try {
+            Files.writeString(input, text, Charset.defaultCharset());
+            List<String> result = new ArrayList<>();
+            for (Validator.Diagnostic problem
+                     : validator(range).validate(input, 3, 100)) {
+                result.add(problem.toString());
+            }
+            return result;
+        } finally {
+            Files.delete(input);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void checkSettings() {
+        assertNull(settings("* X K P Q ABC"));
+        assertNull(settings("  *  X K P Q ABC HHH (AB) ( C D )"));
+        assertNull(settings("* X K P Q ABC (AB)(CD)"));
+        assertEquals("line 3, column 1: settings line must begin with *",
+                     settings("X * K P Q ABC"));
+        assertEquals("line 3, column 8: missing rotor name",
+                     settings("* X K P"));
+        assertEquals("line 3, column 7: no rotor named Z",
+                     settings("* X K Z Q ABC"));
+        assertEquals("line 3, column 9: rotor P repeated",
+                     settings("* X K P P ABC"));
+        assertEquals("line 3, column 3: rotor K is not a reflector",
+                     settings("* K X P Q ABC"));
+        assertEquals("line 3, column 9: too many moving rotors",
+                     settings("* X P Q S ABC"));
+        assertEquals("line 3, column 10: missing rotor positions",
+                     settings("* X K P Q"));
+        assertEquals("line 3, column 11: missing rotor positions",
+                     settings("* X K P Q (AB)"));
+        assertEquals("line 3, column 11: rotor positions must have 3 "
+                     + "characters", settings("* X K P Q ABCD"));
+        assertEquals("line 3, column 12: character 'Z' not in alphabet",
+                     settings("* X K P Q AZC"));
+        assertEquals("line 3, column 15: ring settings must have 3 "
+                     + "characters", settings("* X K P Q ABC AB (AC)"));
+        assertEquals("line 3, column 21: character 'B' repeated in cycles",
+                     settings("* X K P Q ABC (AB) (BC)"));
+        assertEquals("line 3, column 17: nested cycle",
+                     settings("* X K P Q ABC (A(B))"));
+        assertEquals("line 3, column 15: unbalanced cycle",
+                     settings("* X K P Q ABC (AB"));
+        assertEquals("line 3, column 20: character outside cycle",
+                     settings("* X K P Q ABC (AB) C"));
+        assertEquals("line 3, column 16: character 'z' not in alphabet",
+                     settings("* X K P Q ABC (zB)"));
+    }
+
+    @Test
+    public void checkFile() throws IOException {
+        String text = "* X K P Q ABC\n"
+            + "ABC DEF\r\n"
+            + "ABCxDEF\r"
+            + "\r\n"
+            + "* X K P P ABC\n"
+            + "HGFEDCBA\u007f";
+        assertEquals(List.of("line 3, column 4: character 'x' not in "
+                             + "alphabet",
+                             "line 5, column 9: rotor P repeated",
+                             "line 6, column 9: character U+007F not in "
+                             + "alphabet"),
+                     validate(text, 1 << 20));
+        assertEquals(validate(text, 1 << 20), validate(text, 1));
+        assertEquals(validate(text, 1 << 20), validate(text, 9));
+        assertEquals(List.of(), validate("* X K P Q ABC\r\nABC\r\n", 1));
+    }
+
+    @Test
+    public void checkStart() throws IOException {
+        assertEquals(List.of("line 1, column 1: input is empty"),
+                     validate("", 4));
+        assertEquals(List.of("line 1, column 1: input must begin with a "
+                             + "settings line"),
+                     validate("ABC\n* X K P Q ABC\n", 4));
+    }
+
+    @Test
+    public void checkManyRanges() throws IOException {
+        StringBuilder text = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int line = 1; line <= 2000; line += 1) {
+            if (line % 100 == 1) {
+                text.append("* X K P Q ABC\n");
+            } else if (line % 97 == 0) {
+                text.append("ABCD!EF\n");
+                expected.add("line " + line
+                             + ", column 5: character '!' not in alphabet");
+            } else {
+                text.append("ABCDEFGH ABC\n");
+            }
+        }
+        assertEquals(expected, validate(text.toString(), 1000));
+    }
+
+    @Test
+    public void checkPermutation() {
+        try {
+            new Permutation("(AB) (CA)", MACHINE.alphabet());
+            fail("accepted repeated character");
+        } catch (EnigmaException excp) {
+            assertEquals("character 'A' repeated in (AB) (CA)",
+                         excp.getMessage());
+        }
+    }
+}